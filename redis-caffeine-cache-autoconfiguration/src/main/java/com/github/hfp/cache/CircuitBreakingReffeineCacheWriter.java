@@ -0,0 +1,343 @@
+package com.github.hfp.cache;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * 带熔断的 ReffeineCacheWriter, Redis 变慢或不可用时 {@link ReffeineCache} 退化为只使用本地缓存
+ * <p>
+ * 1. 读操作: 熔断打开或调用失败时抛出 {@link ReffeineCacheUnavailableException},
+ * ReffeineCache 收到后按未命中处理(配置了 serve-stale 时返回刚过期的本地缓存)
+ * 2. 写入缓存值(包括标签索引): 熔断打开或调用失败时不排队, 抛出 {@link ReffeineCacheUnavailableException},
+ * ReffeineCache 收到后不写本地缓存, 改为删除这个 Key; 恢复后重放旧值会覆盖其他节点在这期间写入的新值
+ * 3. 删除/清空/同步消息: 熔断打开或调用失败时按顺序放入队列, 调用方不感知;
+ * Redis 恢复后后台线程按顺序重放, 队列满时丢弃新的删除操作
+ * 4. 单次调用超过 slowCallThreshold 算作失败; 命令本身的超时由客户端配置(spring.redis.timeout)
+ */
+public class CircuitBreakingReffeineCacheWriter implements ReffeineCacheWriter, DisposableBean {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+    private static final long FLUSH_INTERVAL_MILLIS = 500;
+
+    private final ReffeineCacheWriter delegate;
+    private final ReffeineCacheCircuitBreaker circuitBreaker;
+    private final int maxQueuedWrites;
+    /**
+     * 等待重放的删除操作
+     */
+    private final Deque<Runnable> queuedWrites = new ArrayDeque<>();
+    private final ScheduledExecutorService flusher;
+
+    public CircuitBreakingReffeineCacheWriter(ReffeineCacheWriter delegate, ReffeineCacheCircuitBreaker circuitBreaker,
+                                              int maxQueuedWrites) {
+        Assert.notNull(delegate, "Delegate must not be null!");
+        Assert.notNull(circuitBreaker, "CircuitBreaker must not be null!");
+        Assert.isTrue(maxQueuedWrites >= 0, "MaxQueuedWrites must not be negative!");
+
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.maxQueuedWrites = maxQueuedWrites;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ReffeineCacheWriteQueue");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        flusher.shutdownNow();
+    }
+
+    public ReffeineCacheWriter getDelegate() {
+        return delegate;
+    }
+
+    public ReffeineCacheCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 等待重放的删除操作数量
+     */
+    public int getQueuedWrites() {
+        synchronized (queuedWrites) {
+            return queuedWrites.size();
+        }
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return execute(() -> delegate.get(name, key));
+    }
+
+    @Override
+    public ValueWithTtl getWithTtl(String name, byte[] key) {
+        return execute(() -> delegate.getWithTtl(name, key));
+    }
+
+    @Override
+    public List<byte[]> getChunks(String name, List<byte[]> chunkKeys) {
+        return execute(() -> delegate.getChunks(name, chunkKeys));
+    }
+
+    @Override
+    public byte[] putChunks(String name, byte[] key, List<byte[]> chunkKeys, List<byte[]> chunks,
+                            @Nullable Duration ttl) {
+        return execute(() -> delegate.putChunks(name, key, chunkKeys, chunks, ttl));
+    }
+
+    @Override
+    public List<byte[]> mGet(String name, byte[]... keys) {
+        return execute(() -> delegate.mGet(name, keys));
+    }
+
+    @Override
+    public List<ValueWithTtl> mGetWithTtl(String name, byte[]... keys) {
+        return execute(() -> delegate.mGetWithTtl(name, keys));
+    }
+
+    @Override
+    public byte[] hGet(String name, byte[] hash, byte[] field) {
+        return execute(() -> delegate.hGet(name, hash, field));
+    }
+
+    @Override
+    public List<byte[]> hMGet(String name, byte[] hash, byte[]... fields) {
+        return execute(() -> delegate.hMGet(name, hash, fields));
+    }
+
+    @Override
+    public long hSize(String name, byte[]... hashes) {
+        return execute(() -> delegate.hSize(name, hashes));
+    }
+
+    @Override
+    public long memoryUsage(String name, byte[]... keys) {
+        return execute(() -> delegate.memoryUsage(name, keys));
+    }
+
+    @Override
+    public List<byte[]> hotKeys(String name, byte[] manifest, int count) {
+        return execute(() -> delegate.hotKeys(name, manifest, count));
+    }
+
+    @Override
+    public void recordHotKeys(String name, byte[] manifest, Map<byte[], Long> samples, int keep,
+                              @Nullable Duration ttl) {
+        // 热点采样丢了无所谓, 不排队
+        execute(() -> {
+            delegate.recordHotKeys(name, manifest, samples, keep, ttl);
+            return null;
+        });
+    }
+
+    /**
+     * 不可用时抛出 {@link ReffeineCacheUnavailableException}, 索引中的 Key 留到下一次按标签清除
+     */
+    @Override
+    public List<byte[]> tagged(String name, byte[] tagKey, int count) {
+        return execute(() -> delegate.tagged(name, tagKey, count));
+    }
+
+    /**
+     * 不排队: 恢复后重放可能移除期间重新打上标签的 Key, 索引中的 Key 留到下一次按标签清除
+     */
+    @Override
+    public void untag(String name, byte[] tagKey, List<byte[]> members) {
+        execute(() -> {
+            delegate.untag(name, tagKey, members);
+            return null;
+        });
+    }
+
+    @Override
+    public void tag(String name, List<byte[]> tagKeys, byte[] member, @Nullable Duration ttl) {
+        execute(() -> {
+            delegate.tag(name, tagKeys, member, ttl);
+            return null;
+        });
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, @Nullable Duration ttl) {
+        execute(() -> {
+            delegate.put(name, key, value, ttl);
+            return null;
+        });
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel, byte[] message) {
+        execute(() -> {
+            delegate.put(name, key, value, ttl, channel, message);
+            return null;
+        });
+    }
+
+    /**
+     * 不可用时抛出 {@link ReffeineCacheUnavailableException}, 不能确定 Key 是否已经存在
+     */
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, @Nullable Duration ttl) {
+        return execute(() -> delegate.putIfAbsent(name, key, value, ttl));
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel,
+                              byte[] message) {
+        return execute(() -> delegate.putIfAbsent(name, key, value, ttl, channel, message));
+    }
+
+    @Override
+    public void putAll(String name, List<byte[]> keys, List<byte[]> values, List<Duration> ttls,
+                       @Nullable byte[] channel, @Nullable List<byte[]> messages) {
+        execute(() -> {
+            delegate.putAll(name, keys, values, ttls, channel, messages);
+            return null;
+        });
+    }
+
+    @Override
+    public void hPut(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                     @Nullable byte[] channel, @Nullable byte[] message) {
+        execute(() -> {
+            delegate.hPut(name, hash, field, value, ttl, channel, message);
+            return null;
+        });
+    }
+
+    @Override
+    public byte[] hPutIfAbsent(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                               @Nullable byte[] channel, @Nullable byte[] message) {
+        return execute(() -> delegate.hPutIfAbsent(name, hash, field, value, ttl, channel, message));
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        invalidate(() -> delegate.remove(name, key));
+    }
+
+    @Override
+    public void hRemove(String name, byte[] hash, byte[] field) {
+        invalidate(() -> delegate.hRemove(name, hash, field));
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        invalidate(() -> delegate.clean(name, pattern));
+    }
+
+    @Override
+    public void unlink(String name, byte[]... keys) {
+        invalidate(() -> delegate.unlink(name, keys));
+    }
+
+    @Override
+    public void sync(byte[] channel, byte[] message) {
+        invalidate(() -> delegate.sync(channel, message));
+    }
+
+    @Override
+    public void invalidated(String name, byte[]... keys) {
+        delegate.invalidated(name, keys);
+    }
+
+    /**
+     * 重放排队的删除操作, 遇到失败停止, 等待下一次
+     */
+    public void flush() {
+        while (true) {
+            final Runnable action;
+            synchronized (queuedWrites) {
+                action = queuedWrites.peekFirst();
+            }
+            if (action == null || !circuitBreaker.allowRequest()) {
+                return;
+            }
+            final long start = System.nanoTime();
+            try {
+                action.run();
+            } catch (RuntimeException ex) {
+                circuitBreaker.onFailure();
+                LOGGER.warn("ReffeineCache replay queued invalidation error: " + ex.getMessage());
+                return;
+            }
+            circuitBreaker.onSuccess(start);
+            synchronized (queuedWrites) {
+                queuedWrites.pollFirst();
+            }
+        }
+    }
+
+    /**
+     * 读操作和缓存值写入: 熔断打开或调用失败时抛出 {@link ReffeineCacheUnavailableException}, 不排队
+     */
+    private <T> T execute(Supplier<T> action) {
+        if (!circuitBreaker.allowRequest()) {
+            throw new ReffeineCacheUnavailableException("Redis circuit breaker is open");
+        }
+        final long start = System.nanoTime();
+        final T result;
+        try {
+            result = action.get();
+        } catch (RuntimeException ex) {
+            circuitBreaker.onFailure();
+            throw new ReffeineCacheUnavailableException("Redis is unavailable", ex);
+        }
+        circuitBreaker.onSuccess(start);
+        return result;
+    }
+
+    /**
+     * 删除/清空/同步消息: 熔断打开或调用失败时排队, 恢复后按顺序重放
+     */
+    private void invalidate(Runnable action) {
+        synchronized (queuedWrites) {
+            // 有排队的删除操作时必须排在后面, 保证顺序
+            if (!queuedWrites.isEmpty()) {
+                enqueue(action);
+                return;
+            }
+        }
+        if (!circuitBreaker.allowRequest()) {
+            synchronized (queuedWrites) {
+                enqueue(action);
+            }
+            return;
+        }
+        final long start = System.nanoTime();
+        try {
+            action.run();
+        } catch (RuntimeException ex) {
+            circuitBreaker.onFailure();
+            LOGGER.warn("ReffeineCache invalidation error, queued for retry: " + ex.getMessage());
+            synchronized (queuedWrites) {
+                enqueue(action);
+            }
+            return;
+        }
+        circuitBreaker.onSuccess(start);
+    }
+
+    private void enqueue(Runnable action) {
+        if (queuedWrites.size() >= maxQueuedWrites) {
+            LOGGER.warn("ReffeineCache invalidation queue is full (" + maxQueuedWrites + "), drop invalidation");
+            return;
+        }
+        queuedWrites.addLast(action);
+    }
+}
@@ -0,0 +1,222 @@
+package com.github.hfp.cache;
+
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.cluster.api.sync.RedisClusterCommands;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import org.springframework.data.redis.connection.ClusterCommandExecutor;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisClusterNode;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.lettuce.LettuceClusterConnection;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Redis Cluster 下的 ReffeineCacheWriter
+ * <p>
+ * 1. clean 在所有 master 上并行 SCAN, 按 slot 分组 UNLINK
+ * 2. 多 Key 命令(UNLINK/MEMORY USAGE)按 slot 拆分执行, 避免 CROSSSLOT
+ * 3. 失效日志 Stream 和缓存 Key 不在同一个 slot, 写缓存之后单独 XADD
+ * <p>
+ * 配合 {@link com.github.hfp.config.ReffeineCacheConfiguration#useHashTag()} 可以让同一个缓存的 Key 落在同一个 slot
+ */
+public class ClusterReffeineCacheWriter extends DefaultReffeineCacheWriter {
+    private static final int SCAN_COUNT = 500;
+    /**
+     * 只使用 Jedis 时 Lettuce 不在 classpath 上, 不能引用 Lettuce 的类
+     */
+    private static final boolean LETTUCE_PRESENT = ClassUtils.isPresent("io.lettuce.core.RedisClient",
+            ClusterReffeineCacheWriter.class.getClassLoader());
+
+    /**
+     * @param connectionFactory must not be {@literal null}.
+     */
+    public ClusterReffeineCacheWriter(RedisConnectionFactory connectionFactory) {
+        super(connectionFactory);
+    }
+
+    /**
+     * @param connectionFactory must not be {@literal null}.
+     * @param sleepTime         sleep time between lock request attempts. Must not be {@literal null}. Use {@link Duration#ZERO}
+     *                          to disable locking.
+     */
+    public ClusterReffeineCacheWriter(RedisConnectionFactory connectionFactory, Duration sleepTime) {
+        super(connectionFactory, sleepTime);
+    }
+
+    /**
+     * 集群连接不支持 pipeline, 通过脚本一次往返读取
+     */
+    @Override
+    public ValueWithTtl getWithTtl(String name, byte[] key) {
+        final List<Object> results = execute(name, connection -> ReffeineCacheScript.GET_WITH_TTL.execute(connection,
+                ReturnType.MULTI, 1, key));
+        return toValueWithTtl(results);
+    }
+
+    /**
+     * 集群连接不支持 pipeline, 逐个通过脚本读取
+     */
+    @Override
+    public List<ValueWithTtl> mGetWithTtl(String name, byte[]... keys) {
+        final List<ValueWithTtl> values = new ArrayList<>(keys.length);
+        for (byte[] key : keys) {
+            values.add(getWithTtl(name, key));
+        }
+        return values;
+    }
+
+    /**
+     * 集群连接不支持 pipeline, 逐个写入
+     */
+    @Override
+    public void putAll(String name, List<byte[]> keys, List<byte[]> values, List<Duration> ttls,
+                       @Nullable byte[] channel, @Nullable List<byte[]> messages) {
+        for (int i = 0; i < keys.size(); i++) {
+            if (channel == null) {
+                put(name, keys.get(i), values.get(i), ttls.get(i));
+            } else {
+                put(name, keys.get(i), values.get(i), ttls.get(i), channel, messages.get(i));
+            }
+        }
+    }
+
+    /**
+     * 集群连接不支持 pipeline, 逐个写入
+     */
+    @Override
+    public byte[] putChunks(String name, byte[] key, List<byte[]> chunkKeys, List<byte[]> chunks,
+                            @Nullable Duration ttl) {
+        final byte[] current = get(name, key);
+        for (int i = 0; i < chunkKeys.size(); i++) {
+            put(name, chunkKeys.get(i), chunks.get(i), ttl);
+        }
+        return current;
+    }
+
+    /**
+     * 集群连接不支持 pipeline, 逐个读取
+     */
+    @Override
+    public List<byte[]> getChunks(String name, List<byte[]> chunkKeys) {
+        final List<byte[]> chunks = new ArrayList<>(chunkKeys.size());
+        for (byte[] chunkKey : chunkKeys) {
+            chunks.add(get(name, chunkKey));
+        }
+        return chunks;
+    }
+
+    @Override
+    public void unlink(String name, byte[]... keys) {
+        for (List<byte[]> slotKeys : partitionBySlot(keys)) {
+            super.unlink(name, slotKeys.toArray(new byte[0][]));
+        }
+    }
+
+    @Override
+    public long memoryUsage(String name, byte[]... keys) {
+        long usage = 0L;
+        for (List<byte[]> slotKeys : partitionBySlot(keys)) {
+            usage += super.memoryUsage(name, slotKeys.toArray(new byte[0][]));
+        }
+        return usage;
+    }
+
+    @Override
+    protected boolean isInlineInvalidationLog() {
+        return false;
+    }
+
+    /**
+     * 所有 master 并行 SCAN 并删除
+     */
+    @Override
+    protected void doClean(RedisConnection connection, byte[] pattern) {
+        if (!(connection instanceof RedisClusterConnection)) {
+            super.doClean(connection, pattern);
+            return;
+        }
+
+        final RedisClusterConnection clusterConnection = (RedisClusterConnection) connection;
+        final List<RedisClusterNode> masters = new ArrayList<>();
+        for (RedisClusterNode node : clusterConnection.clusterGetNodes()) {
+            if (node.isMaster()) {
+                masters.add(node);
+            }
+        }
+
+        final long deleted;
+        if (LETTUCE_PRESENT && LettuceScan.supports(clusterConnection)) {
+            deleted = LettuceScan.scanAndUnlink(clusterConnection, masters, pattern);
+        } else {
+            // 其他客户端没有按节点 SCAN 的接口, 退化为按节点 KEYS
+            deleted = masters.stream()
+                    .map(node -> CompletableFuture.supplyAsync(() -> clusterConnection.keys(node, pattern)))
+                    .collect(Collectors.toList()).stream()
+                    .map(CompletableFuture::join)
+                    .mapToLong(keys -> {
+                        long count = 0;
+                        for (List<byte[]> slotKeys : partitionBySlot(keys.toArray(new byte[0][]))) {
+                            count += clusterConnection.del(slotKeys.toArray(new byte[0][]));
+                        }
+                        return count;
+                    }).sum();
+        }
+        LOGGER.warn("Del cached keys matching " + new String(pattern, StandardCharsets.UTF_8) + " on " + masters.size()
+                + " masters, count " + deleted);
+    }
+
+    private static Collection<List<byte[]>> partitionBySlot(byte[]... keys) {
+        final Map<Integer, List<byte[]>> keysBySlot = new LinkedHashMap<>();
+        for (byte[] key : keys) {
+            keysBySlot.computeIfAbsent(ClusterSlotHashUtil.calculateSlot(key), slot -> new ArrayList<>()).add(key);
+        }
+        return keysBySlot.values();
+    }
+
+    /**
+     * Lettuce 集群连接可以按节点执行命令, 在每个 master 上 SCAN; 只有 Lettuce 在 classpath 上时才加载
+     */
+    private static final class LettuceScan {
+
+        static boolean supports(RedisClusterConnection connection) {
+            return connection instanceof LettuceClusterConnection;
+        }
+
+        static long scanAndUnlink(RedisClusterConnection connection, List<RedisClusterNode> masters, byte[] pattern) {
+            final ClusterCommandExecutor executor = ((LettuceClusterConnection) connection).getClusterCommandExecutor();
+            final ClusterCommandExecutor.ClusterCommandCallback<RedisClusterCommands<byte[], byte[]>, Long> callback =
+                    client -> scanAndUnlink(client, pattern);
+            return executor.executeCommandAsyncOnNodes(callback, masters).resultsAsList().stream()
+                    .mapToLong(Long::longValue).sum();
+        }
+
+        private static long scanAndUnlink(RedisClusterCommands<byte[], byte[]> client, byte[] pattern) {
+            final ScanArgs scanArgs = ScanArgs.Builder.matches(new String(pattern, StandardCharsets.UTF_8))
+                    .limit(SCAN_COUNT);
+            long deleted = 0;
+            KeyScanCursor<byte[]> cursor = client.scan(scanArgs);
+            while (true) {
+                for (List<byte[]> slotKeys : partitionBySlot(cursor.getKeys().toArray(new byte[0][]))) {
+                    deleted += client.unlink(slotKeys.toArray(new byte[0][]));
+                }
+                if (cursor.isFinished()) {
+                    return deleted;
+                }
+                cursor = client.scan(cursor, scanArgs);
+            }
+        }
+    }
+}
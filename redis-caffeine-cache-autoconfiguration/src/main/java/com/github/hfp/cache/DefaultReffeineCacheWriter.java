@@ -2,7 +2,13 @@ package com.github.hfp.cache;
 
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
@@ -14,6 +20,7 @@ import org.springframework.data.redis.cache.RedisCacheWriter;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.connection.ReturnType;
 import org.springframework.data.redis.core.Cursor;
 import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.types.Expiration;
@@ -25,12 +32,21 @@ import org.springframework.util.Assert;
  *
  */
 public class DefaultReffeineCacheWriter implements ReffeineCacheWriter {
-    private final Log LOGGER = LogFactory.getLog(getClass());
+    protected final Log LOGGER = LogFactory.getLog(getClass());
     private final RedisConnectionFactory connectionFactory;
     /**
      * sleepTime > 0 的时候，执行操作会加锁(SETNX)
      */
     private final Duration sleepTime;
+    /**
+     * Redis 是否支持 Hash field 过期(7.4+), 首次 HASH 写入时探测
+     */
+    private volatile Boolean hashFieldExpirationSupported;
+    /**
+     * 失效日志, 不为 {@literal null} 时同步消息同时写入 Redis Stream
+     */
+    @Nullable
+    private volatile ReffeineCacheInvalidationLog invalidationLog;
 
     /**
      * @param connectionFactory must not be {@literal null}.
@@ -91,6 +107,90 @@ public class DefaultReffeineCacheWriter implements ReffeineCacheWriter {
         return execute(name, connection -> connection.get(key));
     }
 
+    /**
+     * GET + PTTL 一次 pipeline
+     */
+    @Override
+    public ValueWithTtl getWithTtl(String name, byte[] key) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(key, "Key must not be null!");
+
+        final List<Object> results = execute(name, connection -> {
+            connection.openPipeline();
+            connection.get(key);
+            connection.pTtl(key);
+            return connection.closePipeline();
+        });
+        return toValueWithTtl(results);
+    }
+
+    /**
+     * GET 缓存 Key + 每个分片一个 SET, 一次 pipeline
+     */
+    @Override
+    public byte[] putChunks(String name, byte[] key, List<byte[]> chunkKeys, List<byte[]> chunks,
+                            @Nullable Duration ttl) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(key, "Key must not be null!");
+        Assert.isTrue(chunkKeys.size() == chunks.size(), "ChunkKeys and chunks must have the same size!");
+
+        final List<Object> results = execute(name, connection -> {
+            connection.openPipeline();
+            connection.get(key);
+            for (int i = 0; i < chunkKeys.size(); i++) {
+                if (shouldExpireWithin(ttl)) {
+                    connection.pSetEx(chunkKeys.get(i), ttl.toMillis(), chunks.get(i));
+                } else {
+                    connection.set(chunkKeys.get(i), chunks.get(i));
+                }
+            }
+            return connection.closePipeline();
+        });
+        return results == null || results.isEmpty() || !(results.get(0) instanceof byte[])
+                ? null : (byte[]) results.get(0);
+    }
+
+    /**
+     * 每个分片一个 GET, 一次 pipeline; 不使用 MGET, 避免单个回复过大
+     */
+    @Override
+    public List<byte[]> getChunks(String name, List<byte[]> chunkKeys) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(chunkKeys, "ChunkKeys must not be null!");
+
+        if (chunkKeys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        final List<Object> results = execute(name, connection -> {
+            connection.openPipeline();
+            for (byte[] chunkKey : chunkKeys) {
+                connection.get(chunkKey);
+            }
+            return connection.closePipeline();
+        });
+        final List<byte[]> chunks = new ArrayList<>(chunkKeys.size());
+        for (int i = 0; i < chunkKeys.size(); i++) {
+            final Object chunk = results == null || i >= results.size() ? null : results.get(i);
+            chunks.add(chunk instanceof byte[] ? (byte[]) chunk : null);
+        }
+        return chunks;
+    }
+
+    /**
+     * [值, PTTL] 转换为 {@link ValueWithTtl}, 值不存在时返回 {@literal null}
+     */
+    @Nullable
+    protected static ValueWithTtl toValueWithTtl(@Nullable List<Object> results) {
+        if (results == null || results.size() < 2 || !(results.get(0) instanceof byte[])) {
+            return null;
+        }
+        final Object ttl = results.get(1);
+        return new ValueWithTtl((byte[]) results.get(0), ttl instanceof Number ? ((Number) ttl).longValue() : -1L);
+    }
+
     /*
      * (non-Javadoc)
      * @see org.springframework.data.redis.cache.RedisCacheWriter#putIfAbsent(java.lang.String, byte[], byte[], java.time.Duration)
@@ -109,15 +209,115 @@ public class DefaultReffeineCacheWriter implements ReffeineCacheWriter {
             }
 
             try {
-                if (connection.setNX(key, value)) {
+                return ReffeineCacheScript.PUT_IF_ABSENT_AND_SYNC.execute(connection, ReturnType.VALUE, 1, key, value,
+                        toMillisArg(ttl));
+            } finally {
+
+                if (isLockingCacheWriter()) {
+                    doUnlock(name, connection);
+                }
+            }
+        });
+    }
+
+    /**
+     * SET 和 PUBLISH 在同一个 Lua 脚本中执行, 一次往返
+     */
+    @Override
+    public void put(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel, byte[] message) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(key, "Key must not be null!");
+        Assert.notNull(value, "Value must not be null!");
+        Assert.notNull(channel, "Sync channel must not be null!");
+        Assert.notNull(message, "Sync message must not be null!");
+
+        final ReffeineCacheInvalidationLog log = inlineLog();
+        execute(name, connection -> ReffeineCacheScript.PUT_AND_SYNC.execute(connection, ReturnType.INTEGER,
+                keyCount(log), withLogArgs(log, key, value, toMillisArg(ttl), channel, message)));
+        appendLogIfNotInline(message);
+    }
+
+    /**
+     * 每个缓存一次 EVALSHA(SET + PUBLISH), 一次 pipeline; 脚本在服务端丢失(NOSCRIPT)时退化为逐个写入;
+     * 不同步时每个缓存一次 SET, 一次 pipeline
+     */
+    @Override
+    public void putAll(String name, List<byte[]> keys, List<byte[]> values, List<Duration> ttls,
+                       @Nullable byte[] channel, @Nullable List<byte[]> messages) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.isTrue(keys.size() == values.size() && keys.size() == ttls.size(),
+                "Keys, values and ttls must have the same size!");
+        Assert.isTrue(channel == null || messages != null && keys.size() == messages.size(),
+                "Messages must have the same size as keys!");
 
-                    if (shouldExpireWithin(ttl)) {
-                        connection.pExpire(key, ttl.toMillis());
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (channel == null) {
+            execute(name, connection -> {
+                connection.openPipeline();
+                for (int i = 0; i < keys.size(); i++) {
+                    if (shouldExpireWithin(ttls.get(i))) {
+                        connection.set(keys.get(i), values.get(i),
+                                Expiration.from(ttls.get(i).toMillis(), TimeUnit.MILLISECONDS),
+                                RedisStringCommands.SetOption.upsert());
+                    } else {
+                        connection.set(keys.get(i), values.get(i));
                     }
-                    return null;
                 }
+                return connection.closePipeline();
+            });
+            return;
+        }
+        final ReffeineCacheInvalidationLog log = inlineLog();
+        try {
+            execute(name, connection -> {
+                ReffeineCacheScript.PUT_AND_SYNC.load(connection);
+                connection.openPipeline();
+                for (int i = 0; i < keys.size(); i++) {
+                    ReffeineCacheScript.PUT_AND_SYNC.executeInPipeline(connection, ReturnType.INTEGER, keyCount(log),
+                            withLogArgs(log, keys.get(i), values.get(i), toMillisArg(ttls.get(i)), channel,
+                                    messages.get(i)));
+                }
+                return connection.closePipeline();
+            });
+        } catch (RuntimeException ex) {
+            if (!ReffeineCacheScript.isNoScriptError(ex)) {
+                throw ex;
+            }
+            ReffeineCacheWriter.super.putAll(name, keys, values, ttls, channel, messages);
+            return;
+        }
+        for (byte[] message : messages) {
+            appendLogIfNotInline(message);
+        }
+    }
+
+    /**
+     * SET NX PX, PUBLISH 和 GET 在同一个 Lua 脚本中执行, 写入和过期时间原子生效
+     */
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel,
+                              byte[] message) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(key, "Key must not be null!");
+        Assert.notNull(value, "Value must not be null!");
+        Assert.notNull(channel, "Sync channel must not be null!");
+        Assert.notNull(message, "Sync message must not be null!");
+
+        final ReffeineCacheInvalidationLog log = inlineLog();
+        final byte[] result = execute(name, connection -> {
+
+            if (isLockingCacheWriter()) {
+                doLock(name, connection);
+            }
 
-                return connection.get(key);
+            try {
+                return ReffeineCacheScript.PUT_IF_ABSENT_AND_SYNC.execute(connection, ReturnType.VALUE, keyCount(log),
+                        withLogArgs(log, key, value, toMillisArg(ttl), channel, message));
             } finally {
 
                 if (isLockingCacheWriter()) {
@@ -125,6 +325,10 @@ public class DefaultReffeineCacheWriter implements ReffeineCacheWriter {
                 }
             }
         });
+        if (result == null) {
+            appendLogIfNotInline(message);
+        }
+        return result;
     }
 
     /*
@@ -160,22 +364,7 @@ public class DefaultReffeineCacheWriter implements ReffeineCacheWriter {
                             doLock(name, connection);
                             wasLocked = true;
                         }
-                        Set<byte[]> keySet = new HashSet<>();
-                        ScanOptions scanOptions = ScanOptions.scanOptions().match(new String(pattern)).count(500).build();
-                        Cursor<byte[]> cursor = connection.scan(scanOptions);
-                        while (cursor.hasNext()) {
-                            byte[] key = cursor.next();
-                            keySet.add(key);
-                        }
-                        byte[][] keys = keySet.toArray(new byte[0][]);
-                        if (keys.length > 0) {
-                            StringBuilder delKeys = new StringBuilder();
-                            for (byte[] k : keys) {
-                                delKeys.append(new String(k)).append(",");
-                            }
-                            LOGGER.warn("Start del cached key " + delKeys.toString());
-                            connection.del(keys);
-                        }
+                        doClean(connection, pattern);
                     } finally {
 
                         if (wasLocked && isLockingCacheWriter()) {
@@ -189,18 +378,353 @@ public class DefaultReffeineCacheWriter implements ReffeineCacheWriter {
         );
     }
 
+    @Override
+    public List<byte[]> mGet(String name, byte[]... keys) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(keys, "Keys must not be null!");
+
+        if (keys.length == 0) {
+            return Collections.emptyList();
+        }
+        return execute(name, connection -> connection.mGet(keys));
+    }
+
+    /**
+     * MGET + 每个 Key 一个 PTTL, 一次 pipeline
+     */
+    @Override
+    public List<ValueWithTtl> mGetWithTtl(String name, byte[]... keys) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(keys, "Keys must not be null!");
+
+        if (keys.length == 0) {
+            return Collections.emptyList();
+        }
+        final List<Object> results = execute(name, connection -> {
+            connection.openPipeline();
+            connection.mGet(keys);
+            for (byte[] key : keys) {
+                connection.pTtl(key);
+            }
+            return connection.closePipeline();
+        });
+        final List<?> values = (List<?>) results.get(0);
+        final List<ValueWithTtl> valuesWithTtl = new ArrayList<>(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            valuesWithTtl.add(toValueWithTtl(Arrays.asList(values.get(i), results.get(i + 1))));
+        }
+        return valuesWithTtl;
+    }
+
+    @Override
+    public byte[] hGet(String name, byte[] hash, byte[] field) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(hash, "Hash must not be null!");
+        Assert.notNull(field, "Field must not be null!");
+
+        return execute(name, connection -> connection.hGet(hash, field));
+    }
+
+    @Override
+    public List<byte[]> hMGet(String name, byte[] hash, byte[]... fields) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(hash, "Hash must not be null!");
+        Assert.notNull(fields, "Fields must not be null!");
+
+        if (fields.length == 0) {
+            return Collections.emptyList();
+        }
+        return execute(name, connection -> connection.hMGet(hash, fields));
+    }
+
+    @Override
+    public void hPut(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                     @Nullable byte[] channel, @Nullable byte[] message) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(hash, "Hash must not be null!");
+        Assert.notNull(field, "Field must not be null!");
+        Assert.notNull(value, "Value must not be null!");
+        Assert.isTrue(channel == null || message != null, "Sync message must not be null!");
+
+        if (channel == null) {
+            execute(name, connection -> ReffeineCacheScript.HASH_PUT_AND_SYNC.execute(connection, ReturnType.INTEGER,
+                    1, hash, field, value, toMillisArg(ttl), toFlagArg(supportsHashFieldExpiration(connection))));
+            return;
+        }
+        final ReffeineCacheInvalidationLog log = inlineLog();
+        execute(name, connection -> ReffeineCacheScript.HASH_PUT_AND_SYNC.execute(connection, ReturnType.INTEGER,
+                keyCount(log), withLogArgs(log, hash, field, value, toMillisArg(ttl),
+                        toFlagArg(supportsHashFieldExpiration(connection)), channel, message)));
+        appendLogIfNotInline(message);
+    }
+
+    @Override
+    public byte[] hPutIfAbsent(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                               @Nullable byte[] channel, @Nullable byte[] message) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(hash, "Hash must not be null!");
+        Assert.notNull(field, "Field must not be null!");
+        Assert.notNull(value, "Value must not be null!");
+        Assert.isTrue(channel == null || message != null, "Sync message must not be null!");
+
+        if (channel == null) {
+            return execute(name, connection -> ReffeineCacheScript.HASH_PUT_IF_ABSENT_AND_SYNC.execute(connection,
+                    ReturnType.VALUE, 1, hash, field, value, toMillisArg(ttl),
+                    toFlagArg(supportsHashFieldExpiration(connection))));
+        }
+        final ReffeineCacheInvalidationLog log = inlineLog();
+        final byte[] result = execute(name, connection -> ReffeineCacheScript.HASH_PUT_IF_ABSENT_AND_SYNC.execute(
+                connection, ReturnType.VALUE, keyCount(log), withLogArgs(log, hash, field, value, toMillisArg(ttl),
+                        toFlagArg(supportsHashFieldExpiration(connection)), channel, message)));
+        if (result == null) {
+            appendLogIfNotInline(message);
+        }
+        return result;
+    }
+
+    @Override
+    public void hRemove(String name, byte[] hash, byte[] field) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(hash, "Hash must not be null!");
+        Assert.notNull(field, "Field must not be null!");
+
+        execute(name, connection -> connection.hDel(hash, field));
+    }
+
+    @Override
+    public void unlink(String name, byte[]... keys) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(keys, "Keys must not be null!");
+
+        if (keys.length == 0) {
+            return;
+        }
+        execute(name, connection -> connection.execute("UNLINK", keys));
+    }
+
+    @Override
+    public long hSize(String name, byte[]... hashes) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(hashes, "Hashes must not be null!");
+
+        return execute(name, connection -> {
+            long size = 0;
+            for (byte[] hash : hashes) {
+                final Long len = connection.hLen(hash);
+                size += len == null ? 0 : len;
+            }
+            return size;
+        });
+    }
+
+    @Override
+    public long memoryUsage(String name, byte[]... keys) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(keys, "Keys must not be null!");
+
+        if (keys.length == 0) {
+            return 0L;
+        }
+        final Long usage = execute(name, connection -> ReffeineCacheScript.MEMORY_USAGE.execute(connection,
+                ReturnType.INTEGER, keys.length, keys));
+        return usage == null ? 0L : usage;
+    }
+
+    @Override
+    public void recordHotKeys(String name, byte[] manifest, Map<byte[], Long> samples, int keep,
+                              @Nullable Duration ttl) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(manifest, "Manifest must not be null!");
+        Assert.notNull(samples, "Samples must not be null!");
+
+        if (samples.isEmpty()) {
+            return;
+        }
+        final byte[][] keysAndArgs = new byte[3 + samples.size() * 2][];
+        keysAndArgs[0] = manifest;
+        keysAndArgs[1] = String.valueOf(keep).getBytes(StandardCharsets.UTF_8);
+        keysAndArgs[2] = toMillisArg(ttl);
+        int i = 3;
+        for (Map.Entry<byte[], Long> sample : samples.entrySet()) {
+            keysAndArgs[i++] = sample.getKey();
+            keysAndArgs[i++] = String.valueOf(sample.getValue()).getBytes(StandardCharsets.UTF_8);
+        }
+        executeLockFree(connection -> ReffeineCacheScript.RECORD_HOT_KEYS.execute(connection, ReturnType.INTEGER, 1,
+                keysAndArgs));
+    }
+
+    @Override
+    public List<byte[]> hotKeys(String name, byte[] manifest, int count) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(manifest, "Manifest must not be null!");
+
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        final Set<byte[]> keys = execute(name, connection -> connection.zRevRange(manifest, 0, count - 1));
+        return keys == null ? Collections.emptyList() : new ArrayList<>(keys);
+    }
+
+    /**
+     * 每个标签一次 EVALSHA, 标签的反向索引可能不在同一个 slot
+     */
+    @Override
+    public void tag(String name, List<byte[]> tagKeys, byte[] member, @Nullable Duration ttl) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(tagKeys, "TagKeys must not be null!");
+        Assert.notNull(member, "Member must not be null!");
+
+        if (tagKeys.isEmpty()) {
+            return;
+        }
+        execute(name, connection -> {
+            for (byte[] tagKey : tagKeys) {
+                ReffeineCacheScript.TAG.execute(connection, ReturnType.INTEGER, 1, tagKey, member,
+                        toMillisArg(ttl));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public List<byte[]> tagged(String name, byte[] tagKey, int count) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(tagKey, "TagKey must not be null!");
+
+        if (count <= 0) {
+            return Collections.emptyList();
+        }
+        final List<byte[]> members = execute(name, connection -> connection.sRandMember(tagKey, count));
+        return members == null ? Collections.emptyList() : members;
+    }
+
+    @Override
+    public void untag(String name, byte[] tagKey, List<byte[]> members) {
+
+        Assert.notNull(name, "Name must not be null!");
+        Assert.notNull(tagKey, "TagKey must not be null!");
+        Assert.notNull(members, "Members must not be null!");
+
+        if (members.isEmpty()) {
+            return;
+        }
+        execute(name, connection -> connection.sRem(tagKey, members.toArray(new byte[0][])));
+    }
+
+    /**
+     * SCAN 匹配 pattern 的 Key 并删除, 调用方负责加锁
+     */
+    protected void doClean(RedisConnection connection, byte[] pattern) {
+        Set<byte[]> keySet = new HashSet<>();
+        ScanOptions scanOptions = ScanOptions.scanOptions().match(new String(pattern)).count(500).build();
+        Cursor<byte[]> cursor = connection.scan(scanOptions);
+        while (cursor.hasNext()) {
+            byte[] key = cursor.next();
+            keySet.add(key);
+        }
+        byte[][] keys = keySet.toArray(new byte[0][]);
+        if (keys.length > 0) {
+            StringBuilder delKeys = new StringBuilder();
+            for (byte[] k : keys) {
+                delKeys.append(new String(k)).append(",");
+            }
+            LOGGER.warn("Start del cached key " + delKeys.toString());
+            connection.del(keys);
+        }
+    }
+
     @Override
     public void sync(byte[] channel, byte[] message) {
-        LOGGER.info("start sync cache message ");
         Assert.notNull(channel, "Sync channel must not be null!");
         Assert.notNull(message, "Sync message must not be null!");
 
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("start sync cache message " + new String(channel, StandardCharsets.UTF_8));
+        }
+        final ReffeineCacheInvalidationLog log = this.invalidationLog;
         executeLockFree(connection -> {
-            final Long publish = connection.publish(channel, message);
-            LOGGER.info("client recived sync message, subs count" + publish);
+            final Long publish = log == null ? connection.publish(channel, message)
+                    : ReffeineCacheScript.SYNC_AND_LOG.execute(connection, ReturnType.INTEGER, 1, log.getStreamKey(),
+                    channel, message, log.getMaxLenArg());
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("client recived sync message, subs count" + publish);
+            }
         });
     }
 
+    @Nullable
+    public ReffeineCacheInvalidationLog getInvalidationLog() {
+        return invalidationLog;
+    }
+
+    /**
+     * 开启失效日志, 之后所有同步消息同时 XADD 到 Redis Stream
+     */
+    public void setInvalidationLog(@Nullable ReffeineCacheInvalidationLog invalidationLog) {
+        this.invalidationLog = invalidationLog;
+    }
+
+    /**
+     * 失效日志是否可以和写缓存在同一个 Lua 脚本中执行(脚本访问的 Key 需要在同一个节点)
+     */
+    protected boolean isInlineInvalidationLog() {
+        return true;
+    }
+
+    /**
+     * 开启失效日志且可以内联时返回失效日志, 否则返回 {@literal null}
+     */
+    @Nullable
+    private ReffeineCacheInvalidationLog inlineLog() {
+        final ReffeineCacheInvalidationLog log = this.invalidationLog;
+        return log == null || !isInlineInvalidationLog() ? null : log;
+    }
+
+    /**
+     * 写缓存脚本的 Key 数量, 内联失效日志时 Stream 作为 KEYS[2]
+     */
+    private static int keyCount(@Nullable ReffeineCacheInvalidationLog log) {
+        return log == null ? 1 : 2;
+    }
+
+    /**
+     * 内联失效日志时把 Stream Key 插入到缓存 Key 之后(KEYS[2]), 最大长度追加到参数末尾
+     */
+    private static byte[][] withLogArgs(@Nullable ReffeineCacheInvalidationLog log, byte[]... keyAndArgs) {
+        if (log == null) {
+            return keyAndArgs;
+        }
+        final byte[][] result = new byte[keyAndArgs.length + 2][];
+        result[0] = keyAndArgs[0];
+        result[1] = log.getStreamKey();
+        System.arraycopy(keyAndArgs, 1, result, 2, keyAndArgs.length - 1);
+        result[result.length - 1] = log.getMaxLenArg();
+        return result;
+    }
+
+    private void appendLogIfNotInline(byte[] message) {
+        final ReffeineCacheInvalidationLog log = this.invalidationLog;
+        if (log == null || isInlineInvalidationLog()) {
+            return;
+        }
+        executeLockFree(connection -> ReffeineCacheScript.APPEND_LOG.execute(connection, ReturnType.VALUE, 1,
+                log.getStreamKey(), message, log.getMaxLenArg()));
+    }
+
     private Boolean doLock(String name, RedisConnection connection) {
         return connection.setNX(createCacheLockKey(name), new byte[0]);
     }
@@ -220,7 +744,7 @@ public class DefaultReffeineCacheWriter implements ReffeineCacheWriter {
         return !sleepTime.isZero() && !sleepTime.isNegative();
     }
 
-    private <T> T execute(String name, Function<RedisConnection, T> callback) {
+    protected <T> T execute(String name, Function<RedisConnection, T> callback) {
 
         RedisConnection connection = connectionFactory.getConnection();
         try {
@@ -249,9 +773,13 @@ public class DefaultReffeineCacheWriter implements ReffeineCacheWriter {
             return;
         }
 
+        Object event = null;
         try {
 
             while (doCheckLock(name, connection)) {
+                if (event == null) {
+                    event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.LOCK_WAIT);
+                }
                 Thread.sleep(sleepTime.toMillis());
             }
         } catch (InterruptedException ex) {
@@ -262,13 +790,50 @@ public class DefaultReffeineCacheWriter implements ReffeineCacheWriter {
             throw new PessimisticLockingFailureException(
                     String.format("Interrupted while waiting to unlock cache %s", name),
                     ex);
+        } finally {
+            // 只记录实际等待过的
+            ReffeineCacheEvents.commit(event, name, null, 0, null);
         }
     }
 
+    private boolean supportsHashFieldExpiration(RedisConnection connection) {
+        Boolean supported = hashFieldExpirationSupported;
+        if (supported == null) {
+            final Properties info = connection.info("server");
+            supported = info != null && isVersionAtLeast(info.getProperty("redis_version"), 7, 4);
+            hashFieldExpirationSupported = supported;
+            LOGGER.info("Redis hash field expiration supported: " + supported);
+        }
+        return supported;
+    }
+
+    private static boolean isVersionAtLeast(@Nullable String version, int major, int minor) {
+        if (version == null) {
+            return false;
+        }
+        final String[] parts = version.split("\\.");
+        try {
+            final int actualMajor = Integer.parseInt(parts[0]);
+            final int actualMinor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return actualMajor > major || (actualMajor == major && actualMinor >= minor);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static byte[] toFlagArg(boolean flag) {
+        return (flag ? "1" : "0").getBytes(StandardCharsets.UTF_8);
+    }
+
     private static boolean shouldExpireWithin(@Nullable Duration ttl) {
         return ttl != null && !ttl.isZero() && !ttl.isNegative();
     }
 
+    private static byte[] toMillisArg(@Nullable Duration ttl) {
+        final long millis = shouldExpireWithin(ttl) ? ttl.toMillis() : 0L;
+        return String.valueOf(millis).getBytes(StandardCharsets.UTF_8);
+    }
+
     private static byte[] createCacheLockKey(String name) {
         return (name + "~lock").getBytes(StandardCharsets.UTF_8);
     }
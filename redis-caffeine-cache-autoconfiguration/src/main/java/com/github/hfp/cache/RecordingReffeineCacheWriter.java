@@ -0,0 +1,270 @@
+package com.github.hfp.cache;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * 为每次 Redis 调用提交 JFR 事件(com.github.hfp.cache.RedisCommand)的 ReffeineCacheWriter
+ * <p>
+ * 事件带缓存名、命令、Key 的 hash、写入或读取的字节数和耗时; 事件关闭时只多一次开关检查
+ */
+public class RecordingReffeineCacheWriter implements ReffeineCacheWriter {
+    private final ReffeineCacheWriter delegate;
+
+    public RecordingReffeineCacheWriter(ReffeineCacheWriter delegate) {
+        Assert.notNull(delegate, "Delegate must not be null!");
+        this.delegate = delegate;
+    }
+
+    /**
+     * 当前 JDK 是否支持 JFR, 不支持时不需要使用这个 Writer
+     */
+    public static boolean isSupported() {
+        return ReffeineCacheEvents.isAvailable();
+    }
+
+    public ReffeineCacheWriter getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return record(name, "GET", key, null, () -> delegate.get(name, key));
+    }
+
+    @Override
+    public ValueWithTtl getWithTtl(String name, byte[] key) {
+        return record(name, "GET_WITH_TTL", key,
+                () -> delegate.getWithTtl(name, key), result -> result == null ? 0 : result.getValue().length);
+    }
+
+    @Override
+    public List<byte[]> getChunks(String name, List<byte[]> chunkKeys) {
+        return record(name, "GET_CHUNKS", null,
+                () -> delegate.getChunks(name, chunkKeys), RecordingReffeineCacheWriter::sizeOf);
+    }
+
+    @Override
+    public byte[] putChunks(String name, byte[] key, List<byte[]> chunkKeys, List<byte[]> chunks,
+                            @Nullable Duration ttl) {
+        return record(name, "PUT_CHUNKS", key,
+                () -> delegate.putChunks(name, key, chunkKeys, chunks, ttl), result -> sizeOf(chunks));
+    }
+
+    @Override
+    public List<byte[]> mGet(String name, byte[]... keys) {
+        return record(name, "MGET", null, () -> delegate.mGet(name, keys), RecordingReffeineCacheWriter::sizeOf);
+    }
+
+    @Override
+    public List<ValueWithTtl> mGetWithTtl(String name, byte[]... keys) {
+        return record(name, "MGET_WITH_TTL", null, () -> delegate.mGetWithTtl(name, keys), values -> {
+            int size = 0;
+            if (values != null) {
+                for (ValueWithTtl value : values) {
+                    size += value == null ? 0 : value.getValue().length;
+                }
+            }
+            return size;
+        });
+    }
+
+    @Override
+    public byte[] hGet(String name, byte[] hash, byte[] field) {
+        return record(name, "HGET", field, null, () -> delegate.hGet(name, hash, field));
+    }
+
+    @Override
+    public List<byte[]> hMGet(String name, byte[] hash, byte[]... fields) {
+        return record(name, "HMGET", hash,
+                () -> delegate.hMGet(name, hash, fields), RecordingReffeineCacheWriter::sizeOf);
+    }
+
+    @Override
+    public long hSize(String name, byte[]... hashes) {
+        return record(name, "HLEN", null, () -> delegate.hSize(name, hashes), result -> 0);
+    }
+
+    @Override
+    public long memoryUsage(String name, byte[]... keys) {
+        return record(name, "MEMORY_USAGE", null, () -> delegate.memoryUsage(name, keys), result -> 0);
+    }
+
+    @Override
+    public List<byte[]> hotKeys(String name, byte[] manifest, int count) {
+        return record(name, "ZREVRANGE", manifest,
+                () -> delegate.hotKeys(name, manifest, count), RecordingReffeineCacheWriter::sizeOf);
+    }
+
+    @Override
+    public void recordHotKeys(String name, byte[] manifest, Map<byte[], Long> samples, int keep,
+                              @Nullable Duration ttl) {
+        record(name, "RECORD_HOT_KEYS", manifest, () -> {
+            delegate.recordHotKeys(name, manifest, samples, keep, ttl);
+            return null;
+        }, result -> 0);
+    }
+
+    @Override
+    public void tag(String name, List<byte[]> tagKeys, byte[] member, @Nullable Duration ttl) {
+        record(name, "TAG", member, () -> {
+            delegate.tag(name, tagKeys, member, ttl);
+            return null;
+        }, result -> 0);
+    }
+
+    @Override
+    public List<byte[]> tagged(String name, byte[] tagKey, int count) {
+        return record(name, "SRANDMEMBER", tagKey,
+                () -> delegate.tagged(name, tagKey, count), RecordingReffeineCacheWriter::sizeOf);
+    }
+
+    @Override
+    public void untag(String name, byte[] tagKey, List<byte[]> members) {
+        record(name, "SREM", tagKey, () -> {
+            delegate.untag(name, tagKey, members);
+            return null;
+        }, result -> 0);
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, @Nullable Duration ttl) {
+        record(name, "SET", key, value, () -> {
+            delegate.put(name, key, value, ttl);
+            return null;
+        });
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel, byte[] message) {
+        record(name, "PUT_AND_SYNC", key, value, () -> {
+            delegate.put(name, key, value, ttl, channel, message);
+            return null;
+        });
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, @Nullable Duration ttl) {
+        return record(name, "SETNX", key, value, () -> delegate.putIfAbsent(name, key, value, ttl));
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel,
+                              byte[] message) {
+        return record(name, "PUT_IF_ABSENT_AND_SYNC", key, value,
+                () -> delegate.putIfAbsent(name, key, value, ttl, channel, message));
+    }
+
+    @Override
+    public void putAll(String name, List<byte[]> keys, List<byte[]> values, List<Duration> ttls,
+                       @Nullable byte[] channel, @Nullable List<byte[]> messages) {
+        record(name, channel == null ? "PUT_ALL" : "PUT_ALL_AND_SYNC", null, () -> {
+            delegate.putAll(name, keys, values, ttls, channel, messages);
+            return null;
+        }, result -> sizeOf(values));
+    }
+
+    @Override
+    public void hPut(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                     @Nullable byte[] channel, @Nullable byte[] message) {
+        record(name, channel == null ? "HASH_PUT" : "HASH_PUT_AND_SYNC", field, value, () -> {
+            delegate.hPut(name, hash, field, value, ttl, channel, message);
+            return null;
+        });
+    }
+
+    @Override
+    public byte[] hPutIfAbsent(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                               @Nullable byte[] channel, @Nullable byte[] message) {
+        return record(name, channel == null ? "HASH_PUT_IF_ABSENT" : "HASH_PUT_IF_ABSENT_AND_SYNC", field, value,
+                () -> delegate.hPutIfAbsent(name, hash, field, value, ttl, channel, message));
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        record(name, "DEL", key, null, () -> {
+            delegate.remove(name, key);
+            return null;
+        });
+    }
+
+    @Override
+    public void hRemove(String name, byte[] hash, byte[] field) {
+        record(name, "HDEL", field, null, () -> {
+            delegate.hRemove(name, hash, field);
+            return null;
+        });
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        record(name, "CLEAN", pattern, null, () -> {
+            delegate.clean(name, pattern);
+            return null;
+        });
+    }
+
+    @Override
+    public void unlink(String name, byte[]... keys) {
+        record(name, "UNLINK", null, () -> {
+            delegate.unlink(name, keys);
+            return null;
+        }, result -> 0);
+    }
+
+    @Override
+    public void sync(byte[] channel, byte[] message) {
+        record("", "PUBLISH", null, () -> {
+            delegate.sync(channel, message);
+            return null;
+        }, result -> message.length);
+    }
+
+    @Override
+    public void invalidated(String name, byte[]... keys) {
+        delegate.invalidated(name, keys);
+    }
+
+    /**
+     * @param value 写入的值, 为 {@literal null} 时记录读取到的字节数
+     */
+    private <T> T record(String name, String command, @Nullable byte[] key, @Nullable byte[] value,
+                         Supplier<T> action) {
+        return record(name, command, key, action,
+                result -> value != null ? value.length : ReffeineCacheEvents.sizeOf(result));
+    }
+
+    /**
+     * 调用失败时也提交事件, 超时之类的慢调用同样可以看到
+     *
+     * @param size 由结果计算字节数, 调用失败时为 0
+     */
+    private <T> T record(String name, String command, @Nullable byte[] key, Supplier<T> action,
+                         ToIntFunction<T> size) {
+        final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.REDIS_COMMAND);
+        T result = null;
+        boolean completed = false;
+        try {
+            result = action.get();
+            completed = true;
+            return result;
+        } finally {
+            ReffeineCacheEvents.commit(event, name, key, completed ? size.applyAsInt(result) : 0, command);
+        }
+    }
+
+    private static int sizeOf(@Nullable List<byte[]> values) {
+        int size = 0;
+        if (values != null) {
+            for (byte[] value : values) {
+                size += value == null ? 0 : value.length;
+            }
+        }
+        return size;
+    }
+}
@@ -1,7 +1,12 @@
 package com.github.hfp.cache;
 
 import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.benmanes.caffeine.cache.Policy;
 import com.github.hfp.config.ReffeineCacheConfiguration;
+import com.github.hfp.config.ReffeineCacheStorageLayout;
+import com.github.hfp.config.ReffeineCacheTiering;
 import com.github.hfp.util.IPUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -14,16 +19,54 @@ import org.springframework.data.redis.serializer.JdkSerializationRedisSerializer
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.data.redis.util.ByteUtils;
 import org.springframework.lang.Nullable;
-import org.springframework.util.ObjectUtils;
+import org.springframework.util.Assert;
 import org.springframework.util.ReflectionUtils;
-import org.springframework.util.SerializationUtils;
 
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 public class ReffeineCache extends AbstractValueAdaptingCache {
     private final Log LOGGER = LogFactory.getLog(getClass());
+    private static final int WARM_UP_BATCH_SIZE = 500;
+    /**
+     * 按标签清除时每批从反向索引取出的 Key 数量
+     */
+    private static final int TAG_EVICT_BATCH_SIZE = 500;
+    /**
+     * 分片比清单晚过期的时间
+     */
+    private static final Duration CHUNK_TTL_MARGIN = Duration.ofSeconds(10);
+    private static final long DEFAULT_STALE_MAXIMUM_SIZE = 10_000L;
+    /**
+     * 值版本 = 毫秒时间戳 << VERSION_SEQUENCE_BITS + 同一毫秒内的序号
+     */
+    private static final int VERSION_SEQUENCE_BITS = 12;
+    /**
+     * 不过期的缓存项(Long.MAX_VALUE 纳秒)剩余的毫秒数下限
+     */
+    private static final long UNBOUNDED_EXPIRY_MILLIS = TimeUnit.NANOSECONDS.toMillis(Long.MAX_VALUE >> 1);
     private static final byte[] BINARY_NULL_VALUE = new JdkSerializationRedisSerializer().serialize(NullValue.INSTANCE);
     /**
      * 缓存名字
@@ -37,6 +80,14 @@ public class ReffeineCache extends AbstractValueAdaptingCache {
      * 整个缓存的配置
      */
     private final ReffeineCacheConfiguration cacheConfig;
+    /**
+     * 缓存使用的层级
+     */
+    private final ReffeineCacheTiering tiering;
+    /**
+     * 整数 Key 直接作为本地缓存的 Key(Long), 参考 {@link ReffeineCacheConfiguration#useNumericKeys()}
+     */
+    private final boolean numericKeys;
     /**
      * 序列化方式
      */
@@ -53,17 +104,104 @@ public class ReffeineCache extends AbstractValueAdaptingCache {
      * 同步消息时的 redis topic
      */
     private byte[] cacheSyncChannel;
+    /**
+     * 缓存 Key 前缀, prefix:name
+     */
+    private final String keyPrefix;
+    /**
+     * HASH 存储结构下每个分片对应的 Hash Key, STRING 存储结构为 {@literal null}
+     */
+    private final byte[][] hashKeys;
+    /**
+     * 所属节点 ID, 写在同步消息的最前面
+     */
+    private final long nodeId;
+    /**
+     * 热点清单(ZSet) Key, prefix:name~hot
+     */
+    private final byte[] hotKeyManifest;
+    /**
+     * 热点 Key 采样, 未开启时为 {@literal null}
+     */
+    @Nullable
+    private volatile ReffeineCacheHotKeys hotKeys;
+    /**
+     * 本地缓存的影子, 过期时间为本地缓存过期时间 + staleGrace, Redis 不可用时返回其中的旧值; 未开启时为 {@literal null}
+     */
+    @Nullable
+    private final Cache<Object, Object> staleCache;
+    /**
+     * 本地缓存按缓存项过期({@link ReffeineCacheExpiry})时用于按 Redis 剩余 TTL 缩短过期时间, 否则为 {@literal null}
+     */
+    @Nullable
+    private final Policy.VarExpiration<Object, Object> localExpiration;
+    /**
+     * 本地缓存 expireAfterWrite 的毫秒数, 没有配置时为 -1; 运行时可以通过 {@link #reconfigure} 修改
+     */
+    private volatile long localExpireAfterWriteMillis;
+    /**
+     * 本地缓存按缓存项过期时使用的过期策略, 用于运行时修改 expireAfterWrite; 否则为 {@literal null}
+     */
+    @Nullable
+    private volatile ReffeineCacheExpiry localExpiry;
+    /**
+     * 本地缓存的标签索引, 写入本地缓存时按缓存值中的标签建立
+     */
+    private final ReffeineCacheTagIndex tagIndex = new ReffeineCacheTagIndex();
+    /**
+     * 缓存值是否可能带元数据头(提前重新计算、标签或随同步消息发送值), 不带时按原样反序列化, 不检查头部
+     */
+    private final boolean valueHeaders;
+    /**
+     * 本节点最近一次生成的值版本, 随同步消息发送缓存值时使用
+     */
+    private final AtomicLong lastVersion = new AtomicLong();
+    /**
+     * 正在从 Redis 读取的 Key, 同一个 Key 并发未命中时共用一次读取
+     */
+    private final ConcurrentHashMap<Object, CompletableFuture<byte[]>> pendingLoads = new ConcurrentHashMap<>();
+    /**
+     * 正在通过 retrieve(key, valueLoader) 加载的 Key
+     */
+    private final ConcurrentHashMap<Object, CompletableFuture<Object>> pendingRetrievals = new ConcurrentHashMap<>();
+    /**
+     * 异步读取 Redis 的线程池
+     */
+    private volatile Executor asyncExecutor = ForkJoinPool.commonPool();
 
     public ReffeineCache(boolean allowNullValues, String name,
                          ReffeineCacheWriter reffeineCacheWriter, ReffeineCacheConfiguration cacheConfig,
                          Cache<Object, Object> localCache) {
+        this(allowNullValues, name, reffeineCacheWriter, cacheConfig, localCache,
+                ReffeineCacheManager.generateNodeId());
+    }
+
+    public ReffeineCache(boolean allowNullValues, String name,
+                         ReffeineCacheWriter reffeineCacheWriter, ReffeineCacheConfiguration cacheConfig,
+                         Cache<Object, Object> localCache, long nodeId) {
         super(allowNullValues);
+        this.nodeId = nodeId;
         this.name = name;
         this.reffeineCacheWriter = reffeineCacheWriter;
         this.cacheConfig = cacheConfig;
+        this.tiering = cacheConfig.getTiering();
         this.localCache = localCache;
+        this.localExpiration = localCache.policy().expireVariably().orElse(null);
+        this.localExpireAfterWriteMillis = computeLocalExpireAfterWriteMillis();
         this.conversionService = cacheConfig.getConversionService();
-        this.cacheSyncChannel = stringRedisSerializer.serialize(cacheConfig.getCacheEvictChannel());
+        this.numericKeys = cacheConfig.isNumericKeys();
+        this.valueHeaders = cacheConfig.getEarlyRecomputeBeta() > 0 || cacheConfig.isTagsEnabled()
+                || cacheConfig.getSyncValueMaxSize() > 0;
+        Assert.isTrue(!numericKeys || (Long.toString(Long.MIN_VALUE).equals(convertKey(Long.MIN_VALUE))
+                        && Integer.toString(Integer.MIN_VALUE).equals(convertKey(Integer.MIN_VALUE))),
+                "NumericKeys requires integer keys to be converted to decimal strings!");
+        this.cacheSyncChannel = stringRedisSerializer.serialize(cacheConfig.getCacheEvictChannelFor(name));
+        this.keyPrefix = cacheConfig.getKeyPrefixFor(name);
+        this.hashKeys = isHashLayout() ? createHashKeys(cacheConfig.getHashShards()) : null;
+        this.hotKeyManifest = serializeCacheKey(keyPrefix + "~hot");
+        // 只有两层都使用时才需要 Redis 不可用时的旧值
+        this.staleCache = cacheConfig.getStaleGrace().isZero() || tiering != ReffeineCacheTiering.NEAR ? null
+                : createStaleCache(cacheConfig.getStaleGrace());
     }
 
     /**
@@ -73,21 +211,277 @@ public class ReffeineCache extends AbstractValueAdaptingCache {
      */
     @Override
     protected Object lookup(Object key) {
-        final String localCacheKey = createCacheKey(key);
-        final byte[] redisCacheKey = serializeCacheKey(localCacheKey);
+        final byte[] value = lookupStored(localKeyOf(key), key);
+        return value == null ? null : deserializeCacheValue(value);
+    }
+
+    /**
+     * 查找缓存中保存的字节, Redis 不可用时返回本地缓存的旧值(开启 serve-stale 时)
+     */
+    private byte[] lookupStored(Object localKey, Object key) {
+        final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.LOOKUP);
+        recordHotKey(localKey);
         // lookup caffeine first
-        LOGGER.info("look update cache key " + key + " from caffeine");
-        Object value = localCache.getIfPresent(localCacheKey);
-        if (value == null) {
-            // if null lookup redis
-            value = reffeineCacheWriter.get(name, redisCacheKey);
-            LOGGER.info("look update cache key " + key + " from redis");
-            if (value != null) {
-                localCache.put(localCacheKey, value);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("look update cache key " + key + " from caffeine");
+        }
+        final Object value = localCache.getIfPresent(localKey);
+        if (value != null) {
+            commitEvent(event, localKey, ReffeineCacheEvents.sizeOf(value),
+                    ReffeineCacheEvents.TIER_LOCAL);
+            return (byte[]) value;
+        }
+        if (!tiering.hasRedisTier()) {
+            commitEvent(event, localKey, 0, ReffeineCacheEvents.TIER_MISS);
+            return null;
+        }
+
+        // if null lookup redis, 同一个 Key 并发未命中时等待第一个读取
+        final CompletableFuture<byte[]> load = new CompletableFuture<>();
+        final CompletableFuture<byte[]> pending = pendingLoads.putIfAbsent(localKey, load);
+        if (pending != null) {
+            final byte[] loaded = joinLoad(pending);
+            commitEvent(event, localKey, ReffeineCacheEvents.sizeOf(loaded),
+                    ReffeineCacheEvents.TIER_COALESCED);
+            return loaded;
+        }
+        completeLoad(localKey, key, load, event);
+        return joinLoad(load);
+    }
+
+    /**
+     * 异步查找缓存中保存的字节, 本地缓存命中时返回已完成的 future, 否则在 asyncExecutor 中读取 Redis
+     */
+    private CompletableFuture<byte[]> lookupStoredAsync(Object localKey, Object key) {
+        recordHotKey(localKey);
+        final Object value = localCache.getIfPresent(localKey);
+        if (value != null || !tiering.hasRedisTier()) {
+            return CompletableFuture.completedFuture((byte[]) value);
+        }
+
+        final CompletableFuture<byte[]> load = new CompletableFuture<>();
+        final CompletableFuture<byte[]> pending = pendingLoads.putIfAbsent(localKey, load);
+        if (pending != null) {
+            return pending;
+        }
+        try {
+            asyncExecutor.execute(() -> completeLoad(localKey, key, load, null));
+        } catch (RejectedExecutionException ex) {
+            pendingLoads.remove(localKey, load);
+            load.completeExceptionally(ex);
+        }
+        return load;
+    }
+
+    /**
+     * @param event 查找事件, 由 loadFromRedis 按实际的来源提交
+     */
+    private void completeLoad(Object localKey, Object key, CompletableFuture<byte[]> load,
+                              @Nullable Object event) {
+        try {
+            load.complete(loadFromRedis(localKey, key, event));
+        } catch (RuntimeException ex) {
+            load.completeExceptionally(ex);
+        } finally {
+            pendingLoads.remove(localKey, load);
+        }
+    }
+
+    private static byte[] joinLoad(CompletableFuture<byte[]> load) {
+        try {
+            return load.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * 从 Redis 读取并写入本地缓存, Redis 不可用时返回本地缓存的旧值(开启 serve-stale 时)
+     */
+    private byte[] loadFromRedis(Object localKey, Object key, @Nullable Object event) {
+        final ReffeineCacheWriter.ValueWithTtl stored;
+        try {
+            stored = readFromRedis(cacheKeyOf(localKey));
+        } catch (ReffeineCacheUnavailableException ex) {
+            final Object stale = staleCache == null ? null : staleCache.getIfPresent(localKey);
+            LOGGER.warn("Redis unavailable, serve " + (stale == null ? "miss" : "stale value") + " for " + key);
+            commitEvent(event, localKey, ReffeineCacheEvents.sizeOf(stale),
+                    stale == null ? ReffeineCacheEvents.TIER_MISS : ReffeineCacheEvents.TIER_STALE);
+            return (byte[]) stale;
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("look update cache key " + key + " from redis");
+        }
+        if (stored == null) {
+            commitEvent(event, localKey, 0, ReffeineCacheEvents.TIER_MISS);
+            return null;
+        }
+        putLocal(localKey, stored.getValue(), stored.getTtlMillis());
+        commitEvent(event, localKey, stored.getValue().length,
+                ReffeineCacheEvents.TIER_REDIS);
+        return stored.getValue();
+    }
+
+    /**
+     * 批量查找缓存, 先查本地缓存, 未命中的 Key 通过一次 MGET + PTTL pipeline(HASH 存储结构每个分片一次 HMGET) 查找 redis;
+     * 写入本地缓存的过期时间不超过 Redis 剩余 TTL
+     *
+     * @return 命中的缓存, 未命中的 Key 不在结果中
+     */
+    public Map<Object, ValueWrapper> getAll(Collection<?> keys) {
+        final Map<Object, ValueWrapper> result = new LinkedHashMap<>(keys.size());
+        final List<Object> missingKeys = new ArrayList<>();
+        final List<Object> missingLocalKeys = new ArrayList<>();
+        for (Object key : keys) {
+            final Object localKey = localKeyOf(key);
+            recordHotKey(localKey);
+            final Object value = localCache.getIfPresent(localKey);
+            if (value == null) {
+                missingKeys.add(key);
+                missingLocalKeys.add(localKey);
+            } else {
+                result.put(key, toValueWrapper(deserializeCacheValue((byte[]) value)));
+            }
+        }
+
+        if (missingKeys.isEmpty() || !tiering.hasRedisTier()) {
+            return result;
+        }
+
+        final List<String> missingCacheKeys = new ArrayList<>(missingLocalKeys.size());
+        for (Object missingLocalKey : missingLocalKeys) {
+            missingCacheKeys.add(cacheKeyOf(missingLocalKey));
+        }
+        final List<ReffeineCacheWriter.ValueWithTtl> values;
+        try {
+            values = readAllWithTtlFromRedis(missingCacheKeys);
+        } catch (ReffeineCacheUnavailableException ex) {
+            LOGGER.warn("Redis unavailable, serve local cache only for " + missingKeys.size() + " keys");
+            for (int i = 0; i < missingKeys.size(); i++) {
+                final Object stale = staleCache == null ? null : staleCache.getIfPresent(missingLocalKeys.get(i));
+                if (stale != null) {
+                    result.put(missingKeys.get(i), toValueWrapper(deserializeCacheValue((byte[]) stale)));
+                }
+            }
+            return result;
+        }
+        for (int i = 0; i < missingKeys.size(); i++) {
+            final ReffeineCacheWriter.ValueWithTtl stored = values.get(i);
+            if (stored != null) {
+                putLocal(missingLocalKeys.get(i), stored.getValue(), stored.getTtlMillis());
+                result.put(missingKeys.get(i), toValueWrapper(deserializeCacheValue(stored.getValue())));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 预热本地缓存, 从热点清单取计数最高的 topN 个 Key, 分批 MGET + PTTL(HASH 存储结构为 HMGET) 写入本地缓存,
+     * 过期时间不超过 Redis 剩余 TTL
+     * <p>
+     * 线程被中断(超出预热时间)时停止
+     *
+     * @return 写入本地缓存的数量
+     */
+    public int warmUp(int topN) {
+        if (tiering != ReffeineCacheTiering.NEAR) {
+            return 0;
+        }
+        final List<byte[]> manifest = reffeineCacheWriter.hotKeys(name, hotKeyManifest, topN);
+        int loaded = 0;
+        for (int from = 0; from < manifest.size() && !Thread.currentThread().isInterrupted();
+             from += WARM_UP_BATCH_SIZE) {
+            final List<String> cacheKeys = new ArrayList<>(WARM_UP_BATCH_SIZE);
+            for (byte[] cacheKey : manifest.subList(from, Math.min(from + WARM_UP_BATCH_SIZE, manifest.size()))) {
+                cacheKeys.add(cacheConfig.getKeySerializationPair().read(ByteBuffer.wrap(cacheKey)));
+            }
+            final List<ReffeineCacheWriter.ValueWithTtl> values = readAllWithTtlFromRedis(cacheKeys);
+            for (int i = 0; i < cacheKeys.size(); i++) {
+                final Object localKey = localKeyOfCacheKey(cacheKeys.get(i));
+                final ReffeineCacheWriter.ValueWithTtl stored = values.get(i);
+                // 预热期间已经写入本地的值更新, 不覆盖
+                if (stored != null && !localCache.asMap().containsKey(localKey)) {
+                    putLocal(localKey, stored.getValue(), stored.getTtlMillis());
+                    loaded++;
+                }
             }
         }
+        return loaded;
+    }
+
+    /**
+     * Redis 中的缓存项数量, 仅 HASH 存储结构支持, STRING 存储结构返回 -1
+     */
+    public long getRedisSize() {
+        return isHashLayout() && tiering.hasRedisTier() ? reffeineCacheWriter.hSize(name, hashKeys) : -1L;
+    }
+
+    /**
+     * Redis 中缓存占用的内存字节数, 仅 HASH 存储结构支持, STRING 存储结构返回 -1
+     */
+    public long getRedisMemoryUsage() {
+        return isHashLayout() && tiering.hasRedisTier() ? reffeineCacheWriter.memoryUsage(name, hashKeys) : -1L;
+    }
+
+    /**
+     * 缓存配置(已按缓存名解析 TTL)
+     */
+    public ReffeineCacheConfiguration getCacheConfiguration() {
+        return cacheConfig;
+    }
+
+    /**
+     * 本地缓存中是否有这个 Key, 不读取 Redis, 不计入命中率和热点采样
+     */
+    public boolean isCachedLocally(Object key) {
+        return localCache.asMap().containsKey(localKeyOf(key));
+    }
+
+    /**
+     * 本地缓存, 只用于查看状态
+     */
+    Cache<Object, Object> getLocalCache() {
+        return localCache;
+    }
+
+    /**
+     * Redis 热点清单中计数最高的 count 个缓存 Key
+     */
+    List<String> hotKeysInRedis(int count) {
+        if (!tiering.hasRedisTier()) {
+            return Collections.emptyList();
+        }
+        final List<byte[]> manifest = reffeineCacheWriter.hotKeys(name, hotKeyManifest, count);
+        final List<String> cacheKeys = new ArrayList<>(manifest.size());
+        for (byte[] cacheKey : manifest) {
+            cacheKeys.add(cacheConfig.getKeySerializationPair().read(ByteBuffer.wrap(cacheKey)));
+        }
+        return cacheKeys;
+    }
+
+    /**
+     * 清除所有节点的本地缓存, 不删除 Redis 中的值; 不需要同步的缓存只清除本机
+     *
+     * @param key 为 {@literal null} 时清除整个缓存
+     */
+    void invalidateEverywhere(@Nullable Object key) {
+        final String cacheKey = key == null ? null : createCacheKey(key);
+        if (isSyncRequired()) {
+            reffeineCacheWriter.sync(cacheSyncChannel, serializeCacheMessage(cacheKey));
+        }
+        clearLocal(cacheKey);
+    }
 
-        return value == null ? null : deserializeCacheValue((byte[]) value);
+    /**
+     * 清除本机的本地缓存
+     *
+     * @param key 为 {@literal null} 时清除整个缓存
+     */
+    void invalidateHere(@Nullable Object key) {
+        clearLocal(key == null ? null : createCacheKey(key));
     }
 
     @Override
@@ -106,37 +500,211 @@ public class ReffeineCache extends AbstractValueAdaptingCache {
     @SuppressWarnings("unchecked")
     @Override
     public <T> T get(Object key, Callable<T> valueLoader) {
-        final ValueWrapper valueWrapper = get(key);
-        if (valueWrapper != null) {
-            return (T) valueWrapper.get();
+        final byte[] stored = lookupStored(localKeyOf(key), key);
+        final boolean recomputeEarly = stored != null && shouldRecomputeEarly(stored);
+        if (stored != null && !recomputeEarly) {
+            return (T) fromStoreValue(deserializeCacheValue(stored));
         }
 
-        final T value = valueFromLoader(key, valueLoader);
-        put(key, value);
+        final long start = System.nanoTime();
+        final T value;
+        try {
+            value = valueFromLoader(key, valueLoader);
+        } catch (ValueRetrievalException ex) {
+            if (!recomputeEarly) {
+                throw ex;
+            }
+            // 提前计算失败, 旧值还没过期
+            LOGGER.warn("Early recompute of " + key + " failed, keep current value: " + ex.getMessage());
+            return (T) fromStoreValue(deserializeCacheValue(stored));
+        }
+        doPut(key, value, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), Collections.emptyList());
         return value;
     }
 
+    /**
+     * 异步查找缓存, 与 Spring 6.1 的 Cache#retrieve(Object) 约定相同
+     * <p>
+     * 本地缓存命中时返回已完成的 future; 否则在 asyncExecutor 中读取 Redis, 同一个 Key 的并发读取共用一次 Redis 调用
+     *
+     * @return 完成时为 {@link ValueWrapper}, 未命中为 {@literal null}
+     */
+    public CompletableFuture<?> retrieve(Object key) {
+        return lookupStoredAsync(localKeyOf(key), key)
+                .thenApply(stored -> stored == null ? null : toValueWrapper(deserializeCacheValue(stored)));
+    }
+
+    /**
+     * 异步获取数据, 缓存中没有时调用 valueLoader, 与 Spring 6.1 的 Cache#retrieve(Object, Supplier) 约定相同
+     * <p>
+     * 同一个 Key 的并发调用共用一次 valueLoader, 加载结果在 asyncExecutor 中写入缓存
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> retrieve(Object key, Supplier<CompletableFuture<T>> valueLoader) {
+        final Object localKey = localKeyOf(key);
+        return lookupStoredAsync(localKey, key).thenCompose(stored -> {
+            if (stored != null) {
+                return CompletableFuture.completedFuture((T) fromStoreValue(deserializeCacheValue(stored)));
+            }
+            final CompletableFuture<Object> load = new CompletableFuture<>();
+            final CompletableFuture<Object> pending = pendingRetrievals.putIfAbsent(localKey, load);
+            if (pending != null) {
+                return (CompletableFuture<T>) pending;
+            }
+            final CompletableFuture<T> loaded;
+            try {
+                loaded = valueLoader.get();
+            } catch (RuntimeException ex) {
+                pendingRetrievals.remove(localKey, load);
+                load.completeExceptionally(ex);
+                return (CompletableFuture<T>) load;
+            }
+            loaded.whenCompleteAsync((value, ex) -> {
+                if (ex == null) {
+                    try {
+                        put(key, value);
+                    } catch (RuntimeException putEx) {
+                        LOGGER.warn("ReffeineCache put async loaded value of " + key + " error: " + putEx.getMessage());
+                    }
+                }
+                pendingRetrievals.remove(localKey, load);
+                if (ex == null) {
+                    load.complete(value);
+                } else {
+                    load.completeExceptionally(ex);
+                }
+            }, asyncExecutor);
+            return (CompletableFuture<T>) load;
+        });
+    }
+
+    /**
+     * 异步读取 Redis 和写入异步加载结果的线程池, 默认 {@link ForkJoinPool#commonPool()}
+     */
+    public void setAsyncExecutor(Executor asyncExecutor) {
+        Assert.notNull(asyncExecutor, "AsyncExecutor must not be null!");
+        this.asyncExecutor = asyncExecutor;
+    }
+
     /**
      * 更新缓存, 同步消息值其他机器, 清除多机缓存
      */
     @Override
     public void put(Object key, Object value) {
+        doPut(key, value, 0L, Collections.emptyList());
+    }
+
+    /**
+     * 更新缓存并打上标签, 之后可以通过 {@link #evictByTag(String)} 按标签清除
+     * <p>
+     * 标签写在缓存值的头部, 其他节点从 Redis 读到时同样建立本地标签索引
+     */
+    public void put(Object key, @Nullable Object value, Collection<String> tags) {
+        Assert.notNull(tags, "Tags must not be null!");
+        Assert.state(tags.isEmpty() || cacheConfig.isTagsEnabled(),
+                "Tags require ReffeineCacheConfiguration#enableTags() for cache " + name + "!");
+        doPut(key, value, 0L, tags);
+    }
+
+    /**
+     * @param computeMillis 计算 value 的耗时, 用于提前重新计算
+     */
+    private void doPut(Object key, Object value, long computeMillis, Collection<String> tags) {
+        final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.PUT);
         final Object cacheValue = preProcessCacheValue(value);
         if (!isAllowNullValues() && cacheValue == null) {
             throw new IllegalArgumentException(String.format(
                     "Cache '%s' does not allow 'null' values. Avoid storing null via '@Cacheable(unless=\"#result == null\")' or configure ReffeineCache to allow 'null' via ReffeineCacheConfiguration.",
                     name));
         }
-        final String localCacheKey = createCacheKey(key);
-        final byte[] redisCacheKey = serializeCacheKey(localCacheKey);
-        final byte[] serializeCacheValue = serializeCacheValue(cacheValue);
-        reffeineCacheWriter.put(name, redisCacheKey, serializeCacheValue, cacheConfig.getRedisttl());
-        reffeineCacheWriter.sync(cacheSyncChannel, serializeCacheMessage(localCacheKey));
-        localCache.put(localCacheKey, serializeCacheValue);
+        final Object localKey = localKeyOf(key);
+        final Duration ttl = nextRedisTtl();
+        final byte[] payload = serializeCacheValue(cacheValue);
+        // 随同步消息发送的值带上版本, 接收方据此判断本地的值是否更旧
+        final long version = shouldSyncValue(payload) ? nextVersion() : 0L;
+        final byte[] serializeCacheValue = wrapCacheValue(payload, ttl, computeMillis, version, tags);
+        if (tiering.hasRedisTier()) {
+            final String cacheKey = cacheKeyOf(localKey);
+            try {
+                if (!tags.isEmpty()) {
+                    // 先写反向索引, 之后写入失败时索引中多一个 Key, 只会多清除
+                    reffeineCacheWriter.tag(name, tagKeysOf(tags), serializeCacheKey(cacheKey), ttl);
+                }
+                writeToRedis(cacheKey, serializeCacheValue, ttl,
+                        writeMessageOf(cacheKey, version == 0L ? null : serializeCacheValue));
+            } catch (ReffeineCacheUnavailableException ex) {
+                evictUnwritten(localKey, cacheKey);
+                commitEvent(event, localKey, 0, null);
+                return;
+            }
+        }
+        putLocal(localKey, serializeCacheValue, toMillis(ttl));
+        commitEvent(event, localKey, serializeCacheValue.length, null);
+    }
+
+    /**
+     * 批量更新缓存, STRING 存储结构下通过一次 pipeline 写入 Redis 并同步消息;
+     * HASH 存储结构或需要分片的缓存值逐个写入
+     */
+    public void putAll(Map<?, ?> entries) {
+        final List<Object> localKeys = new ArrayList<>(entries.size());
+        final List<byte[]> redisKeys = new ArrayList<>(entries.size());
+        final List<byte[]> values = new ArrayList<>(entries.size());
+        final List<Duration> ttls = new ArrayList<>(entries.size());
+        final List<byte[]> messages = isSyncRequired() ? new ArrayList<>(entries.size()) : null;
+        for (Map.Entry<?, ?> entry : entries.entrySet()) {
+            final Object cacheValue = preProcessCacheValue(entry.getValue());
+            if (!isAllowNullValues() && cacheValue == null) {
+                throw new IllegalArgumentException(String.format(
+                        "Cache '%s' does not allow 'null' values.", name));
+            }
+            final Object localKey = localKeyOf(entry.getKey());
+            final Duration ttl = nextRedisTtl();
+            final byte[] serializeCacheValue = wrapCacheValue(serializeCacheValue(cacheValue), ttl, 0L);
+            if (!tiering.hasRedisTier()) {
+                putLocal(localKey, serializeCacheValue, -1L);
+                continue;
+            }
+            final String cacheKey = cacheKeyOf(localKey);
+            if (isHashLayout() || shouldChunk(serializeCacheValue)) {
+                try {
+                    writeToRedis(cacheKey, serializeCacheValue, ttl, writeMessageOf(cacheKey, null));
+                } catch (ReffeineCacheUnavailableException ex) {
+                    evictUnwritten(localKey, cacheKey);
+                    continue;
+                }
+                putLocal(localKey, serializeCacheValue, toMillis(ttl));
+                continue;
+            }
+            localKeys.add(localKey);
+            redisKeys.add(serializeCacheKey(cacheKey));
+            values.add(serializeCacheValue);
+            ttls.add(ttl);
+            if (messages != null) {
+                messages.add(serializeCacheMessage(cacheKey));
+            }
+        }
+        if (localKeys.isEmpty()) {
+            return;
+        }
+        try {
+            reffeineCacheWriter.putAll(name, redisKeys, values, ttls, messages == null ? null : cacheSyncChannel,
+                    messages);
+        } catch (ReffeineCacheUnavailableException ex) {
+            for (Object localKey : localKeys) {
+                evictUnwritten(localKey, cacheKeyOf(localKey));
+            }
+            return;
+        }
+        for (int i = 0; i < localKeys.size(); i++) {
+            putLocal(localKeys.get(i), values.get(i), toMillis(ttls.get(i)));
+        }
     }
 
     /**
      * 更新缓存, 当缓存中不存在的时候
+     * <p>
+     * Redis 不可用(熔断打开)时不能确定 Key 是否已经存在, 抛出 {@link ReffeineCacheUnavailableException}
      */
     @Override
     public ValueWrapper putIfAbsent(Object key, Object value) {
@@ -144,19 +712,28 @@ public class ReffeineCache extends AbstractValueAdaptingCache {
         if (!isAllowNullValues() && cacheValue == null) {
             return get(key);
         }
-        final String localCacheKey = createCacheKey(key);
-        final byte[] redisCacheKey = serializeCacheKey(localCacheKey);
-        final byte[] serializeCacheValue = serializeCacheValue(value);
-        final byte[] result =
-                reffeineCacheWriter.putIfAbsent(name, redisCacheKey, serializeCacheValue, cacheConfig.getRedisttl());
+        final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.PUT);
+        final Object localKey = localKeyOf(key);
+        final Duration ttl = nextRedisTtl();
+        final byte[] serializeCacheValue = wrapCacheValue(serializeCacheValue(value), ttl, 0L);
+        if (!tiering.hasRedisTier()) {
+            final Object existing = localCache.asMap().putIfAbsent(localKey, serializeCacheValue);
+            commitEvent(event, localKey, serializeCacheValue.length, null);
+            return existing == null ? null : new SimpleValueWrapper(fromStoreValue(deserializeCacheValue(
+                    (byte[]) existing)));
+        }
+        final String cacheKey = cacheKeyOf(localKey);
+        final byte[] result = writeToRedisIfAbsent(cacheKey, serializeCacheValue, ttl, writeMessageOf(cacheKey, null));
+        commitEvent(event, localKey, serializeCacheValue.length, null);
         if (result == null) {
             // key does not already exist. renew localCache.
-            reffeineCacheWriter.sync(cacheSyncChannel, serializeCacheMessage(localCacheKey));
-            localCache.put(localCacheKey, serializeCacheValue);
+            putLocal(localKey, serializeCacheValue, toMillis(ttl));
             return null;
         }
 
-        return new SimpleValueWrapper(fromStoreValue(deserializeCacheValue(result)));
+        // 已存在的值分片不完整时按不存在处理
+        final byte[] existing = resolveChunks(cacheKey, result);
+        return existing == null ? null : new SimpleValueWrapper(fromStoreValue(deserializeCacheValue(existing)));
     }
 
     /**
@@ -164,11 +741,53 @@ public class ReffeineCache extends AbstractValueAdaptingCache {
      */
     @Override
     public void evict(Object key) {
-        final String localCacheKey = createCacheKey(key);
-        final byte[] redisCacheKey = serializeCacheKey(localCacheKey);
-        reffeineCacheWriter.remove(name, redisCacheKey);
-        reffeineCacheWriter.sync(cacheSyncChannel, serializeCacheMessage(localCacheKey));
-        localCache.invalidate(localCacheKey);
+        final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.EVICT);
+        final Object localKey = localKeyOf(key);
+        if (tiering.hasRedisTier()) {
+            final String cacheKey = cacheKeyOf(localKey);
+            // 分片存储时先读取清单, 删除之后清理分片
+            final byte[] manifest = isChunking() ? reffeineCacheWriter.get(name, serializeCacheKey(cacheKey))
+                    : null;
+            removeFromRedis(cacheKey);
+            unlinkChunks(cacheKey, manifest);
+            if (isSyncRequired()) {
+                reffeineCacheWriter.sync(cacheSyncChannel, serializeCacheMessage(cacheKey));
+            }
+        }
+        invalidateLocalKey(localKey);
+        commitEvent(event, localKey, 0, null);
+    }
+
+    /**
+     * 按标签清除缓存: 从 Redis 反向索引分批读取 Key, 删除后再从索引中移除, 最后发送一条按标签清除的同步消息,
+     * 各节点通过本地标签索引清除本地缓存, 不需要 SCAN, 也不清空整个本地缓存
+     * <p>
+     * 先删除再移除索引, 中途失败时索引中保留未确认删除的 Key, 下一次按标签清除时重试
+     * <p>
+     * 反向索引不随缓存项过期或覆盖更新, 之后不带这个标签写入的 Key 也可能被清除
+     *
+     * @return 从反向索引读取并删除的 Key 数量
+     */
+    public long evictByTag(String tag) {
+        Assert.notNull(tag, "Tag must not be null!");
+
+        final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.EVICT);
+        long evicted = 0L;
+        if (tiering.hasRedisTier()) {
+            final byte[] tagKey = tagKeyOf(tag);
+            List<byte[]> members;
+            while (!(members = reffeineCacheWriter.tagged(name, tagKey, TAG_EVICT_BATCH_SIZE)).isEmpty()) {
+                removeAllFromRedis(members);
+                reffeineCacheWriter.untag(name, tagKey, members);
+                evicted += members.size();
+            }
+        }
+        if (isSyncRequired()) {
+            reffeineCacheWriter.sync(cacheSyncChannel, serializeTagMessage(tag));
+        }
+        invalidateTag(tag);
+        ReffeineCacheEvents.commit(event, name, null, 0, null);
+        return evicted;
     }
 
     /**
@@ -176,71 +795,942 @@ public class ReffeineCache extends AbstractValueAdaptingCache {
      */
     @Override
     public void clear() {
-        final byte[] cacheKey = createAndConvertCacheKey("*");
-        reffeineCacheWriter.clean(name, cacheKey);
-        reffeineCacheWriter.sync(cacheSyncChannel, serializeCacheMessage(null));
-        localCache.invalidateAll();
+        final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.CLEAR);
+        if (tiering.hasRedisTier()) {
+            if (isHashLayout()) {
+                reffeineCacheWriter.unlink(name, hashKeys);
+            } else {
+                reffeineCacheWriter.clean(name, createAndConvertCacheKey("*"));
+            }
+        }
+        if (isSyncRequired()) {
+            reffeineCacheWriter.sync(cacheSyncChannel, serializeCacheMessage(null));
+        }
+        clearLocal(null);
+        ReffeineCacheEvents.commit(event, name, null, 0, null);
+    }
+
+    /**
+     * 运行时修改本地缓存的容量和过期时间, 不清除已有的缓存项, 参考 {@link #reconfigureLocal(CaffeineSpec)}
+     *
+     * @param broadcast 是否通过同步通道通知其他节点一起修改, 不需要同步的缓存只修改本机
+     */
+    public void reconfigure(CaffeineSpec spec, boolean broadcast) {
+        Assert.notNull(spec, "CaffeineSpec must not be null!");
+        if (broadcast && isSyncRequired()) {
+            reffeineCacheWriter.sync(cacheSyncChannel, serializeSpecMessage(spec.toParsableString()));
+        }
+        reconfigureLocal(spec);
+    }
+
+    /**
+     * 是否需要订阅同步通道, 只有同时使用本地缓存和 Redis({@link ReffeineCacheTiering#NEAR})时需要
+     */
+    public boolean isSyncRequired() {
+        return tiering == ReffeineCacheTiering.NEAR;
+    }
+
+    /**
+     * 缓存的同步通道, 参考 {@link ReffeineCacheConfiguration#getCacheEvictChannelFor(String)}
+     */
+    public String getSyncChannel() {
+        return cacheConfig.getCacheEvictChannelFor(name);
     }
 
     /**
      * 清除本地缓存
+     *
+     * @param cacheKey 缓存 Key(prefix:name:key), 为 {@literal null} 时清除整个缓存
      */
     void clearLocal(String cacheKey) {
         if (cacheKey == null) {
             localCache.invalidateAll();
+            tagIndex.clear();
+            if (staleCache != null) {
+                staleCache.invalidateAll();
+            }
         } else {
-            localCache.invalidate(cacheKey);
+            invalidateLocalKey(localKeyOfCacheKey(cacheKey));
         }
+        notifyInvalidated(cacheKey == null ? null : Collections.singletonList(cacheKey));
     }
 
     /**
-     * 构建缓存 Key, 对象转字符串, 拼接上自定义前缀和缓存名
+     * 批量清除本地缓存
+     *
+     * @param cacheKeys 缓存 Key(prefix:name:key)
      */
-    private String createCacheKey(Object key) {
-        String convertedKey = convertKey(key);
-        return cacheConfig.getKeyPrefixFor(name).concat(":").concat(convertedKey);
+    void invalidateLocal(Collection<String> cacheKeys) {
+        final List<Object> localKeys = new ArrayList<>(cacheKeys.size());
+        for (String cacheKey : cacheKeys) {
+            localKeys.add(localKeyOfCacheKey(cacheKey));
+        }
+        invalidateLocalKeys(localKeys);
+        notifyInvalidated(cacheKeys);
     }
 
-    private String convertKey(Object key) {
-        TypeDescriptor source = TypeDescriptor.forObject(key);
-        if (conversionService.canConvert(source, TypeDescriptor.valueOf(String.class))) {
-            return conversionService.convert(key, String.class);
+    /**
+     * 应用带值的同步消息: 本地缓存中有这个 Key 且值版本比消息旧时原地替换, 否则清除(本地没有版本、版本相同或更新)
+     * <p>
+     * 本地没有这个 Key 时不写入, 和只发送 Key 时一样在下次读取时从 Redis 加载;
+     * 替换后的过期时间不超过 Redis 剩余 TTL: 值带过期时间戳时按它计算, 否则沿用被替换缓存项的剩余时间
+     *
+     * @param cacheKey 缓存 Key(prefix:name:key)
+     * @param value    带值版本的缓存值
+     * @return 是否替换
+     */
+    boolean updateLocal(String cacheKey, byte[] value) {
+        final Object localKey = localKeyOfCacheKey(cacheKey);
+        final long version = valueHeaders ? ReffeineCacheValue.versionOf(value) : 0L;
+        // 本地没有这个 Key 的节点之后仍然从 Redis 读取
+        notifyInvalidated(Collections.singletonList(cacheKey));
+        // 被替换缓存项的剩余时间不超过写入时的 Redis TTL, 新值的 Redis TTL 只会更长
+        final OptionalLong remainingMillis = localExpiration == null ? OptionalLong.empty()
+                : localExpiration.getExpiresAfter(localKey, TimeUnit.MILLISECONDS);
+        final boolean[] updated = {false};
+        localCache.asMap().computeIfPresent(localKey, (key, current) -> {
+            final long currentVersion = valueHeaders && current instanceof byte[]
+                    ? ReffeineCacheValue.versionOf((byte[]) current) : 0L;
+            updated[0] = currentVersion > 0L && version > currentVersion;
+            return updated[0] ? value : null;
+        });
+        if (!updated[0]) {
+            invalidateLocalKey(localKey);
+            return false;
         }
-        Method toString = ReflectionUtils.findMethod(key.getClass(), "toString");
-        if (toString != null && !Object.class.equals(toString.getDeclaringClass())) {
-            return key.toString();
+        if (localExpiration != null) {
+            // expireAfterUpdate 按完整的 expireAfterWrite 计算, 重新缩短; 只修改已有的缓存项, 不恢复期间被清除的 Key
+            final long expireAt = ReffeineCacheValue.expireAtOf(value);
+            long lifetimeMillis = expireAt > 0 ? expireAt - System.currentTimeMillis() : remainingMillis.orElse(-1L);
+            if (lifetimeMillis >= 0) {
+                if (localExpireAfterWriteMillis >= 0) {
+                    lifetimeMillis = Math.min(lifetimeMillis, localExpireAfterWriteMillis);
+                }
+                localExpiration.setExpiresAfter(localKey, lifetimeMillis, TimeUnit.MILLISECONDS);
+            }
         }
-        throw new IllegalStateException(
-                String.format("Cannot convert %s to String. Register a Converter or override toString().", source));
+        indexTags(localKey, value);
+        if (staleCache != null) {
+            staleCache.put(localKey, value);
+        }
+        return true;
     }
 
-    private byte[] serializeCacheKey(String cacheKey) {
-        return ByteUtils.getBytes(cacheConfig.getKeySerializationPair().write(cacheKey));
+    /**
+     * Redis 不可用时丢弃写入: 不写本地缓存, 改为删除这个 Key 并发送同步消息(熔断期间排队, 恢复后重放),
+     * Redis 和其他节点不再使用写入前的旧值; 不重放写入, 避免旧值覆盖其他节点在这期间写入的新值
+     */
+    private void evictUnwritten(Object localKey, String cacheKey) {
+        LOGGER.warn("Redis unavailable, drop write and evict " + cacheKey);
+        invalidateLocalKey(localKey);
+        removeFromRedis(cacheKey);
+        if (isSyncRequired()) {
+            reffeineCacheWriter.sync(cacheSyncChannel, serializeCacheMessage(cacheKey));
+        }
     }
 
-    private byte[] serializeCacheValue(Object value) {
-
-        if (isAllowNullValues() && value instanceof NullValue) {
-            return BINARY_NULL_VALUE;
+    private void invalidateLocalKey(Object localKey) {
+        localCache.invalidate(localKey);
+        if (staleCache != null) {
+            staleCache.invalidate(localKey);
         }
-
-        return ByteUtils.getBytes(cacheConfig.getValueSerializationPair().write(value));
     }
 
-    private Object deserializeCacheValue(byte[] value) {
-
-        if (isAllowNullValues() && ObjectUtils.nullSafeEquals(value, BINARY_NULL_VALUE)) {
-            return NullValue.INSTANCE;
+    private void invalidateLocalKeys(Collection<?> localKeys) {
+        localCache.invalidateAll(localKeys);
+        if (staleCache != null) {
+            staleCache.invalidateAll(localKeys);
         }
+    }
 
-        return cacheConfig.getValueSerializationPair().read(ByteBuffer.wrap(value));
+    /**
+     * 通过本地标签索引清除本地缓存
+     *
+     * @return 清除的 Key 数量
+     */
+    int invalidateTag(String tag) {
+        final Set<Object> localKeys = tagIndex.remove(tag);
+        if (!localKeys.isEmpty()) {
+            invalidateLocalKeys(localKeys);
+        }
+        // 标签下不在本地缓存中的 Key 未知, 按整个缓存处理
+        notifyInvalidated(null);
+        return localKeys.size();
     }
 
-    private byte[] createAndConvertCacheKey(Object key) {
-        return serializeCacheKey(createCacheKey(key));
+    /**
+     * 通知 Writer 这些 Key 被同步消息清除, 参考 {@link ReffeineCacheWriter#invalidated(String, byte[]...)}
+     *
+     * @param cacheKeys 缓存 Key(prefix:name:key), 为 {@literal null} 时表示整个缓存
+     */
+    private void notifyInvalidated(@Nullable Collection<String> cacheKeys) {
+        if (!isSyncRequired()) {
+            return;
+        }
+        if (cacheKeys == null) {
+            reffeineCacheWriter.invalidated(name);
+            return;
+        }
+        final byte[][] keys = new byte[cacheKeys.size()][];
+        int i = 0;
+        for (String cacheKey : cacheKeys) {
+            keys[i++] = isHashLayout() ? hashKeys[hashShardOf(toHashField(cacheKey))] : serializeCacheKey(cacheKey);
+        }
+        reffeineCacheWriter.invalidated(name, keys);
     }
 
-    private static <T> T valueFromLoader(Object key, Callable<T> valueLoader) {
+    /**
+     * 通过 Caffeine 的 policy() 修改本地缓存, 支持 maximumSize/maximumWeight、expireAfterWrite、expireAfterAccess,
+     * 其他选项忽略; 只能修改创建时已经开启的策略(例如不能给没有 maximumSize 的缓存加上容量限制)
+     * <p>
+     * 按缓存项过期(ReffeineCacheExpiry)时新的 expireAfterWrite 用于之后的写入, 已有缓存项的过期时间只会缩短
+     */
+    void reconfigureLocal(CaffeineSpec spec) {
+        if (!tiering.hasLocalTier()) {
+            return;
+        }
+        final Policy<Object, Object> policy = localCache.policy();
+        for (String option : spec.toParsableString().split(",")) {
+            final int separator = option.indexOf('=');
+            if (separator < 0) {
+                LOGGER.warn("ReffeineCache " + name + " ignore option " + option.trim());
+                continue;
+            }
+            final String key = option.substring(0, separator).trim();
+            final String value = option.substring(separator + 1).trim();
+            if ("maximumSize".equals(key) || "maximumWeight".equals(key)) {
+                final Optional<Policy.Eviction<Object, Object>> eviction = policy.eviction();
+                if (eviction.isPresent() && eviction.get().isWeighted() == "maximumWeight".equals(key)) {
+                    eviction.get().setMaximum(Long.parseLong(value));
+                } else {
+                    LOGGER.warn("ReffeineCache " + name + " was not built with " + key + ", ignore " + option.trim());
+                }
+            } else if ("expireAfterWrite".equals(key)) {
+                reconfigureExpireAfterWrite(ReffeineCacheExpiry.durationNanosOf(value));
+            } else if ("expireAfterAccess".equals(key) && policy.expireAfterAccess().isPresent()) {
+                policy.expireAfterAccess().get().setExpiresAfter(ReffeineCacheExpiry.durationNanosOf(value),
+                        TimeUnit.NANOSECONDS);
+            } else {
+                LOGGER.warn("ReffeineCache " + name + " cannot reconfigure " + option.trim() + " at runtime");
+            }
+        }
+        if (staleCache != null) {
+            // 旧值比本地缓存多保留 staleGrace
+            staleCache.policy().expireAfterWrite().ifPresent(expiration -> expiration.setExpiresAfter(
+                    Math.max(localExpireAfterWriteMillis, 0L) + cacheConfig.getStaleGrace().toMillis(),
+                    TimeUnit.MILLISECONDS));
+            policy.eviction().ifPresent(eviction -> staleCache.policy().eviction()
+                    .ifPresent(stale -> stale.setMaximum(eviction.getMaximum())));
+        }
+        LOGGER.info("ReffeineCache " + name + " reconfigured local cache with " + spec.toParsableString());
+    }
+
+    /**
+     * 本地缓存的容量(maximumSize 或 maximumWeight), 没有容量限制时返回 -1
+     */
+    long getLocalMaximum() {
+        return localCache.policy().eviction().map(Policy.Eviction::getMaximum).orElse(-1L);
+    }
+
+    /**
+     * 修改本地缓存的容量, 按 Caffeine 的淘汰策略先淘汰访问频率最低的缓存项; 没有容量限制时不处理
+     *
+     * @return 是否修改
+     */
+    boolean setLocalMaximum(long maximum) {
+        final Optional<Policy.Eviction<Object, Object>> eviction = localCache.policy().eviction();
+        if (!eviction.isPresent()) {
+            return false;
+        }
+        eviction.get().setMaximum(maximum);
+        if (staleCache != null) {
+            staleCache.policy().eviction().ifPresent(stale -> stale.setMaximum(maximum));
+        }
+        // 超出容量的缓存项立即淘汰, 不等下一次读写
+        localCache.cleanUp();
+        return true;
+    }
+
+    private void reconfigureExpireAfterWrite(long nanos) {
+        final Optional<Policy.Expiration<Object, Object>> expiration = localCache.policy().expireAfterWrite();
+        final ReffeineCacheExpiry expiry = this.localExpiry;
+        if (expiration.isPresent()) {
+            expiration.get().setExpiresAfter(nanos, TimeUnit.NANOSECONDS);
+        } else if (localExpiration != null && expiry != null) {
+            expiry.setExpireAfterWriteNanos(nanos);
+            for (Object key : localCache.asMap().keySet()) {
+                final long remaining = localExpiration.getExpiresAfter(key, TimeUnit.NANOSECONDS).orElse(0L);
+                if (remaining > nanos) {
+                    localExpiration.setExpiresAfter(key, nanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        } else {
+            LOGGER.warn("ReffeineCache " + name + " was not built with expireAfterWrite, ignore it");
+            return;
+        }
+        localExpireAfterWriteMillis = TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * 本地缓存按缓存项过期时使用的过期策略, 由 {@link ReffeineCacheManager} 创建缓存时设置
+     */
+    void setLocalExpiry(ReffeineCacheExpiry localExpiry) {
+        this.localExpiry = localExpiry;
+    }
+
+    /**
+     * 本地缓存快照, Key -> [写入时间(毫秒), 过期时间戳(毫秒), 序列化的值];
+     * 没有配置 expireAfterWrite 时写入时间为当前时间, 不过期的缓存项过期时间戳为 0
+     */
+    void snapshotLocal(SnapshotConsumer consumer) {
+        final long now = System.currentTimeMillis();
+        final Optional<Policy.Expiration<Object, Object>> expiration = localCache.policy().expireAfterWrite();
+        localCache.asMap().forEach((key, value) -> {
+            long age = 0L;
+            long expireAt = 0L;
+            if (expiration.isPresent()) {
+                age = expiration.get().ageOf(key, TimeUnit.MILLISECONDS).orElse(0L);
+                expireAt = now + Math.max(localExpireAfterWriteMillis - age, 0L);
+            } else if (localExpiration != null) {
+                // 剩余时间已经按 Redis TTL 缩短过, 算出的写入时间更早, 恢复时更容易被跳过
+                final long remaining = localExpiration.getExpiresAfter(key, TimeUnit.MILLISECONDS).orElse(0L);
+                if (remaining < UNBOUNDED_EXPIRY_MILLIS) {
+                    expireAt = now + remaining;
+                }
+                if (localExpireAfterWriteMillis >= 0) {
+                    age = Math.max(localExpireAfterWriteMillis - remaining, 0L);
+                }
+            }
+            consumer.accept(cacheKeyOf(key), now - age, expireAt, (byte[]) value);
+        });
+    }
+
+    /**
+     * 本地缓存 expireAfterWrite 的毫秒数, 没有配置时返回 -1
+     */
+    long getLocalExpireAfterWriteMillis() {
+        return localExpireAfterWriteMillis;
+    }
+
+    private long computeLocalExpireAfterWriteMillis() {
+        final Optional<Policy.Expiration<Object, Object>> expiration = localCache.policy().expireAfterWrite();
+        if (expiration.isPresent()) {
+            return expiration.get().getExpiresAfter(TimeUnit.MILLISECONDS);
+        }
+        if (localExpiration != null && cacheConfig.getCaffeineSpec() != null) {
+            final long nanos = ReffeineCacheExpiry.expireAfterWriteNanosOf(cacheConfig.getCaffeineSpec());
+            return nanos < 0 ? -1L : TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+        return -1L;
+    }
+
+    /**
+     * 从快照恢复本地缓存, 本地已有的不覆盖; 过期时间为快照中的剩余时间(不超过 expireAfterWrite 和 Redis TTL),
+     * 不重新开始计时. 使用固定 expireAfterWrite 的本地缓存(配置了 expireAfterAccess 或自定义 Caffeine)不能单独设置过期时间,
+     * 按完整的 expireAfterWrite 计算
+     *
+     * @param expireAt 过期时间戳(毫秒), 0 表示不过期
+     */
+    boolean restoreLocal(String cacheKey, byte[] value, long expireAt) {
+        final Object localKey = localKeyOfCacheKey(cacheKey);
+        if (!tiering.hasLocalTier()) {
+            return false;
+        }
+        if (localExpiration != null && expireAt > 0) {
+            final long remaining = expireAt - System.currentTimeMillis();
+            if (remaining <= 0 || !localExpiration.putIfAbsent(localKey, value, remaining, TimeUnit.MILLISECONDS)) {
+                return false;
+            }
+        } else if (localCache.asMap().putIfAbsent(localKey, value) != null) {
+            return false;
+        }
+        indexTags(localKey, value);
+        return true;
+    }
+
+    /**
+     * 用 Redis 校验从快照恢复的本地缓存, Redis 中已经删除的清除, 值不同的替换;
+     * 恢复之后本地又被更新过的不处理
+     *
+     * @return 清除或替换的数量
+     */
+    int verifyRestored(List<String> cacheKeys, List<byte[]> restoredValues) {
+        if (!tiering.hasRedisTier()) {
+            return 0;
+        }
+        final List<byte[]> values = readAllFromRedis(cacheKeys);
+        int changed = 0;
+        for (int i = 0; i < cacheKeys.size(); i++) {
+            final byte[] value = values.get(i);
+            final byte[] restored = restoredValues.get(i);
+            final Object localKey = localKeyOfCacheKey(cacheKeys.get(i));
+            if (value == null) {
+                changed += localCache.asMap().remove(localKey, restored) ? 1 : 0;
+            } else if (!Arrays.equals(value, restored)) {
+                changed += localCache.asMap().replace(localKey, restored, value) ? 1 : 0;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 快照遍历回调
+     */
+    @FunctionalInterface
+    interface SnapshotConsumer {
+        void accept(String cacheKey, long writeTime, long expireAt, byte[] value);
+    }
+
+    /**
+     * 开启热点 Key 采样, 只使用本地缓存时不采样
+     */
+    void trackHotKeys(int sampleRate, int maxKeys) {
+        if (hotKeys == null && tiering.hasRedisTier()) {
+            hotKeys = new ReffeineCacheHotKeys(sampleRate, maxKeys);
+        }
+    }
+
+    /**
+     * 上报采样计数到热点清单
+     */
+    void flushHotKeys(int keep, Duration ttl) {
+        final ReffeineCacheHotKeys tracker = this.hotKeys;
+        if (tracker == null) {
+            return;
+        }
+        final Map<Object, Long> drained = tracker.drain();
+        if (drained.isEmpty()) {
+            return;
+        }
+        final Map<byte[], Long> samples = new LinkedHashMap<>(drained.size());
+        drained.forEach((localKey, count) -> samples.put(serializeCacheKey(cacheKeyOf(localKey)), count));
+        reffeineCacheWriter.recordHotKeys(name, hotKeyManifest, samples, keep, ttl);
+    }
+
+    private void recordHotKey(Object localKey) {
+        final ReffeineCacheHotKeys tracker = this.hotKeys;
+        if (tracker != null) {
+            tracker.record(localKey);
+        }
+    }
+
+    /**
+     * 写入本地缓存, 按缓存项过期时过期时间不超过 Redis 剩余 TTL
+     *
+     * @param redisTtlMillis Redis 剩余 TTL, 小于 0 表示没有过期时间或未知
+     */
+    private void putLocal(Object localKey, Object value, long redisTtlMillis) {
+        if (!tiering.hasLocalTier()) {
+            return;
+        }
+        if (redisTtlMillis >= 0 && localExpiration != null) {
+            localExpiration.put(localKey, value, localExpireAfterWriteMillis < 0 ? redisTtlMillis
+                    : Math.min(localExpireAfterWriteMillis, redisTtlMillis), TimeUnit.MILLISECONDS);
+        } else {
+            localCache.put(localKey, value);
+        }
+        indexTags(localKey, value);
+        if (staleCache != null) {
+            staleCache.put(localKey, value);
+        }
+    }
+
+    /**
+     * 缓存值带标签时加入本地标签索引
+     */
+    private void indexTags(Object localKey, Object value) {
+        if (valueHeaders && value instanceof byte[] && ReffeineCacheValue.hasTags((byte[]) value)) {
+            tagIndex.add(ReffeineCacheValue.tagsOf((byte[]) value), localKey, localCache.asMap()::containsKey);
+        }
+    }
+
+    /**
+     * 标签的反向索引(Set) Key, prefix:name~tag:tag
+     */
+    private byte[] tagKeyOf(String tag) {
+        return serializeCacheKey(keyPrefix + "~tag:" + tag);
+    }
+
+    private List<byte[]> tagKeysOf(Collection<String> tags) {
+        final List<byte[]> tagKeys = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+            tagKeys.add(tagKeyOf(tag));
+        }
+        return tagKeys;
+    }
+
+    private Cache<Object, Object> createStaleCache(Duration grace) {
+        final long expireMillis = Math.max(getLocalExpireAfterWriteMillis(), 0L) + grace.toMillis();
+        final long maximumSize = localCache.policy().eviction().map(Policy.Eviction::getMaximum)
+                .orElse(DEFAULT_STALE_MAXIMUM_SIZE);
+        return Caffeine.newBuilder().expireAfterWrite(expireMillis, TimeUnit.MILLISECONDS).maximumSize(maximumSize)
+                .build();
+    }
+
+    /**
+     * 构建缓存 Key, 对象转字符串, 拼接上自定义前缀和缓存名
+     */
+    private String createCacheKey(Object key) {
+        String convertedKey = convertKey(key);
+        return keyPrefix.concat(":").concat(convertedKey);
+    }
+
+    /**
+     * 本地缓存 Key: 开启 numericKeys 时整数 Key 为 Long, 不拼接字符串; 否则为缓存 Key
+     */
+    private Object localKeyOf(Object key) {
+        if (numericKeys) {
+            if (key instanceof Long) {
+                return key;
+            }
+            if (key instanceof Integer || key instanceof Short || key instanceof Byte) {
+                return ((Number) key).longValue();
+            }
+        }
+        return localKeyOfCacheKey(createCacheKey(key));
+    }
+
+    /**
+     * 缓存 Key 对应的本地缓存 Key, 用于同步消息和快照; 开启 numericKeys 时 prefix:name: 之后是整数的为 Long,
+     * 字符串 "123" 和 123L 对应同一个 Redis Key, 也对应同一个本地缓存 Key
+     */
+    private Object localKeyOfCacheKey(String cacheKey) {
+        final int from = keyPrefix.length() + 1;
+        if (!numericKeys || cacheKey.length() <= from || !cacheKey.startsWith(keyPrefix)
+                || cacheKey.charAt(from - 1) != ':') {
+            return cacheKey;
+        }
+        final Long id = parseNumericKey(cacheKey, from);
+        return id == null ? cacheKey : id;
+    }
+
+    /**
+     * 本地缓存 Key 对应的缓存 Key, prefix:name:key; 只在访问 Redis、同步消息时生成
+     */
+    String cacheKeyOf(Object localKey) {
+        return localKey instanceof Long ? keyPrefix + ":" + localKey : (String) localKey;
+    }
+
+    /**
+     * 解析与 {@link Long#toString(long)} 格式相同(没有 + 和前导 0)的整数, 否则返回 {@literal null}
+     */
+    @Nullable
+    private static Long parseNumericKey(String cacheKey, int from) {
+        final int digitsFrom = cacheKey.charAt(from) == '-' ? from + 1 : from;
+        final int digits = cacheKey.length() - digitsFrom;
+        if (digits == 0 || digits > 19 || (cacheKey.charAt(digitsFrom) == '0' && (digits > 1 || digitsFrom > from))) {
+            return null;
+        }
+        for (int i = digitsFrom; i < cacheKey.length(); i++) {
+            final char c = cacheKey.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+        try {
+            return Long.valueOf(cacheKey.substring(from));
+        } catch (NumberFormatException ex) {
+            // 超出 Long 范围
+            return null;
+        }
+    }
+
+    private void commitEvent(@Nullable Object event, Object localKey, int size, @Nullable String detail) {
+        if (event != null) {
+            ReffeineCacheEvents.commit(event, name, cacheKeyOf(localKey), size, detail);
+        }
+    }
+
+    private boolean isHashLayout() {
+        return cacheConfig.getStorageLayout() == ReffeineCacheStorageLayout.HASH;
+    }
+
+    private byte[][] createHashKeys(int shards) {
+        final byte[][] keys = new byte[shards][];
+        for (int i = 0; i < shards; i++) {
+            keys[i] = serializeCacheKey(shards == 1 ? keyPrefix + "~hash" : keyPrefix + "~hash:" + i);
+        }
+        return keys;
+    }
+
+    /**
+     * HASH 存储结构下的 field, 去掉缓存 Key 的 prefix:name: 前缀
+     */
+    private String toHashField(String cacheKey) {
+        return cacheKey.substring(keyPrefix.length() + 1);
+    }
+
+    private int hashShardOf(String field) {
+        return (field.hashCode() & Integer.MAX_VALUE) % hashKeys.length;
+    }
+
+    /**
+     * STRING 存储结构同时读取剩余 TTL; HASH 存储结构的 TTL 属于整个 Hash, 按未知处理
+     */
+    private ReffeineCacheWriter.ValueWithTtl readFromRedis(String cacheKey) {
+        if (!isHashLayout()) {
+            final ReffeineCacheWriter.ValueWithTtl stored = reffeineCacheWriter.getWithTtl(name,
+                    serializeCacheKey(cacheKey));
+            if (stored == null || !ReffeineCacheChunks.isManifest(stored.getValue())) {
+                return stored;
+            }
+            final byte[] value = resolveChunks(cacheKey, stored.getValue());
+            return value == null ? null : new ReffeineCacheWriter.ValueWithTtl(value, stored.getTtlMillis());
+        }
+        final String field = toHashField(cacheKey);
+        final byte[] value = reffeineCacheWriter.hGet(name, hashKeys[hashShardOf(field)], serializeCacheKey(field));
+        return value == null ? null : new ReffeineCacheWriter.ValueWithTtl(value, -1L);
+    }
+
+    private boolean isChunking() {
+        return !isHashLayout() && cacheConfig.getChunkSize() > 0;
+    }
+
+    private boolean shouldChunk(byte[] value) {
+        return cacheConfig.getChunkSize() > 0 && value.length > cacheConfig.getChunkSize();
+    }
+
+    private int chunkCountOf(byte[] value) {
+        return (value.length + cacheConfig.getChunkSize() - 1) / cacheConfig.getChunkSize();
+    }
+
+    /**
+     * 写入分片, 分片比清单晚过期 CHUNK_TTL_MARGIN, 读到清单时分片一定还在
+     *
+     * @return 缓存 Key 当前的值
+     */
+    private byte[] writeChunks(String cacheKey, long id, byte[] value, @Nullable Duration ttl) {
+        final List<byte[]> chunkKeys = serializeChunkKeys(cacheKey, id, chunkCountOf(value));
+        final Duration chunkTtl = toMillis(ttl) < 0 ? ttl : ttl.plus(CHUNK_TTL_MARGIN);
+        return reffeineCacheWriter.putChunks(name, serializeCacheKey(cacheKey), chunkKeys,
+                ReffeineCacheChunks.split(value, cacheConfig.getChunkSize()), chunkTtl);
+    }
+
+    /**
+     * 分片清单替换为拼接后的缓存值, 分片缺失或校验失败返回 {@literal null}
+     */
+    @Nullable
+    private byte[] resolveChunks(String cacheKey, @Nullable byte[] stored) {
+        if (stored == null || !ReffeineCacheChunks.isManifest(stored)) {
+            return stored;
+        }
+        final List<byte[]> chunks = reffeineCacheWriter.getChunks(name, serializeChunkKeys(cacheKey,
+                ReffeineCacheChunks.idOf(stored), ReffeineCacheChunks.countOf(stored)));
+        final byte[] value = ReffeineCacheChunks.assemble(stored, chunks);
+        if (value == null) {
+            LOGGER.warn("ReffeineCache chunks of " + cacheKey + " are incomplete, treat as miss");
+        }
+        return value;
+    }
+
+    /**
+     * 删除清单对应的分片, 不是清单时不处理
+     */
+    private void unlinkChunks(String cacheKey, @Nullable byte[] manifest) {
+        if (manifest == null || !ReffeineCacheChunks.isManifest(manifest)) {
+            return;
+        }
+        final List<byte[]> chunkKeys = serializeChunkKeys(cacheKey, ReffeineCacheChunks.idOf(manifest),
+                ReffeineCacheChunks.countOf(manifest));
+        reffeineCacheWriter.unlink(name, chunkKeys.toArray(new byte[0][]));
+    }
+
+    private List<byte[]> serializeChunkKeys(String cacheKey, long id, int count) {
+        final List<byte[]> chunkKeys = new ArrayList<>(count);
+        for (String chunkKey : ReffeineCacheChunks.chunkKeysOf(cacheKey, id, count)) {
+            chunkKeys.add(serializeCacheKey(chunkKey));
+        }
+        return chunkKeys;
+    }
+
+    private static long toMillis(@Nullable Duration ttl) {
+        return ttl == null || ttl.isZero() || ttl.isNegative() ? -1L : ttl.toMillis();
+    }
+
+    /**
+     * 批量读取缓存和剩余 TTL, 分片清单替换为拼接后的值; HASH 存储结构没有单个缓存的 TTL, 为 -1
+     *
+     * @return 与 cacheKeys 一一对应, 不存在的为 {@literal null}
+     */
+    private List<ReffeineCacheWriter.ValueWithTtl> readAllWithTtlFromRedis(List<String> cacheKeys) {
+        final List<ReffeineCacheWriter.ValueWithTtl> values = new ArrayList<>(cacheKeys.size());
+        if (isHashLayout()) {
+            for (byte[] value : readAllFromRedis(cacheKeys)) {
+                values.add(value == null ? null : new ReffeineCacheWriter.ValueWithTtl(value, -1L));
+            }
+            return values;
+        }
+        final byte[][] redisCacheKeys = new byte[cacheKeys.size()][];
+        for (int i = 0; i < redisCacheKeys.length; i++) {
+            redisCacheKeys[i] = serializeCacheKey(cacheKeys.get(i));
+        }
+        final List<ReffeineCacheWriter.ValueWithTtl> stored = reffeineCacheWriter.mGetWithTtl(name, redisCacheKeys);
+        for (int i = 0; i < stored.size(); i++) {
+            final ReffeineCacheWriter.ValueWithTtl valueWithTtl = stored.get(i);
+            final byte[] value = valueWithTtl == null ? null
+                    : resolveChunks(cacheKeys.get(i), valueWithTtl.getValue());
+            values.add(value == null ? null : new ReffeineCacheWriter.ValueWithTtl(value, valueWithTtl.getTtlMillis()));
+        }
+        return values;
+    }
+
+    private List<byte[]> readAllFromRedis(List<String> cacheKeys) {
+        if (!isHashLayout()) {
+            final byte[][] redisCacheKeys = new byte[cacheKeys.size()][];
+            for (int i = 0; i < redisCacheKeys.length; i++) {
+                redisCacheKeys[i] = serializeCacheKey(cacheKeys.get(i));
+            }
+            final List<byte[]> values = new ArrayList<>(reffeineCacheWriter.mGet(name, redisCacheKeys));
+            for (int i = 0; i < values.size(); i++) {
+                values.set(i, resolveChunks(cacheKeys.get(i), values.get(i)));
+            }
+            return values;
+        }
+
+        // 按分片分组, 每个分片一次 HMGET
+        final List<List<Integer>> indexesByShard = new ArrayList<>(hashKeys.length);
+        for (int i = 0; i < hashKeys.length; i++) {
+            indexesByShard.add(new ArrayList<>());
+        }
+        final byte[][] fields = new byte[cacheKeys.size()][];
+        for (int i = 0; i < fields.length; i++) {
+            final String field = toHashField(cacheKeys.get(i));
+            fields[i] = serializeCacheKey(field);
+            indexesByShard.get(hashShardOf(field)).add(i);
+        }
+
+        final List<byte[]> values = new ArrayList<>(fields.length);
+        for (int i = 0; i < fields.length; i++) {
+            values.add(null);
+        }
+        for (int shard = 0; shard < hashKeys.length; shard++) {
+            final List<Integer> indexes = indexesByShard.get(shard);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            final byte[][] shardFields = new byte[indexes.size()][];
+            for (int i = 0; i < shardFields.length; i++) {
+                shardFields[i] = fields[indexes.get(i)];
+            }
+            final List<byte[]> shardValues = reffeineCacheWriter.hMGet(name, hashKeys[shard], shardFields);
+            for (int i = 0; i < shardFields.length; i++) {
+                values.set(indexes.get(i), shardValues.get(i));
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @param message 同步消息, 不需要同步时为 {@literal null}
+     */
+    private void writeToRedis(String cacheKey, byte[] value, Duration ttl, @Nullable byte[] message) {
+        if (!isHashLayout() && shouldChunk(value)) {
+            final long id = ThreadLocalRandom.current().nextLong();
+            final byte[] previous = writeChunks(cacheKey, id, value, ttl);
+            putString(serializeCacheKey(cacheKey), ReffeineCacheChunks.manifest(id, chunkCountOf(value), value), ttl,
+                    message);
+            unlinkChunks(cacheKey, previous);
+            return;
+        }
+        if (!isHashLayout()) {
+            putString(serializeCacheKey(cacheKey), value, ttl, message);
+            return;
+        }
+        final String field = toHashField(cacheKey);
+        reffeineCacheWriter.hPut(name, hashKeys[hashShardOf(field)], serializeCacheKey(field), value,
+                ttl, message == null ? null : cacheSyncChannel, message);
+    }
+
+    private byte[] writeToRedisIfAbsent(String cacheKey, byte[] value, Duration ttl, @Nullable byte[] message) {
+        if (!isHashLayout() && shouldChunk(value)) {
+            final long id = ThreadLocalRandom.current().nextLong();
+            final byte[] manifest = ReffeineCacheChunks.manifest(id, chunkCountOf(value), value);
+            writeChunks(cacheKey, id, value, ttl);
+            final byte[] result = putStringIfAbsent(serializeCacheKey(cacheKey), manifest, ttl, message);
+            if (result != null) {
+                // 已经存在, 删除刚写入的分片
+                unlinkChunks(cacheKey, manifest);
+            }
+            return result;
+        }
+        if (!isHashLayout()) {
+            return putStringIfAbsent(serializeCacheKey(cacheKey), value, ttl, message);
+        }
+        final String field = toHashField(cacheKey);
+        return reffeineCacheWriter.hPutIfAbsent(name, hashKeys[hashShardOf(field)], serializeCacheKey(field), value,
+                ttl, message == null ? null : cacheSyncChannel, message);
+    }
+
+    /**
+     * STRING 存储结构写入, 不需要同步时不发送同步消息
+     */
+    private void putString(byte[] redisKey, byte[] value, Duration ttl, @Nullable byte[] message) {
+        if (message != null) {
+            reffeineCacheWriter.put(name, redisKey, value, ttl, cacheSyncChannel, message);
+        } else {
+            reffeineCacheWriter.put(name, redisKey, value, ttl);
+        }
+    }
+
+    @Nullable
+    private byte[] putStringIfAbsent(byte[] redisKey, byte[] value, Duration ttl, @Nullable byte[] message) {
+        return message != null ? reffeineCacheWriter.putIfAbsent(name, redisKey, value, ttl, cacheSyncChannel, message)
+                : reffeineCacheWriter.putIfAbsent(name, redisKey, value, ttl);
+    }
+
+    /**
+     * 批量删除, STRING 存储结构一次 UNLINK(分片存储时先 MGET 读取清单), HASH 存储结构逐个 HDEL
+     *
+     * @param redisCacheKeys 序列化的缓存 Key
+     */
+    private void removeAllFromRedis(List<byte[]> redisCacheKeys) {
+        if (isHashLayout()) {
+            for (byte[] redisCacheKey : redisCacheKeys) {
+                removeFromRedis(cacheConfig.getKeySerializationPair().read(ByteBuffer.wrap(redisCacheKey)));
+            }
+            return;
+        }
+        final byte[][] keys = redisCacheKeys.toArray(new byte[0][]);
+        final List<byte[]> manifests = isChunking() ? reffeineCacheWriter.mGet(name, keys) : null;
+        reffeineCacheWriter.unlink(name, keys);
+        if (manifests != null) {
+            for (int i = 0; i < keys.length; i++) {
+                unlinkChunks(cacheConfig.getKeySerializationPair().read(ByteBuffer.wrap(keys[i])), manifests.get(i));
+            }
+        }
+    }
+
+    private void removeFromRedis(String cacheKey) {
+        if (!isHashLayout()) {
+            reffeineCacheWriter.remove(name, serializeCacheKey(cacheKey));
+            return;
+        }
+        final String field = toHashField(cacheKey);
+        reffeineCacheWriter.hRemove(name, hashKeys[hashShardOf(field)], serializeCacheKey(field));
+    }
+
+    private String convertKey(Object key) {
+        TypeDescriptor source = TypeDescriptor.forObject(key);
+        if (conversionService.canConvert(source, TypeDescriptor.valueOf(String.class))) {
+            return conversionService.convert(key, String.class);
+        }
+        Method toString = ReflectionUtils.findMethod(key.getClass(), "toString");
+        if (toString != null && !Object.class.equals(toString.getDeclaringClass())) {
+            return key.toString();
+        }
+        throw new IllegalStateException(
+                String.format("Cannot convert %s to String. Register a Converter or override toString().", source));
+    }
+
+    private byte[] serializeCacheKey(String cacheKey) {
+        return ByteUtils.getBytes(cacheConfig.getKeySerializationPair().write(cacheKey));
+    }
+
+    private byte[] serializeCacheValue(Object value) {
+
+        if (isAllowNullValues() && value instanceof NullValue) {
+            return BINARY_NULL_VALUE;
+        }
+
+        return ByteUtils.getBytes(cacheConfig.getValueSerializationPair().write(value));
+    }
+
+    private Object deserializeCacheValue(byte[] value) {
+
+        final ByteBuffer payload = valueHeaders ? ReffeineCacheValue.payloadOf(value) : ByteBuffer.wrap(value);
+        if (isAllowNullValues() && payload.equals(ByteBuffer.wrap(BINARY_NULL_VALUE))) {
+            return NullValue.INSTANCE;
+        }
+
+        return cacheConfig.getValueSerializationPair().read(payload);
+    }
+
+    /**
+     * 本次写入的 Redis TTL, 配置了 ttlJitter 时随机延长; 只使用本地缓存时为 {@literal null}
+     */
+    @Nullable
+    private Duration nextRedisTtl() {
+        if (!tiering.hasRedisTier()) {
+            return null;
+        }
+        final Duration ttl = cacheConfig.getRedisttl();
+        if (cacheConfig.getTtlJitter() <= 0 || ttl == null || ttl.isZero() || ttl.isNegative()) {
+            return ttl;
+        }
+        final long jitterMillis = (long) (ttl.toMillis() * cacheConfig.getTtlJitter()
+                * ThreadLocalRandom.current().nextDouble());
+        return ttl.plusMillis(jitterMillis);
+    }
+
+    /**
+     * 开启提前重新计算且有 TTL 时加上元数据头
+     */
+    private byte[] wrapCacheValue(byte[] value, Duration ttl, long computeMillis) {
+        return wrapCacheValue(value, ttl, computeMillis, Collections.emptyList());
+    }
+
+    /**
+     * 开启提前重新计算且有 TTL, 或者带标签时加上元数据头
+     */
+    private byte[] wrapCacheValue(byte[] value, @Nullable Duration ttl, long computeMillis, Collection<String> tags) {
+        return wrapCacheValue(value, ttl, computeMillis, 0L, tags);
+    }
+
+    /**
+     * 开启提前重新计算且有 TTL, 带值版本或者带标签时加上元数据头
+     *
+     * @param version 值版本, 0 表示没有
+     */
+    private byte[] wrapCacheValue(byte[] value, @Nullable Duration ttl, long computeMillis, long version,
+                                  Collection<String> tags) {
+        final boolean recompute = cacheConfig.getEarlyRecomputeBeta() > 0 && ttl != null && !ttl.isZero()
+                && !ttl.isNegative();
+        if (!recompute && version == 0L && tags.isEmpty()) {
+            return value;
+        }
+        return recompute ? ReffeineCacheValue.wrap(value, computeMillis, System.currentTimeMillis() + ttl.toMillis(),
+                version, tags) : ReffeineCacheValue.wrap(value, 0L, 0L, version, tags);
+    }
+
+    /**
+     * 开启 syncValuesUpTo 且需要同步时, 不超过最大长度(且不分片)的值随同步消息发送
+     */
+    private boolean shouldSyncValue(byte[] payload) {
+        final int maxSize = cacheConfig.getSyncValueMaxSize();
+        return maxSize > 0 && isSyncRequired() && payload.length <= maxSize && !shouldChunk(payload);
+    }
+
+    /**
+     * 本节点单调递增的值版本, 以毫秒时间戳为基础, 不同节点的版本大致可以比较;
+     * 节点时钟偏差导致的误判只会让接收方清除本地缓存, 不会保留旧值
+     */
+    private long nextVersion() {
+        final long now = System.currentTimeMillis() << VERSION_SEQUENCE_BITS;
+        return lastVersion.accumulateAndGet(now, (last, current) -> Math.max(last + 1, current));
+    }
+
+    /**
+     * XFetch: now - computeMillis * beta * ln(rand) >= expireAt 时提前重新计算
+     */
+    private boolean shouldRecomputeEarly(byte[] stored) {
+        final double beta = cacheConfig.getEarlyRecomputeBeta();
+        if (beta <= 0) {
+            return false;
+        }
+        final long expireAt = ReffeineCacheValue.expireAtOf(stored);
+        if (expireAt <= 0) {
+            return false;
+        }
+        final double gap = ReffeineCacheValue.computeMillisOf(stored) * beta
+                * -Math.log(1D - ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= expireAt;
+    }
+
+    private byte[] createAndConvertCacheKey(Object key) {
+        return serializeCacheKey(createCacheKey(key));
+    }
+
+    private static <T> T valueFromLoader(Object key, Callable<T> valueLoader) {
 
         try {
             return valueLoader.call();
@@ -250,9 +1740,40 @@ public class ReffeineCache extends AbstractValueAdaptingCache {
     }
 
     private byte[] serializeCacheMessage(String key) {
-        LOGGER.warn("client publish sync message for cache: " + key + " " + IPUtil.getIP());
-        final ReffeineCacheMessage reffeineCacheMessage = new ReffeineCacheMessage(name, key, IPUtil.getIP());
-        return SerializationUtils.serialize(reffeineCacheMessage);
+        return serializeCacheMessage(key, null);
+    }
+
+    /**
+     * @param value 随消息发送的缓存值, 为 {@literal null} 时只发送 Key
+     */
+    private byte[] serializeCacheMessage(String key, @Nullable byte[] value) {
+        final String source = IPUtil.getIP();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("client publish sync message for cache: " + key + " " + source);
+        }
+        final ReffeineCacheMessage reffeineCacheMessage = new ReffeineCacheMessage(name, key, source, nodeId);
+        reffeineCacheMessage.setValue(value);
+        return ReffeineCacheMessageCodec.encode(reffeineCacheMessage);
+    }
+
+    /**
+     * 随写入发送的同步消息; 没有本地缓存({@link ReffeineCacheTiering#REDIS})时不需要同步, 不构建消息
+     */
+    @Nullable
+    private byte[] writeMessageOf(String cacheKey, @Nullable byte[] value) {
+        return isSyncRequired() ? serializeCacheMessage(cacheKey, value) : null;
+    }
+
+    private byte[] serializeSpecMessage(String spec) {
+        final ReffeineCacheMessage reffeineCacheMessage = new ReffeineCacheMessage(name, null, IPUtil.getIP(), nodeId);
+        reffeineCacheMessage.setSpec(spec);
+        return ReffeineCacheMessageCodec.encode(reffeineCacheMessage);
+    }
+
+    private byte[] serializeTagMessage(String tag) {
+        final ReffeineCacheMessage reffeineCacheMessage = new ReffeineCacheMessage(name, null, IPUtil.getIP(), nodeId);
+        reffeineCacheMessage.setTag(tag);
+        return ReffeineCacheMessageCodec.encode(reffeineCacheMessage);
     }
 
     private Object preProcessCacheValue(@Nullable Object value) {
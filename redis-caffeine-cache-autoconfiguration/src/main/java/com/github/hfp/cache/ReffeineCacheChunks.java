@@ -0,0 +1,96 @@
+package com.github.hfp.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * 大缓存值的分片清单, 缓存 Key 中只保存清单, 分片保存在 {缓存 Key}~chunk:{id}:{序号}
+ * <p>
+ * 格式: [魔数 0xFE][版本 1B][分片 ID 8B][分片数量 4B][总长度 4B][CRC32 4B]
+ * <p>
+ * 每次写入使用新的分片 ID, 并发写入不会互相覆盖分片; 读取时校验总长度和 CRC32, 不一致按未命中处理
+ */
+final class ReffeineCacheChunks {
+    private static final byte MAGIC = (byte) 0xFE;
+    private static final byte VERSION = 1;
+    private static final int ID_OFFSET = 2;
+    private static final int COUNT_OFFSET = ID_OFFSET + 8;
+    private static final int LENGTH_OFFSET = COUNT_OFFSET + 4;
+    private static final int CRC_OFFSET = LENGTH_OFFSET + 4;
+    static final int MANIFEST_SIZE = CRC_OFFSET + 4;
+
+    private ReffeineCacheChunks() {
+    }
+
+    static byte[] manifest(long id, int count, byte[] value) {
+        return ByteBuffer.allocate(MANIFEST_SIZE)
+                .put(MAGIC).put(VERSION)
+                .putLong(id).putInt(count).putInt(value.length).putInt(crcOf(value))
+                .array();
+    }
+
+    static boolean isManifest(byte[] stored) {
+        return stored.length == MANIFEST_SIZE && stored[0] == MAGIC && stored[1] == VERSION;
+    }
+
+    static long idOf(byte[] manifest) {
+        return ByteBuffer.wrap(manifest).getLong(ID_OFFSET);
+    }
+
+    static int countOf(byte[] manifest) {
+        return ByteBuffer.wrap(manifest).getInt(COUNT_OFFSET);
+    }
+
+    /**
+     * 分片 Key(缓存 Key 序列化之前), 与缓存 Key 同一个前缀, clear 时一起删除
+     */
+    static List<String> chunkKeysOf(String cacheKey, long id, int count) {
+        final List<String> keys = new ArrayList<>(count);
+        final String prefix = cacheKey + "~chunk:" + Long.toHexString(id) + ":";
+        for (int i = 0; i < count; i++) {
+            keys.add(prefix + i);
+        }
+        return keys;
+    }
+
+    /**
+     * 按 chunkSize 拆分
+     */
+    static List<byte[]> split(byte[] value, int chunkSize) {
+        final List<byte[]> chunks = new ArrayList<>(value.length / chunkSize + 1);
+        for (int from = 0; from < value.length; from += chunkSize) {
+            final byte[] chunk = new byte[Math.min(chunkSize, value.length - from)];
+            System.arraycopy(value, from, chunk, 0, chunk.length);
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+
+    /**
+     * 按清单的总长度一次分配, 直接拷贝各个分片; 分片缺失或校验失败返回 {@literal null}
+     */
+    static byte[] assemble(byte[] manifest, List<byte[]> chunks) {
+        final ByteBuffer header = ByteBuffer.wrap(manifest);
+        final byte[] value = new byte[header.getInt(LENGTH_OFFSET)];
+        int offset = 0;
+        for (byte[] chunk : chunks) {
+            if (chunk == null || offset + chunk.length > value.length) {
+                return null;
+            }
+            System.arraycopy(chunk, 0, value, offset, chunk.length);
+            offset += chunk.length;
+        }
+        if (offset != value.length || crcOf(value) != header.getInt(CRC_OFFSET)) {
+            return null;
+        }
+        return value;
+    }
+
+    private static int crcOf(byte[] value) {
+        final CRC32 crc = new CRC32();
+        crc.update(value, 0, value.length);
+        return (int) crc.getValue();
+    }
+}
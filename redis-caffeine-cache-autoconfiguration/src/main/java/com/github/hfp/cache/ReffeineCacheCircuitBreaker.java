@@ -0,0 +1,98 @@
+package com.github.hfp.cache;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * 熔断器
+ * <p>
+ * 1. 连续失败(包括超过 slowCallThreshold 的慢调用) failureThreshold 次后打开, 打开期间请求直接拒绝
+ * 2. 打开 openDuration 之后半开, 只放行一个探测请求, 成功则关闭, 失败则重新打开
+ */
+public class ReffeineCacheCircuitBreaker {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+    private static final long CLOSED = -1L;
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final long slowCallNanos;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    /**
+     * 打开的时间, {@link #CLOSED} 表示关闭
+     */
+    private final AtomicLong openedAt = new AtomicLong(CLOSED);
+    /**
+     * 半开状态下是否已经有探测请求
+     */
+    private final AtomicLong probeStartedAt = new AtomicLong(CLOSED);
+
+    /**
+     * @param failureThreshold  连续失败多少次打开
+     * @param openDuration      打开持续时间
+     * @param slowCallThreshold 超过这个时间的调用算作失败, {@link Duration#ZERO} 表示不统计慢调用
+     */
+    public ReffeineCacheCircuitBreaker(int failureThreshold, Duration openDuration, Duration slowCallThreshold) {
+        Assert.isTrue(failureThreshold > 0, "FailureThreshold must be greater than 0!");
+        Assert.notNull(openDuration, "OpenDuration must not be null!");
+        Assert.notNull(slowCallThreshold, "SlowCallThreshold must not be null!");
+
+        this.failureThreshold = failureThreshold;
+        this.openNanos = openDuration.toNanos();
+        this.slowCallNanos = slowCallThreshold.toNanos();
+    }
+
+    /**
+     * 是否放行请求
+     */
+    public boolean allowRequest() {
+        final long opened = openedAt.get();
+        if (opened == CLOSED) {
+            return true;
+        }
+        final long now = System.nanoTime();
+        if (now - opened < openNanos) {
+            return false;
+        }
+        // 半开, 只放行一个探测请求; 探测请求本身卡住超过 openDuration 时允许下一个探测
+        final long probe = probeStartedAt.get();
+        return (probe == CLOSED || now - probe >= openNanos) && probeStartedAt.compareAndSet(probe, now);
+    }
+
+    /**
+     * 记录调用结果
+     *
+     * @param startNanos 调用开始的 {@link System#nanoTime()}
+     */
+    public void onSuccess(long startNanos) {
+        if (slowCallNanos > 0 && System.nanoTime() - startNanos > slowCallNanos) {
+            onFailure();
+            return;
+        }
+        consecutiveFailures.set(0);
+        if (openedAt.getAndSet(CLOSED) != CLOSED) {
+            probeStartedAt.set(CLOSED);
+            LOGGER.warn("ReffeineCache circuit breaker closed, Redis is available again");
+        }
+    }
+
+    public void onFailure() {
+        if (openedAt.get() != CLOSED) {
+            // 探测失败, 重新计时
+            openedAt.set(System.nanoTime());
+            probeStartedAt.set(CLOSED);
+            return;
+        }
+        if (consecutiveFailures.incrementAndGet() >= failureThreshold
+                && openedAt.compareAndSet(CLOSED, System.nanoTime())) {
+            LOGGER.warn("ReffeineCache circuit breaker opened after " + failureThreshold + " consecutive failures");
+        }
+    }
+
+    public boolean isOpen() {
+        return openedAt.get() != CLOSED;
+    }
+}
@@ -0,0 +1,73 @@
+package com.github.hfp.cache;
+
+import java.nio.charset.StandardCharsets;
+import org.springframework.lang.Nullable;
+import org.springframework.util.ClassUtils;
+
+/**
+ * Java Flight Recorder 事件入口, 每种事件单独开关, 默认全部关闭
+ * <p>
+ * 1. {@link #begin(Type)} 在事件关闭或者 JDK 不支持 JFR 时返回 {@literal null}, 之后的 {@link #commit} 什么都不做
+ * 2. 事件带缓存名、Key 的 hash、数据大小和耗时, 事件名参考 {@link ReffeineCacheJfrEvents}
+ * <p>
+ * 没有 jdk.jfr 的 JDK 上不会加载任何 JFR 类
+ */
+final class ReffeineCacheEvents {
+    static final String TIER_LOCAL = "local";
+    static final String TIER_REDIS = "redis";
+    static final String TIER_STALE = "stale";
+    static final String TIER_COALESCED = "coalesced";
+    static final String TIER_MISS = "miss";
+
+    private static final boolean AVAILABLE = ClassUtils.isPresent("jdk.jfr.Event",
+            ReffeineCacheEvents.class.getClassLoader());
+
+    enum Type {
+        LOOKUP, PUT, EVICT, CLEAR, REDIS_COMMAND, LOCK_WAIT, LISTENER_APPLY, RESIZE
+    }
+
+    private ReffeineCacheEvents() {
+    }
+
+    static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * 开始计时
+     *
+     * @return 事件, 关闭时为 {@literal null}
+     */
+    @Nullable
+    static Object begin(Type type) {
+        return AVAILABLE ? ReffeineCacheJfrEvents.begin(type) : null;
+    }
+
+    /**
+     * 结束计时并提交事件
+     *
+     * @param key    缓存 Key(字符串或者序列化后的字节), 只记录 hash
+     * @param size   数据字节数, LISTENER_APPLY 为 Key 的数量, RESIZE 为新的容量
+     * @param detail LOOKUP 为命中的层级, REDIS_COMMAND 为命令, RESIZE 为原因
+     */
+    static void commit(@Nullable Object event, String cacheName, @Nullable Object key, int size,
+                       @Nullable String detail) {
+        if (event != null) {
+            ReffeineCacheJfrEvents.commit(event, cacheName, hashOf(key), size, detail);
+        }
+    }
+
+    static int sizeOf(@Nullable Object value) {
+        return value instanceof byte[] ? ((byte[]) value).length : 0;
+    }
+
+    /**
+     * 序列化后的 Key 按 UTF-8 还原后取 hash, 使用字符串序列化时 Redis 命令和缓存操作的 hash 相同, 可以关联
+     */
+    private static int hashOf(@Nullable Object key) {
+        if (key == null) {
+            return 0;
+        }
+        return key instanceof byte[] ? new String((byte[]) key, StandardCharsets.UTF_8).hashCode() : key.hashCode();
+    }
+}
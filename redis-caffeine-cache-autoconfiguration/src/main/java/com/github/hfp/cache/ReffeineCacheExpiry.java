@@ -0,0 +1,105 @@
+package com.github.hfp.cache;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.benmanes.caffeine.cache.Expiry;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地缓存的过期策略, 每个缓存项的过期时间为 min(expireAfterWrite, Redis 剩余 TTL)
+ * <p>
+ * 1. 创建和更新时使用 caffeineSpec 中的 expireAfterWrite, 没有配置时不过期
+ * 2. 从 Redis 读取(GET + PTTL)或写入 Redis 后, {@link ReffeineCache} 按 Redis 剩余 TTL 缩短过期时间
+ * 3. 读取不改变过期时间
+ * <p>
+ * expireAfterWrite 可以在运行时修改({@link ReffeineCache#reconfigure}), 用于之后写入的缓存项, 已有缓存项由 ReffeineCache 缩短
+ * <p>
+ * Caffeine 的 expireAfter 不能和 expireAfterWrite/expireAfterAccess 同时使用, 配置了 expireAfterAccess 时不使用这个策略
+ */
+final class ReffeineCacheExpiry implements Expiry<Object, Object> {
+    private static final String EXPIRE_AFTER_WRITE = "expireAfterWrite";
+    private static final String EXPIRE_AFTER_ACCESS = "expireAfterAccess";
+
+    private volatile long expireAfterWriteNanos;
+
+    /**
+     * @param expireAfterWriteNanos 小于 0 表示不过期
+     */
+    ReffeineCacheExpiry(long expireAfterWriteNanos) {
+        setExpireAfterWriteNanos(expireAfterWriteNanos);
+    }
+
+    /**
+     * @param expireAfterWriteNanos 小于 0 表示不过期
+     */
+    void setExpireAfterWriteNanos(long expireAfterWriteNanos) {
+        this.expireAfterWriteNanos = expireAfterWriteNanos < 0 ? Long.MAX_VALUE : expireAfterWriteNanos;
+    }
+
+    @Override
+    public long expireAfterCreate(Object key, Object value, long currentTime) {
+        return expireAfterWriteNanos;
+    }
+
+    @Override
+    public long expireAfterUpdate(Object key, Object value, long currentTime, long currentDuration) {
+        return expireAfterWriteNanos;
+    }
+
+    @Override
+    public long expireAfterRead(Object key, Object value, long currentTime, long currentDuration) {
+        return currentDuration;
+    }
+
+    /**
+     * 由 caffeineSpec 构建本地缓存, expireAfterWrite 替换为按缓存项过期的 expiry;
+     * 配置了 expireAfterAccess 时按原样构建, 不使用 expiry
+     */
+    static Caffeine<Object, Object> builderOf(CaffeineSpec spec, ReffeineCacheExpiry expiry) {
+        final List<String> options = new ArrayList<>();
+        for (String option : spec.toParsableString().split(",")) {
+            final String trimmed = option.trim();
+            if (trimmed.startsWith(EXPIRE_AFTER_ACCESS)) {
+                return Caffeine.from(spec);
+            }
+            if (!trimmed.isEmpty() && !trimmed.startsWith(EXPIRE_AFTER_WRITE)) {
+                options.add(trimmed);
+            }
+        }
+        return Caffeine.from(String.join(",", options))
+                .expireAfter(expiry);
+    }
+
+    /**
+     * caffeineSpec 中 expireAfterWrite 的纳秒数, 没有配置时返回 -1
+     */
+    static long expireAfterWriteNanosOf(CaffeineSpec spec) {
+        for (String option : spec.toParsableString().split(",")) {
+            final String trimmed = option.trim();
+            if (!trimmed.startsWith(EXPIRE_AFTER_WRITE)) {
+                continue;
+            }
+            return durationNanosOf(trimmed.substring(trimmed.indexOf('=') + 1).trim());
+        }
+        return -1L;
+    }
+
+    /**
+     * caffeineSpec 中的时长(数字 + d/h/m/s)转为纳秒, spec 已经校验过格式
+     */
+    static long durationNanosOf(String value) {
+        final long duration = Long.parseLong(value.substring(0, value.length() - 1));
+        switch (Character.toLowerCase(value.charAt(value.length() - 1))) {
+            case 'd':
+                return TimeUnit.DAYS.toNanos(duration);
+            case 'h':
+                return TimeUnit.HOURS.toNanos(duration);
+            case 'm':
+                return TimeUnit.MINUTES.toNanos(duration);
+            default:
+                return TimeUnit.SECONDS.toNanos(duration);
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.github.hfp.cache;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * 老年代接近上限时按比例缩小所有本地缓存的容量, 压力解除后逐步恢复
+ * <p>
+ * 1. 老年代 GC 后的使用率(collection usage threshold 通知、老年代/Full GC 通知)超过 highRatio 时,
+ * 所有本地缓存的容量乘以 {@link #SHRINK_STEP}, 最低为配置容量的 {@link #MIN_CAPACITY_FACTOR};
+ * 容量通过 Caffeine 的 policy() 修改, 按 W-TinyLFU 先淘汰访问频率最低的缓存项
+ * 2. GC 后或定期检查时使用率低于 lowRatio, 距离上次调整超过 {@link #RESTORE_INTERVAL_MILLIS} 时逐步恢复容量
+ * 3. 每次调整每个缓存提交一个 com.github.hfp.cache.Resize JFR 事件, 当前的容量比例和调整次数通过 JMX 暴露
+ * <p>
+ * 没有容量限制(maximumSize/maximumWeight)的本地缓存不调整; 缩小期间通过 {@link ReffeineCache#reconfigure}
+ * 修改的容量作为新的配置容量
+ */
+@ManagedResource(description = "ReffeineCache heap pressure monitor")
+public class ReffeineCacheHeapPressureMonitor implements NotificationListener, InitializingBean, DisposableBean {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+    static final double SHRINK_STEP = 0.75;
+    static final double MIN_CAPACITY_FACTOR = 0.1;
+    private static final long SHRINK_INTERVAL_MILLIS = 1000;
+    private static final long RESTORE_INTERVAL_MILLIS = 10_000;
+    private static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+
+    private final ReffeineCacheManager reffeineCacheManager;
+    private final double highRatio;
+    private final double lowRatio;
+    /**
+     * 老年代(分代收集器)或整个堆(ZGC/Shenandoah 等不分代收集器), 没有可用的内存池时为 {@literal null}
+     */
+    @Nullable
+    private final MemoryPoolMXBean oldGen;
+    /**
+     * 缓存名 -> [配置容量, 上次设置的容量], 只在缩小期间保存
+     */
+    private final Map<String, long[]> capacities = new ConcurrentHashMap<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final AtomicLong shrinkCount = new AtomicLong();
+    private final AtomicLong restoreCount = new AtomicLong();
+    private ScheduledExecutorService executor;
+    private volatile double capacityFactor = 1.0;
+    private volatile double oldGenUsageRatio;
+    private long lastAdjustmentNanos = System.nanoTime();
+
+    /**
+     * @param highRatio 老年代 GC 后使用率超过这个比例时缩小本地缓存
+     * @param lowRatio  使用率低于这个比例时恢复本地缓存
+     */
+    public ReffeineCacheHeapPressureMonitor(ReffeineCacheManager reffeineCacheManager, double highRatio,
+                                            double lowRatio) {
+        Assert.notNull(reffeineCacheManager, "ReffeineCacheManager must not be null!");
+        Assert.isTrue(highRatio > 0 && highRatio < 1, "HighRatio must be between 0 and 1!");
+        Assert.isTrue(lowRatio > 0 && lowRatio < highRatio, "LowRatio must be between 0 and highRatio!");
+
+        this.reffeineCacheManager = reffeineCacheManager;
+        this.highRatio = highRatio;
+        this.lowRatio = lowRatio;
+        this.oldGen = findOldGen();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        if (oldGen == null) {
+            LOGGER.warn("ReffeineCache heap pressure monitor found no heap pool with collection usage threshold");
+            return;
+        }
+        final long max = maxOf(oldGen.getUsage());
+        if (max > 0) {
+            oldGen.setCollectionUsageThreshold((long) (max * highRatio));
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ReffeineCacheHeapPressure");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // GC 通知可能很久才有一次, 定期检查是否可以恢复
+        executor.scheduleWithFixedDelay(() -> evaluate(oldGen.getUsage(), false), RESTORE_INTERVAL_MILLIS,
+                RESTORE_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        reffeineCacheManager.addCacheCreationListener(cache -> {
+            if (capacityFactor < 1.0) {
+                executor.execute(() -> resize(cache, "created under heap pressure"));
+            }
+        });
+        addListener(ManagementFactory.getMemoryMXBean());
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            addListener(collector);
+        }
+        LOGGER.info("ReffeineCache heap pressure monitor watching " + oldGen.getName() + ", shrink above "
+                + percent(highRatio) + ", restore below " + percent(lowRatio));
+    }
+
+    @Override
+    public void destroy() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(this);
+            } catch (ListenerNotFoundException ignored) {
+                // 已经移除
+            }
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public void handleNotification(Notification notification, Object handback) {
+        final MemoryPoolMXBean pool = this.oldGen;
+        if (pool == null) {
+            return;
+        }
+        if (MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(notification.getType())) {
+            final MemoryNotificationInfo info = MemoryNotificationInfo.from((CompositeData) notification.getUserData());
+            if (pool.getName().equals(info.getPoolName())) {
+                submit(info.getUsage(), true);
+            }
+        } else if (GC_NOTIFICATION.equals(notification.getType())) {
+            final CompositeData info = (CompositeData) notification.getUserData();
+            final MemoryUsage usage = usageAfterGc(info, pool.getName());
+            // 年轻代 GC 后老年代还有没回收的垃圾, 只用于判断能否恢复
+            final Object action = info.get("gcAction");
+            submit(usage == null ? pool.getCollectionUsage() : usage,
+                    action instanceof String && ((String) action).contains("major"));
+        }
+    }
+
+    /**
+     * 当前的本地缓存容量比例, 1 表示没有缩小
+     */
+    @ManagedAttribute(description = "Current factor applied to local tier maximum sizes, 1 when not shrunk")
+    public double getCapacityFactor() {
+        return capacityFactor;
+    }
+
+    /**
+     * 最近一次检查时老年代的使用率
+     */
+    @ManagedAttribute(description = "Old generation usage ratio at the last check")
+    public double getOldGenUsageRatio() {
+        return oldGenUsageRatio;
+    }
+
+    @ManagedAttribute(description = "Number of times local tiers were shrunk")
+    public long getShrinkCount() {
+        return shrinkCount.get();
+    }
+
+    @ManagedAttribute(description = "Number of times local tiers were restored")
+    public long getRestoreCount() {
+        return restoreCount.get();
+    }
+
+    private void submit(@Nullable MemoryUsage usage, boolean collected) {
+        if (usage == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> evaluate(usage, collected));
+        } catch (RejectedExecutionException ignored) {
+            // 已经关闭
+        }
+    }
+
+    /**
+     * @param collected usage 是否是回收过老年代之后的使用率, 只有这时才缩小
+     */
+    void evaluate(@Nullable MemoryUsage usage, boolean collected) {
+        final long max = maxOf(usage);
+        if (usage == null || max <= 0) {
+            return;
+        }
+        final double ratio = (double) usage.getUsed() / max;
+        oldGenUsageRatio = ratio;
+        final long sinceLastAdjustment = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastAdjustmentNanos);
+        if (collected && ratio >= highRatio && capacityFactor > MIN_CAPACITY_FACTOR
+                && sinceLastAdjustment >= SHRINK_INTERVAL_MILLIS) {
+            adjust(Math.max(capacityFactor * SHRINK_STEP, MIN_CAPACITY_FACTOR), ratio);
+            shrinkCount.incrementAndGet();
+        } else if (ratio < lowRatio && capacityFactor < 1.0 && sinceLastAdjustment >= RESTORE_INTERVAL_MILLIS) {
+            final double restored = capacityFactor / SHRINK_STEP;
+            // 浮点误差, 接近 1 时直接恢复
+            adjust(restored > 0.99 ? 1.0 : restored, ratio);
+            restoreCount.incrementAndGet();
+        }
+    }
+
+    private void adjust(double factor, double ratio) {
+        final String reason = String.format(Locale.ROOT, "%s %s, factor %.2f -> %.2f", oldGen.getName(),
+                percent(ratio), capacityFactor, factor);
+        LOGGER.warn("ReffeineCache heap pressure: " + reason);
+        capacityFactor = factor;
+        lastAdjustmentNanos = System.nanoTime();
+        for (String name : reffeineCacheManager.getCacheNames()) {
+            final ReffeineCache cache = reffeineCacheManager.getExistingCache(name);
+            if (cache != null) {
+                resize(cache, reason);
+            }
+        }
+        if (factor >= 1.0) {
+            capacities.clear();
+        }
+    }
+
+    private void resize(ReffeineCache cache, String reason) {
+        final long current = cache.getLocalMaximum();
+        if (current < 0) {
+            return;
+        }
+        long[] capacity = capacities.get(cache.getName());
+        if (capacity == null || capacity[1] != current) {
+            // 第一次缩小, 或者缩小期间容量被修改过
+            capacity = new long[]{current, current};
+            capacities.put(cache.getName(), capacity);
+        }
+        final long maximum = capacityFactor >= 1.0 ? capacity[0] : Math.max((long) (capacity[0] * capacityFactor), 1L);
+        if (maximum == current) {
+            return;
+        }
+        final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.RESIZE);
+        cache.setLocalMaximum(maximum);
+        capacity[1] = maximum;
+        ReffeineCacheEvents.commit(event, cache.getName(), null, (int) Math.min(maximum, Integer.MAX_VALUE), reason);
+    }
+
+    private void addListener(Object bean) {
+        if (bean instanceof NotificationEmitter) {
+            ((NotificationEmitter) bean).addNotificationListener(this, null, null);
+            emitters.add((NotificationEmitter) bean);
+        }
+    }
+
+    /**
+     * GC 通知中 pool 回收后的使用量, 不是 HotSpot 格式的通知时返回 {@literal null}
+     */
+    @Nullable
+    private static MemoryUsage usageAfterGc(CompositeData info, String pool) {
+        try {
+            final CompositeData gcInfo = (CompositeData) info.get("gcInfo");
+            final TabularData usages = (TabularData) gcInfo.get("memoryUsageAfterGc");
+            for (Object row : usages.values()) {
+                final CompositeData entry = (CompositeData) row;
+                if (pool.equals(entry.get("key"))) {
+                    return MemoryUsage.from((CompositeData) entry.get("value"));
+                }
+            }
+        } catch (RuntimeException ignored) {
+            // 其他 JVM 的通知格式不同, 使用内存池的 collection usage
+        }
+        return null;
+    }
+
+    /**
+     * 分代收集器的老年代(名字带 Old/Tenured), 否则取支持 collection usage threshold 的最大堆内存池
+     */
+    @Nullable
+    private static MemoryPoolMXBean findOldGen() {
+        MemoryPoolMXBean largest = null;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            if (pool.getName().contains("Old") || pool.getName().contains("Tenured")) {
+                return pool;
+            }
+            if (largest == null || maxOf(pool.getUsage()) > maxOf(largest.getUsage())) {
+                largest = pool;
+            }
+        }
+        return largest;
+    }
+
+    private static long maxOf(@Nullable MemoryUsage usage) {
+        if (usage == null) {
+            return -1L;
+        }
+        return usage.getMax() > 0 ? usage.getMax() : Runtime.getRuntime().maxMemory();
+    }
+
+    private static String percent(double ratio) {
+        return String.format(Locale.ROOT, "%.0f%%", ratio * 100);
+    }
+}
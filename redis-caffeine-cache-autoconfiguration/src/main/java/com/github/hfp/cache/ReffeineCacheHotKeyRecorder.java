@@ -0,0 +1,86 @@
+package com.github.hfp.cache;
+
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * 维护 Redis 中每个缓存的热点清单(ZSet, prefix:name~hot), 新节点启动时据此预热本地缓存
+ * <p>
+ * 1. 所有缓存的访问按 1/sampleRate 采样计数
+ * 2. 每隔 flushInterval 把计数 ZINCRBY 到热点清单, 清单只保留计数最高的 manifestSize 个 Key
+ * 3. 清单在所有节点停止上报 manifestTtl 后过期
+ */
+public class ReffeineCacheHotKeyRecorder implements InitializingBean, DisposableBean {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+    private static final int MAX_SAMPLED_KEYS = 10_000;
+
+    private final ReffeineCacheManager reffeineCacheManager;
+    private final int sampleRate;
+    private final int manifestSize;
+    private final Duration flushInterval;
+    private Duration manifestTtl = Duration.ofDays(1);
+    private ScheduledExecutorService scheduler;
+
+    public ReffeineCacheHotKeyRecorder(ReffeineCacheManager reffeineCacheManager, int sampleRate, int manifestSize,
+                                       Duration flushInterval) {
+        Assert.notNull(reffeineCacheManager, "ReffeineCacheManager must not be null!");
+        Assert.isTrue(sampleRate > 0, "SampleRate must be greater than 0!");
+        Assert.isTrue(manifestSize > 0, "ManifestSize must be greater than 0!");
+        Assert.isTrue(flushInterval != null && !flushInterval.isNegative() && !flushInterval.isZero(),
+                "FlushInterval must be positive!");
+
+        this.reffeineCacheManager = reffeineCacheManager;
+        this.sampleRate = sampleRate;
+        this.manifestSize = manifestSize;
+        this.flushInterval = flushInterval;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        reffeineCacheManager.addCacheCreationListener(cache -> cache.trackHotKeys(sampleRate, MAX_SAMPLED_KEYS));
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ReffeineCacheHotKeyRecorder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        flush();
+    }
+
+    public void setManifestTtl(Duration manifestTtl) {
+        Assert.notNull(manifestTtl, "ManifestTtl must not be null!");
+        this.manifestTtl = manifestTtl;
+    }
+
+    /**
+     * 上报所有缓存的采样计数
+     */
+    public void flush() {
+        for (String name : reffeineCacheManager.getCacheNames()) {
+            final ReffeineCache cache = reffeineCacheManager.getExistingCache(name);
+            if (cache == null) {
+                continue;
+            }
+            try {
+                cache.flushHotKeys(manifestSize, manifestTtl);
+            } catch (RuntimeException ex) {
+                LOGGER.warn("ReffeineCache flush hot keys of " + name + " error: " + ex.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.github.hfp.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.util.Assert;
+
+/**
+ * 单个缓存的热点 Key 采样
+ * <p>
+ * 每次访问以 1/sampleRate 的概率计数, 周期性取出计数累加到 Redis 的热点清单,
+ * 参考 {@link ReffeineCacheHotKeyRecorder}; 两次上报之间最多记录 maxKeys 个不同的 Key
+ */
+class ReffeineCacheHotKeys {
+    private final int sampleRate;
+    private final int maxKeys;
+    private volatile ConcurrentHashMap<Object, LongAdder> samples = new ConcurrentHashMap<>();
+
+    ReffeineCacheHotKeys(int sampleRate, int maxKeys) {
+        Assert.isTrue(sampleRate > 0, "SampleRate must be greater than 0!");
+        Assert.isTrue(maxKeys > 0, "MaxKeys must be greater than 0!");
+
+        this.sampleRate = sampleRate;
+        this.maxKeys = maxKeys;
+    }
+
+    void record(Object localKey) {
+        if (sampleRate > 1 && ThreadLocalRandom.current().nextInt(sampleRate) != 0) {
+            return;
+        }
+        final ConcurrentHashMap<Object, LongAdder> current = this.samples;
+        LongAdder counter = current.get(localKey);
+        if (counter == null) {
+            if (current.size() >= maxKeys) {
+                return;
+            }
+            counter = current.computeIfAbsent(localKey, key -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * 取出并清空当前的采样计数, 本地缓存 Key -> 次数
+     */
+    Map<Object, Long> drain() {
+        final ConcurrentHashMap<Object, LongAdder> drained = this.samples;
+        this.samples = new ConcurrentHashMap<>();
+        final Map<Object, Long> result = new HashMap<>(drained.size());
+        drained.forEach((key, counter) -> result.put(key, counter.sum()));
+        return result;
+    }
+}
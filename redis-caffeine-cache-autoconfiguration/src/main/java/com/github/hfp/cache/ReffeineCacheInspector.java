@@ -0,0 +1,216 @@
+package com.github.hfp.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.benmanes.caffeine.cache.Policy;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.github.hfp.config.ReffeineCacheConfiguration;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedOperationParameter;
+import org.springframework.jmx.export.annotation.ManagedOperationParameters;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * 运行时查看 {@link ReffeineCacheManager} 中的缓存, 通过 JMX 暴露(Spring Boot 默认开启 spring.jmx.enabled)
+ * <p>
+ * 1. 每个缓存的本地缓存大小、权重、命中率(caffeineSpec 配置了 recordStats 时)、淘汰数量、生效的 caffeineSpec 和 Redis TTL
+ * 2. 同步消息的接收延迟和分发积压
+ * 3. 按需采样最热和最大的本地缓存 Key
+ * 4. 只清除本机或者清除所有节点的本地缓存
+ * 5. 运行时修改本地缓存的容量和过期时间
+ * <p>
+ * 只在调用时读取状态, 不调用时没有额外开销
+ */
+@ManagedResource(description = "ReffeineCache inspector")
+public class ReffeineCacheInspector {
+    private final ReffeineCacheManager reffeineCacheManager;
+    @Nullable
+    private final ReffeineCacheMessageListener messageListener;
+    @Nullable
+    private final ReffeineCacheMessageDispatcher dispatcher;
+
+    public ReffeineCacheInspector(ReffeineCacheManager reffeineCacheManager,
+                                  @Nullable ReffeineCacheMessageListener messageListener,
+                                  @Nullable ReffeineCacheMessageDispatcher dispatcher) {
+        Assert.notNull(reffeineCacheManager, "ReffeineCacheManager must not be null!");
+
+        this.reffeineCacheManager = reffeineCacheManager;
+        this.messageListener = messageListener;
+        this.dispatcher = dispatcher;
+    }
+
+    @ManagedAttribute(description = "Names of the caches created on this node")
+    public Collection<String> getCacheNames() {
+        return reffeineCacheManager.getCacheNames();
+    }
+
+    /**
+     * 所有缓存的状态, 缓存名 -> {@link #describe(String)}
+     */
+    @ManagedAttribute(description = "Statistics of every cache")
+    public Map<String, Map<String, Object>> getCaches() {
+        final Map<String, Map<String, Object>> caches = new LinkedHashMap<>();
+        for (String name : reffeineCacheManager.getCacheNames()) {
+            final ReffeineCache cache = reffeineCacheManager.getExistingCache(name);
+            if (cache != null) {
+                caches.put(name, describe(cache));
+            }
+        }
+        return caches;
+    }
+
+    /**
+     * 同步消息的接收延迟和分发积压, 最大延迟在每次查看后重新统计
+     */
+    @ManagedAttribute(description = "Sync message lag and dispatch backlog")
+    public Map<String, Object> getListener() {
+        final Map<String, Object> listener = new LinkedHashMap<>();
+        if (messageListener != null) {
+            listener.put("lastLagMillis", messageListener.getLastMessageLagMillis());
+            listener.put("maxLagMillisSinceLastQuery", messageListener.getMaxMessageLagMillisThenReset());
+        }
+        if (dispatcher != null) {
+            listener.put("backlog", dispatcher.getBacklog());
+        }
+        return listener;
+    }
+
+    @ManagedOperation(description = "Statistics of a cache")
+    @ManagedOperationParameters(@ManagedOperationParameter(name = "cacheName", description = "Cache name"))
+    public Map<String, Object> describe(String cacheName) {
+        return describe(requireCache(cacheName));
+    }
+
+    /**
+     * 本地缓存中最热的 count 个 Key, 按 Caffeine 的访问频率统计;
+     * 本地缓存没有 maximumSize 时使用 Redis 热点清单(需要开启热点 Key 采样)
+     */
+    @ManagedOperation(description = "Hottest keys of a cache")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "cacheName", description = "Cache name"),
+            @ManagedOperationParameter(name = "count", description = "Number of keys")})
+    public List<String> hottestKeys(String cacheName, int count) {
+        Assert.isTrue(count > 0, "Count must be greater than 0!");
+        final ReffeineCache cache = requireCache(cacheName);
+        final Optional<Policy.Eviction<Object, Object>> eviction = cache.getLocalCache().policy().eviction();
+        if (!eviction.isPresent()) {
+            return cache.hotKeysInRedis(count);
+        }
+        final List<String> keys = new ArrayList<>(count);
+        for (Object key : eviction.get().hottest(count).keySet()) {
+            keys.add(cache.cacheKeyOf(key));
+        }
+        return keys;
+    }
+
+    /**
+     * 本地缓存中序列化后最大的 count 个 Key, Key -> 字节数; 遍历整个本地缓存
+     */
+    @ManagedOperation(description = "Largest keys of a cache in the local tier, in bytes")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "cacheName", description = "Cache name"),
+            @ManagedOperationParameter(name = "count", description = "Number of keys")})
+    public Map<String, Integer> largestKeys(String cacheName, int count) {
+        Assert.isTrue(count > 0, "Count must be greater than 0!");
+        final PriorityQueue<Map.Entry<Object, Integer>> largest =
+                new PriorityQueue<>(count + 1, Comparator.comparingInt(Map.Entry::getValue));
+        final ReffeineCache cache = requireCache(cacheName);
+        cache.getLocalCache().asMap().forEach((key, value) -> {
+            final int size = value instanceof byte[] ? ((byte[]) value).length : 0;
+            if (largest.size() < count || size > largest.peek().getValue()) {
+                largest.add(new AbstractMap.SimpleImmutableEntry<>(key, size));
+                if (largest.size() > count) {
+                    largest.poll();
+                }
+            }
+        });
+        final List<Map.Entry<Object, Integer>> sorted = new ArrayList<>(largest);
+        sorted.sort(Comparator.comparingInt(Map.Entry<Object, Integer>::getValue).reversed());
+        final Map<String, Integer> result = new LinkedHashMap<>(sorted.size());
+        for (Map.Entry<Object, Integer> entry : sorted) {
+            result.put(cache.cacheKeyOf(entry.getKey()), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * 只清除本机的本地缓存, Key 为空时清除整个缓存
+     */
+    @ManagedOperation(description = "Invalidate the local tier of this node only, empty key for the whole cache")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "cacheName", description = "Cache name"),
+            @ManagedOperationParameter(name = "key", description = "Cache key, empty for all")})
+    public void invalidateLocal(String cacheName, @Nullable String key) {
+        requireCache(cacheName).invalidateHere(StringUtils.isEmpty(key) ? null : key);
+    }
+
+    /**
+     * 清除所有节点的本地缓存(发送同步消息), 不删除 Redis 中的值, Key 为空时清除整个缓存
+     */
+    @ManagedOperation(description = "Invalidate the local tier of every node, empty key for the whole cache")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "cacheName", description = "Cache name"),
+            @ManagedOperationParameter(name = "key", description = "Cache key, empty for all")})
+    public void invalidateCluster(String cacheName, @Nullable String key) {
+        requireCache(cacheName).invalidateEverywhere(StringUtils.isEmpty(key) ? null : key);
+    }
+
+    /**
+     * 修改本地缓存的容量和过期时间, 不清除已有的缓存项, 参考 {@link ReffeineCache#reconfigure(CaffeineSpec, boolean)}
+     */
+    @ManagedOperation(description = "Change maximum size/weight and expiry of the local tier without dropping entries")
+    @ManagedOperationParameters({
+            @ManagedOperationParameter(name = "cacheName", description = "Cache name"),
+            @ManagedOperationParameter(name = "spec", description = "Caffeine spec, e.g. maximumSize=1000,expireAfterWrite=5m"),
+            @ManagedOperationParameter(name = "broadcast", description = "Apply on every node")})
+    public void reconfigure(String cacheName, String spec, boolean broadcast) {
+        requireCache(cacheName).reconfigure(CaffeineSpec.parse(spec), broadcast);
+    }
+
+    private Map<String, Object> describe(ReffeineCache cache) {
+        final Cache<Object, Object> localCache = cache.getLocalCache();
+        final Policy<Object, Object> policy = localCache.policy();
+        final ReffeineCacheConfiguration configuration = cache.getCacheConfiguration();
+        final Map<String, Object> description = new LinkedHashMap<>();
+        description.put("localSize", localCache.estimatedSize());
+        policy.eviction().ifPresent(eviction -> {
+            description.put("localMaximum", eviction.getMaximum());
+            eviction.weightedSize().ifPresent(weight -> description.put("localWeight", weight));
+        });
+        if (policy.isRecordingStats()) {
+            final CacheStats stats = localCache.stats();
+            description.put("localHitRate", stats.hitRate());
+            description.put("localHitCount", stats.hitCount());
+            description.put("localMissCount", stats.missCount());
+            description.put("localEvictionCount", stats.evictionCount());
+            description.put("localEvictionWeight", stats.evictionWeight());
+        }
+        description.put("caffeineSpec", configuration.getCaffeineSpec() == null ? null
+                : configuration.getCaffeineSpec().toParsableString());
+        description.put("localExpireAfterWriteMillis", cache.getLocalExpireAfterWriteMillis());
+        description.put("redisTtlMillis", configuration.getRedisttl().toMillis());
+        description.put("tiering", configuration.getTiering().name());
+        description.put("storageLayout", configuration.getStorageLayout().name());
+        description.put("syncChannel", cache.isSyncRequired() ? cache.getSyncChannel() : null);
+        return description;
+    }
+
+    private ReffeineCache requireCache(String cacheName) {
+        final ReffeineCache cache = reffeineCacheManager.getExistingCache(cacheName);
+        Assert.notNull(cache, "Cache '" + cacheName + "' does not exist on this node!");
+        return cache;
+    }
+}
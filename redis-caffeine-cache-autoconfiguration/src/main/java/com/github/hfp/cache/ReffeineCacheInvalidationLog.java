@@ -0,0 +1,192 @@
+package com.github.hfp.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * 基于 Redis Stream 的失效日志
+ * <p>
+ * 同步消息 PUBLISH 的同时 XADD(MAXLEN ~) 到 Stream, 订阅断开重连后可以从断开前的位置补齐错过的消息,
+ * 参考 {@link ReffeineCacheInvalidationLogReplayer}
+ */
+public class ReffeineCacheInvalidationLog {
+    /**
+     * 空 Stream 的起始 ID
+     */
+    public static final String INITIAL_ID = "0-0";
+
+    private final RedisConnectionFactory connectionFactory;
+    /**
+     * Stream Key
+     */
+    private final byte[] streamKey;
+    /**
+     * Stream 最大长度(近似), 超出的旧消息会被裁剪
+     */
+    private final long maxLen;
+    private final byte[] maxLenArg;
+
+    public ReffeineCacheInvalidationLog(RedisConnectionFactory connectionFactory, String streamKey, long maxLen) {
+        Assert.notNull(connectionFactory, "ConnectionFactory must not be null!");
+        Assert.hasText(streamKey, "StreamKey must not be empty!");
+        Assert.isTrue(maxLen > 0, "MaxLen must be greater than 0!");
+
+        this.connectionFactory = connectionFactory;
+        this.streamKey = streamKey.getBytes(StandardCharsets.UTF_8);
+        this.maxLen = maxLen;
+        this.maxLenArg = String.valueOf(maxLen).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte[] getStreamKey() {
+        return streamKey;
+    }
+
+    public long getMaxLen() {
+        return maxLen;
+    }
+
+    byte[] getMaxLenArg() {
+        return maxLenArg;
+    }
+
+    /**
+     * 最新一条日志的 ID, Stream 为空时返回 {@literal null}
+     */
+    @Nullable
+    public String lastId() {
+        final List<Entry> entries = execute(connection -> parseEntries(ReffeineCacheScript.LOG_LAST.execute(connection,
+                ReturnType.MULTI, 1, streamKey)));
+        return entries.isEmpty() ? null : entries.get(0).getId();
+    }
+
+    /**
+     * 读取最新一条日志的 ID, 同时向 channel 发布 marker, Stream 为空时返回 {@literal null}
+     * <p>
+     * 两者在同一个脚本中执行, 订阅端收到 marker 时, 这个 ID 及之前的日志对应的同步消息都已经送达
+     */
+    @Nullable
+    public String lastIdAndMark(byte[] channel, byte[] marker) {
+        final List<Entry> entries = execute(connection -> parseEntries(ReffeineCacheScript.LOG_LAST_AND_MARK.execute(
+                connection, ReturnType.MULTI, 1, streamKey, channel, marker)));
+        return entries.isEmpty() ? null : entries.get(0).getId();
+    }
+
+    /**
+     * 最早一条(仍保留的)日志的 ID, Stream 为空时返回 {@literal null}
+     */
+    @Nullable
+    public String firstId() {
+        final List<Entry> entries = range("-", 1);
+        return entries.isEmpty() ? null : entries.get(0).getId();
+    }
+
+    /**
+     * 从 startId(包含) 开始读取最多 count 条日志
+     */
+    public List<Entry> range(String startId, int count) {
+        Assert.hasText(startId, "StartId must not be empty!");
+
+        final byte[] countArg = String.valueOf(count).getBytes(StandardCharsets.UTF_8);
+        return execute(connection -> parseEntries(ReffeineCacheScript.LOG_RANGE.execute(connection, ReturnType.MULTI,
+                1, streamKey, startId.getBytes(StandardCharsets.UTF_8), "+".getBytes(StandardCharsets.UTF_8),
+                countArg)));
+    }
+
+    /**
+     * 紧跟在 id 之后的 ID, 用于 XRANGE 的开区间起点
+     */
+    public static String nextId(String id) {
+        final int separator = id.indexOf('-');
+        return id.substring(0, separator) + "-" + (Long.parseLong(id.substring(separator + 1)) + 1);
+    }
+
+    /**
+     * 指定毫秒时间对应的最小 ID
+     */
+    public static String idAt(long millis) {
+        return Math.max(millis, 0L) + "-0";
+    }
+
+    public static long millisOf(String id) {
+        final int separator = id.indexOf('-');
+        return Long.parseLong(separator < 0 ? id : id.substring(0, separator));
+    }
+
+    public static int compareIds(String id1, String id2) {
+        final int byMillis = Long.compare(millisOf(id1), millisOf(id2));
+        if (byMillis != 0) {
+            return byMillis;
+        }
+        return Long.compare(sequenceOf(id1), sequenceOf(id2));
+    }
+
+    private static long sequenceOf(String id) {
+        final int separator = id.indexOf('-');
+        return separator < 0 ? 0L : Long.parseLong(id.substring(separator + 1));
+    }
+
+    private <T> T execute(Function<RedisConnection, T> callback) {
+        RedisConnection connection = connectionFactory.getConnection();
+        try {
+            return callback.apply(connection);
+        } finally {
+            connection.close();
+        }
+    }
+
+    /**
+     * XRANGE 返回 [[id, [field, value, ...]], ...]
+     */
+    @SuppressWarnings("unchecked")
+    private static List<Entry> parseEntries(@Nullable Object reply) {
+        if (!(reply instanceof List)) {
+            return Collections.emptyList();
+        }
+        final List<Object> rawEntries = (List<Object>) reply;
+        final List<Entry> entries = new ArrayList<>(rawEntries.size());
+        for (Object rawEntry : rawEntries) {
+            final List<Object> entry = (List<Object>) rawEntry;
+            final String id = new String((byte[]) entry.get(0), StandardCharsets.UTF_8);
+            final List<Object> fields = (List<Object>) entry.get(1);
+            byte[] message = null;
+            for (int i = 0; i + 1 < fields.size(); i += 2) {
+                if ("m".equals(new String((byte[]) fields.get(i), StandardCharsets.UTF_8))) {
+                    message = (byte[]) fields.get(i + 1);
+                }
+            }
+            entries.add(new Entry(id, message));
+        }
+        return entries;
+    }
+
+    /**
+     * 一条失效日志
+     */
+    public static class Entry {
+        private final String id;
+        @Nullable
+        private final byte[] message;
+
+        Entry(String id, @Nullable byte[] message) {
+            this.id = id;
+            this.message = message;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        @Nullable
+        public byte[] getMessage() {
+            return message;
+        }
+    }
+}
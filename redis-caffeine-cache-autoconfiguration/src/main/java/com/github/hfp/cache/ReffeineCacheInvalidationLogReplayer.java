@@ -0,0 +1,274 @@
+package com.github.hfp.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.util.Assert;
+
+/**
+ * 订阅断开重连后通过失效日志补齐错过的同步消息
+ * <p>
+ * 1. 订阅正常时定期读取失效日志的最新 ID, 同时向本节点的标记通道({@link #getMarkerChannel()})发布一条标记,
+ * 通过同一个订阅连接收到这条标记后才把这个 ID 作为消费位置, 消费位置不会超过实际送达的消息
+ * 2. 标记在下一个间隔内没有送达, 或者监听容器的订阅出错({@link #connectionLost()})时认为订阅断开
+ * 3. 断开后每个间隔发布一条新标记, 再从消费位置(往前留一段余量)重放日志, 逐个清除本地缓存;
+ * 直到重放前发布的标记通过订阅送达(订阅已经恢复, 之后的消息都能直接收到)才结束补齐, 否则下一个间隔继续重放
+ * 4. 消费位置已经被 Stream 裁剪掉(落后超过保留窗口)时才清空全部本地缓存
+ */
+public class ReffeineCacheInvalidationLogReplayer implements MessageListener, InitializingBean, DisposableBean {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+    private static final int REPLAY_BATCH_SIZE = 500;
+
+    private final ReffeineCacheInvalidationLog invalidationLog;
+    private final ReffeineCacheMessageListener messageListener;
+    private final ReffeineCacheManager reffeineCacheManager;
+    /**
+     * 记录消费位置的间隔, 同时也是等待标记送达的时间
+     */
+    private long checkpointIntervalMillis = 1000;
+    /**
+     * 重放时从消费位置往前多读的时间, 覆盖 Redis Cluster 下不同节点转发的消息和标记之间的乱序
+     */
+    private long safetyMarginMillis = 1000;
+    private ScheduledExecutorService scheduler;
+    /**
+     * 已经确认收到(或重放)的最新日志 ID, {@literal null} 表示未知
+     */
+    private volatile String offset;
+    /**
+     * 订阅是否断开过且尚未确认恢复
+     */
+    private volatile boolean gap;
+    /**
+     * 订阅断开的次数, 补齐期间再次断开时不能用之前的标记确认恢复
+     */
+    private final AtomicLong losses = new AtomicLong();
+    /**
+     * 本节点的标记通道
+     */
+    private final String markerChannel;
+    /**
+     * 最近一次发布的标记序号, 只在调度线程访问
+     */
+    private long markerSequence;
+    /**
+     * 最近一次发布标记时读取的日志 ID, 收到这条标记后成为消费位置; 补齐时为 {@literal null}
+     */
+    private String pendingOffset;
+    /**
+     * 补齐时最近一次发布标记前的断开次数, -1 表示还没有发布
+     */
+    private long catchUpLosses = -1;
+    /**
+     * 已经收到的最大标记序号
+     */
+    private volatile long deliveredSequence = -1;
+
+    public ReffeineCacheInvalidationLogReplayer(ReffeineCacheInvalidationLog invalidationLog,
+                                                ReffeineCacheMessageListener messageListener,
+                                                ReffeineCacheManager reffeineCacheManager) {
+        Assert.notNull(invalidationLog, "InvalidationLog must not be null!");
+        Assert.notNull(messageListener, "MessageListener must not be null!");
+        Assert.notNull(reffeineCacheManager, "ReffeineCacheManager must not be null!");
+
+        this.invalidationLog = invalidationLog;
+        this.messageListener = messageListener;
+        this.reffeineCacheManager = reffeineCacheManager;
+        this.markerChannel = new String(invalidationLog.getStreamKey(), StandardCharsets.UTF_8) + ":marker:"
+                + UUID.randomUUID();
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ReffeineCacheLogReplayer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::tick);
+        scheduler.scheduleWithFixedDelay(this::tick, checkpointIntervalMillis, checkpointIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * 订阅断开, 停止推进消费位置, 直到重新收到标记
+     */
+    public void connectionLost() {
+        if (!gap) {
+            LOGGER.warn("ReffeineCache sync subscription lost at offset " + offset);
+        }
+        losses.incrementAndGet();
+        gap = true;
+    }
+
+    /**
+     * 订阅可能已经恢复, 提前补齐一次, 是否真正恢复仍以标记送达为准
+     */
+    public void connectionRestored() {
+        if (gap && scheduler != null) {
+            scheduler.execute(this::tick);
+        }
+    }
+
+    /**
+     * 收到本节点发布的标记
+     */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        final byte[] body = message.getBody();
+        if (body == null || body.length != Long.BYTES) {
+            return;
+        }
+        final long sequence = ByteBuffer.wrap(body).getLong();
+        if (sequence > deliveredSequence) {
+            deliveredSequence = sequence;
+        }
+    }
+
+    public String getOffset() {
+        return offset;
+    }
+
+    /**
+     * 订阅是否断开且尚未确认恢复
+     */
+    public boolean isCatchingUp() {
+        return gap;
+    }
+
+    /**
+     * 标记通道, 需要和同步通道订阅在同一个连接上
+     */
+    public String getMarkerChannel() {
+        return markerChannel;
+    }
+
+    public void setCheckpointIntervalMillis(long checkpointIntervalMillis) {
+        Assert.isTrue(checkpointIntervalMillis > 0, "CheckpointIntervalMillis must be greater than 0!");
+        this.checkpointIntervalMillis = checkpointIntervalMillis;
+    }
+
+    public void setSafetyMarginMillis(long safetyMarginMillis) {
+        Assert.isTrue(safetyMarginMillis >= 0, "SafetyMarginMillis must not be negative!");
+        this.safetyMarginMillis = safetyMarginMillis;
+    }
+
+    /**
+     * 只在调度线程执行
+     */
+    void tick() {
+        try {
+            if (gap) {
+                catchUp();
+            } else {
+                checkpoint();
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.warn("ReffeineCache invalidation log unavailable, retry later: " + ex.getMessage());
+        }
+    }
+
+    private void checkpoint() {
+        final String pending = pendingOffset;
+        if (pending != null) {
+            if (deliveredSequence >= markerSequence) {
+                // 上一次的标记已经送达, 它之前的同步消息也都已经送达
+                offset = pending;
+            } else if (deliveredSequence >= 0) {
+                // 订阅建立之后标记没有按时送达
+                connectionLost();
+                return;
+            }
+        }
+        pendingOffset = publishMarker();
+    }
+
+    private void catchUp() {
+        if (catchUpLosses >= 0 && catchUpLosses == losses.get() && deliveredSequence >= markerSequence) {
+            // 重放前发布的标记已经送达: 在它之前发布的消息已经重放, 之后的消息可以直接收到
+            gap = false;
+            catchUpLosses = -1;
+            LOGGER.info("ReffeineCache sync subscription restored at offset " + offset);
+            return;
+        }
+
+        // 先发布标记再读取日志, 标记送达时两者之间没有遗漏
+        catchUpLosses = losses.get();
+        pendingOffset = null;
+        publishMarker();
+
+        final String from = offset;
+        final String firstId = invalidationLog.firstId();
+        if (from == null || (firstId != null && !ReffeineCacheInvalidationLog.INITIAL_ID.equals(from)
+                && ReffeineCacheInvalidationLog.compareIds(firstId, from) > 0)) {
+            LOGGER.warn("ReffeineCache offset " + from + " is behind invalidation log window " + firstId
+                    + ", clear all local caches");
+            final String lastId = invalidationLog.lastId();
+            clearAllLocal();
+            offset = lastId == null ? ReffeineCacheInvalidationLog.INITIAL_ID : lastId;
+            return;
+        }
+
+        String startId = ReffeineCacheInvalidationLog.INITIAL_ID.equals(from) ? from
+                : ReffeineCacheInvalidationLog.idAt(ReffeineCacheInvalidationLog.millisOf(from) - safetyMarginMillis);
+        String lastReplayedId = from;
+        int replayed = 0;
+        while (true) {
+            final List<ReffeineCacheInvalidationLog.Entry> entries =
+                    invalidationLog.range(startId, REPLAY_BATCH_SIZE);
+            for (ReffeineCacheInvalidationLog.Entry entry : entries) {
+                if (entry.getMessage() != null) {
+                    messageListener.handleMessage(entry.getMessage());
+                }
+                lastReplayedId = entry.getId();
+            }
+            replayed += entries.size();
+            if (entries.size() < REPLAY_BATCH_SIZE) {
+                break;
+            }
+            startId = ReffeineCacheInvalidationLog.nextId(lastReplayedId);
+        }
+        offset = lastReplayedId;
+        if (replayed > 0) {
+            LOGGER.info("ReffeineCache replayed " + replayed + " invalidations since " + from);
+        }
+    }
+
+    /**
+     * 发布一条新标记, 返回发布时最新的日志 ID
+     */
+    private String publishMarker() {
+        final long sequence = markerSequence + 1;
+        final String lastId = invalidationLog.lastIdAndMark(markerChannel.getBytes(StandardCharsets.UTF_8),
+                ByteBuffer.allocate(Long.BYTES).putLong(sequence).array());
+        markerSequence = sequence;
+        return lastId == null ? ReffeineCacheInvalidationLog.INITIAL_ID : lastId;
+    }
+
+    private void clearAllLocal() {
+        for (String name : reffeineCacheManager.getCacheNames()) {
+            final ReffeineCache cache = reffeineCacheManager.getExistingCache(name);
+            if (cache != null) {
+                cache.clearLocal(null);
+            }
+        }
+    }
+}
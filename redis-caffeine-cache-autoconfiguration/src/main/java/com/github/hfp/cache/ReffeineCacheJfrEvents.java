@@ -0,0 +1,171 @@
+package com.github.hfp.cache;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR 事件定义, 只由 {@link ReffeineCacheEvents} 在 jdk.jfr 存在时加载
+ * <p>
+ * 所有事件默认关闭, 在 .jfc 中按事件名单独开启, 例如:
+ * {@code <event name="com.github.hfp.cache.Lookup"><setting name="enabled">true</setting></event>}
+ */
+final class ReffeineCacheJfrEvents {
+
+    private ReffeineCacheJfrEvents() {
+    }
+
+    static Object begin(ReffeineCacheEvents.Type type) {
+        final CacheEvent event = create(type);
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void commit(Object event, String cacheName, int keyHash, int size, String detail) {
+        final CacheEvent cacheEvent = (CacheEvent) event;
+        cacheEvent.end();
+        if (!cacheEvent.shouldCommit()) {
+            return;
+        }
+        cacheEvent.cacheName = cacheName;
+        cacheEvent.keyHash = keyHash;
+        cacheEvent.apply(size, detail);
+        cacheEvent.commit();
+    }
+
+    private static CacheEvent create(ReffeineCacheEvents.Type type) {
+        switch (type) {
+            case LOOKUP:
+                return new LookupEvent();
+            case PUT:
+                return new PutEvent();
+            case EVICT:
+                return new EvictEvent();
+            case CLEAR:
+                return new ClearEvent();
+            case REDIS_COMMAND:
+                return new RedisCommandEvent();
+            case LOCK_WAIT:
+                return new LockWaitEvent();
+            case RESIZE:
+                return new ResizeEvent();
+            default:
+                return new ListenerApplyEvent();
+        }
+    }
+
+    @Category("ReffeineCache")
+    @Enabled(false)
+    @StackTrace(false)
+    abstract static class CacheEvent extends Event {
+        @Label("Cache Name")
+        String cacheName;
+        @Label("Key Hash")
+        int keyHash;
+
+        abstract void apply(int size, String detail);
+    }
+
+    @Name("com.github.hfp.cache.Lookup")
+    @Label("Cache Lookup")
+    static class LookupEvent extends CacheEvent {
+        @Label("Tier")
+        String tier;
+        @Label("Payload Size")
+        @DataAmount
+        int payloadSize;
+
+        @Override
+        void apply(int size, String detail) {
+            this.payloadSize = size;
+            this.tier = detail;
+        }
+    }
+
+    @Name("com.github.hfp.cache.Put")
+    @Label("Cache Put")
+    static class PutEvent extends CacheEvent {
+        @Label("Payload Size")
+        @DataAmount
+        int payloadSize;
+
+        @Override
+        void apply(int size, String detail) {
+            this.payloadSize = size;
+        }
+    }
+
+    @Name("com.github.hfp.cache.Evict")
+    @Label("Cache Evict")
+    static class EvictEvent extends CacheEvent {
+        @Override
+        void apply(int size, String detail) {
+        }
+    }
+
+    @Name("com.github.hfp.cache.Clear")
+    @Label("Cache Clear")
+    static class ClearEvent extends CacheEvent {
+        @Override
+        void apply(int size, String detail) {
+        }
+    }
+
+    @Name("com.github.hfp.cache.RedisCommand")
+    @Label("Redis Command")
+    static class RedisCommandEvent extends CacheEvent {
+        @Label("Command")
+        String command;
+        @Label("Payload Size")
+        @DataAmount
+        int payloadSize;
+
+        @Override
+        void apply(int size, String detail) {
+            this.payloadSize = size;
+            this.command = detail;
+        }
+    }
+
+    @Name("com.github.hfp.cache.LockWait")
+    @Label("Cache Lock Wait")
+    static class LockWaitEvent extends CacheEvent {
+        @Override
+        void apply(int size, String detail) {
+        }
+    }
+
+    @Name("com.github.hfp.cache.ListenerApply")
+    @Label("Sync Message Apply")
+    static class ListenerApplyEvent extends CacheEvent {
+        @Label("Keys")
+        int keys;
+
+        @Override
+        void apply(int size, String detail) {
+            this.keys = size;
+        }
+    }
+
+    @Name("com.github.hfp.cache.Resize")
+    @Label("Local Cache Resize")
+    static class ResizeEvent extends CacheEvent {
+        @Label("Maximum")
+        int maximum;
+        @Label("Reason")
+        String reason;
+
+        @Override
+        void apply(int size, String detail) {
+            this.maximum = size;
+            this.reason = detail;
+        }
+    }
+}
@@ -1,17 +1,36 @@
 package com.github.hfp.cache;
 
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
 import com.github.hfp.config.ReffeineCacheConfiguration;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.springframework.cache.Cache;
 import org.springframework.cache.support.AbstractCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 
+import java.security.SecureRandom;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.regex.Pattern;
 
 public class ReffeineCacheManager extends AbstractCacheManager {
+    private final Log LOGGER = LogFactory.getLog(getClass());
     private static final Pattern NAME_TTL_PATTERN = Pattern.compile("#L(\\d+\\w)#R(\\d+\\w)");
+    private static final SecureRandom NODE_ID_GENERATOR = new SecureRandom();
 
     /**
      * Caffeine 缓存builder, 通过 ReffeineCacheConfiguration#caffeineSpec 初始化
@@ -33,6 +52,27 @@ public class ReffeineCacheManager extends AbstractCacheManager {
      * 是否允许新建缓存, {@literal false} 的时候, 如果 initialCacheConfig 没有配置则无法创建缓存
      */
     private final boolean allowInFlightCacheCreation;
+    /**
+     * 节点 ID, 每个 CacheManager 实例随机生成, 用于识别自己发出的同步消息(同一台机器多个进程也不会冲突)
+     */
+    private final long nodeId = generateNodeId();
+    /**
+     * 启动时预热的热点 Key 数量(每个初始化缓存), 0 表示不预热
+     */
+    private int warmUpTopN = 0;
+    /**
+     * 启动预热的最长时间, 超时后不再等待
+     */
+    private Duration warmUpBudget = Duration.ofSeconds(3);
+    /**
+     * 缓存创建监听, 用于按需订阅缓存的同步通道
+     */
+    private final List<Consumer<ReffeineCache>> cacheCreationListeners = new CopyOnWriteArrayList<>();
+    /**
+     * 缓存 retrieve 异步读取 Redis 的线程池, 为 {@literal null} 时使用 {@link ReffeineCache} 的默认值
+     */
+    @Nullable
+    private Executor asyncExecutor;
 
     public ReffeineCacheManager(ReffeineCacheWriter reffeineCacheWriter,
                                 ReffeineCacheConfiguration defaultCacheConfig,
@@ -85,17 +125,138 @@ public class ReffeineCacheManager extends AbstractCacheManager {
                 initialCacheConfig.getOrDefault(name, defaultCacheConfig)) : null;
     }
 
+    @Override
+    public void afterPropertiesSet() {
+        super.afterPropertiesSet();
+        if (warmUpTopN > 0 && !initialCacheConfig.isEmpty()) {
+            warmUp(initialCacheConfig.keySet(), warmUpTopN, warmUpBudget);
+        }
+    }
+
+    /**
+     * 从 Redis 热点清单并行预热本地缓存, 最多等待 budget, 超时的缓存放弃预热
+     *
+     * @return 写入本地缓存的数量
+     */
+    public int warmUp(Collection<String> cacheNames, int topN, Duration budget) {
+        Assert.notNull(cacheNames, "CacheNames must not be null!");
+        Assert.notNull(budget, "Budget must not be null!");
+
+        final List<Callable<Integer>> tasks = new ArrayList<>(cacheNames.size());
+        for (String name : cacheNames) {
+            final ReffeineCache cache = getExistingCache(name);
+            if (cache != null) {
+                tasks.add(() -> cache.warmUp(topN));
+            }
+        }
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+
+        final long start = System.currentTimeMillis();
+        final AtomicInteger index = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(tasks.size(), 4), runnable -> {
+            Thread thread = new Thread(runnable, "ReffeineCacheWarmUp-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        int loaded = 0;
+        try {
+            for (Future<Integer> future : executor.invokeAll(tasks, budget.toMillis(), TimeUnit.MILLISECONDS)) {
+                try {
+                    loaded += future.get();
+                } catch (CancellationException e) {
+                    LOGGER.warn("ReffeineCache warm up exceeded " + budget.toMillis() + "ms");
+                } catch (ExecutionException e) {
+                    LOGGER.warn("ReffeineCache warm up error: " + e.getCause().getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        LOGGER.info("ReffeineCache warmed up " + loaded + " keys for " + tasks.size() + " caches in "
+                + (System.currentTimeMillis() - start) + "ms");
+        return loaded;
+    }
+
+    @Override
+    protected Cache decorateCache(Cache cache) {
+        if (cache instanceof ReffeineCache) {
+            for (Consumer<ReffeineCache> listener : cacheCreationListeners) {
+                listener.accept((ReffeineCache) cache);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * 查找已经存在的缓存, 和 {@link #getCache(String)} 不同, 缓存不存在时不会创建
+     */
+    @Nullable
+    public ReffeineCache getExistingCache(String name) {
+        final Cache cache = lookupCache(name);
+        return cache instanceof ReffeineCache ? (ReffeineCache) cache : null;
+    }
+
+    /**
+     * 运行时修改已经存在的缓存的本地缓存容量和过期时间, 参考 {@link ReffeineCache#reconfigure(CaffeineSpec, boolean)}
+     *
+     * @return 缓存不存在时返回 false
+     */
+    public boolean reconfigure(String cacheName, CaffeineSpec spec, boolean broadcast) {
+        final ReffeineCache cache = getExistingCache(cacheName);
+        if (cache == null) {
+            return false;
+        }
+        cache.reconfigure(spec, broadcast);
+        return true;
+    }
+
+    /**
+     * 注册缓存创建监听, 注册时已经存在的缓存会立即回调一次
+     * <p>
+     * 并发创建缓存时同一个缓存可能回调两次, 监听需要是幂等的
+     */
+    public void addCacheCreationListener(Consumer<ReffeineCache> listener) {
+        Assert.notNull(listener, "Listener must not be null!");
+
+        cacheCreationListeners.add(listener);
+        for (String name : getCacheNames()) {
+            final ReffeineCache cache = getExistingCache(name);
+            if (cache != null) {
+                listener.accept(cache);
+            }
+        }
+    }
+
     private ReffeineCache createReffeineCache(String name, ReffeineCacheConfiguration configuration) {
         Caffeine<Object, Object> caffeine = caffeineBuilder;
+        ReffeineCacheExpiry expiry = null;
 
         // ttl by name
         configuration = configuration.spelName(name);
 
-        if (null != configuration.getCaffeineSpec()) {
-            caffeine = Caffeine.from(configuration.getCaffeineSpec());
+        if (!configuration.getTiering().hasLocalTier()) {
+            // 只使用 Redis, 本地缓存不保存任何缓存项
+            caffeine = Caffeine.newBuilder().maximumSize(0);
+        } else if (null != configuration.getCaffeineSpec()) {
+            // 本地缓存过期时间不超过 Redis 剩余 TTL
+            expiry = new ReffeineCacheExpiry(ReffeineCacheExpiry.expireAfterWriteNanosOf(
+                    configuration.getCaffeineSpec()));
+            caffeine = ReffeineCacheExpiry.builderOf(configuration.getCaffeineSpec(), expiry);
         }
 
-        return new ReffeineCache(isAllowNullValue(), name, reffeineCacheWriter, configuration, caffeine.build());
+        final ReffeineCache cache = new ReffeineCache(isAllowNullValue(), name, reffeineCacheWriter, configuration,
+                caffeine.build(), nodeId);
+        if (expiry != null) {
+            cache.setLocalExpiry(expiry);
+        }
+        if (asyncExecutor != null) {
+            cache.setAsyncExecutor(asyncExecutor);
+        }
+        return cache;
     }
 
     public Caffeine<Object, Object> getCaffeineBuilder() {
@@ -107,6 +268,37 @@ public class ReffeineCacheManager extends AbstractCacheManager {
         this.caffeineBuilder = caffeineBuilder;
     }
 
+    /**
+     * 启动时预热初始化缓存
+     *
+     * @param topN   每个缓存预热的热点 Key 数量, 0 表示不预热
+     * @param budget 预热最长时间
+     */
+    public void setWarmUp(int topN, Duration budget) {
+        Assert.isTrue(topN >= 0, "TopN must not be negative!");
+        Assert.notNull(budget, "Budget must not be null!");
+        this.warmUpTopN = topN;
+        this.warmUpBudget = budget;
+    }
+
+    /**
+     * 缓存 retrieve 异步读取 Redis 的线程池, 只对之后创建的缓存生效
+     */
+    public void setAsyncExecutor(@Nullable Executor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * 生成新的节点 ID
+     */
+    static long generateNodeId() {
+        return NODE_ID_GENERATOR.nextLong();
+    }
+
     public ReffeineCacheWriter getReffeineCacheWriter() {
         return reffeineCacheWriter;
     }
@@ -132,6 +324,9 @@ public class ReffeineCacheManager extends AbstractCacheManager {
         private Map<String, ReffeineCacheConfiguration> initialCacheConfig = new LinkedHashMap<>();
         private boolean allowInFlightCacheCreation = true;
         private String[] initialCacheNames;
+        private int warmUpTopN = 0;
+        private Duration warmUpBudget = Duration.ofSeconds(3);
+        private Executor asyncExecutor;
 
         private ReffeineCacheManagerBuilder(ReffeineCacheWriter reffeineCacheWriter) {
             this.reffeineCacheWriter = reffeineCacheWriter;
@@ -169,6 +364,17 @@ public class ReffeineCacheManager extends AbstractCacheManager {
             return this;
         }
 
+        public ReffeineCacheManagerBuilder warmUpOnStartup(int topN, Duration budget) {
+            this.warmUpTopN = topN;
+            this.warmUpBudget = budget;
+            return this;
+        }
+
+        public ReffeineCacheManagerBuilder asyncExecutor(Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
         public ReffeineCacheManager build() {
             Map<String, ReffeineCacheConfiguration> initConfigs = new LinkedHashMap<>();
             if (initialCacheNames != null && initialCacheNames.length > 0) {
@@ -181,8 +387,11 @@ public class ReffeineCacheManager extends AbstractCacheManager {
                 initConfigs.putAll(initialCacheConfig);
             }
 
-            return new ReffeineCacheManager(reffeineCacheWriter, defaultCacheConfig, initConfigs,
-                    allowInFlightCacheCreation);
+            final ReffeineCacheManager cacheManager = new ReffeineCacheManager(reffeineCacheWriter, defaultCacheConfig,
+                    initConfigs, allowInFlightCacheCreation);
+            cacheManager.setWarmUp(warmUpTopN, warmUpBudget);
+            cacheManager.setAsyncExecutor(asyncExecutor);
+            return cacheManager;
         }
     }
 }
@@ -21,16 +21,45 @@ public class ReffeineCacheMessage implements Serializable {
      */
     @Nullable
     private Object key;
+    /**
+     * 按标签清除时的标签, 此时 key 为 {@literal null}
+     */
+    @Nullable
+    private String tag;
+    /**
+     * 随消息发送的缓存值(带值版本), 为 {@literal null} 时只清除 Key
+     */
+    @Nullable
+    private byte[] value;
+    /**
+     * 运行时修改本地缓存时的 caffeineSpec, 此时 key 为 {@literal null}, 参考 {@link ReffeineCache#reconfigure}
+     */
+    @Nullable
+    private String spec;
     /**
      * 发起缓存同步的机器
      */
     @NonNull
     private String source;
+    /**
+     * 发起缓存同步的节点, 参考 {@link ReffeineCacheManager#getNodeId()}
+     */
+    private long nodeId;
+    /**
+     * 发布时间(毫秒)
+     */
+    private long timestamp;
 
     public ReffeineCacheMessage(String name, @Nullable Object key, String source) {
         this.name = name;
         this.key = key;
         this.source = source;
+        this.timestamp = System.currentTimeMillis();
+    }
+
+    public ReffeineCacheMessage(String name, @Nullable Object key, String source, long nodeId) {
+        this(name, key, source);
+        this.nodeId = nodeId;
     }
 
     public ReffeineCacheMessage() {
@@ -52,6 +81,30 @@ public class ReffeineCacheMessage implements Serializable {
         this.key = key;
     }
 
+    public String getTag() {
+        return tag;
+    }
+
+    public void setTag(String tag) {
+        this.tag = tag;
+    }
+
+    public byte[] getValue() {
+        return value;
+    }
+
+    public void setValue(byte[] value) {
+        this.value = value;
+    }
+
+    public String getSpec() {
+        return spec;
+    }
+
+    public void setSpec(String spec) {
+        this.spec = spec;
+    }
+
     public String getSource() {
         return source;
     }
@@ -59,4 +112,20 @@ public class ReffeineCacheMessage implements Serializable {
     public void setSource(String source) {
         this.source = source;
     }
+
+    public long getNodeId() {
+        return nodeId;
+    }
+
+    public void setNodeId(long nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public void setTimestamp(long timestamp) {
+        this.timestamp = timestamp;
+    }
 }
@@ -0,0 +1,128 @@
+package com.github.hfp.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.springframework.lang.Nullable;
+import org.springframework.util.SerializationUtils;
+
+/**
+ * 同步消息的二进制编码, 替代 Java 序列化
+ * <p>
+ * 格式: [版本 1B][节点 ID 8B][缓存名长度 2B][缓存名][来源长度 2B][来源][发布时间 8B][Key 类型 1B][Key 长度 4B][Key]([值长度 4B][值])
+ * <p>
+ * Key 类型为 KEY_TAG 时 Key 是标签(按标签清除); 旧版本节点会把标签当作 Key, 清除一个不存在的缓存 Key.
+ * Key 类型为 KEY_VALUE 时 Key 之后是缓存值; 旧版本节点只读取 Key, 按普通的清除处理.
+ * Key 类型为 KEY_SPEC 时 Key 是 caffeineSpec(修改本地缓存), 旧版本节点同样只清除一个不存在的缓存 Key
+ * <p>
+ * 节点 ID 和缓存名在固定位置, 监听端不解码就可以丢弃自己发出的消息和不属于本机缓存的消息;
+ * Java 序列化的消息(旧版本节点发出)仍然按 Java 序列化解码
+ */
+final class ReffeineCacheMessageCodec {
+    static final byte VERSION = 2;
+    private static final byte JAVA_SERIALIZATION_MAGIC = (byte) 0xAC;
+    private static final byte KEY_NONE = 0;
+    private static final byte KEY_STRING = 1;
+    private static final byte KEY_TAG = 2;
+    private static final byte KEY_VALUE = 3;
+    private static final byte KEY_SPEC = 4;
+    private static final int NODE_ID_OFFSET = 1;
+    private static final int NAME_LENGTH_OFFSET = NODE_ID_OFFSET + 8;
+    private static final int NAME_OFFSET = NAME_LENGTH_OFFSET + 2;
+
+    private ReffeineCacheMessageCodec() {
+    }
+
+    static byte[] encode(ReffeineCacheMessage message) {
+        final byte[] name = message.getName().getBytes(StandardCharsets.UTF_8);
+        final byte[] source = message.getSource().getBytes(StandardCharsets.UTF_8);
+        final byte keyType = message.getTag() != null ? KEY_TAG : message.getSpec() != null ? KEY_SPEC
+                : message.getKey() == null ? KEY_NONE : message.getValue() != null ? KEY_VALUE : KEY_STRING;
+        final byte[] key = keyType == KEY_TAG ? message.getTag().getBytes(StandardCharsets.UTF_8)
+                : keyType == KEY_SPEC ? message.getSpec().getBytes(StandardCharsets.UTF_8)
+                : keyType != KEY_NONE ? String.valueOf(message.getKey()).getBytes(StandardCharsets.UTF_8) : null;
+        final byte[] value = keyType == KEY_VALUE ? message.getValue() : null;
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1 + 8 + 2 + name.length + 2 + source.length + 8 + 1
+                + (key == null ? 0 : 4 + key.length) + (value == null ? 0 : 4 + value.length));
+        buffer.put(VERSION);
+        buffer.putLong(message.getNodeId());
+        buffer.putShort((short) name.length).put(name);
+        buffer.putShort((short) source.length).put(source);
+        buffer.putLong(message.getTimestamp());
+        buffer.put(keyType);
+        if (key != null) {
+            buffer.putInt(key.length).put(key);
+        }
+        if (value != null) {
+            buffer.putInt(value.length).put(value);
+        }
+        return buffer.array();
+    }
+
+    @Nullable
+    static ReffeineCacheMessage decode(byte[] body) {
+        if (!isBinary(body)) {
+            return body.length > 0 && body[0] == JAVA_SERIALIZATION_MAGIC
+                    ? (ReffeineCacheMessage) SerializationUtils.deserialize(body) : null;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(body, NAME_LENGTH_OFFSET, body.length - NAME_LENGTH_OFFSET);
+        final long nodeId = ByteBuffer.wrap(body, NODE_ID_OFFSET, 8).getLong();
+        final String name = readString(buffer, buffer.getShort());
+        final String source = readString(buffer, buffer.getShort());
+        final long timestamp = buffer.getLong();
+        final byte keyType = buffer.get();
+        final String key = keyType == KEY_NONE ? null : readString(buffer, buffer.getInt());
+        final ReffeineCacheMessage message = new ReffeineCacheMessage(name,
+                keyType == KEY_TAG || keyType == KEY_SPEC ? null : key, source);
+        if (keyType == KEY_TAG) {
+            message.setTag(key);
+        } else if (keyType == KEY_SPEC) {
+            message.setSpec(key);
+        } else if (keyType == KEY_VALUE) {
+            final byte[] value = new byte[buffer.getInt()];
+            buffer.get(value);
+            message.setValue(value);
+        }
+        message.setTimestamp(timestamp);
+        message.setNodeId(nodeId);
+        return message;
+    }
+
+    static boolean isBinary(byte[] body) {
+        return body.length > NAME_OFFSET && body[0] == VERSION;
+    }
+
+    /**
+     * 消息是否由 nodeId 发出, 只比较固定位置的 8 个字节
+     */
+    static boolean isFrom(byte[] body, long nodeId) {
+        long value = 0;
+        for (int i = NODE_ID_OFFSET; i < NODE_ID_OFFSET + 8; i++) {
+            value = (value << 8) | (body[i] & 0xFF);
+        }
+        return value == nodeId;
+    }
+
+    /**
+     * 消息的缓存名是否为 name(UTF-8), 只比较字节, 不解码
+     */
+    static boolean hasName(byte[] body, byte[] name) {
+        final int length = ((body[NAME_LENGTH_OFFSET] & 0xFF) << 8) | (body[NAME_LENGTH_OFFSET + 1] & 0xFF);
+        if (length != name.length || body.length < NAME_OFFSET + length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (body[NAME_OFFSET + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer buffer, int length) {
+        final String value = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+}
@@ -0,0 +1,252 @@
+package com.github.hfp.cache;
+
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.util.Assert;
+
+/**
+ * 同步消息分发, 按 缓存名 + Key 的 hash 分到固定数量的分片, 每个分片一个线程顺序处理
+ * <p>
+ * 1. 同一个 Key 的消息总是在同一个分片, 处理顺序与接收顺序一致
+ * 2. 分片线程一次取出队列中积压的消息, 同一个缓存的连续失效合并为一次 invalidateAll(keys)
+ * 3. 清空整个缓存的消息(key 为 {@literal null})投递到所有分片, 最后一个处理到它的分片执行一次清空,
+ * 此时所有分片中之前的消息都已经应用; 先处理到的分片不等待, 之后更新的本地缓存最多被多清除一次
+ * 4. JDK 21+ 可以使用虚拟线程
+ */
+public class ReffeineCacheMessageDispatcher implements DisposableBean {
+    private static final Log LOGGER = LogFactory.getLog(ReffeineCacheMessageDispatcher.class);
+    private static final int DEFAULT_QUEUE_CAPACITY = 100_000;
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private final ReffeineCacheManager reffeineCacheManager;
+    private final List<BlockingQueue<ReffeineCacheMessage>> stripes;
+    private final List<Thread> workers;
+    private volatile boolean running = true;
+
+    public ReffeineCacheMessageDispatcher(ReffeineCacheManager reffeineCacheManager, int stripes,
+                                          boolean virtualThreads) {
+        Assert.notNull(reffeineCacheManager, "ReffeineCacheManager must not be null!");
+        Assert.isTrue(stripes > 0, "Stripes must be greater than 0!");
+
+        this.reffeineCacheManager = reffeineCacheManager;
+        this.stripes = new ArrayList<>(stripes);
+        this.workers = new ArrayList<>(stripes);
+        final ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory() : platformThreadFactory();
+        for (int i = 0; i < stripes; i++) {
+            final BlockingQueue<ReffeineCacheMessage> queue = new ArrayBlockingQueue<>(DEFAULT_QUEUE_CAPACITY);
+            final Thread worker = threadFactory.newThread(() -> drain(queue));
+            this.stripes.add(queue);
+            this.workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * 投递消息, 不阻塞调用方(订阅线程); 分片队列满时直接清空该缓存的本地缓存, 修改本地缓存的消息直接应用
+     */
+    public void dispatch(ReffeineCacheMessage message) {
+        if (message.getKey() == null && message.getTag() == null && message.getSpec() == null) {
+            final StripedClear clear = new StripedClear(message, stripes.size());
+            for (BlockingQueue<ReffeineCacheMessage> stripe : stripes) {
+                // 队列满时已经直接清空, 视为这个分片已经处理到
+                if (!offer(stripe, clear)) {
+                    clear.arrive();
+                }
+            }
+            return;
+        }
+        // 按标签清除只删除本地缓存, 修改本地缓存不删除缓存项, 和其他分片的单 Key 失效不需要保证顺序
+        final Object routingKey = message.getTag() != null ? message.getTag()
+                : message.getSpec() != null ? message.getSpec() : message.getKey();
+        final int hash = message.getName().hashCode() * 31 + routingKey.hashCode();
+        offer(stripes.get((hash & Integer.MAX_VALUE) % stripes.size()), message);
+    }
+
+    /**
+     * 所有分片中等待处理的消息数量
+     */
+    public int getBacklog() {
+        int backlog = 0;
+        for (BlockingQueue<ReffeineCacheMessage> stripe : stripes) {
+            backlog += stripe.size();
+        }
+        return backlog;
+    }
+
+    @Override
+    public void destroy() {
+        running = false;
+        for (Thread worker : workers) {
+            worker.interrupt();
+        }
+    }
+
+    private boolean offer(BlockingQueue<ReffeineCacheMessage> stripe, ReffeineCacheMessage message) {
+        if (stripe.offer(message)) {
+            return true;
+        }
+        final ReffeineCache cache = lookupCache(message.getName());
+        if (message.getSpec() != null) {
+            // 修改本地缓存不能用清空代替, 直接在当前线程应用
+            LOGGER.warn("ReffeineCache dispatcher queue is full, reconfigure local cache " + message.getName()
+                    + " inline");
+            if (cache != null) {
+                cache.reconfigureLocal(CaffeineSpec.parse(message.getSpec()));
+            }
+            return false;
+        }
+        LOGGER.warn("ReffeineCache dispatcher queue is full, clear local cache " + message.getName());
+        if (cache != null) {
+            cache.clearLocal(null);
+        }
+        return false;
+    }
+
+    private void drain(BlockingQueue<ReffeineCacheMessage> stripe) {
+        final List<ReffeineCacheMessage> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                batch.add(stripe.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            stripe.drainTo(batch, MAX_BATCH_SIZE - 1);
+            try {
+                apply(batch);
+            } catch (RuntimeException ex) {
+                LOGGER.error("ReffeineCache apply sync messages error", ex);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * 按顺序应用一批消息, 同一个缓存的连续单 Key 失效合并为一次 invalidateAll, 按标签清除通过本地标签索引查找 Key,
+     * 带值的消息先应用之前的失效, 再按版本替换本地缓存
+     */
+    private void apply(List<ReffeineCacheMessage> batch) {
+        String pendingName = null;
+        final List<String> pendingKeys = new ArrayList<>();
+        for (ReffeineCacheMessage message : batch) {
+            if (!message.getName().equals(pendingName)) {
+                flush(pendingName, pendingKeys);
+                pendingName = message.getName();
+            }
+            if (message.getTag() != null) {
+                flush(pendingName, pendingKeys);
+                final ReffeineCache cache = lookupCache(message.getName());
+                if (cache != null) {
+                    final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.LISTENER_APPLY);
+                    final int invalidated = cache.invalidateTag(message.getTag());
+                    ReffeineCacheEvents.commit(event, message.getName(), null, invalidated, null);
+                }
+            } else if (message.getSpec() != null) {
+                flush(pendingName, pendingKeys);
+                final ReffeineCache cache = lookupCache(message.getName());
+                if (cache != null) {
+                    cache.reconfigureLocal(CaffeineSpec.parse(message.getSpec()));
+                }
+            } else if (message.getValue() != null) {
+                flush(pendingName, pendingKeys);
+                final ReffeineCache cache = lookupCache(message.getName());
+                if (cache != null) {
+                    final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.LISTENER_APPLY);
+                    cache.updateLocal((String) message.getKey(), message.getValue());
+                    ReffeineCacheEvents.commit(event, message.getName(), message.getKey(), 1, null);
+                }
+            } else if (message.getKey() == null) {
+                if (message instanceof StripedClear) {
+                    // 先应用本分片之前的失效再计数, 最后一个分片清空时所有分片之前的消息都已经应用
+                    flush(pendingName, pendingKeys);
+                    if (!((StripedClear) message).arrive()) {
+                        continue;
+                    }
+                }
+                pendingKeys.clear();
+                final ReffeineCache cache = lookupCache(message.getName());
+                if (cache != null) {
+                    final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.LISTENER_APPLY);
+                    cache.clearLocal(null);
+                    ReffeineCacheEvents.commit(event, message.getName(), null, 0, null);
+                }
+            } else {
+                pendingKeys.add((String) message.getKey());
+            }
+        }
+        flush(pendingName, pendingKeys);
+    }
+
+    private void flush(String name, List<String> keys) {
+        if (name == null || keys.isEmpty()) {
+            return;
+        }
+        final ReffeineCache cache = lookupCache(name);
+        if (cache != null) {
+            LOGGER.debug("ReffeineCache start clear local cache " + name + " for " + keys.size() + " keys");
+            final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.LISTENER_APPLY);
+            cache.invalidateLocal(keys);
+            ReffeineCacheEvents.commit(event, name, keys.size() == 1 ? keys.get(0) : null, keys.size(), null);
+        }
+        keys.clear();
+    }
+
+    private ReffeineCache lookupCache(String name) {
+        return reffeineCacheManager.getExistingCache(name);
+    }
+
+    /**
+     * 投递到所有分片的清空消息, 记录还没有处理到它的分片数量
+     */
+    private static final class StripedClear extends ReffeineCacheMessage {
+        private static final long serialVersionUID = 1L;
+        private final AtomicInteger pending;
+
+        StripedClear(ReffeineCacheMessage message, int stripes) {
+            super(message.getName(), null, message.getSource(), message.getNodeId());
+            setTimestamp(message.getTimestamp());
+            this.pending = new AtomicInteger(stripes);
+        }
+
+        /**
+         * 当前分片处理到这条消息, 返回是否为最后一个分片
+         */
+        boolean arrive() {
+            return pending.decrementAndGet() == 0;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory() {
+        final AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "ReffeineCacheDispatcher-" + index.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Thread.ofVirtual().name(prefix, 0).factory(), 低版本 JDK 退化为普通线程
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Method name = builderClass.getMethod("name", String.class, long.class);
+            builder = name.invoke(builder, "ReffeineCacheDispatcher-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            LOGGER.warn("Virtual threads are not supported on this JDK, fall back to platform threads");
+            return platformThreadFactory();
+        }
+    }
+}
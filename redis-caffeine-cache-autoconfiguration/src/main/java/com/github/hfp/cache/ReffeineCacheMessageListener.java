@@ -1,19 +1,50 @@
 package com.github.hfp.cache;
 
-import com.github.hfp.util.IPUtil;
-import java.util.Objects;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
-import org.springframework.util.SerializationUtils;
+import org.springframework.lang.Nullable;
 
 public class ReffeineCacheMessageListener implements MessageListener {
     private final Log LOGGER = LogFactory.getLog(getClass());
     private ReffeineCacheManager reffeineCacheManager;
+    /**
+     * 消息分发器, 为 {@literal null} 时在订阅线程直接处理
+     */
+    @Nullable
+    private final ReffeineCacheMessageDispatcher dispatcher;
+    /**
+     * 本机已经创建的缓存名(UTF-8), 写时复制; 不属于这些缓存的消息不解码直接丢弃
+     */
+    private volatile byte[][] hostedNames = new byte[0][];
+    /**
+     * 本机节点 ID, 消息的节点 ID 相同时为自己发出的消息
+     */
+    private final long nodeId;
+    /**
+     * 最近一条同步消息从发布到接收的延迟(毫秒), 还没有收到消息时为 -1; 依赖节点之间的时钟同步
+     */
+    private volatile long lastMessageLagMillis = -1L;
+    /**
+     * 上次查看之后的最大延迟(毫秒)
+     */
+    private final LongAccumulator maxMessageLagMillis = new LongAccumulator(Math::max, -1L);
 
     public ReffeineCacheMessageListener(ReffeineCacheManager reffeineCacheManager) {
+        this(reffeineCacheManager, null);
+    }
+
+    public ReffeineCacheMessageListener(ReffeineCacheManager reffeineCacheManager,
+                                        @Nullable ReffeineCacheMessageDispatcher dispatcher) {
         this.reffeineCacheManager = reffeineCacheManager;
+        this.dispatcher = dispatcher;
+        this.nodeId = reffeineCacheManager.getNodeId();
+        reffeineCacheManager.addCacheCreationListener(this::host);
     }
 
     /**
@@ -23,22 +54,103 @@ public class ReffeineCacheMessageListener implements MessageListener {
      */
     @Override
     public void onMessage(Message message, byte[] pattern) {
-        ReffeineCacheMessage reffeineCacheMessage =
-                (ReffeineCacheMessage) SerializationUtils.deserialize(message.getBody());
+        handleMessage(message.getBody());
+    }
+
+    /**
+     * 处理同步消息, Pub/Sub 和失效日志补齐共用
+     *
+     * @param body {@link ReffeineCacheMessageCodec} 编码的 {@link ReffeineCacheMessage}
+     */
+    void handleMessage(byte[] body) {
+        if (ReffeineCacheMessageCodec.isBinary(body)) {
+            if (ReffeineCacheMessageCodec.isFrom(body, nodeId)) {
+                LOGGER.debug("ReffeineCache onMessage warning, skip own message");
+                return;
+            }
+            if (!isHosted(body)) {
+                return;
+            }
+        }
+
+        ReffeineCacheMessage reffeineCacheMessage = ReffeineCacheMessageCodec.decode(body);
         if (reffeineCacheMessage == null) {
             LOGGER.warn("ReffeineCache onMessage error, reffeineCacheMessage is null");
             return;
         }
+        recordLag(reffeineCacheMessage.getTimestamp());
 
-        if (Objects.equals(reffeineCacheMessage.getSource(), IPUtil.getIP())) {
-            LOGGER.debug("ReffeineCache onMessage warning, skip own message");
+        if (dispatcher != null) {
+            dispatcher.dispatch(reffeineCacheMessage);
             return;
         }
 
-        final ReffeineCache cache = (ReffeineCache) reffeineCacheManager.getCache(reffeineCacheMessage.getName());
-        if (cache != null) {
+        final ReffeineCache cache = reffeineCacheManager.getExistingCache(reffeineCacheMessage.getName());
+        if (cache != null && reffeineCacheMessage.getTag() != null) {
+            LOGGER.info("ReffeineCache start clear local cache for tag " + reffeineCacheMessage.getTag());
+            final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.LISTENER_APPLY);
+            final int invalidated = cache.invalidateTag(reffeineCacheMessage.getTag());
+            ReffeineCacheEvents.commit(event, cache.getName(), null, invalidated, null);
+        } else if (cache != null && reffeineCacheMessage.getSpec() != null) {
+            cache.reconfigureLocal(CaffeineSpec.parse(reffeineCacheMessage.getSpec()));
+        } else if (cache != null && reffeineCacheMessage.getValue() != null) {
+            LOGGER.info("ReffeineCache start update local cache for key " + reffeineCacheMessage.getKey());
+            final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.LISTENER_APPLY);
+            cache.updateLocal((String) reffeineCacheMessage.getKey(), reffeineCacheMessage.getValue());
+            ReffeineCacheEvents.commit(event, cache.getName(), reffeineCacheMessage.getKey(), 1, null);
+        } else if (cache != null) {
             LOGGER.info("ReffeineCache start clear local cache for key " + reffeineCacheMessage.getKey());
+            final Object event = ReffeineCacheEvents.begin(ReffeineCacheEvents.Type.LISTENER_APPLY);
             cache.clearLocal((String) reffeineCacheMessage.getKey());
+            ReffeineCacheEvents.commit(event, cache.getName(), reffeineCacheMessage.getKey(),
+                    reffeineCacheMessage.getKey() == null ? 0 : 1, null);
+        }
+    }
+
+    /**
+     * 最近一条同步消息的延迟(毫秒), 还没有收到消息时返回 -1
+     */
+    public long getLastMessageLagMillis() {
+        return lastMessageLagMillis;
+    }
+
+    /**
+     * 上次调用之后收到的同步消息的最大延迟(毫秒), 之后重新统计; 期间没有收到消息时返回 -1
+     */
+    public long getMaxMessageLagMillisThenReset() {
+        return maxMessageLagMillis.getThenReset();
+    }
+
+    /**
+     * 旧版本节点发出的 Java 序列化消息没有发送时间(为 0), 不计入延迟
+     */
+    private void recordLag(long timestamp) {
+        if (timestamp <= 0) {
+            return;
+        }
+        final long lag = Math.max(System.currentTimeMillis() - timestamp, 0L);
+        lastMessageLagMillis = lag;
+        maxMessageLagMillis.accumulate(lag);
+    }
+
+    private boolean isHosted(byte[] body) {
+        for (byte[] name : hostedNames) {
+            if (ReffeineCacheMessageCodec.hasName(body, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void host(ReffeineCache cache) {
+        final byte[] name = cache.getName().getBytes(StandardCharsets.UTF_8);
+        for (byte[] hostedName : hostedNames) {
+            if (Arrays.equals(hostedName, name)) {
+                return;
+            }
         }
+        final byte[][] names = Arrays.copyOf(hostedNames, hostedNames.length + 1);
+        names[hostedNames.length] = name;
+        hostedNames = names;
     }
 }
@@ -0,0 +1,260 @@
+package com.github.hfp.cache;
+
+import java.nio.charset.StandardCharsets;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.util.Assert;
+
+/**
+ * 服务端 Lua 脚本, 首次执行时 SCRIPT LOAD, 之后通过 EVALSHA 调用
+ * <p>
+ * Redis 重启或 SCRIPT FLUSH 之后 EVALSHA 会返回 NOSCRIPT, 此时退化为一次 EVAL, EVAL 会把脚本重新缓存到服务端
+ */
+final class ReffeineCacheScript {
+
+    /**
+     * SET(可选 PX) + PUBLISH(开启失效日志时同时 XADD)
+     * KEYS[1] 缓存 Key, ARGV[1] 缓存值, ARGV[2] 过期毫秒数(<=0 不过期), ARGV[3] 同步 topic, ARGV[4] 同步消息,
+     * KEYS[2] 失效日志 Stream(可选), ARGV[5] Stream 最大长度
+     */
+    static final ReffeineCacheScript PUT_AND_SYNC = new ReffeineCacheScript(
+            "if tonumber(ARGV[2]) > 0 then\n" +
+            "  redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])\n" +
+            "else\n" +
+            "  redis.call('SET', KEYS[1], ARGV[1])\n" +
+            "end\n" +
+            publishAndLog(3, 4, 5) +
+            "return 1");
+
+    /**
+     * GET + PTTL, 不存在时返回空列表
+     * KEYS[1] 缓存 Key
+     */
+    static final ReffeineCacheScript GET_WITH_TTL = new ReffeineCacheScript(
+            "local value = redis.call('GET', KEYS[1])\n" +
+            "if not value then\n" +
+            "  return {}\n" +
+            "end\n" +
+            "return {value, redis.call('PTTL', KEYS[1])}");
+
+    /**
+     * SET NX(可选 PX), 写入成功则 PUBLISH(可选) 并返回 nil, 否则返回已存在的值
+     * KEYS[1] 缓存 Key, ARGV[1] 缓存值, ARGV[2] 过期毫秒数(<=0 不过期), ARGV[3] 同步 topic, ARGV[4] 同步消息,
+     * KEYS[2] 失效日志 Stream(可选), ARGV[5] Stream 最大长度
+     */
+    static final ReffeineCacheScript PUT_IF_ABSENT_AND_SYNC = new ReffeineCacheScript(
+            "local stored\n" +
+            "if tonumber(ARGV[2]) > 0 then\n" +
+            "  stored = redis.call('SET', KEYS[1], ARGV[1], 'NX', 'PX', ARGV[2])\n" +
+            "else\n" +
+            "  stored = redis.call('SET', KEYS[1], ARGV[1], 'NX')\n" +
+            "end\n" +
+            "if stored then\n" +
+            "  if ARGV[3] then\n" +
+            publishAndLog(3, 4, 5) +
+            "  end\n" +
+            "  return false\n" +
+            "end\n" +
+            "return redis.call('GET', KEYS[1])");
+
+    /**
+     * Hash field 过期: 支持 field 过期(ARGV[4] == '1')时 HPEXPIRE, 否则每次写入整体 PEXPIRE,
+     * 和 {@link #TAG} 一样过期时间只延长不缩短, 写入不过期的 field 时 PERSIST;
+     * 脚本需要先把写入前 Hash 是否存在记录在 existed
+     */
+    private static final String HASH_EXPIRE =
+            "  local ttl = tonumber(ARGV[3])\n" +
+            "  if ARGV[4] == '1' then\n" +
+            "    if ttl > 0 then\n" +
+            "      redis.call('HPEXPIRE', KEYS[1], ttl, 'FIELDS', 1, ARGV[1])\n" +
+            "    end\n" +
+            "  elseif ttl <= 0 then\n" +
+            "    redis.call('PERSIST', KEYS[1])\n" +
+            "  else\n" +
+            "    local current = redis.call('PTTL', KEYS[1])\n" +
+            "    if existed == 0 or (current >= 0 and current < ttl) then\n" +
+            "      redis.call('PEXPIRE', KEYS[1], ttl)\n" +
+            "    end\n" +
+            "  end\n";
+
+    /**
+     * HSET + 过期 + PUBLISH(可选)
+     * KEYS[1] Hash Key, ARGV[1] field, ARGV[2] 缓存值, ARGV[3] 过期毫秒数(<=0 不过期), ARGV[4] 是否支持 field 过期,
+     * ARGV[5] 同步 topic, ARGV[6] 同步消息, KEYS[2] 失效日志 Stream(可选), ARGV[7] Stream 最大长度
+     */
+    static final ReffeineCacheScript HASH_PUT_AND_SYNC = new ReffeineCacheScript(
+            "local existed = redis.call('EXISTS', KEYS[1])\n" +
+            "do\n" +
+            "  redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n" +
+            HASH_EXPIRE +
+            "end\n" +
+            "if ARGV[5] then\n" +
+            publishAndLog(5, 6, 7) +
+            "end\n" +
+            "return 1");
+
+    /**
+     * HSETNX, 写入成功则设置过期并 PUBLISH(可选), 返回 nil, 否则返回已存在的值
+     * 参数同 {@link #HASH_PUT_AND_SYNC}
+     */
+    static final ReffeineCacheScript HASH_PUT_IF_ABSENT_AND_SYNC = new ReffeineCacheScript(
+            "local existed = redis.call('EXISTS', KEYS[1])\n" +
+            "if redis.call('HSETNX', KEYS[1], ARGV[1], ARGV[2]) == 1 then\n" +
+            HASH_EXPIRE +
+            "  if ARGV[5] then\n" +
+            publishAndLog(5, 6, 7) +
+            "  end\n" +
+            "  return false\n" +
+            "end\n" +
+            "return redis.call('HGET', KEYS[1], ARGV[1])");
+
+    /**
+     * PUBLISH + XADD 失效日志
+     * KEYS[1] 失效日志 Stream, ARGV[1] 同步 topic, ARGV[2] 同步消息, ARGV[3] Stream 最大长度
+     */
+    static final ReffeineCacheScript SYNC_AND_LOG = new ReffeineCacheScript(
+            "redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[3], '*', 'm', ARGV[2])\n" +
+            "return redis.call('PUBLISH', ARGV[1], ARGV[2])");
+
+    /**
+     * 只 XADD 失效日志, 用于无法在同一个脚本里访问 Stream 的场景(Redis Cluster)
+     * KEYS[1] 失效日志 Stream, ARGV[1] 同步消息, ARGV[2] Stream 最大长度
+     */
+    static final ReffeineCacheScript APPEND_LOG = new ReffeineCacheScript(
+            "return redis.call('XADD', KEYS[1], 'MAXLEN', '~', ARGV[2], '*', 'm', ARGV[1])");
+
+    /**
+     * XRANGE, KEYS[1] 失效日志 Stream, ARGV[1] 起始 ID(包含), ARGV[2] 结束 ID, ARGV[3] 数量
+     */
+    static final ReffeineCacheScript LOG_RANGE = new ReffeineCacheScript(
+            "return redis.call('XRANGE', KEYS[1], ARGV[1], ARGV[2], 'COUNT', ARGV[3])");
+
+    /**
+     * 最新的一条失效日志, KEYS[1] 失效日志 Stream
+     */
+    static final ReffeineCacheScript LOG_LAST = new ReffeineCacheScript(
+            "return redis.call('XREVRANGE', KEYS[1], '+', '-', 'COUNT', 1)");
+
+    /**
+     * 读取最新的一条失效日志后发布一条标记消息, 订阅端收到标记说明在它之前发布的同步消息都已经送达
+     * KEYS[1] 失效日志 Stream, ARGV[1] 标记通道, ARGV[2] 标记消息
+     */
+    static final ReffeineCacheScript LOG_LAST_AND_MARK = new ReffeineCacheScript(
+            "local last = redis.call('XREVRANGE', KEYS[1], '+', '-', 'COUNT', 1)\n" +
+            "redis.call('PUBLISH', ARGV[1], ARGV[2])\n" +
+            "return last");
+
+    /**
+     * 累加热点 Key 采样计数, 只保留计数最高的部分
+     * KEYS[1] 热点清单 ZSet, ARGV[1] 保留数量, ARGV[2] 清单过期毫秒数(<=0 不过期), 之后为 Key, 计数 成对出现
+     */
+    static final ReffeineCacheScript RECORD_HOT_KEYS = new ReffeineCacheScript(
+            "for i = 3, #ARGV, 2 do\n" +
+            "  redis.call('ZINCRBY', KEYS[1], ARGV[i + 1], ARGV[i])\n" +
+            "end\n" +
+            "redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -(tonumber(ARGV[1]) + 1))\n" +
+            "if tonumber(ARGV[2]) > 0 then\n" +
+            "  redis.call('PEXPIRE', KEYS[1], ARGV[2])\n" +
+            "end\n" +
+            "return 1");
+
+    /**
+     * SADD 缓存 Key 到标签的反向索引, 过期时间只延长不缩短, 缓存项不过期时 PERSIST
+     * KEYS[1] 反向索引 Set, ARGV[1] 缓存 Key, ARGV[2] 缓存项过期毫秒数(<=0 不过期)
+     */
+    static final ReffeineCacheScript TAG = new ReffeineCacheScript(
+            "local existed = redis.call('EXISTS', KEYS[1])\n" +
+            "redis.call('SADD', KEYS[1], ARGV[1])\n" +
+            "local ttl = tonumber(ARGV[2])\n" +
+            "if ttl <= 0 then\n" +
+            "  redis.call('PERSIST', KEYS[1])\n" +
+            "  return 1\n" +
+            "end\n" +
+            "local current = redis.call('PTTL', KEYS[1])\n" +
+            "if existed == 0 or (current >= 0 and current < ttl) then\n" +
+            "  redis.call('PEXPIRE', KEYS[1], ttl)\n" +
+            "end\n" +
+            "return 1");
+
+    /**
+     * MEMORY USAGE 之和, KEYS 为需要统计的 Key
+     */
+    static final ReffeineCacheScript MEMORY_USAGE = new ReffeineCacheScript(
+            "local total = 0\n" +
+            "for i = 1, #KEYS do\n" +
+            "  total = total + (redis.call('MEMORY', 'USAGE', KEYS[i]) or 0)\n" +
+            "end\n" +
+            "return total");
+
+    private final byte[] script;
+    /**
+     * SCRIPT LOAD 返回的 sha1, 加载前为 {@literal null}
+     */
+    private volatile String sha1;
+
+    ReffeineCacheScript(String script) {
+        Assert.hasText(script, "Script must not be empty!");
+        this.script = script.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 通过 EVALSHA 执行脚本, 服务端没有缓存脚本时退化为 EVAL
+     */
+    <T> T execute(RedisConnection connection, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        String sha = this.sha1;
+        if (sha == null) {
+            sha = connection.scriptLoad(script);
+            this.sha1 = sha;
+        }
+
+        try {
+            return connection.evalSha(sha, returnType, numKeys, keysAndArgs);
+        } catch (RuntimeException ex) {
+            if (!isNoScriptError(ex)) {
+                throw ex;
+            }
+            return connection.eval(script, returnType, numKeys, keysAndArgs);
+        }
+    }
+
+    /**
+     * 在 pipeline 中通过 EVALSHA 执行, 结果在 closePipeline 时返回; 需要在 openPipeline 之前调用 {@link #load}
+     */
+    void executeInPipeline(RedisConnection connection, ReturnType returnType, int numKeys, byte[]... keysAndArgs) {
+        Assert.state(sha1 != null, "Script must be loaded before pipelining!");
+        connection.evalSha(sha1, returnType, numKeys, keysAndArgs);
+    }
+
+    /**
+     * SCRIPT LOAD, 已经加载过时不执行
+     */
+    void load(RedisConnection connection) {
+        if (this.sha1 == null) {
+            this.sha1 = connection.scriptLoad(script);
+        }
+    }
+
+    /**
+     * PUBLISH ARGV[channelArg] ARGV[messageArg], 传入了 KEYS[2] 时同时 XADD 到失效日志, 最大长度为 ARGV[maxLenArg];
+     * 脚本访问的 Key 都通过 KEYS 传入, ACL 的 Key 规则和代理可以识别
+     */
+    private static String publishAndLog(int channelArg, int messageArg, int maxLenArg) {
+        return "redis.call('PUBLISH', ARGV[" + channelArg + "], ARGV[" + messageArg + "])\n" +
+                "if KEYS[2] then\n" +
+                "  redis.call('XADD', KEYS[2], 'MAXLEN', '~', ARGV[" + maxLenArg + "], '*', 'm', " +
+                "ARGV[" + messageArg + "])\n" +
+                "end\n";
+    }
+
+    static boolean isNoScriptError(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause.getMessage() != null && cause.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+}
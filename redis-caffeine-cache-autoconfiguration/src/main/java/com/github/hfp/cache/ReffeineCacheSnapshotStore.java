@@ -0,0 +1,206 @@
+package com.github.hfp.cache;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * 本地缓存的磁盘快照, 原地重启时从快照恢复本地缓存, 不需要重新从 Redis 加载
+ * <p>
+ * 1. 每隔 interval 以及关闭时, 把每个缓存的本地缓存写入 directory/{name}.snapshot(先写临时文件再替换)
+ * 2. 文件格式: [魔数 4B][快照时间 8B][数量 4B], 之后每项 [写入时间 8B][过期时间戳 8B][Key 长度 4B][Key][值长度 4B][值]
+ * 3. 缓存创建后在后台线程 mmap 快照文件恢复, 跳过写入时间超过 maxAge(或本地缓存 expireAfterWrite)或已经过期的项,
+ * 恢复的缓存项只保留剩余的过期时间(不超过 expireAfterWrite 和 Redis TTL)
+ * 4. 恢复后立即可以读取, 后台分批 MGET 校验: Redis 中已删除的清除, 值不同的替换
+ */
+public class ReffeineCacheSnapshotStore implements InitializingBean, DisposableBean {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+    private static final int MAGIC = 0x52435332;
+    private static final int HEADER_SIZE = 4 + 8 + 4;
+    private static final int VERIFY_BATCH_SIZE = 500;
+    private static final String SUFFIX = ".snapshot";
+
+    private final ReffeineCacheManager reffeineCacheManager;
+    private final Path directory;
+    private final Duration interval;
+    private final Duration maxAge;
+    private ScheduledExecutorService scheduler;
+
+    public ReffeineCacheSnapshotStore(ReffeineCacheManager reffeineCacheManager, Path directory, Duration interval,
+                                      Duration maxAge) {
+        Assert.notNull(reffeineCacheManager, "ReffeineCacheManager must not be null!");
+        Assert.notNull(directory, "Directory must not be null!");
+        Assert.isTrue(interval != null && !interval.isNegative() && !interval.isZero(), "Interval must be positive!");
+        Assert.notNull(maxAge, "MaxAge must not be null!");
+
+        this.reffeineCacheManager = reffeineCacheManager;
+        this.directory = directory;
+        this.interval = interval;
+        this.maxAge = maxAge;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws IOException {
+        Files.createDirectories(directory);
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ReffeineCacheSnapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reffeineCacheManager.addCacheCreationListener(cache -> scheduler.execute(() -> restore(cache)));
+        scheduler.scheduleWithFixedDelay(this::saveAll, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        saveAll();
+    }
+
+    /**
+     * 写入所有缓存的快照
+     */
+    public void saveAll() {
+        for (String name : reffeineCacheManager.getCacheNames()) {
+            final ReffeineCache cache = reffeineCacheManager.getExistingCache(name);
+            if (cache == null) {
+                continue;
+            }
+            try {
+                save(cache);
+            } catch (IOException | RuntimeException ex) {
+                LOGGER.warn("ReffeineCache write snapshot of " + name + " error: " + ex.getMessage());
+            }
+        }
+    }
+
+    private void save(ReffeineCache cache) throws IOException {
+        final List<byte[]> keys = new ArrayList<>();
+        final List<byte[]> values = new ArrayList<>();
+        final List<Long> writeTimes = new ArrayList<>();
+        final List<Long> expireAts = new ArrayList<>();
+        final long[] size = {HEADER_SIZE};
+        cache.snapshotLocal((cacheKey, writeTime, expireAt, value) -> {
+            final byte[] key = cacheKey.getBytes(StandardCharsets.UTF_8);
+            final long entrySize = 8 + 8 + 4 + key.length + 4 + value.length;
+            // 单个 MappedByteBuffer 最大 2GB
+            if (size[0] + entrySize > Integer.MAX_VALUE) {
+                return;
+            }
+            size[0] += entrySize;
+            keys.add(key);
+            values.add(value);
+            writeTimes.add(writeTime);
+            expireAts.add(expireAt);
+        });
+
+        final Path target = fileOf(cache.getName());
+        final Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size[0]);
+            buffer.putInt(MAGIC).putLong(System.currentTimeMillis()).putInt(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                buffer.putLong(writeTimes.get(i)).putLong(expireAts.get(i));
+                buffer.putInt(keys.get(i).length).put(keys.get(i));
+                buffer.putInt(values.get(i).length).put(values.get(i));
+            }
+            buffer.force();
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        LOGGER.debug("ReffeineCache wrote snapshot of " + cache.getName() + ", " + keys.size() + " keys");
+    }
+
+    private void restore(ReffeineCache cache) {
+        final Path file;
+        try {
+            file = fileOf(cache.getName());
+        } catch (UnsupportedEncodingException e) {
+            return;
+        }
+        if (!Files.isRegularFile(file)) {
+            return;
+        }
+
+        final long localExpireMillis = cache.getLocalExpireAfterWriteMillis();
+        final long maxAgeMillis = localExpireMillis < 0 ? maxAge.toMillis()
+                : Math.min(maxAge.toMillis(), localExpireMillis);
+        final long now = System.currentTimeMillis();
+        final List<String> restoredKeys = new ArrayList<>();
+        final List<byte[]> restoredValues = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+                LOGGER.warn("ReffeineCache ignore invalid snapshot " + file);
+                return;
+            }
+            buffer.getLong();
+            final int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                final long writeTime = buffer.getLong();
+                final long expireAt = buffer.getLong();
+                final byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                final byte[] value = new byte[buffer.getInt()];
+                buffer.get(value);
+                if (now - writeTime > maxAgeMillis || (expireAt > 0 && expireAt <= now)) {
+                    continue;
+                }
+                final String cacheKey = new String(key, StandardCharsets.UTF_8);
+                if (cache.restoreLocal(cacheKey, value, expireAt)) {
+                    restoredKeys.add(cacheKey);
+                    restoredValues.add(value);
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("ReffeineCache read snapshot " + file + " error: " + ex.getMessage());
+        }
+        LOGGER.info("ReffeineCache restored " + restoredKeys.size() + " keys of " + cache.getName()
+                + " from snapshot in " + (System.currentTimeMillis() - now) + "ms");
+
+        for (int from = 0; from < restoredKeys.size(); from += VERIFY_BATCH_SIZE) {
+            final int to = Math.min(from + VERIFY_BATCH_SIZE, restoredKeys.size());
+            final List<String> batchKeys = restoredKeys.subList(from, to);
+            final List<byte[]> batchValues = restoredValues.subList(from, to);
+            scheduler.execute(() -> verify(cache, batchKeys, batchValues));
+        }
+    }
+
+    private void verify(ReffeineCache cache, List<String> cacheKeys, List<byte[]> restoredValues) {
+        try {
+            final int changed = cache.verifyRestored(cacheKeys, restoredValues);
+            if (changed > 0) {
+                LOGGER.info("ReffeineCache " + changed + " restored keys of " + cache.getName() + " were stale");
+            }
+        } catch (RuntimeException ex) {
+            // Redis 不可用时无法校验, 清除这批恢复的缓存
+            LOGGER.warn("ReffeineCache verify snapshot of " + cache.getName() + " error: " + ex.getMessage());
+            cache.invalidateLocal(cacheKeys);
+        }
+    }
+
+    private Path fileOf(String name) throws UnsupportedEncodingException {
+        return directory.resolve(URLEncoder.encode(name, "UTF-8") + SUFFIX);
+    }
+}
@@ -0,0 +1,80 @@
+package com.github.hfp.cache;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 本地缓存的标签索引, 标签 -> 本地缓存 Key, 用于按标签清除本地缓存
+ * <p>
+ * 本地缓存淘汰或过期时不通知索引, 索引中的 Key 超过上次清理后的两倍时清理已经不在本地缓存中的 Key
+ */
+final class ReffeineCacheTagIndex {
+    private static final long MIN_PRUNE_THRESHOLD = 10_000L;
+
+    private final ConcurrentHashMap<String, Set<Object>> keysByTag = new ConcurrentHashMap<>();
+    private final AtomicLong size = new AtomicLong();
+    private volatile long pruneThreshold = MIN_PRUNE_THRESHOLD;
+
+    /**
+     * @param present 缓存 Key 是否还在本地缓存中, 用于清理
+     */
+    void add(Collection<String> tags, Object localKey, Predicate<Object> present) {
+        for (String tag : tags) {
+            // 和 prune 移除空标签互斥, 不会加到已经移除的 Set 中
+            keysByTag.compute(tag, (t, keys) -> {
+                final Set<Object> tagged = keys == null ? ConcurrentHashMap.newKeySet() : keys;
+                if (tagged.add(localKey)) {
+                    size.incrementAndGet();
+                }
+                return tagged;
+            });
+        }
+        if (size.get() > pruneThreshold) {
+            prune(present);
+        }
+    }
+
+    /**
+     * 移除标签, 返回标签下的本地缓存 Key
+     */
+    Set<Object> remove(String tag) {
+        final Set<Object> keys = keysByTag.remove(tag);
+        if (keys == null) {
+            return Collections.emptySet();
+        }
+        size.addAndGet(-keys.size());
+        return keys;
+    }
+
+    void clear() {
+        keysByTag.clear();
+        size.set(0L);
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    private synchronized void prune(Predicate<Object> present) {
+        if (size.get() <= pruneThreshold) {
+            return;
+        }
+        for (String tag : keysByTag.keySet()) {
+            keysByTag.computeIfPresent(tag, (t, keys) -> {
+                for (Iterator<Object> key = keys.iterator(); key.hasNext(); ) {
+                    if (!present.test(key.next())) {
+                        key.remove();
+                        size.decrementAndGet();
+                    }
+                }
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+        pruneThreshold = Math.max(size.get() * 2, MIN_PRUNE_THRESHOLD);
+    }
+}
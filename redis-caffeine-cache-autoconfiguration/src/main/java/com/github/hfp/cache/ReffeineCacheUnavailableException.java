@@ -0,0 +1,18 @@
+package com.github.hfp.cache;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+
+/**
+ * Redis 不可用(熔断打开或命令失败), {@link ReffeineCache} 收到后退化为只使用本地缓存
+ */
+public class ReffeineCacheUnavailableException extends DataAccessResourceFailureException {
+    private static final long serialVersionUID = -3016437093441436213L;
+
+    public ReffeineCacheUnavailableException(String msg) {
+        super(msg);
+    }
+
+    public ReffeineCacheUnavailableException(String msg, Throwable cause) {
+        super(msg, cause);
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.hfp.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 缓存值的元数据头, Redis 和本地缓存中保存的都是 [头][序列化的值]
+ * <p>
+ * 格式: [魔数 0xFF 0x00 'R' 'V'][版本 1B][标记 1B][计算耗时(毫秒) 4B][过期时间戳(毫秒) 8B]([值版本 8B])([标签数量 2B]([标签长度 2B][标签])*)
+ * <p>
+ * 标记 FLAG_TAGS 表示带标签, 其他节点从 Redis 读到值时按标签建立本地索引;
+ * 标记 FLAG_VERSION 表示带值版本, 用于比较随同步消息发送的值和本地缓存中的值哪个更新; 两者按这个顺序紧跟在固定头之后
+ * <p>
+ * 只有开启了提前重新计算、标签或随同步消息发送值的缓存才写入和解析这个头(参考 ReffeineCache), 其他缓存的值按原样反序列化;
+ * 0xFF 0x00 不是合法的 UTF-8, 也不是 JDK 序列化/JSON 的开头, 另外要求版本、标记和长度都合法才认为带头
+ */
+final class ReffeineCacheValue {
+    private static final byte[] MAGIC = {(byte) 0xFF, 0x00, 'R', 'V'};
+    private static final byte VERSION = 1;
+    private static final byte FLAG_TAGS = 1;
+    private static final byte FLAG_VERSION = 2;
+    private static final int VERSION_OFFSET = MAGIC.length;
+    private static final int FLAGS_OFFSET = VERSION_OFFSET + 1;
+    private static final int COMPUTE_MILLIS_OFFSET = FLAGS_OFFSET + 1;
+    private static final int EXPIRE_AT_OFFSET = COMPUTE_MILLIS_OFFSET + 4;
+    static final int HEADER_SIZE = EXPIRE_AT_OFFSET + 8;
+
+    private ReffeineCacheValue() {
+    }
+
+    /**
+     * @param computeMillis 计算这个值的耗时
+     * @param expireAt      Redis 中的过期时间戳, 0 表示不过期
+     */
+    static byte[] wrap(byte[] payload, long computeMillis, long expireAt) {
+        return wrap(payload, computeMillis, expireAt, Collections.emptyList());
+    }
+
+    /**
+     * @param tags 缓存项的标签, 为空时不写入标签
+     */
+    static byte[] wrap(byte[] payload, long computeMillis, long expireAt, Collection<String> tags) {
+        return wrap(payload, computeMillis, expireAt, 0L, tags);
+    }
+
+    /**
+     * @param version 值版本, 0 表示不写入版本
+     */
+    static byte[] wrap(byte[] payload, long computeMillis, long expireAt, long version, Collection<String> tags) {
+        final List<byte[]> encodedTags = new ArrayList<>(tags.size());
+        int tagsSize = tags.isEmpty() ? 0 : 2;
+        for (String tag : tags) {
+            final byte[] encoded = tag.getBytes(StandardCharsets.UTF_8);
+            encodedTags.add(encoded);
+            tagsSize += 2 + encoded.length;
+        }
+        final byte flags = (byte) ((tags.isEmpty() ? 0 : FLAG_TAGS) | (version == 0L ? 0 : FLAG_VERSION));
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + (version == 0L ? 0 : 8) + tagsSize + payload.length)
+                .put(MAGIC).put(VERSION).put(flags)
+                .putInt((int) Math.min(computeMillis, Integer.MAX_VALUE))
+                .putLong(expireAt);
+        if (version != 0L) {
+            buffer.putLong(version);
+        }
+        if (!tags.isEmpty()) {
+            buffer.putShort((short) encodedTags.size());
+            for (byte[] encoded : encodedTags) {
+                buffer.putShort((short) encoded.length).put(encoded);
+            }
+        }
+        return buffer.put(payload).array();
+    }
+
+    static boolean isWrapped(byte[] stored) {
+        if (stored.length < HEADER_SIZE || stored[VERSION_OFFSET] != VERSION
+                || (stored[FLAGS_OFFSET] & ~(FLAG_TAGS | FLAG_VERSION)) != 0) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (stored[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return (stored[FLAGS_OFFSET] & FLAG_VERSION) == 0 || stored.length >= HEADER_SIZE + 8;
+    }
+
+    static int computeMillisOf(byte[] stored) {
+        return isWrapped(stored) ? ByteBuffer.wrap(stored).getInt(COMPUTE_MILLIS_OFFSET) : 0;
+    }
+
+    static long expireAtOf(byte[] stored) {
+        return isWrapped(stored) ? ByteBuffer.wrap(stored).getLong(EXPIRE_AT_OFFSET) : 0L;
+    }
+
+    static boolean hasTags(byte[] stored) {
+        return isWrapped(stored) && (stored[FLAGS_OFFSET] & FLAG_TAGS) != 0;
+    }
+
+    /**
+     * 值版本, 没有版本时返回 0
+     */
+    static long versionOf(byte[] stored) {
+        return hasVersion(stored) ? ByteBuffer.wrap(stored).getLong(HEADER_SIZE) : 0L;
+    }
+
+    private static boolean hasVersion(byte[] stored) {
+        return isWrapped(stored) && (stored[FLAGS_OFFSET] & FLAG_VERSION) != 0;
+    }
+
+    /**
+     * 缓存项的标签, 没有标签时返回空列表
+     */
+    static List<String> tagsOf(byte[] stored) {
+        if (!hasTags(stored)) {
+            return Collections.emptyList();
+        }
+        final int offset = tagsOffsetOf(stored);
+        final ByteBuffer buffer = ByteBuffer.wrap(stored, offset, stored.length - offset);
+        final int count = buffer.getShort() & 0xFFFF;
+        final List<String> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int length = buffer.getShort() & 0xFFFF;
+            tags.add(new String(stored, buffer.position(), length, StandardCharsets.UTF_8));
+            buffer.position(buffer.position() + length);
+        }
+        return tags;
+    }
+
+    /**
+     * 序列化的值
+     */
+    static ByteBuffer payloadOf(byte[] stored) {
+        final int offset = payloadOffsetOf(stored);
+        return ByteBuffer.wrap(stored, offset, stored.length - offset);
+    }
+
+    private static int payloadOffsetOf(byte[] stored) {
+        if (!isWrapped(stored)) {
+            return 0;
+        }
+        final int offset = tagsOffsetOf(stored);
+        if (!hasTags(stored)) {
+            return offset;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(stored, offset, stored.length - offset);
+        final int count = buffer.getShort() & 0xFFFF;
+        for (int i = 0; i < count; i++) {
+            final int length = buffer.getShort() & 0xFFFF;
+            buffer.position(buffer.position() + length);
+        }
+        return buffer.position();
+    }
+
+    private static int tagsOffsetOf(byte[] stored) {
+        return hasVersion(stored) ? HEADER_SIZE + 8 : HEADER_SIZE;
+    }
+}
@@ -1,6 +1,12 @@
 package com.github.hfp.cache;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
 
 public interface ReffeineCacheWriter extends RedisCacheWriter {
 
@@ -11,4 +17,248 @@ public interface ReffeineCacheWriter extends RedisCacheWriter {
      * @param message {@link ReffeineCacheMessage}
      */
     void sync(byte[] channel, byte[] message);
+
+    /**
+     * 写入缓存并同步消息, 默认实现为 put + sync 两次调用, 实现类可以合并为一次往返
+     *
+     * @param channel Redis Topic
+     * @param message {@link ReffeineCacheMessage}
+     */
+    default void put(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel, byte[] message) {
+        put(name, key, value, ttl);
+        sync(channel, message);
+    }
+
+    /**
+     * 缓存不存在时写入, 写入成功才同步消息
+     *
+     * @param channel Redis Topic
+     * @param message {@link ReffeineCacheMessage}
+     * @return {@literal null} 表示写入成功, 否则返回已存在的值
+     */
+    @Nullable
+    default byte[] putIfAbsent(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel,
+                               byte[] message) {
+        final byte[] result = putIfAbsent(name, key, value, ttl);
+        if (result == null) {
+            sync(channel, message);
+        }
+        return result;
+    }
+
+    /**
+     * 批量写入缓存并同步消息, 默认实现逐个 put; 实现类可以合并为一次 pipeline
+     *
+     * @param keys     缓存 Key
+     * @param values   缓存值, 与 keys 一一对应
+     * @param ttls     过期时间, 与 keys 一一对应
+     * @param channel  Redis Topic, 为 {@literal null} 时只写入不同步
+     * @param messages 同步消息, 与 keys 一一对应; 不同步时可以为 {@literal null}
+     */
+    default void putAll(String name, List<byte[]> keys, List<byte[]> values, List<Duration> ttls,
+                        @Nullable byte[] channel, @Nullable List<byte[]> messages) {
+        for (int i = 0; i < keys.size(); i++) {
+            if (channel == null) {
+                put(name, keys.get(i), values.get(i), ttls.get(i));
+            } else {
+                put(name, keys.get(i), values.get(i), ttls.get(i), channel, messages.get(i));
+            }
+        }
+    }
+
+    /**
+     * 读取缓存和剩余过期时间(GET + PTTL), 默认实现只 get, 过期时间未知; 实现类可以合并为一次往返
+     *
+     * @return 不存在时返回 {@literal null}
+     */
+    @Nullable
+    default ValueWithTtl getWithTtl(String name, byte[] key) {
+        final byte[] value = get(name, key);
+        return value == null ? null : new ValueWithTtl(value, -1L);
+    }
+
+    /**
+     * 写入大缓存值的分片, 同时读取缓存 Key 当前的值(用于清理被覆盖的分片);
+     * 默认实现逐个调用, 实现类可以合并为一次 pipeline
+     *
+     * @param key       缓存 Key, 只读取不写入
+     * @param chunkKeys 分片 Key, 与 chunks 一一对应
+     * @return 缓存 Key 当前的值
+     */
+    @Nullable
+    default byte[] putChunks(String name, byte[] key, List<byte[]> chunkKeys, List<byte[]> chunks,
+                             @Nullable Duration ttl) {
+        final byte[] current = get(name, key);
+        for (int i = 0; i < chunkKeys.size(); i++) {
+            put(name, chunkKeys.get(i), chunks.get(i), ttl);
+        }
+        return current;
+    }
+
+    /**
+     * 读取大缓存值的分片, 默认实现逐个 get, 实现类可以合并为一次 pipeline
+     *
+     * @return 与 chunkKeys 一一对应, 不存在的为 {@literal null}
+     */
+    default List<byte[]> getChunks(String name, List<byte[]> chunkKeys) {
+        final List<byte[]> chunks = new ArrayList<>(chunkKeys.size());
+        for (byte[] chunkKey : chunkKeys) {
+            chunks.add(get(name, chunkKey));
+        }
+        return chunks;
+    }
+
+    /**
+     * 批量读取, 默认实现逐个 get, 实现类可以合并为一次 MGET
+     *
+     * @return 与 keys 一一对应, 不存在的为 {@literal null}
+     */
+    default List<byte[]> mGet(String name, byte[]... keys) {
+        List<byte[]> values = new ArrayList<>(keys.length);
+        for (byte[] key : keys) {
+            values.add(get(name, key));
+        }
+        return values;
+    }
+
+    /**
+     * 批量读取缓存和剩余过期时间, 默认实现逐个 getWithTtl, 实现类可以合并为一次 pipeline
+     *
+     * @return 与 keys 一一对应, 不存在的为 {@literal null}
+     */
+    default List<ValueWithTtl> mGetWithTtl(String name, byte[]... keys) {
+        List<ValueWithTtl> values = new ArrayList<>(keys.length);
+        for (byte[] key : keys) {
+            values.add(getWithTtl(name, key));
+        }
+        return values;
+    }
+
+    /**
+     * HASH 存储结构读取单个缓存项
+     */
+    @Nullable
+    byte[] hGet(String name, byte[] hash, byte[] field);
+
+    /**
+     * HASH 存储结构批量读取, 一次 HMGET
+     *
+     * @return 与 fields 一一对应, 不存在的为 {@literal null}
+     */
+    List<byte[]> hMGet(String name, byte[] hash, byte[]... fields);
+
+    /**
+     * HASH 存储结构写入缓存项并同步消息
+     *
+     * @param channel Redis Topic, 为 {@literal null} 时只写入不同步
+     * @param message {@link ReffeineCacheMessage}, 不同步时可以为 {@literal null}
+     */
+    void hPut(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl, @Nullable byte[] channel,
+              @Nullable byte[] message);
+
+    /**
+     * HASH 存储结构缓存项不存在时写入, 写入成功才同步消息; channel 为 {@literal null} 时只写入不同步
+     *
+     * @return {@literal null} 表示写入成功, 否则返回已存在的值
+     */
+    @Nullable
+    byte[] hPutIfAbsent(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                        @Nullable byte[] channel, @Nullable byte[] message);
+
+    /**
+     * HASH 存储结构删除缓存项
+     */
+    void hRemove(String name, byte[] hash, byte[] field);
+
+    /**
+     * 异步删除整个 Key(UNLINK), 用于 HASH 存储结构的 clear
+     */
+    void unlink(String name, byte[]... keys);
+
+    /**
+     * HASH 存储结构下缓存项数量(HLEN 之和)
+     */
+    long hSize(String name, byte[]... hashes);
+
+    /**
+     * Key 占用的内存字节数之和(MEMORY USAGE)
+     */
+    long memoryUsage(String name, byte[]... keys);
+
+    /**
+     * 累加热点 Key 的采样计数, 清单只保留计数最高的 keep 个 Key
+     *
+     * @param manifest 热点清单(ZSet) Key
+     * @param samples  缓存 Key 和采样计数
+     * @param ttl      清单过期时间, 节点都停止上报后清单自动删除
+     */
+    void recordHotKeys(String name, byte[] manifest, Map<byte[], Long> samples, int keep, @Nullable Duration ttl);
+
+    /**
+     * 计数最高的 count 个热点 Key, 按计数从高到低
+     *
+     * @param manifest 热点清单(ZSet) Key
+     */
+    List<byte[]> hotKeys(String name, byte[] manifest, int count);
+
+    /**
+     * 把缓存 Key 加入每个标签的反向索引(Set), 索引的过期时间只延长不缩短, 缓存项不过期时索引也不过期
+     *
+     * @param tagKeys 标签的反向索引 Key
+     * @param member  缓存 Key
+     * @param ttl     缓存项的过期时间
+     */
+    void tag(String name, List<byte[]> tagKeys, byte[] member, @Nullable Duration ttl);
+
+    /**
+     * 从标签的反向索引中读取最多 count 个缓存 Key(SRANDMEMBER count), 不移除
+     *
+     * @param tagKey 标签的反向索引 Key
+     * @return 索引为空时返回空列表
+     */
+    List<byte[]> tagged(String name, byte[] tagKey, int count);
+
+    /**
+     * 从标签的反向索引中移除缓存 Key(SREM), 在这些 Key 删除之后调用,
+     * 删除失败时索引保留这些 Key, 下一次按标签清除时重试
+     *
+     * @param tagKey  标签的反向索引 Key
+     * @param members 已经删除的缓存 Key
+     */
+    void untag(String name, byte[] tagKey, List<byte[]> members);
+
+    /**
+     * 本地缓存中这些 Key 已经失效(通常是收到其他节点的同步消息); 默认不处理,
+     * 从副本读取的 Writer({@link ReplicaReadingReffeineCacheWriter})在一段时间内改为从主节点读取
+     *
+     * @param keys 失效的 Redis Key(HASH 存储结构为 Hash 的 Key), 为空时表示整个缓存
+     */
+    default void invalidated(String name, byte[]... keys) {
+    }
+
+    /**
+     * 缓存值和读取时的剩余过期时间
+     */
+    final class ValueWithTtl {
+        private final byte[] value;
+        private final long ttlMillis;
+
+        public ValueWithTtl(byte[] value, long ttlMillis) {
+            Assert.notNull(value, "Value must not be null!");
+
+            this.value = value;
+            this.ttlMillis = ttlMillis;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        /**
+         * 剩余过期时间(毫秒), 小于 0 表示没有过期时间或未知
+         */
+        public long getTtlMillis() {
+            return ttlMillis;
+        }
+    }
 }
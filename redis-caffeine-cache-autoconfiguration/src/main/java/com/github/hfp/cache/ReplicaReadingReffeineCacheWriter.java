@@ -0,0 +1,410 @@
+package com.github.hfp.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.hfp.config.ReffeineCacheReplicaRouting;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * 读写分离的 ReffeineCacheWriter, 缓存读取(GET/MGET/HGET/HMGET/分片)发到副本, 写入、删除、锁和 PUBLISH 仍然使用主节点
+ * <p>
+ * 1. 副本按 {@link ReffeineCacheReplicaRouting} 选择, 读取失败的副本暂停使用一段时间, 本次读取改为主节点
+ * 2. 读自己的写: 本节点写入或删除的 Key(HASH 存储结构为整个 Hash)在 readYourWrites 时间内从主节点读取,
+ * 清空缓存后整个缓存在这段时间内从主节点读取; 记录的 Key 超过上限时这段时间内所有读取都使用主节点
+ * 3. 收到其他节点的同步消息({@link #invalidated(String, byte[]...)})清除的 Key 同样在这段时间内从主节点读取,
+ * 避免从还没有同步的副本读到旧值再写入本地缓存
+ * <p>
+ * readYourWrites 需要大于副本的复制延迟; 副本连接不检查缓存锁
+ */
+public class ReplicaReadingReffeineCacheWriter implements ReffeineCacheWriter {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+    private static final int MAX_RECENT_WRITES = 100_000;
+    private static final long REPLICA_RETRY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final ReffeineCacheWriter primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final ReffeineCacheReplicaRouting routing;
+    private final long readYourWritesNanos;
+    /**
+     * 最近写入或失效的 Redis Key, readYourWrites 之后过期
+     */
+    private final Cache<ByteBuffer, Boolean> recentWrites;
+    /**
+     * 最近清空的缓存 -> 清空时间(纳秒)
+     */
+    private final Map<String, Long> recentCleans = new ConcurrentHashMap<>();
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    /**
+     * recentWrites 超过上限时, 在这个时间(纳秒)之前所有读取都使用主节点
+     */
+    private volatile long primaryOnlyUntil;
+    private final LongAdder primaryReads = new LongAdder();
+    private final LongAdder replicaReads = new LongAdder();
+
+    /**
+     * @param primary            主节点的 Writer, 写操作和需要读自己的写的读操作使用
+     * @param replicaConnections 副本的连接, 只用于读取
+     * @param readYourWrites     写入之后从主节点读取的时间, {@link Duration#ZERO} 表示不保证读自己的写
+     */
+    public ReplicaReadingReffeineCacheWriter(ReffeineCacheWriter primary, List<RedisConnectionFactory> replicaConnections,
+                                             ReffeineCacheReplicaRouting routing, Duration readYourWrites) {
+        this(primary, routing, readYourWrites, replicaWritersOf(replicaConnections));
+    }
+
+    /**
+     * @param replicaWriters 副本的 Writer, 只用于读取
+     */
+    ReplicaReadingReffeineCacheWriter(ReffeineCacheWriter primary, ReffeineCacheReplicaRouting routing,
+                                      Duration readYourWrites, List<ReffeineCacheWriter> replicaWriters) {
+        Assert.notNull(primary, "Primary must not be null!");
+        Assert.notEmpty(replicaWriters, "ReplicaWriters must not be empty!");
+        Assert.notNull(routing, "Routing must not be null!");
+        Assert.isTrue(readYourWrites != null && !readYourWrites.isNegative(), "ReadYourWrites must not be negative!");
+
+        this.primary = primary;
+        for (int i = 0; i < replicaWriters.size(); i++) {
+            this.replicas.add(new Replica(i, replicaWriters.get(i)));
+        }
+        this.routing = routing;
+        this.readYourWritesNanos = readYourWrites.toNanos();
+        this.primaryOnlyUntil = System.nanoTime();
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(Math.max(readYourWritesNanos, 1L), TimeUnit.NANOSECONDS)
+                .maximumSize(MAX_RECENT_WRITES)
+                .executor(Runnable::run)
+                .<ByteBuffer, Boolean>removalListener((key, value, cause) -> {
+                    if (cause == RemovalCause.SIZE) {
+                        primaryOnlyUntil = System.nanoTime() + readYourWritesNanos;
+                    }
+                })
+                .build();
+    }
+
+    public ReffeineCacheWriter getPrimary() {
+        return primary;
+    }
+
+    /**
+     * 从主节点读取的次数
+     */
+    public long getPrimaryReads() {
+        return primaryReads.sum();
+    }
+
+    /**
+     * 从副本读取的次数
+     */
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        return read(name, writer -> writer.get(name, key), key);
+    }
+
+    @Override
+    public ValueWithTtl getWithTtl(String name, byte[] key) {
+        return read(name, writer -> writer.getWithTtl(name, key), key);
+    }
+
+    /**
+     * 分片写入后不再修改, 副本上读到的分片一定是新的; 缺少分片时(清单从主节点读取, 副本还没有同步分片)改为主节点
+     */
+    @Override
+    public List<byte[]> getChunks(String name, List<byte[]> chunkKeys) {
+        final List<byte[]> chunks = read(name, writer -> writer.getChunks(name, chunkKeys),
+                chunkKeys.toArray(new byte[0][]));
+        if (!chunks.contains(null)) {
+            return chunks;
+        }
+        primaryReads.increment();
+        return primary.getChunks(name, chunkKeys);
+    }
+
+    @Override
+    public List<byte[]> mGet(String name, byte[]... keys) {
+        return read(name, writer -> writer.mGet(name, keys), keys);
+    }
+
+    @Override
+    public List<ValueWithTtl> mGetWithTtl(String name, byte[]... keys) {
+        return read(name, writer -> writer.mGetWithTtl(name, keys), keys);
+    }
+
+    @Override
+    public byte[] hGet(String name, byte[] hash, byte[] field) {
+        return read(name, writer -> writer.hGet(name, hash, field), hash);
+    }
+
+    @Override
+    public List<byte[]> hMGet(String name, byte[] hash, byte[]... fields) {
+        return read(name, writer -> writer.hMGet(name, hash, fields), hash);
+    }
+
+    @Override
+    public List<byte[]> hotKeys(String name, byte[] manifest, int count) {
+        return read(name, writer -> writer.hotKeys(name, manifest, count));
+    }
+
+    @Override
+    public long hSize(String name, byte[]... hashes) {
+        return primary.hSize(name, hashes);
+    }
+
+    @Override
+    public long memoryUsage(String name, byte[]... keys) {
+        return primary.memoryUsage(name, keys);
+    }
+
+    @Override
+    public void recordHotKeys(String name, byte[] manifest, Map<byte[], Long> samples, int keep,
+                              @Nullable Duration ttl) {
+        primary.recordHotKeys(name, manifest, samples, keep, ttl);
+    }
+
+    @Override
+    public void tag(String name, List<byte[]> tagKeys, byte[] member, @Nullable Duration ttl) {
+        primary.tag(name, tagKeys, member, ttl);
+    }
+
+    @Override
+    public List<byte[]> tagged(String name, byte[] tagKey, int count) {
+        return primary.tagged(name, tagKey, count);
+    }
+
+    @Override
+    public void untag(String name, byte[] tagKey, List<byte[]> members) {
+        primary.untag(name, tagKey, members);
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, @Nullable Duration ttl) {
+        recordWrites(key);
+        primary.put(name, key, value, ttl);
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel, byte[] message) {
+        recordWrites(key);
+        primary.put(name, key, value, ttl, channel, message);
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, @Nullable Duration ttl) {
+        recordWrites(key);
+        return primary.putIfAbsent(name, key, value, ttl);
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, @Nullable Duration ttl, byte[] channel,
+                              byte[] message) {
+        recordWrites(key);
+        return primary.putIfAbsent(name, key, value, ttl, channel, message);
+    }
+
+    @Override
+    public void putAll(String name, List<byte[]> keys, List<byte[]> values, List<Duration> ttls,
+                       @Nullable byte[] channel, @Nullable List<byte[]> messages) {
+        recordWrites(keys.toArray(new byte[0][]));
+        primary.putAll(name, keys, values, ttls, channel, messages);
+    }
+
+    /**
+     * 缓存 Key 当前的值从主节点读取
+     */
+    @Override
+    public byte[] putChunks(String name, byte[] key, List<byte[]> chunkKeys, List<byte[]> chunks,
+                            @Nullable Duration ttl) {
+        recordWrites(chunkKeys.toArray(new byte[0][]));
+        return primary.putChunks(name, key, chunkKeys, chunks, ttl);
+    }
+
+    @Override
+    public void hPut(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                     @Nullable byte[] channel, @Nullable byte[] message) {
+        recordWrites(hash);
+        primary.hPut(name, hash, field, value, ttl, channel, message);
+    }
+
+    @Override
+    public byte[] hPutIfAbsent(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                               @Nullable byte[] channel, @Nullable byte[] message) {
+        recordWrites(hash);
+        return primary.hPutIfAbsent(name, hash, field, value, ttl, channel, message);
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        recordWrites(key);
+        primary.remove(name, key);
+    }
+
+    @Override
+    public void hRemove(String name, byte[] hash, byte[] field) {
+        recordWrites(hash);
+        primary.hRemove(name, hash, field);
+    }
+
+    /**
+     * 清空可能耗时较长(SCAN), 开始和结束时都记录
+     */
+    @Override
+    public void clean(String name, byte[] pattern) {
+        recordClean(name);
+        primary.clean(name, pattern);
+        recordClean(name);
+    }
+
+    @Override
+    public void unlink(String name, byte[]... keys) {
+        recordWrites(keys);
+        primary.unlink(name, keys);
+    }
+
+    @Override
+    public void sync(byte[] channel, byte[] message) {
+        primary.sync(channel, message);
+    }
+
+    @Override
+    public void invalidated(String name, byte[]... keys) {
+        if (keys.length == 0) {
+            recordClean(name);
+        } else {
+            recordWrites(keys);
+        }
+        primary.invalidated(name, keys);
+    }
+
+    private <T> T read(String name, Function<ReffeineCacheWriter, T> action, byte[]... keys) {
+        final Replica replica = shouldReadPrimary(name, keys) ? null : selectReplica();
+        if (replica == null) {
+            primaryReads.increment();
+            return action.apply(primary);
+        }
+        final long start = System.nanoTime();
+        final T result;
+        try {
+            result = action.apply(replica.writer);
+        } catch (RuntimeException ex) {
+            replica.availableAfter = System.nanoTime() + REPLICA_RETRY_NANOS;
+            LOGGER.warn("ReffeineCache read from replica " + replica.index + " error, fall back to primary: "
+                    + ex.getMessage());
+            primaryReads.increment();
+            return action.apply(primary);
+        }
+        replica.recordLatency(System.nanoTime() - start);
+        replicaReads.increment();
+        return result;
+    }
+
+    private boolean shouldReadPrimary(String name, byte[]... keys) {
+        if (readYourWritesNanos == 0L) {
+            return false;
+        }
+        final long now = System.nanoTime();
+        if (primaryOnlyUntil - now > 0L) {
+            return true;
+        }
+        final Long cleaned = recentCleans.get(name);
+        if (cleaned != null) {
+            if (now - cleaned < readYourWritesNanos) {
+                return true;
+            }
+            recentCleans.remove(name, cleaned);
+        }
+        for (byte[] key : keys) {
+            if (recentWrites.getIfPresent(ByteBuffer.wrap(key)) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private Replica selectReplica() {
+        final long now = System.nanoTime();
+        if (routing == ReffeineCacheReplicaRouting.NEAREST) {
+            Replica nearest = null;
+            for (Replica replica : replicas) {
+                if (replica.isAvailable(now) && (nearest == null || replica.latencyNanos < nearest.latencyNanos)) {
+                    nearest = replica;
+                }
+            }
+            return nearest;
+        }
+        final int start = nextReplica.getAndIncrement();
+        for (int i = 0; i < replicas.size(); i++) {
+            final Replica replica = replicas.get(Math.floorMod(start + i, replicas.size()));
+            if (replica.isAvailable(now)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private static List<ReffeineCacheWriter> replicaWritersOf(List<RedisConnectionFactory> replicaConnections) {
+        Assert.notEmpty(replicaConnections, "ReplicaConnections must not be empty!");
+
+        final List<ReffeineCacheWriter> writers = new ArrayList<>(replicaConnections.size());
+        for (RedisConnectionFactory replicaConnection : replicaConnections) {
+            writers.add(new DefaultReffeineCacheWriter(replicaConnection));
+        }
+        return writers;
+    }
+
+    private void recordWrites(byte[]... keys) {
+        if (readYourWritesNanos == 0L) {
+            return;
+        }
+        for (byte[] key : keys) {
+            recentWrites.put(ByteBuffer.wrap(key), Boolean.TRUE);
+        }
+    }
+
+    private void recordClean(String name) {
+        if (readYourWritesNanos > 0L) {
+            recentCleans.put(name, System.nanoTime());
+        }
+    }
+
+    private static final class Replica {
+        private final int index;
+        private final ReffeineCacheWriter writer;
+        /**
+         * 读取耗时的滑动平均(纳秒), 并发更新时允许丢失个别样本
+         */
+        private volatile long latencyNanos;
+        private volatile long availableAfter;
+
+        private Replica(int index, ReffeineCacheWriter writer) {
+            this.index = index;
+            this.writer = writer;
+            this.availableAfter = System.nanoTime();
+        }
+
+        private boolean isAvailable(long now) {
+            return now - availableAfter >= 0L;
+        }
+
+        private void recordLatency(long nanos) {
+            latencyNanos += (nanos - latencyNanos) >> 3;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.github.hfp.cache.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 批量缓存, 用于 {@code Map<K, V> findByIds(Collection<K> ids)} 这类按 Key 集合批量查询的方法
+ * <p>
+ * 1. 集合参数中的每个元素是一个缓存 Key, 先查本地缓存, 未命中的 Key 一次 MGET 查 Redis
+ * 2. 只用仍未命中的 Key 调用方法, 方法返回的 Map 通过一次 pipeline 写入缓存
+ * 3. 返回命中和加载结果合并后的 Map, 顺序与参数一致; 方法没有返回的 Key 不缓存
+ * <p>
+ * 需要开启 {@code @EnableCaching}, 缓存必须是 {@link com.github.hfp.cache.ReffeineCache}
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface BatchCacheable {
+
+    /**
+     * 缓存名
+     */
+    String cacheName();
+
+    /**
+     * Key 集合参数的位置, 默认第一个参数
+     */
+    int keyParameter() default 0;
+}
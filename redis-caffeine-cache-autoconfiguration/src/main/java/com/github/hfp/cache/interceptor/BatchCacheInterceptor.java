@@ -0,0 +1,112 @@
+package com.github.hfp.cache.interceptor;
+
+import com.github.hfp.cache.ReffeineCache;
+import com.github.hfp.cache.annotation.BatchCacheable;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.util.Assert;
+
+/**
+ * {@link BatchCacheable} 的拦截器: 拆分 Key 集合参数, 命中的从缓存返回, 只用未命中的 Key 调用方法
+ */
+public class BatchCacheInterceptor implements MethodInterceptor {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+    private final CacheManager cacheManager;
+
+    public BatchCacheInterceptor(CacheManager cacheManager) {
+        Assert.notNull(cacheManager, "CacheManager must not be null!");
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        final Method method = invocation.getMethod();
+        final BatchCacheable batchCacheable = AnnotatedElementUtils.findMergedAnnotation(method, BatchCacheable.class);
+        if (batchCacheable == null) {
+            return invocation.proceed();
+        }
+        final Object[] arguments = invocation.getArguments();
+        final int keyParameter = batchCacheable.keyParameter();
+        Assert.isTrue(keyParameter >= 0 && keyParameter < arguments.length,
+                "@BatchCacheable keyParameter out of range on " + method);
+        Assert.isTrue(Map.class.isAssignableFrom(method.getReturnType()),
+                "@BatchCacheable method must return a Map: " + method);
+        final Collection<?> keys = (Collection<?>) arguments[keyParameter];
+        if (keys == null || keys.isEmpty()) {
+            return invocation.proceed();
+        }
+        final ReffeineCache cache = getCache(batchCacheable.cacheName());
+
+        final Map<Object, Cache.ValueWrapper> hits = cache.getAll(keys);
+        final Collection<Object> missingKeys = newKeyCollection(method.getParameterTypes()[keyParameter]);
+        for (Object key : keys) {
+            if (!hits.containsKey(key)) {
+                missingKeys.add(key);
+            }
+        }
+
+        Map<?, ?> loaded = null;
+        if (!missingKeys.isEmpty()) {
+            LOGGER.debug("BatchCache " + cache.getName() + " hit " + hits.size() + ", load " + missingKeys.size());
+            loaded = (Map<?, ?>) proceedWith(invocation, keyParameter, missingKeys);
+            if (loaded != null && !loaded.isEmpty()) {
+                cache.putAll(loaded);
+            }
+        }
+
+        final Map<Object, Object> result = new LinkedHashMap<>(keys.size());
+        for (Object key : keys) {
+            final Cache.ValueWrapper hit = hits.get(key);
+            final Object value = hit != null ? hit.get() : loaded == null ? null : loaded.get(key);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    private ReffeineCache getCache(String cacheName) {
+        final Cache cache = cacheManager.getCache(cacheName);
+        if (!(cache instanceof ReffeineCache)) {
+            throw new IllegalStateException("@BatchCacheable requires a ReffeineCache, but cache '" + cacheName
+                    + "' is " + (cache == null ? null : cache.getClass().getName()));
+        }
+        return (ReffeineCache) cache;
+    }
+
+    private static Object proceedWith(MethodInvocation invocation, int keyParameter, Collection<Object> missingKeys)
+            throws Throwable {
+        if (!(invocation instanceof ProxyMethodInvocation)) {
+            throw new IllegalStateException("@BatchCacheable requires a ProxyMethodInvocation: " + invocation);
+        }
+        final Object[] arguments = invocation.getArguments().clone();
+        arguments[keyParameter] = missingKeys;
+        return ((ProxyMethodInvocation) invocation).invocableClone(arguments).proceed();
+    }
+
+    /**
+     * 与参数声明类型兼容的集合, Set 参数使用 LinkedHashSet, 其它使用 ArrayList
+     */
+    private static Collection<Object> newKeyCollection(Class<?> parameterType) {
+        if (parameterType.isAssignableFrom(ArrayList.class)) {
+            return new ArrayList<>();
+        }
+        if (parameterType.isAssignableFrom(LinkedHashSet.class)) {
+            return new LinkedHashSet<>();
+        }
+        throw new IllegalStateException("@BatchCacheable key parameter must be a Collection, List or Set: "
+                + parameterType);
+    }
+}
@@ -1,26 +1,59 @@
 package com.github.hfp.config;
 
 import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.hfp.cache.CircuitBreakingReffeineCacheWriter;
+import com.github.hfp.cache.ClusterReffeineCacheWriter;
 import com.github.hfp.cache.DefaultReffeineCacheWriter;
+import com.github.hfp.cache.RecordingReffeineCacheWriter;
+import com.github.hfp.cache.ReffeineCacheCircuitBreaker;
+import com.github.hfp.cache.ReffeineCacheHeapPressureMonitor;
+import com.github.hfp.cache.ReffeineCacheHotKeyRecorder;
+import com.github.hfp.cache.ReffeineCacheInspector;
+import com.github.hfp.cache.ReffeineCacheInvalidationLog;
+import com.github.hfp.cache.ReffeineCacheInvalidationLogReplayer;
 import com.github.hfp.cache.ReffeineCacheManager;
+import com.github.hfp.cache.ReffeineCacheMessageDispatcher;
 import com.github.hfp.cache.ReffeineCacheMessageListener;
+import com.github.hfp.cache.ReffeineCacheSnapshotStore;
 import com.github.hfp.cache.ReffeineCacheWriter;
+import com.github.hfp.cache.ReplicaReadingReffeineCacheWriter;
+import com.github.hfp.cache.annotation.BatchCacheable;
+import com.github.hfp.cache.interceptor.BatchCacheInterceptor;
 import com.github.hfp.util.IPUtil;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.data.redis.RedisProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.data.redis.connection.RedisClusterConnection;
+import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.util.StringUtils;
 
+import java.nio.file.Paths;
 import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Configuration
 @EnableConfigurationProperties(ReffeineCacheProperties.class)
@@ -31,8 +64,51 @@ public class ReffeineCacheAutoConfiguration {
 
     @ConditionalOnMissingBean(ReffeineCacheWriter.class)
     @Bean
-    public ReffeineCacheWriter reffeineCacheWriter(RedisConnectionFactory connectionFactory) {
-        return new DefaultReffeineCacheWriter(connectionFactory, Duration.ofMillis(50));
+    public ReffeineCacheWriter reffeineCacheWriter(RedisConnectionFactory connectionFactory,
+                                                   ObjectProvider<ReffeineCacheInvalidationLog> invalidationLog,
+                                                   ObjectProvider<ReffeineCacheReplicaNodes> replicaNodes,
+                                                   ObjectProvider<RedisProperties> redisProperties) {
+        final boolean cluster = isCluster(connectionFactory, redisProperties.getIfAvailable());
+        final DefaultReffeineCacheWriter cacheWriter = cluster
+                ? new ClusterReffeineCacheWriter(connectionFactory, Duration.ofMillis(50))
+                : new DefaultReffeineCacheWriter(connectionFactory, Duration.ofMillis(50));
+        cacheWriter.setInvalidationLog(invalidationLog.getIfAvailable());
+        ReffeineCacheWriter routingWriter = cacheWriter;
+        final ReffeineCacheReplicaNodes replicas = replicaNodes.getIfAvailable();
+        if (replicas != null && cluster) {
+            LOGGER.warn("ReffeineCache replica-nodes is not supported on Redis Cluster, read from masters");
+        } else if (replicas != null) {
+            routingWriter = new ReplicaReadingReffeineCacheWriter(cacheWriter, replicas.getConnectionFactories(),
+                    properties.getReplicaRouting(), Duration.ofMillis(properties.getReadYourWritesMillis()));
+        }
+        // JFR 事件默认关闭, 关闭时只多一次开关检查
+        final ReffeineCacheWriter recordingWriter = RecordingReffeineCacheWriter.isSupported()
+                ? new RecordingReffeineCacheWriter(routingWriter) : routingWriter;
+        if (!properties.isCircuitBreakerEnabled()) {
+            return recordingWriter;
+        }
+        final ReffeineCacheCircuitBreaker circuitBreaker = new ReffeineCacheCircuitBreaker(
+                properties.getCircuitBreakerFailureThreshold(),
+                Duration.ofMillis(properties.getCircuitBreakerOpenMillis()),
+                Duration.ofMillis(properties.getCircuitBreakerSlowCallMillis()));
+        return new CircuitBreakingReffeineCacheWriter(recordingWriter, circuitBreaker,
+                properties.getCircuitBreakerMaxQueuedWrites());
+    }
+
+    @ConditionalOnProperty(prefix = "reffeine.cache", name = "invalidation-log-enabled", havingValue = "true")
+    @ConditionalOnMissingBean(ReffeineCacheInvalidationLog.class)
+    @Bean
+    public ReffeineCacheInvalidationLog reffeineCacheInvalidationLog(RedisConnectionFactory connectionFactory,
+                                                                     ReffeineCacheConfiguration cacheConfiguration) {
+        return new ReffeineCacheInvalidationLog(connectionFactory, cacheConfiguration.getCacheEvictChannel() + ":log",
+                properties.getInvalidationLogMaxLen());
+    }
+
+    @ConditionalOnExpression("!'${reffeine.cache.replica-nodes:}'.isEmpty()")
+    @ConditionalOnMissingBean(ReffeineCacheReplicaNodes.class)
+    @Bean
+    public ReffeineCacheReplicaNodes reffeineCacheReplicaNodes(RedisConnectionFactory connectionFactory) {
+        return new ReffeineCacheReplicaNodes(connectionFactory, properties.getReplicaNodes());
     }
 
     @ConditionalOnMissingBean(ReffeineCacheConfiguration.class)
@@ -54,6 +130,52 @@ public class ReffeineCacheAutoConfiguration {
         if (!StringUtils.isEmpty(properties.getRedisCacheTtl())) {
             configuration = configuration.redisttl(properties.getRedisCacheTtlOrDefault());
         }
+
+        if (properties.getTiering() != null && properties.getTiering() != ReffeineCacheTiering.NEAR) {
+            configuration = configuration.tiering(properties.getTiering());
+        }
+
+        if (properties.isNumericKeys()) {
+            configuration = configuration.useNumericKeys();
+        }
+
+        if (properties.getSyncValueMaxSize() > 0) {
+            configuration = configuration.syncValuesUpTo(properties.getSyncValueMaxSize());
+        }
+
+        if (properties.isTagsEnabled()) {
+            configuration = configuration.enableTags();
+        }
+
+        if (properties.getStorageLayout() == ReffeineCacheStorageLayout.HASH) {
+            configuration = configuration.storeInHash(properties.getHashShards());
+        }
+
+        if (properties.isHashTag()) {
+            configuration = configuration.useHashTag();
+        }
+
+        if (properties.getServeStaleSeconds() > 0) {
+            configuration = configuration.serveStale(Duration.ofSeconds(properties.getServeStaleSeconds()));
+        }
+
+        if (properties.getRedisTtlJitter() > 0) {
+            configuration = configuration.ttlJitter(properties.getRedisTtlJitter());
+        }
+
+        if (properties.getEarlyRecomputeBeta() > 0) {
+            configuration = configuration.earlyRecompute(properties.getEarlyRecomputeBeta());
+        }
+
+        if (properties.getValueChunkSize() > 0) {
+            configuration = configuration.chunkValuesLargerThan(properties.getValueChunkSize());
+        }
+
+        if (properties.getChannelRouting() == ReffeineCacheChannelRouting.PER_CACHE) {
+            configuration = configuration.routeSyncPerCache();
+        } else if (properties.getChannelRouting() == ReffeineCacheChannelRouting.GROUPED) {
+            configuration = configuration.routeSyncByGroups(properties.getChannelGroups());
+        }
         return configuration;
     }
 
@@ -65,38 +187,157 @@ public class ReffeineCacheAutoConfiguration {
                 .initialCaches(properties.getInitialCacheNames())
                 .allowFlightCacheCreation(properties.isAllowFlightCacheCreation())
                 .defaultCacheConfig(cacheConfiguration)
+                .warmUpOnStartup(properties.getWarmUpTopN(), Duration.ofMillis(properties.getWarmUpBudgetMillis()))
                 .build();
     }
 
+    /**
+     * {@link BatchCacheable} 的切面, 由 {@code @EnableCaching} 注册的 auto proxy creator 应用
+     */
+    @ConditionalOnMissingBean(name = "reffeineBatchCacheAdvisor")
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    @Bean
+    public Advisor reffeineBatchCacheAdvisor(@Lazy CacheManager cacheManager) {
+        return new DefaultPointcutAdvisor(AnnotationMatchingPointcut.forMethodAnnotation(BatchCacheable.class),
+                new BatchCacheInterceptor(cacheManager));
+    }
+
+    @ConditionalOnExpression("!'${reffeine.cache.snapshot-dir:}'.isEmpty()")
+    @ConditionalOnMissingBean(ReffeineCacheSnapshotStore.class)
+    @Bean
+    public ReffeineCacheSnapshotStore reffeineCacheSnapshotStore(ReffeineCacheManager reffeineCacheManager) {
+        return new ReffeineCacheSnapshotStore(reffeineCacheManager, Paths.get(properties.getSnapshotDir()),
+                Duration.ofSeconds(properties.getSnapshotIntervalSeconds()),
+                Duration.ofSeconds(properties.getSnapshotMaxAgeSeconds()));
+    }
+
+    @ConditionalOnExpression("${reffeine.cache.hot-key-sample-rate:0} > 0")
+    @ConditionalOnMissingBean(ReffeineCacheHotKeyRecorder.class)
+    @Bean
+    public ReffeineCacheHotKeyRecorder reffeineCacheHotKeyRecorder(ReffeineCacheManager reffeineCacheManager) {
+        return new ReffeineCacheHotKeyRecorder(reffeineCacheManager, properties.getHotKeySampleRate(),
+                properties.getHotKeyManifestSize(), Duration.ofSeconds(properties.getHotKeyFlushIntervalSeconds()));
+    }
+
+    @ConditionalOnProperty(prefix = "reffeine.cache", name = "heap-pressure-enabled", havingValue = "true")
+    @ConditionalOnMissingBean(ReffeineCacheHeapPressureMonitor.class)
+    @Bean
+    public ReffeineCacheHeapPressureMonitor reffeineCacheHeapPressureMonitor(
+            ReffeineCacheManager reffeineCacheManager) {
+        return new ReffeineCacheHeapPressureMonitor(reffeineCacheManager, properties.getHeapPressureHighRatio(),
+                properties.getHeapPressureLowRatio());
+    }
+
+    @ConditionalOnMissingBean(ReffeineCacheReconfigurer.class)
+    @Bean
+    public ReffeineCacheReconfigurer reffeineCacheReconfigurer(ReffeineCacheManager reffeineCacheManager,
+                                                               Environment environment) {
+        return new ReffeineCacheReconfigurer(reffeineCacheManager, environment, properties.isReconfigureBroadcast());
+    }
+
+    @ConditionalOnMissingBean(ReffeineCacheMessageDispatcher.class)
+    @Bean
+    public ReffeineCacheMessageDispatcher reffeineCacheMessageDispatcher(ReffeineCacheManager reffeineCacheManager) {
+        return new ReffeineCacheMessageDispatcher(reffeineCacheManager, properties.getListenerStripesOrDefault(),
+                properties.isListenerVirtualThreads());
+    }
+
+    @ConditionalOnMissingBean(ReffeineCacheMessageListener.class)
+    @Bean
+    public ReffeineCacheMessageListener reffeineCacheMessageListener(ReffeineCacheManager reffeineCacheManager,
+                                                                     ReffeineCacheMessageDispatcher dispatcher) {
+        return new ReffeineCacheMessageListener(reffeineCacheManager, dispatcher);
+    }
+
+    /**
+     * 与 Spring Boot 的 JmxAutoConfiguration 使用同一个开关, 由它注册的 MBeanExporter 导出
+     */
+    @ConditionalOnProperty(prefix = "spring.jmx", name = "enabled", havingValue = "true", matchIfMissing = true)
+    @ConditionalOnMissingBean(ReffeineCacheInspector.class)
+    @Bean
+    public ReffeineCacheInspector reffeineCacheInspector(ReffeineCacheManager reffeineCacheManager,
+                                                         ObjectProvider<ReffeineCacheMessageListener> messageListener,
+                                                         ObjectProvider<ReffeineCacheMessageDispatcher> dispatcher) {
+        return new ReffeineCacheInspector(reffeineCacheManager, messageListener.getIfAvailable(),
+                dispatcher.getIfAvailable());
+    }
+
+    @ConditionalOnProperty(prefix = "reffeine.cache", name = "invalidation-log-enabled", havingValue = "true")
+    @ConditionalOnMissingBean(ReffeineCacheInvalidationLogReplayer.class)
+    @Bean
+    public ReffeineCacheInvalidationLogReplayer reffeineCacheInvalidationLogReplayer(
+            ReffeineCacheInvalidationLog invalidationLog, ReffeineCacheMessageListener messageListener,
+            ReffeineCacheManager reffeineCacheManager) {
+        // 订阅是否断开以标记能否通过订阅送达为准, 不依赖客户端的连接事件(其他连接的事件会误报)
+        return new ReffeineCacheInvalidationLogReplayer(invalidationLog, messageListener, reffeineCacheManager);
+    }
+
+    /**
+     * 监听器只做反序列化和投递, 直接在订阅线程执行, 保证消息顺序; 实际处理在 {@link ReffeineCacheMessageDispatcher}
+     */
     @ConditionalOnMissingBean(name = {"redisMessageListenerTaskExecutor"})
     @Bean(value = "redisMessageListenerTaskExecutor")
-    public ThreadPoolTaskExecutor redisMessageListenerTaskExecutor() {
-        ThreadPoolTaskExecutor springSessionRedisTaskExecutor = new ThreadPoolTaskExecutor();
-        //核心线程
-        springSessionRedisTaskExecutor.setCorePoolSize(5);
-        //最大线程
-        springSessionRedisTaskExecutor.setMaxPoolSize(300);
-        //线程最大空闲时间
-        springSessionRedisTaskExecutor.setKeepAliveSeconds(10);
-        //队列大小
-        springSessionRedisTaskExecutor.setQueueCapacity(1000);
-        //线程名称前缀
-        springSessionRedisTaskExecutor.setThreadNamePrefix("RedisListener-");
-        return springSessionRedisTaskExecutor;
+    public TaskExecutor redisMessageListenerTaskExecutor() {
+        return new SyncTaskExecutor();
     }
 
     @ConditionalOnMissingBean(RedisMessageListenerContainer.class)
     @Bean
     public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
                                                                        ReffeineCacheManager reffeineCacheManager,
-                                                                       @Autowired @Qualifier("redisMessageListenerTaskExecutor") ThreadPoolTaskExecutor redisMessageListenerTaskExecutor) {
+                                                                       ReffeineCacheMessageListener reffeineCacheMessageListener,
+                                                                       ObjectProvider<ReffeineCacheInvalidationLogReplayer> invalidationLogReplayer,
+                                                                       @Autowired @Qualifier("redisMessageListenerTaskExecutor") TaskExecutor redisMessageListenerTaskExecutor) {
         final ReffeineCacheConfiguration defaultCacheConfig = reffeineCacheManager.getDefaultCacheConfig();
-        final ChannelTopic channelTopic = new ChannelTopic(defaultCacheConfig.getCacheEvictChannel());
-        LOGGER.info("IP : " + IPUtil.getIP() + " start listen on " + defaultCacheConfig.getCacheEvictChannel());
-        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        LOGGER.info("IP : " + IPUtil.getIP() + " start listen on " + defaultCacheConfig.getCacheEvictChannel()
+                + " (" + defaultCacheConfig.getChannelRouting() + ")");
+        final ReffeineCacheInvalidationLogReplayer replayer = invalidationLogReplayer.getIfAvailable();
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer() {
+            @Override
+            protected void handleSubscriptionException(Throwable ex) {
+                if (replayer != null) {
+                    replayer.connectionLost();
+                }
+                super.handleSubscriptionException(ex);
+                if (replayer != null) {
+                    replayer.connectionRestored();
+                }
+            }
+        };
         container.setConnectionFactory(connectionFactory);
         container.setTaskExecutor(redisMessageListenerTaskExecutor);
-        container.addMessageListener(new ReffeineCacheMessageListener(reffeineCacheManager), channelTopic);
+        // 订阅任务(Jedis 下会阻塞)不能使用同步执行器
+        container.setSubscriptionExecutor(new SimpleAsyncTaskExecutor("RedisListenerSubscription-"));
+        // 本机创建了缓存(且同时使用本地缓存和 Redis)才订阅它的同步通道
+        if (replayer != null) {
+            container.addMessageListener(replayer, new ChannelTopic(replayer.getMarkerChannel()));
+        }
+        final Set<String> subscribedChannels = ConcurrentHashMap.newKeySet();
+        reffeineCacheManager.addCacheCreationListener(cache -> {
+            if (cache.isSyncRequired() && subscribedChannels.add(cache.getSyncChannel())) {
+                container.addMessageListener(reffeineCacheMessageListener, new ChannelTopic(cache.getSyncChannel()));
+            }
+        });
         return container;
     }
+
+    /**
+     * 配置了 spring.redis.cluster 时为 Redis Cluster; 没有 RedisProperties(自定义连接工厂)时按连接类型判断
+     */
+    private boolean isCluster(RedisConnectionFactory connectionFactory, RedisProperties redisProperties) {
+        if (redisProperties != null) {
+            return redisProperties.getCluster() != null;
+        }
+        try {
+            final RedisConnection connection = connectionFactory.getConnection();
+            try {
+                return connection instanceof RedisClusterConnection;
+            } finally {
+                connection.close();
+            }
+        } catch (RuntimeException ex) {
+            LOGGER.warn("ReffeineCache can not detect Redis Cluster, assume standalone: " + ex.getMessage());
+            return false;
+        }
+    }
 }
@@ -0,0 +1,20 @@
+package com.github.hfp.config;
+
+/**
+ * 同步消息的 Redis 通道划分方式
+ */
+public enum ReffeineCacheChannelRouting {
+    /**
+     * 所有缓存共用一个通道 {channel}
+     */
+    SHARED,
+    /**
+     * 每个缓存一个通道 {channel}:{name}, 本机创建了该缓存才订阅
+     */
+    PER_CACHE,
+    /**
+     * 缓存名按 hash 分到固定数量的通道 {channel}:{n}, 本机有缓存落在该分组才订阅,
+     * 适合缓存数量很多的场景(减少订阅数)
+     */
+    GROUPED
+}
@@ -21,48 +21,114 @@ import java.util.regex.Pattern;
 public class ReffeineCacheConfiguration {
 
     private static final String DEFAULT_CACHE_EVICT_CHANNEL = "redis:caffeine:sync:channel";
-    private static final Pattern NAME_TTL_PATTERN = Pattern.compile("#L(\\d+\\w)#R(\\d+\\w)");
+    private static final Pattern NAME_LOCAL_PATTERN = Pattern.compile("#L(\\d+\\w)?(?=#|$)");
+    private static final Pattern NAME_REDIS_PATTERN = Pattern.compile("#R(\\d+\\w)?(?=#|$)");
     /**
      * Redis 缓存过期时间, 默认永久
      */
-    private final Duration redisttl;
+    private Duration redisttl;
     /**
      * 是否允许Null值
      */
-    private final boolean cacheNullValues;
+    private boolean cacheNullValues;
     /**
      * 前缀计算
      */
-    private final CacheKeyPrefix keyPrefix;
+    private CacheKeyPrefix keyPrefix;
 
-    private final RedisSerializationContext.SerializationPair<String> keySerializationPair;
-    private final RedisSerializationContext.SerializationPair<Object> valueSerializationPair;
+    private RedisSerializationContext.SerializationPair<String> keySerializationPair;
+    private RedisSerializationContext.SerializationPair<Object> valueSerializationPair;
 
-    private final ConversionService conversionService;
+    private ConversionService conversionService;
     /**
      * Caffeine 缓存配置
      */
-    private final CaffeineSpec caffeineSpec;
+    private CaffeineSpec caffeineSpec;
     /**
      * 同步缓存Redis通道
      */
-    private final String cacheEvictChannel;
-
-    @SuppressWarnings("unchecked")
-    private ReffeineCacheConfiguration(Duration ttl, Boolean cacheNullValues,
-                                       CacheKeyPrefix keyPrefix, RedisSerializationContext.SerializationPair<String> keySerializationPair,
-                                       RedisSerializationContext.SerializationPair<?> valueSerializationPair, ConversionService conversionService,
-                                       CaffeineSpec caffeineSpec, String cacheClearEvictChannel) {
+    private String cacheEvictChannel;
+    /**
+     * Redis 存储结构, 默认每个缓存项一个 String Key
+     */
+    private ReffeineCacheStorageLayout storageLayout;
+    /**
+     * HASH 存储结构下每个缓存拆分的 Hash 数量
+     */
+    private int hashShards;
+    /**
+     * 缓存名是否使用 Hash Tag({name}), Redis Cluster 下同一个缓存的 Key 落在同一个 slot
+     */
+    private boolean hashTag;
+    /**
+     * 同步消息通道划分方式, 默认所有缓存共用一个通道
+     */
+    private ReffeineCacheChannelRouting channelRouting;
+    /**
+     * GROUPED 通道划分下的通道数量
+     */
+    private int channelGroups;
+    /**
+     * 本地缓存过期或被淘汰后, Redis 不可用时仍然可以返回的时间, {@link Duration#ZERO} 表示不返回过期数据
+     */
+    private Duration staleGrace;
+    /**
+     * Redis TTL 随机延长的比例, 避免同时写入的缓存同时过期
+     */
+    private double ttlJitter;
+    /**
+     * 提前重新计算(XFetch)的系数, 0 表示不提前计算
+     */
+    private double earlyRecomputeBeta;
+    /**
+     * 超过这个长度(字节)的缓存值分片存储, 0 表示不分片
+     */
+    private int chunkSize;
+    /**
+     * 缓存使用的层级, 默认本地缓存 + Redis
+     */
+    private ReffeineCacheTiering tiering;
+    /**
+     * 整数 Key 直接作为本地缓存的 Key, 只在访问 Redis 时拼接缓存 Key
+     */
+    private boolean numericKeys;
+    /**
+     * 不超过这个长度(字节)的缓存值随同步消息发送, 0 表示只发送 Key
+     */
+    private int syncValueMaxSize;
+    /**
+     * 是否允许写入带标签的缓存值
+     */
+    private boolean tagsEnabled;
 
-        this.redisttl = ttl;
-        this.cacheNullValues = cacheNullValues;
-        this.keyPrefix = keyPrefix;
-        this.keySerializationPair = keySerializationPair;
-        this.valueSerializationPair = (RedisSerializationContext.SerializationPair<Object>) valueSerializationPair;
-        this.conversionService = conversionService == null ? new DefaultFormattingConversionService() : conversionService;
+    private ReffeineCacheConfiguration() {
+    }
 
-        this.caffeineSpec = caffeineSpec;
-        this.cacheEvictChannel = cacheClearEvictChannel;
+    /**
+     * 复制全部配置, with 方法在副本上修改一个配置, 创建后不再修改
+     */
+    private ReffeineCacheConfiguration(ReffeineCacheConfiguration source) {
+        this.redisttl = source.redisttl;
+        this.cacheNullValues = source.cacheNullValues;
+        this.keyPrefix = source.keyPrefix;
+        this.keySerializationPair = source.keySerializationPair;
+        this.valueSerializationPair = source.valueSerializationPair;
+        this.conversionService = source.conversionService;
+        this.caffeineSpec = source.caffeineSpec;
+        this.cacheEvictChannel = source.cacheEvictChannel;
+        this.storageLayout = source.storageLayout;
+        this.hashShards = source.hashShards;
+        this.hashTag = source.hashTag;
+        this.channelRouting = source.channelRouting;
+        this.channelGroups = source.channelGroups;
+        this.staleGrace = source.staleGrace;
+        this.ttlJitter = source.ttlJitter;
+        this.earlyRecomputeBeta = source.earlyRecomputeBeta;
+        this.chunkSize = source.chunkSize;
+        this.tiering = source.tiering;
+        this.numericKeys = source.numericKeys;
+        this.syncValueMaxSize = source.syncValueMaxSize;
+        this.tagsEnabled = source.tagsEnabled;
     }
 
     public static ReffeineCacheConfiguration defaultCacheConfig() {
@@ -70,19 +136,32 @@ public class ReffeineCacheConfiguration {
         DefaultFormattingConversionService conversionService = new DefaultFormattingConversionService();
         registerDefaultConverters(conversionService);
 
-        return new ReffeineCacheConfiguration(Duration.ZERO, true, CacheKeyPrefix.simple(),
-                RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()),
-                RedisSerializationContext.SerializationPair.fromSerializer(new JdkSerializationRedisSerializer()),
-                conversionService,
-                null, DEFAULT_CACHE_EVICT_CHANNEL);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration();
+        configuration.redisttl = Duration.ZERO;
+        configuration.cacheNullValues = true;
+        configuration.keyPrefix = CacheKeyPrefix.simple();
+        configuration.keySerializationPair =
+                RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer());
+        configuration.valueSerializationPair =
+                RedisSerializationContext.SerializationPair.fromSerializer(new JdkSerializationRedisSerializer());
+        configuration.conversionService = conversionService;
+        configuration.cacheEvictChannel = DEFAULT_CACHE_EVICT_CHANNEL;
+        configuration.storageLayout = ReffeineCacheStorageLayout.STRING;
+        configuration.hashShards = 1;
+        configuration.channelRouting = ReffeineCacheChannelRouting.SHARED;
+        configuration.channelGroups = 1;
+        configuration.staleGrace = Duration.ZERO;
+        configuration.tiering = ReffeineCacheTiering.NEAR;
+        return configuration;
     }
 
     public ReffeineCacheConfiguration redisttl(Duration ttl) {
 
         Assert.notNull(ttl, "TTL duration must not be null!");
 
-        return new ReffeineCacheConfiguration(ttl, cacheNullValues, keyPrefix, keySerializationPair,
-                valueSerializationPair, conversionService, caffeineSpec, cacheEvictChannel);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.redisttl = ttl;
+        return configuration;
     }
 
     public ReffeineCacheConfiguration prefixKeysWith(String prefix) {
@@ -92,48 +171,67 @@ public class ReffeineCacheConfiguration {
         return computePrefixWith((cacheName) -> prefix.concat(":").concat(cacheName));
     }
 
+    /**
+     * 按缓存名设置层级和过期时间:
+     * name#L10m#R1h 本地缓存 + Redis, name#L10m 只使用本地缓存, name#R1h 只使用 Redis;
+     * 省略时间(name#L / name#R)时使用当前配置的过期时间, 缓存名中没有 #L 和 #R 时返回当前配置
+     */
     public ReffeineCacheConfiguration spelName(String name) {
-        Matcher matcher = NAME_TTL_PATTERN.matcher(name);
-        if (!matcher.find()) {
+        Matcher localMatcher = NAME_LOCAL_PATTERN.matcher(name);
+        Matcher redisMatcher = NAME_REDIS_PATTERN.matcher(name);
+        boolean local = localMatcher.find();
+        boolean redis = redisMatcher.find();
+        if (!local && !redis) {
             return this;
         }
 
-        CaffeineSpec spec;
-        if (null == this.getCaffeineSpec()) {
-            spec = CaffeineSpec.parse("expireAfterWrite=" + matcher.group(1));
-        } else {
-            String oldSpec = this.getCaffeineSpec().toParsableString();
-            spec = CaffeineSpec.parse(coverageCaffeineSpec(oldSpec, "expireAfterWrite", matcher.group(1)));
+        CaffeineSpec spec = this.getCaffeineSpec();
+        if (local && localMatcher.group(1) != null) {
+            if (null == spec) {
+                spec = CaffeineSpec.parse("expireAfterWrite=" + localMatcher.group(1));
+            } else {
+                String oldSpec = spec.toParsableString();
+                spec = CaffeineSpec.parse(coverageCaffeineSpec(oldSpec, "expireAfterWrite", localMatcher.group(1)));
+            }
         }
 
-        long redisTtlAmount = ReffeineCacheProperties.parseDuration(name, matcher.group(2));
-        TimeUnit redisTtlUnit = ReffeineCacheProperties.parseTimeUnit(name, matcher.group(2));
-        Duration redisTtl = Duration.ofNanos(redisTtlUnit.toNanos(redisTtlAmount));
+        Duration redisTtl = this.redisttl;
+        if (redis && redisMatcher.group(1) != null) {
+            long redisTtlAmount = ReffeineCacheProperties.parseDuration(name, redisMatcher.group(1));
+            TimeUnit redisTtlUnit = ReffeineCacheProperties.parseTimeUnit(name, redisMatcher.group(1));
+            redisTtl = Duration.ofNanos(redisTtlUnit.toNanos(redisTtlAmount));
+        }
 
-        return new ReffeineCacheConfiguration(redisTtl, cacheNullValues, keyPrefix, keySerializationPair,
-                valueSerializationPair, conversionService, spec, cacheEvictChannel);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.redisttl = redisTtl;
+        configuration.caffeineSpec = spec;
+        configuration.tiering = !redis ? ReffeineCacheTiering.LOCAL
+                : !local ? ReffeineCacheTiering.REDIS : ReffeineCacheTiering.NEAR;
+        return configuration;
     }
 
     private ReffeineCacheConfiguration computePrefixWith(CacheKeyPrefix cacheKeyPrefix) {
 
         Assert.notNull(cacheKeyPrefix, "Function for computing key prefix must not be null!");
 
-        return new ReffeineCacheConfiguration(redisttl, cacheNullValues, cacheKeyPrefix, keySerializationPair,
-                valueSerializationPair, conversionService, caffeineSpec, cacheEvictChannel);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.keyPrefix = cacheKeyPrefix;
+        return configuration;
     }
 
     public ReffeineCacheConfiguration disableCachingNullValues() {
-        return new ReffeineCacheConfiguration(redisttl, false, keyPrefix, keySerializationPair,
-                valueSerializationPair,
-                conversionService, caffeineSpec, cacheEvictChannel);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.cacheNullValues = false;
+        return configuration;
     }
 
     public ReffeineCacheConfiguration withConversionService(ConversionService conversionService) {
 
         Assert.notNull(conversionService, "ConversionService must not be null!");
 
-        return new ReffeineCacheConfiguration(redisttl, cacheNullValues, keyPrefix, keySerializationPair,
-                valueSerializationPair, conversionService, caffeineSpec, cacheEvictChannel);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.conversionService = conversionService;
+        return configuration;
     }
 
     public ReffeineCacheConfiguration serializeKeysWith(
@@ -141,37 +239,184 @@ public class ReffeineCacheConfiguration {
 
         Assert.notNull(keySerializationPair, "KeySerializationPair must not be null!");
 
-        return new ReffeineCacheConfiguration(redisttl, cacheNullValues, keyPrefix, keySerializationPair,
-                valueSerializationPair, conversionService, caffeineSpec, cacheEvictChannel);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.keySerializationPair = keySerializationPair;
+        return configuration;
     }
 
+    @SuppressWarnings("unchecked")
     public ReffeineCacheConfiguration serializeValuesWith(
             RedisSerializationContext.SerializationPair<?> valueSerializationPair) {
 
         Assert.notNull(valueSerializationPair, "ValueSerializationPair must not be null!");
 
-        return new ReffeineCacheConfiguration(redisttl, cacheNullValues, keyPrefix, keySerializationPair,
-                valueSerializationPair, conversionService, caffeineSpec, cacheEvictChannel);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.valueSerializationPair = (RedisSerializationContext.SerializationPair<Object>) valueSerializationPair;
+        return configuration;
     }
 
     public ReffeineCacheConfiguration caffeineSpec(CaffeineSpec caffeineSpec) {
         Assert.notNull(caffeineSpec, "CaffeineSpec must not be null!");
 
-        return new ReffeineCacheConfiguration(redisttl, cacheNullValues, keyPrefix, keySerializationPair,
-                valueSerializationPair, conversionService, caffeineSpec, cacheEvictChannel);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.caffeineSpec = caffeineSpec;
+        return configuration;
     }
 
     public ReffeineCacheConfiguration cacheEvictChannel(String cacheEvictChannel) {
         Assert.notNull(cacheEvictChannel, "CacheEvictChannel must not be null!");
-        return new ReffeineCacheConfiguration(redisttl, cacheNullValues, keyPrefix, keySerializationPair,
-                valueSerializationPair, conversionService, caffeineSpec, cacheEvictChannel);
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.cacheEvictChannel = cacheEvictChannel;
+        return configuration;
+    }
+
+    /**
+     * 使用 Hash 存储, 每个缓存(或缓存的每个分片)对应一个 Redis Hash
+     *
+     * @param hashShards 每个缓存拆分的 Hash 数量, 大于 0
+     */
+    public ReffeineCacheConfiguration storeInHash(int hashShards) {
+        Assert.isTrue(hashShards > 0, "HashShards must be greater than 0!");
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.storageLayout = ReffeineCacheStorageLayout.HASH;
+        configuration.hashShards = hashShards;
+        return configuration;
+    }
+
+    /**
+     * 缓存名使用 Hash Tag, Key 变为 prefix:{name}:key, Redis Cluster 下同一个缓存的多 Key 操作落在同一个 slot
+     */
+    public ReffeineCacheConfiguration useHashTag() {
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.hashTag = true;
+        return configuration;
+    }
+
+    /**
+     * 每个缓存使用单独的同步通道 {channel}:{name}
+     */
+    public ReffeineCacheConfiguration routeSyncPerCache() {
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.channelRouting = ReffeineCacheChannelRouting.PER_CACHE;
+        return configuration;
+    }
+
+    /**
+     * 缓存名按 hash 分到 channelGroups 个同步通道 {channel}:{n}
+     *
+     * @param channelGroups 通道数量, 大于 0
+     */
+    public ReffeineCacheConfiguration routeSyncByGroups(int channelGroups) {
+        Assert.isTrue(channelGroups > 0, "ChannelGroups must be greater than 0!");
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.channelRouting = ReffeineCacheChannelRouting.GROUPED;
+        configuration.channelGroups = channelGroups;
+        return configuration;
+    }
+
+    /**
+     * Redis 不可用时, 本地缓存过期(或被淘汰)后 grace 时间内仍然返回旧值
+     */
+    public ReffeineCacheConfiguration serveStale(Duration grace) {
+        Assert.notNull(grace, "Grace duration must not be null!");
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.staleGrace = grace;
+        return configuration;
+    }
+
+    /**
+     * Redis TTL 随机延长 [0, ttl * jitter], 避免一起写入的缓存在同一时间过期
+     *
+     * @param jitter 比例, 例如 0.1 表示最多延长 10%
+     */
+    public ReffeineCacheConfiguration ttlJitter(double jitter) {
+        Assert.isTrue(jitter >= 0, "Jitter must not be negative!");
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.ttlJitter = jitter;
+        return configuration;
+    }
+
+    /**
+     * get(key, valueLoader) 在 Redis 过期前按概率提前重新计算(XFetch): 计算越慢, 越接近过期, 提前计算的概率越大
+     * <p>
+     * 缓存值会带上计算耗时和过期时间(参考 ReffeineCacheValue), 只对设置了 Redis TTL 的缓存生效
+     *
+     * @param beta 系数, 1 为推荐值, 越大越早重新计算
+     */
+    public ReffeineCacheConfiguration earlyRecompute(double beta) {
+        Assert.isTrue(beta >= 0, "Beta must not be negative!");
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.earlyRecomputeBeta = beta;
+        return configuration;
+    }
+
+    /**
+     * 超过 chunkSize 字节的缓存值拆分为多个分片存储, 缓存 Key 只保存分片清单(参考 ReffeineCacheChunks)
+     * <p>
+     * 分片通过 pipeline 写入和读取, 避免单个大命令阻塞 Redis; 只对 STRING 存储结构生效
+     *
+     * @param chunkSize 分片大小(字节)
+     */
+    public ReffeineCacheConfiguration chunkValuesLargerThan(int chunkSize) {
+        Assert.isTrue(chunkSize > 0, "ChunkSize must be greater than 0!");
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.chunkSize = chunkSize;
+        return configuration;
+    }
+
+    /**
+     * 缓存使用的层级, 参考 {@link ReffeineCacheTiering}
+     */
+    public ReffeineCacheConfiguration tiering(ReffeineCacheTiering tiering) {
+        Assert.notNull(tiering, "Tiering must not be null!");
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.tiering = tiering;
+        return configuration;
+    }
+
+    /**
+     * Long/Integer/Short/Byte 类型的 Key 直接作为本地缓存的 Key(统一为 Long), 本地缓存命中时不再拼接 prefix:name:id 字符串;
+     * Redis Key 只在访问 Redis、同步消息和写快照时生成, 与不开启时相同
+     * <p>
+     * 要求整数 Key 按默认方式转换为十进制字符串, 不能通过 ConversionService 自定义 Long 的转换
+     */
+    public ReffeineCacheConfiguration useNumericKeys() {
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.numericKeys = true;
+        return configuration;
+    }
+
+    /**
+     * put 时不超过 maxSize 字节的缓存值随同步消息发送, 本地缓存中有这个 Key 的节点直接替换, 不再读取 Redis;
+     * 更大的值仍然只发送 Key
+     * <p>
+     * 缓存值带上版本(参考 ReffeineCacheValue), 接收方只在本地的版本更旧时替换, 否则清除, 乱序或重放的消息不会覆盖更新的值
+     *
+     * @param maxSize 随同步消息发送的最大值(字节)
+     */
+    public ReffeineCacheConfiguration syncValuesUpTo(int maxSize) {
+        Assert.isTrue(maxSize > 0, "MaxSize must be greater than 0!");
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.syncValueMaxSize = maxSize;
+        return configuration;
+    }
+
+    /**
+     * 允许通过 ReffeineCache#put(key, value, tags) 写入带标签的缓存值, 标签写在缓存值的头部(参考 ReffeineCacheValue)
+     * <p>
+     * 只有开启后(或开启了提前重新计算、syncValuesUpTo)缓存才解析值的头部, 没有开启的缓存按原样反序列化
+     */
+    public ReffeineCacheConfiguration enableTags() {
+        ReffeineCacheConfiguration configuration = new ReffeineCacheConfiguration(this);
+        configuration.tagsEnabled = true;
+        return configuration;
     }
 
     public String getKeyPrefixFor(String cacheName) {
 
         Assert.notNull(cacheName, "Cache name must not be null!");
 
-        return keyPrefix.compute(cacheName);
+        return keyPrefix.compute(hashTag ? "{" + cacheName + "}" : cacheName);
     }
 
     public boolean getAllowCacheNullValues() {
@@ -202,6 +447,76 @@ public class ReffeineCacheConfiguration {
         return cacheEvictChannel;
     }
 
+    /**
+     * 缓存实际使用的同步通道
+     */
+    public String getCacheEvictChannelFor(String cacheName) {
+
+        Assert.notNull(cacheName, "Cache name must not be null!");
+
+        switch (channelRouting) {
+            case PER_CACHE:
+                return cacheEvictChannel + ":" + cacheName;
+            case GROUPED:
+                // String#hashCode 的算法是固定的, 各节点计算结果一致
+                return cacheEvictChannel + ":" + (cacheName.hashCode() & Integer.MAX_VALUE) % channelGroups;
+            default:
+                return cacheEvictChannel;
+        }
+    }
+
+    public Duration getStaleGrace() {
+        return staleGrace;
+    }
+
+    public double getTtlJitter() {
+        return ttlJitter;
+    }
+
+    public double getEarlyRecomputeBeta() {
+        return earlyRecomputeBeta;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public ReffeineCacheTiering getTiering() {
+        return tiering;
+    }
+
+    public boolean isNumericKeys() {
+        return numericKeys;
+    }
+
+    public int getSyncValueMaxSize() {
+        return syncValueMaxSize;
+    }
+
+    public boolean isTagsEnabled() {
+        return tagsEnabled;
+    }
+
+    public ReffeineCacheChannelRouting getChannelRouting() {
+        return channelRouting;
+    }
+
+    public int getChannelGroups() {
+        return channelGroups;
+    }
+
+    public ReffeineCacheStorageLayout getStorageLayout() {
+        return storageLayout;
+    }
+
+    public int getHashShards() {
+        return hashShards;
+    }
+
+    public boolean isHashTag() {
+        return hashTag;
+    }
+
     private static void registerDefaultConverters(ConverterRegistry registry) {
 
         Assert.notNull(registry, "ConverterRegistry must not be null!");
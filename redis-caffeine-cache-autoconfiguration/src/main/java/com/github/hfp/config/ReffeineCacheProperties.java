@@ -6,6 +6,8 @@ import org.springframework.lang.Nullable;
 import org.springframework.util.StringUtils;
 
 import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 @ConfigurationProperties(prefix = "reffeine.cache")
@@ -23,6 +25,14 @@ public class ReffeineCacheProperties {
      * Caffeine 缓存的配置串 {@link CaffeineSpec}
      */
     private String caffeineSpec;
+    /**
+     * 按缓存名修改本地缓存的容量和过期时间, 支持运行时刷新, 参考 {@link ReffeineCacheReconfigurer}
+     */
+    private Map<String, String> caffeineSpecs = new LinkedHashMap<>();
+    /**
+     * 运行时刷新 caffeineSpecs 时是否通过同步通道通知其他节点一起修改
+     */
+    private boolean reconfigureBroadcast = false;
     /**
      * Redis 缓存的 TTL,默认不过期
      */
@@ -39,6 +49,150 @@ public class ReffeineCacheProperties {
      * 默认支持动态创建cache
      */
     private boolean allowFlightCacheCreation = true;
+    /**
+     * 缓存使用的层级, 默认 NEAR(本地缓存 + Redis), 单个缓存可以通过缓存名 name#L10m / name#R1h 指定
+     */
+    private ReffeineCacheTiering tiering = ReffeineCacheTiering.NEAR;
+    /**
+     * 整数 Key 直接作为本地缓存的 Key, 适合按 Long id 缓存的场景, 默认关闭
+     */
+    private boolean numericKeys = false;
+    /**
+     * 不超过这个长度(字节)的缓存值随同步消息发送, 其他节点直接更新本地缓存, 0 表示只发送 Key, 默认 0
+     */
+    private int syncValueMaxSize = 0;
+    /**
+     * 是否允许写入带标签的缓存值, 默认 false
+     */
+    private boolean tagsEnabled = false;
+    /**
+     * Redis 存储结构, 默认 STRING
+     */
+    private ReffeineCacheStorageLayout storageLayout = ReffeineCacheStorageLayout.STRING;
+    /**
+     * HASH 存储结构下每个缓存拆分的 Hash 数量
+     */
+    private int hashShards = 1;
+    /**
+     * 缓存名是否使用 Hash Tag, Redis Cluster 下同一个缓存的 Key 落在同一个 slot
+     */
+    private boolean hashTag = false;
+    /**
+     * 是否开启基于 Redis Stream 的失效日志, 订阅断开重连后补齐错过的同步消息
+     */
+    private boolean invalidationLogEnabled = false;
+    /**
+     * 失效日志 Stream 的最大长度(近似)
+     */
+    private long invalidationLogMaxLen = 10000;
+    /**
+     * 热点 Key 采样率, 每 N 次访问记录一次, 0 表示不记录热点清单
+     */
+    private int hotKeySampleRate = 0;
+    /**
+     * 每个缓存的热点清单保留的 Key 数量
+     */
+    private int hotKeyManifestSize = 1000;
+    /**
+     * 热点采样上报间隔(秒)
+     */
+    private long hotKeyFlushIntervalSeconds = 60;
+    /**
+     * 启动时每个初始化缓存从热点清单预热的 Key 数量, 0 表示不预热
+     */
+    private int warmUpTopN = 0;
+    /**
+     * 启动预热最长时间(毫秒)
+     */
+    private long warmUpBudgetMillis = 3000;
+    /**
+     * 本地缓存快照目录, 为空表示不写快照
+     */
+    private String snapshotDir;
+    /**
+     * 本地缓存快照写入间隔(秒)
+     */
+    private long snapshotIntervalSeconds = 300;
+    /**
+     * 快照中超过这个时间(秒)的缓存项不恢复
+     */
+    private long snapshotMaxAgeSeconds = 600;
+    /**
+     * 是否开启 Redis 熔断, 熔断打开时读操作只使用本地缓存, 写入改为删除, 删除操作排队等待 Redis 恢复
+     */
+    private boolean circuitBreakerEnabled = false;
+    /**
+     * 连续失败多少次打开熔断
+     */
+    private int circuitBreakerFailureThreshold = 5;
+    /**
+     * 熔断打开持续时间(毫秒), 之后放行一个探测请求
+     */
+    private long circuitBreakerOpenMillis = 5000;
+    /**
+     * 超过这个时间(毫秒)的 Redis 调用算作失败, 0 表示不统计慢调用
+     */
+    private long circuitBreakerSlowCallMillis = 500;
+    /**
+     * 熔断期间最多排队的删除操作(删除/清空/同步消息)数量
+     */
+    private int circuitBreakerMaxQueuedWrites = 10000;
+    /**
+     * Redis 不可用时, 本地缓存过期后仍然返回旧值的时间(秒), 0 表示不返回过期数据
+     */
+    private long serveStaleSeconds = 0;
+    /**
+     * Redis TTL 随机延长的比例, 实际 TTL 在 [ttl, ttl * (1 + redisTtlJitter)] 之间, 0 表示不延长
+     */
+    private double redisTtlJitter = 0;
+    /**
+     * 提前重新计算(XFetch)的 beta, 越大越提前, 0 表示关闭
+     */
+    private double earlyRecomputeBeta = 0;
+    /**
+     * 超过这个长度(字节)的缓存值分片存储, 0 表示不分片
+     */
+    private int valueChunkSize = 0;
+    /**
+     * 同步消息通道划分方式, 默认所有缓存共用一个通道
+     */
+    private ReffeineCacheChannelRouting channelRouting = ReffeineCacheChannelRouting.SHARED;
+    /**
+     * GROUPED 通道划分下的通道数量
+     */
+    private int channelGroups = 16;
+    /**
+     * 同步消息处理分片数, 同一个 Key 的消息在同一个分片顺序处理, 0 表示 min(4, CPU 核数)
+     */
+    private int listenerStripes = 0;
+    /**
+     * 同步消息处理是否使用虚拟线程(JDK 21+)
+     */
+    private boolean listenerVirtualThreads = false;
+    /**
+     * 读取使用的 Redis 副本(host:port, 逗号分隔), 为空表示读写都使用主节点; 不支持 Redis Cluster
+     */
+    private String replicaNodes;
+    /**
+     * 副本的选择方式
+     */
+    private ReffeineCacheReplicaRouting replicaRouting = ReffeineCacheReplicaRouting.ROUND_ROBIN;
+    /**
+     * 本节点写入或失效的 Key 在这段时间(毫秒)内从主节点读取, 需要大于副本的复制延迟, 0 表示不保证读自己的写
+     */
+    private long readYourWritesMillis = 1000;
+    /**
+     * 是否在老年代接近上限时缩小本地缓存容量
+     */
+    private boolean heapPressureEnabled = false;
+    /**
+     * 老年代 GC 后使用率超过这个比例时缩小本地缓存容量
+     */
+    private double heapPressureHighRatio = 0.85;
+    /**
+     * 老年代使用率低于这个比例时逐步恢复本地缓存容量
+     */
+    private double heapPressureLowRatio = 0.7;
 
     public String getChannel() {
         return channel;
@@ -64,6 +218,22 @@ public class ReffeineCacheProperties {
         this.caffeineSpec = caffeineSpec;
     }
 
+    public Map<String, String> getCaffeineSpecs() {
+        return caffeineSpecs;
+    }
+
+    public void setCaffeineSpecs(Map<String, String> caffeineSpecs) {
+        this.caffeineSpecs = caffeineSpecs;
+    }
+
+    public boolean isReconfigureBroadcast() {
+        return reconfigureBroadcast;
+    }
+
+    public void setReconfigureBroadcast(boolean reconfigureBroadcast) {
+        this.reconfigureBroadcast = reconfigureBroadcast;
+    }
+
     public boolean isAllowNullValues() {
         return allowNullValues;
     }
@@ -96,6 +266,304 @@ public class ReffeineCacheProperties {
         this.allowFlightCacheCreation = allowFlightCacheCreation;
     }
 
+    public ReffeineCacheTiering getTiering() {
+        return tiering;
+    }
+
+    public void setTiering(ReffeineCacheTiering tiering) {
+        this.tiering = tiering;
+    }
+
+    public boolean isNumericKeys() {
+        return numericKeys;
+    }
+
+    public void setNumericKeys(boolean numericKeys) {
+        this.numericKeys = numericKeys;
+    }
+
+    public int getSyncValueMaxSize() {
+        return syncValueMaxSize;
+    }
+
+    public boolean isTagsEnabled() {
+        return tagsEnabled;
+    }
+
+    public void setTagsEnabled(boolean tagsEnabled) {
+        this.tagsEnabled = tagsEnabled;
+    }
+
+    public void setSyncValueMaxSize(int syncValueMaxSize) {
+        this.syncValueMaxSize = syncValueMaxSize;
+    }
+
+    public ReffeineCacheStorageLayout getStorageLayout() {
+        return storageLayout;
+    }
+
+    public void setStorageLayout(ReffeineCacheStorageLayout storageLayout) {
+        this.storageLayout = storageLayout;
+    }
+
+    public int getHashShards() {
+        return hashShards;
+    }
+
+    public void setHashShards(int hashShards) {
+        this.hashShards = hashShards;
+    }
+
+    public boolean isHashTag() {
+        return hashTag;
+    }
+
+    public void setHashTag(boolean hashTag) {
+        this.hashTag = hashTag;
+    }
+
+    public boolean isInvalidationLogEnabled() {
+        return invalidationLogEnabled;
+    }
+
+    public void setInvalidationLogEnabled(boolean invalidationLogEnabled) {
+        this.invalidationLogEnabled = invalidationLogEnabled;
+    }
+
+    public long getInvalidationLogMaxLen() {
+        return invalidationLogMaxLen;
+    }
+
+    public void setInvalidationLogMaxLen(long invalidationLogMaxLen) {
+        this.invalidationLogMaxLen = invalidationLogMaxLen;
+    }
+
+    public int getHotKeySampleRate() {
+        return hotKeySampleRate;
+    }
+
+    public void setHotKeySampleRate(int hotKeySampleRate) {
+        this.hotKeySampleRate = hotKeySampleRate;
+    }
+
+    public int getHotKeyManifestSize() {
+        return hotKeyManifestSize;
+    }
+
+    public void setHotKeyManifestSize(int hotKeyManifestSize) {
+        this.hotKeyManifestSize = hotKeyManifestSize;
+    }
+
+    public long getHotKeyFlushIntervalSeconds() {
+        return hotKeyFlushIntervalSeconds;
+    }
+
+    public void setHotKeyFlushIntervalSeconds(long hotKeyFlushIntervalSeconds) {
+        this.hotKeyFlushIntervalSeconds = hotKeyFlushIntervalSeconds;
+    }
+
+    public int getWarmUpTopN() {
+        return warmUpTopN;
+    }
+
+    public void setWarmUpTopN(int warmUpTopN) {
+        this.warmUpTopN = warmUpTopN;
+    }
+
+    public long getWarmUpBudgetMillis() {
+        return warmUpBudgetMillis;
+    }
+
+    public void setWarmUpBudgetMillis(long warmUpBudgetMillis) {
+        this.warmUpBudgetMillis = warmUpBudgetMillis;
+    }
+
+    public String getSnapshotDir() {
+        return snapshotDir;
+    }
+
+    public void setSnapshotDir(String snapshotDir) {
+        this.snapshotDir = snapshotDir;
+    }
+
+    public long getSnapshotIntervalSeconds() {
+        return snapshotIntervalSeconds;
+    }
+
+    public void setSnapshotIntervalSeconds(long snapshotIntervalSeconds) {
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    public long getSnapshotMaxAgeSeconds() {
+        return snapshotMaxAgeSeconds;
+    }
+
+    public void setSnapshotMaxAgeSeconds(long snapshotMaxAgeSeconds) {
+        this.snapshotMaxAgeSeconds = snapshotMaxAgeSeconds;
+    }
+
+    public boolean isCircuitBreakerEnabled() {
+        return circuitBreakerEnabled;
+    }
+
+    public void setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+    }
+
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    public void setCircuitBreakerFailureThreshold(int circuitBreakerFailureThreshold) {
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+    }
+
+    public long getCircuitBreakerOpenMillis() {
+        return circuitBreakerOpenMillis;
+    }
+
+    public void setCircuitBreakerOpenMillis(long circuitBreakerOpenMillis) {
+        this.circuitBreakerOpenMillis = circuitBreakerOpenMillis;
+    }
+
+    public long getCircuitBreakerSlowCallMillis() {
+        return circuitBreakerSlowCallMillis;
+    }
+
+    public void setCircuitBreakerSlowCallMillis(long circuitBreakerSlowCallMillis) {
+        this.circuitBreakerSlowCallMillis = circuitBreakerSlowCallMillis;
+    }
+
+    public int getCircuitBreakerMaxQueuedWrites() {
+        return circuitBreakerMaxQueuedWrites;
+    }
+
+    public void setCircuitBreakerMaxQueuedWrites(int circuitBreakerMaxQueuedWrites) {
+        this.circuitBreakerMaxQueuedWrites = circuitBreakerMaxQueuedWrites;
+    }
+
+    public long getServeStaleSeconds() {
+        return serveStaleSeconds;
+    }
+
+    public void setServeStaleSeconds(long serveStaleSeconds) {
+        this.serveStaleSeconds = serveStaleSeconds;
+    }
+
+    public double getRedisTtlJitter() {
+        return redisTtlJitter;
+    }
+
+    public void setRedisTtlJitter(double redisTtlJitter) {
+        this.redisTtlJitter = redisTtlJitter;
+    }
+
+    public double getEarlyRecomputeBeta() {
+        return earlyRecomputeBeta;
+    }
+
+    public void setEarlyRecomputeBeta(double earlyRecomputeBeta) {
+        this.earlyRecomputeBeta = earlyRecomputeBeta;
+    }
+
+    public int getValueChunkSize() {
+        return valueChunkSize;
+    }
+
+    public void setValueChunkSize(int valueChunkSize) {
+        this.valueChunkSize = valueChunkSize;
+    }
+
+    public ReffeineCacheChannelRouting getChannelRouting() {
+        return channelRouting;
+    }
+
+    public void setChannelRouting(ReffeineCacheChannelRouting channelRouting) {
+        this.channelRouting = channelRouting;
+    }
+
+    public int getChannelGroups() {
+        return channelGroups;
+    }
+
+    public void setChannelGroups(int channelGroups) {
+        this.channelGroups = channelGroups;
+    }
+
+    public int getListenerStripes() {
+        return listenerStripes;
+    }
+
+    public void setListenerStripes(int listenerStripes) {
+        this.listenerStripes = listenerStripes;
+    }
+
+    public boolean isListenerVirtualThreads() {
+        return listenerVirtualThreads;
+    }
+
+    public void setListenerVirtualThreads(boolean listenerVirtualThreads) {
+        this.listenerVirtualThreads = listenerVirtualThreads;
+    }
+
+    public String getReplicaNodes() {
+        return replicaNodes;
+    }
+
+    public void setReplicaNodes(String replicaNodes) {
+        this.replicaNodes = replicaNodes;
+    }
+
+    public ReffeineCacheReplicaRouting getReplicaRouting() {
+        return replicaRouting;
+    }
+
+    public void setReplicaRouting(ReffeineCacheReplicaRouting replicaRouting) {
+        this.replicaRouting = replicaRouting;
+    }
+
+    public long getReadYourWritesMillis() {
+        return readYourWritesMillis;
+    }
+
+    public void setReadYourWritesMillis(long readYourWritesMillis) {
+        this.readYourWritesMillis = readYourWritesMillis;
+    }
+
+    public boolean isHeapPressureEnabled() {
+        return heapPressureEnabled;
+    }
+
+    public void setHeapPressureEnabled(boolean heapPressureEnabled) {
+        this.heapPressureEnabled = heapPressureEnabled;
+    }
+
+    public double getHeapPressureHighRatio() {
+        return heapPressureHighRatio;
+    }
+
+    public void setHeapPressureHighRatio(double heapPressureHighRatio) {
+        this.heapPressureHighRatio = heapPressureHighRatio;
+    }
+
+    public double getHeapPressureLowRatio() {
+        return heapPressureLowRatio;
+    }
+
+    public void setHeapPressureLowRatio(double heapPressureLowRatio) {
+        this.heapPressureLowRatio = heapPressureLowRatio;
+    }
+
+    /**
+     * 实际的同步消息处理分片数
+     */
+    public int getListenerStripesOrDefault() {
+        if (listenerStripes > 0) {
+            return listenerStripes;
+        }
+        return Math.min(4, Runtime.getRuntime().availableProcessors());
+    }
+
     public String[] getInitialCacheNames() {
         if (StringUtils.isEmpty(initialCaches)) {
             return new String[0];
@@ -0,0 +1,107 @@
+package com.github.hfp.config;
+
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.hfp.cache.ReffeineCache;
+import com.github.hfp.cache.ReffeineCacheManager;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.ApplicationEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.core.env.Environment;
+import org.springframework.util.Assert;
+
+/**
+ * 按 reffeine.cache.caffeine-specs.[缓存名] 运行时修改本地缓存的容量和过期时间, 不清除已有的缓存项
+ * <p>
+ * 1. 缓存创建时应用对应的配置(只能修改 caffeineSpec 中已经开启的策略, 例如不能给没有 maximumSize 的缓存加上容量限制)
+ * 2. 收到 Spring Cloud 的 EnvironmentChangeEvent(/actuator/refresh、配置中心推送)或调用 {@link #refresh()} 时,
+ * 重新读取配置, 修改配置有变化的已有缓存; 删除的配置不恢复, 保持最后一次的值
+ * 3. broadcast 为 true 时通过同步通道通知其他节点一起修改, 适合只有一个节点收到配置变化的场景
+ */
+public class ReffeineCacheReconfigurer implements ApplicationListener<ApplicationEvent>, InitializingBean {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+    private static final String ENVIRONMENT_CHANGE_EVENT =
+            "org.springframework.cloud.context.environment.EnvironmentChangeEvent";
+    private static final String CAFFEINE_SPECS = "reffeine.cache.caffeine-specs";
+
+    private final ReffeineCacheManager reffeineCacheManager;
+    private final Environment environment;
+    private final boolean broadcast;
+    /**
+     * 最后一次读取的配置, 缓存名 -> caffeineSpec
+     */
+    private volatile Map<String, String> specs = Collections.emptyMap();
+
+    public ReffeineCacheReconfigurer(ReffeineCacheManager reffeineCacheManager, Environment environment,
+                                     boolean broadcast) {
+        Assert.notNull(reffeineCacheManager, "ReffeineCacheManager must not be null!");
+        Assert.notNull(environment, "Environment must not be null!");
+
+        this.reffeineCacheManager = reffeineCacheManager;
+        this.environment = environment;
+        this.broadcast = broadcast;
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        specs = bindSpecs();
+        // 各节点按自己的配置创建缓存, 不需要广播
+        reffeineCacheManager.addCacheCreationListener(cache -> {
+            final String spec = specs.get(cache.getName());
+            if (spec != null) {
+                reconfigure(cache, spec, false);
+            }
+        });
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationEvent event) {
+        if (ENVIRONMENT_CHANGE_EVENT.equals(event.getClass().getName())) {
+            refresh();
+        }
+    }
+
+    /**
+     * 重新读取配置, 修改配置有变化的已有缓存
+     *
+     * @return 修改的缓存数量
+     */
+    public synchronized int refresh() {
+        final Map<String, String> previous = specs;
+        final Map<String, String> current = bindSpecs();
+        specs = current;
+        int reconfigured = 0;
+        for (Map.Entry<String, String> entry : current.entrySet()) {
+            if (Objects.equals(previous.get(entry.getKey()), entry.getValue())) {
+                continue;
+            }
+            final ReffeineCache cache = reffeineCacheManager.getExistingCache(entry.getKey());
+            if (cache != null && reconfigure(cache, entry.getValue(), broadcast)) {
+                reconfigured++;
+            }
+        }
+        return reconfigured;
+    }
+
+    private boolean reconfigure(ReffeineCache cache, String spec, boolean broadcast) {
+        try {
+            cache.reconfigure(CaffeineSpec.parse(spec), broadcast);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            LOGGER.warn("ReffeineCache " + cache.getName() + " ignore invalid caffeineSpec " + spec + ": "
+                    + ex.getMessage());
+            return false;
+        }
+    }
+
+    private Map<String, String> bindSpecs() {
+        return Binder.get(environment).bind(CAFFEINE_SPECS, Bindable.mapOf(String.class, String.class))
+                .orElse(Collections.emptyMap());
+    }
+}
@@ -0,0 +1,67 @@
+package com.github.hfp.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.connection.RedisPassword;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * 读取使用的 Redis 副本连接, 由 reffeine.cache.replica-nodes(host:port, 逗号分隔)创建
+ * <p>
+ * 主连接是 {@link LettuceConnectionFactory} 时沿用它的密码、database 和客户端配置(超时、SSL、ClientResources)
+ */
+public class ReffeineCacheReplicaNodes implements InitializingBean, DisposableBean {
+    private final Log LOGGER = LogFactory.getLog(getClass());
+
+    private final List<LettuceConnectionFactory> connectionFactories = new ArrayList<>();
+
+    public ReffeineCacheReplicaNodes(RedisConnectionFactory primary, String nodes) {
+        Assert.notNull(primary, "Primary must not be null!");
+        Assert.hasText(nodes, "Nodes must not be empty!");
+
+        for (String node : StringUtils.commaDelimitedListToStringArray(nodes)) {
+            final String trimmed = node.trim();
+            final int separator = trimmed.lastIndexOf(':');
+            Assert.isTrue(separator > 0, "Replica node must be host:port, but was " + trimmed);
+            final RedisStandaloneConfiguration configuration = new RedisStandaloneConfiguration(
+                    trimmed.substring(0, separator), Integer.parseInt(trimmed.substring(separator + 1)));
+            if (primary instanceof LettuceConnectionFactory) {
+                final LettuceConnectionFactory lettuce = (LettuceConnectionFactory) primary;
+                configuration.setDatabase(lettuce.getDatabase());
+                configuration.setPassword(RedisPassword.of(lettuce.getPassword()));
+                connectionFactories.add(new LettuceConnectionFactory(configuration, lettuce.getClientConfiguration()));
+            } else {
+                connectionFactories.add(new LettuceConnectionFactory(configuration));
+            }
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() {
+        for (LettuceConnectionFactory connectionFactory : connectionFactories) {
+            connectionFactory.afterPropertiesSet();
+            LOGGER.info("ReffeineCache read from replica " + connectionFactory.getHostName() + ":"
+                    + connectionFactory.getPort());
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for (LettuceConnectionFactory connectionFactory : connectionFactories) {
+            connectionFactory.destroy();
+        }
+    }
+
+    public List<RedisConnectionFactory> getConnectionFactories() {
+        return Collections.unmodifiableList(connectionFactories);
+    }
+}
@@ -0,0 +1,15 @@
+package com.github.hfp.config;
+
+/**
+ * Redis 读操作在副本之间的选择方式, 参考 {@link com.github.hfp.cache.ReplicaReadingReffeineCacheWriter}
+ */
+public enum ReffeineCacheReplicaRouting {
+    /**
+     * 按顺序轮流使用每个副本
+     */
+    ROUND_ROBIN,
+    /**
+     * 使用最近读取耗时(滑动平均)最低的副本, 适合副本分布在不同机房的场景
+     */
+    NEAREST
+}
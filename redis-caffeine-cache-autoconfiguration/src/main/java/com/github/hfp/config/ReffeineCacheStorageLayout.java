@@ -0,0 +1,18 @@
+package com.github.hfp.config;
+
+/**
+ * 缓存在 Redis 中的存储结构
+ */
+public enum ReffeineCacheStorageLayout {
+    /**
+     * 每个缓存项一个 String Key, prefix:name:key
+     */
+    STRING,
+    /**
+     * 每个缓存(或缓存的每个分片)一个 Hash, 缓存项为 Hash 的 field
+     * <p>
+     * clear 只需要一次 UNLINK, 批量读取为一次 HMGET;
+     * Redis 7.4 及以上使用 field 级别过期(HPEXPIRE), 否则退化为整个 Hash 过期
+     */
+    HASH
+}
@@ -0,0 +1,27 @@
+package com.github.hfp.config;
+
+/**
+ * 缓存使用的层级
+ */
+public enum ReffeineCacheTiering {
+    /**
+     * 本地缓存 + Redis, 通过同步消息清除其他节点的本地缓存
+     */
+    NEAR,
+    /**
+     * 只使用本地缓存, 不读写 Redis, 不发送和订阅同步消息, 适合只在本机去重的缓存
+     */
+    LOCAL,
+    /**
+     * 只使用 Redis, 不写入本地缓存, 不订阅同步消息, 适合很大且很少重复读取的缓存
+     */
+    REDIS;
+
+    public boolean hasLocalTier() {
+        return this != REDIS;
+    }
+
+    public boolean hasRedisTier() {
+        return this != LOCAL;
+    }
+}
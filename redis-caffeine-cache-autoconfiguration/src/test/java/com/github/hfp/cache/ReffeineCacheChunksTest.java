@@ -0,0 +1,125 @@
+package com.github.hfp.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.hfp.config.ReffeineCacheConfiguration;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.springframework.cache.Cache.ValueWrapper;
+
+/**
+ * {@link ReffeineCacheChunks} 拆分和拼接, 分片缺失或损坏时按未命中处理
+ */
+public class ReffeineCacheChunksTest {
+    private static final String NAME = "order";
+    private static final int CHUNK_SIZE = 16;
+    private static final byte[] VALUE = "0123456789abcdefghijklmnopqrstuvwxyz".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void roundTrip() {
+        final List<byte[]> chunks = ReffeineCacheChunks.split(VALUE, CHUNK_SIZE);
+        final byte[] manifest = ReffeineCacheChunks.manifest(42L, chunks.size(), VALUE);
+
+        assertEquals(3, chunks.size());
+        assertEquals(4, chunks.get(2).length);
+        assertTrue(ReffeineCacheChunks.isManifest(manifest));
+        assertEquals(42L, ReffeineCacheChunks.idOf(manifest));
+        assertEquals(3, ReffeineCacheChunks.countOf(manifest));
+        assertArrayEquals(VALUE, ReffeineCacheChunks.assemble(manifest, chunks));
+    }
+
+    @Test
+    public void chunkKeys() {
+        assertEquals(Arrays.asList("order::42~chunk:ff:0", "order::42~chunk:ff:1"),
+                ReffeineCacheChunks.chunkKeysOf("order::42", 255L, 2));
+    }
+
+    @Test
+    public void missingChunk() {
+        final List<byte[]> chunks = new ArrayList<>(ReffeineCacheChunks.split(VALUE, CHUNK_SIZE));
+        final byte[] manifest = ReffeineCacheChunks.manifest(42L, chunks.size(), VALUE);
+
+        chunks.set(1, null);
+        assertNull(ReffeineCacheChunks.assemble(manifest, chunks));
+        // 分片数量不够
+        assertNull(ReffeineCacheChunks.assemble(manifest, chunks.subList(0, 1)));
+    }
+
+    /**
+     * 分片被其他写入的分片替换, 总长度一致但 CRC32 不同
+     */
+    @Test
+    public void corruptedChunk() {
+        final List<byte[]> chunks = ReffeineCacheChunks.split(VALUE, CHUNK_SIZE);
+        final byte[] manifest = ReffeineCacheChunks.manifest(42L, chunks.size(), VALUE);
+
+        chunks.get(0)[0] ^= 1;
+        assertNull(ReffeineCacheChunks.assemble(manifest, chunks));
+    }
+
+    @Test
+    public void oversizedChunk() {
+        final List<byte[]> chunks = new ArrayList<>(ReffeineCacheChunks.split(VALUE, CHUNK_SIZE));
+        final byte[] manifest = ReffeineCacheChunks.manifest(42L, chunks.size(), VALUE);
+
+        chunks.add(new byte[]{1});
+        assertNull(ReffeineCacheChunks.assemble(manifest, chunks));
+    }
+
+    @Test
+    public void plainValueIsNotManifest() {
+        assertFalse(ReffeineCacheChunks.isManifest(VALUE));
+        assertFalse(ReffeineCacheChunks.isManifest(new byte[ReffeineCacheChunks.MANIFEST_SIZE]));
+    }
+
+    /**
+     * 其他节点读取时分片缺失, 按未命中处理, 不写入本地缓存
+     */
+    @Test
+    public void cacheTreatsMissingChunkAsMiss() {
+        final StubReffeineCacheWriter writer = new StubReffeineCacheWriter();
+        final String value = new String(VALUE, StandardCharsets.UTF_8);
+        cache(writer).put("42", value);
+
+        final ValueWrapper complete = cache(writer).get("42");
+        assertNotNull(complete);
+        assertEquals(value, complete.get());
+
+        writer.remove(NAME, lastChunkKey(writer));
+        final Cache<Object, Object> peerLocalCache = Caffeine.newBuilder().build();
+        assertNull(cache(writer, peerLocalCache).get("42"));
+        assertTrue(cache(writer, peerLocalCache).getAll(Collections.singletonList("42")).isEmpty());
+        assertEquals(0L, peerLocalCache.estimatedSize());
+    }
+
+    private static ReffeineCache cache(ReffeineCacheWriter writer) {
+        return cache(writer, Caffeine.newBuilder().build());
+    }
+
+    private static ReffeineCache cache(ReffeineCacheWriter writer, Cache<Object, Object> localCache) {
+        return new ReffeineCache(true, NAME, writer,
+                ReffeineCacheConfiguration.defaultCacheConfig().chunkValuesLargerThan(CHUNK_SIZE), localCache);
+    }
+
+    private static byte[] lastChunkKey(StubReffeineCacheWriter writer) {
+        String chunkKey = null;
+        for (String command : writer.getCommands()) {
+            if (command.startsWith("SET ") && command.contains("~chunk:")) {
+                chunkKey = command.substring("SET ".length());
+            }
+        }
+        assertNotNull(chunkKey);
+        return chunkKey.getBytes(StandardCharsets.UTF_8);
+    }
+}
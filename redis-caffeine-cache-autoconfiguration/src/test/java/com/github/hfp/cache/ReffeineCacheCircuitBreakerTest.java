@@ -0,0 +1,124 @@
+package com.github.hfp.cache;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * {@link ReffeineCacheCircuitBreaker} 关闭 -> 打开 -> 半开 -> 关闭/打开 的状态转换
+ */
+public class ReffeineCacheCircuitBreakerTest {
+    private static final Duration OPEN_DURATION = Duration.ofMillis(50);
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        final ReffeineCacheCircuitBreaker breaker = breaker(Duration.ZERO);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+
+        breaker.onFailure();
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void successResetsFailures() {
+        final ReffeineCacheCircuitBreaker breaker = breaker(Duration.ZERO);
+
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess(System.nanoTime());
+        breaker.onFailure();
+        breaker.onFailure();
+
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void slowCallCountsAsFailure() {
+        final ReffeineCacheCircuitBreaker breaker = breaker(Duration.ofMillis(1));
+        final long slowStart = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(10);
+
+        breaker.onSuccess(slowStart);
+        breaker.onSuccess(slowStart);
+        breaker.onSuccess(slowStart);
+
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void halfOpenAllowsSingleProbe() throws InterruptedException {
+        final ReffeineCacheCircuitBreaker breaker = openBreaker();
+
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+        assertTrue(breaker.isOpen());
+    }
+
+    @Test
+    public void probeSuccessCloses() throws InterruptedException {
+        final ReffeineCacheCircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess(System.nanoTime());
+
+        assertFalse(breaker.isOpen());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+        // 关闭后重新从 0 开始计数
+        breaker.onFailure();
+        assertFalse(breaker.isOpen());
+    }
+
+    @Test
+    public void probeFailureReopens() throws InterruptedException {
+        final ReffeineCacheCircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+
+        assertTrue(breaker.allowRequest());
+        breaker.onFailure();
+
+        assertTrue(breaker.isOpen());
+        assertFalse(breaker.allowRequest());
+
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+        assertTrue(breaker.allowRequest());
+    }
+
+    /**
+     * 探测请求卡住超过 openDuration 时放行下一个探测
+     */
+    @Test
+    public void stuckProbeAllowsNextProbe() throws InterruptedException {
+        final ReffeineCacheCircuitBreaker breaker = openBreaker();
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+        assertTrue(breaker.allowRequest());
+
+        Thread.sleep(OPEN_DURATION.toMillis() + 20);
+
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+    }
+
+    private static ReffeineCacheCircuitBreaker breaker(Duration slowCallThreshold) {
+        return new ReffeineCacheCircuitBreaker(3, OPEN_DURATION, slowCallThreshold);
+    }
+
+    private static ReffeineCacheCircuitBreaker openBreaker() {
+        final ReffeineCacheCircuitBreaker breaker = breaker(Duration.ZERO);
+        for (int i = 0; i < 3; i++) {
+            breaker.onFailure();
+        }
+        assertTrue(breaker.isOpen());
+        return breaker;
+    }
+}
@@ -0,0 +1,106 @@
+package com.github.hfp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.hfp.config.ReffeineCacheConfiguration;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * {@link ReffeineCache#evictByTag(String)} 分批读取反向索引 -> 删除缓存 Key -> 从索引移除, 直到索引为空
+ */
+public class ReffeineCacheEvictByTagTest {
+    private static final String NAME = "order";
+    private static final String TAG = "tenant:1";
+    private static final byte[] TAG_KEY = bytes("order::~tag:" + TAG);
+
+    private final StubReffeineCacheWriter writer = new StubReffeineCacheWriter();
+    private final ReffeineCache cache = new ReffeineCache(true, NAME, writer,
+            ReffeineCacheConfiguration.defaultCacheConfig().enableTags(), Caffeine.newBuilder().build());
+
+    @Test
+    public void evictsInBatchesUntilIndexIsEmpty() {
+        for (int i = 0; i < 1200; i++) {
+            cache.put(i, "value" + i, Collections.singletonList(TAG));
+        }
+        cache.put("other", "value", Collections.singletonList("tenant:2"));
+        writer.getCommands().clear();
+
+        assertEquals(1200L, cache.evictByTag(TAG));
+
+        // 每批 SRANDMEMBER -> UNLINK -> SREM, 最后一次读到空索引, 然后通知其他节点
+        assertEquals(Arrays.asList("SRANDMEMBER", "UNLINK", "SREM", "SRANDMEMBER", "UNLINK", "SREM",
+                "SRANDMEMBER", "UNLINK", "SREM", "SRANDMEMBER", "PUBLISH"), commandSequence());
+        assertTrue(writer.members(TAG_KEY).isEmpty());
+        for (int i = 0; i < 1200; i++) {
+            assertFalse(writer.contains(cacheKey(i)));
+            assertNull(cache.get(i));
+        }
+        assertTrue(writer.contains(cacheKey("other")));
+        assertNotNull(cache.get("other"));
+    }
+
+    @Test
+    public void emptyIndex() {
+        assertEquals(0L, cache.evictByTag(TAG));
+        assertEquals(Arrays.asList("SRANDMEMBER", "PUBLISH"), commandSequence());
+    }
+
+    /**
+     * 删除失败时索引保留这些 Key, 下一次按标签清除时重试
+     */
+    @Test
+    public void keepsIndexWhenUnlinkFails() {
+        for (int i = 0; i < 3; i++) {
+            cache.put(i, "value" + i, Collections.singletonList(TAG));
+        }
+        writer.failOn("UNLINK");
+
+        try {
+            cache.evictByTag(TAG);
+            fail("UNLINK failure should propagate");
+        } catch (IllegalStateException expected) {
+            // expected
+        }
+        assertEquals(3, writer.members(TAG_KEY).size());
+
+        writer.failOn(null);
+        assertEquals(3L, cache.evictByTag(TAG));
+        assertTrue(writer.members(TAG_KEY).isEmpty());
+    }
+
+    /**
+     * 连续相同的命令只保留一个
+     */
+    private List<String> commandSequence() {
+        final List<String> sequence = new ArrayList<>();
+        for (String command : writer.getCommands()) {
+            final String name = command.substring(0, command.indexOf(' '));
+            if (sequence.isEmpty() || !sequence.get(sequence.size() - 1).equals(name)) {
+                sequence.add(name);
+            }
+        }
+        return sequence;
+    }
+
+    /**
+     * 缓存 Key: 前缀(name::) + ":" + Key
+     */
+    private static byte[] cacheKey(Object key) {
+        return bytes("order:::" + key);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,161 @@
+package com.github.hfp.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import org.junit.Test;
+import org.springframework.util.SerializationUtils;
+
+/**
+ * {@link ReffeineCacheMessageCodec} 编解码和旧版本消息兼容
+ */
+public class ReffeineCacheMessageCodecTest {
+    private static final String NAME = "order";
+    private static final String SOURCE = "10.0.0.1";
+    private static final long NODE_ID = 0x0102030405060708L;
+
+    @Test
+    public void roundTripKey() {
+        final ReffeineCacheMessage decoded = roundTrip(message("42"));
+
+        assertEquals(NAME, decoded.getName());
+        assertEquals("42", decoded.getKey());
+        assertEquals(SOURCE, decoded.getSource());
+        assertEquals(NODE_ID, decoded.getNodeId());
+        assertEquals(1234567890123L, decoded.getTimestamp());
+        assertNull(decoded.getValue());
+        assertNull(decoded.getTag());
+        assertNull(decoded.getSpec());
+    }
+
+    @Test
+    public void roundTripClear() {
+        final ReffeineCacheMessage decoded = roundTrip(message(null));
+
+        assertEquals(NAME, decoded.getName());
+        assertNull(decoded.getKey());
+        assertNull(decoded.getTag());
+        assertNull(decoded.getSpec());
+    }
+
+    @Test
+    public void roundTripTag() {
+        final ReffeineCacheMessage message = message(null);
+        message.setTag("tenant:42");
+
+        final ReffeineCacheMessage decoded = roundTrip(message);
+
+        assertNull(decoded.getKey());
+        assertEquals("tenant:42", decoded.getTag());
+    }
+
+    @Test
+    public void roundTripSpec() {
+        final ReffeineCacheMessage message = message(null);
+        message.setSpec("maximumSize=100,expireAfterWrite=10s");
+
+        final ReffeineCacheMessage decoded = roundTrip(message);
+
+        assertNull(decoded.getKey());
+        assertEquals("maximumSize=100,expireAfterWrite=10s", decoded.getSpec());
+    }
+
+    @Test
+    public void roundTripValue() {
+        final ReffeineCacheMessage message = message("42");
+        message.setValue(new byte[]{0, 1, (byte) 0xFF, 127});
+
+        final ReffeineCacheMessage decoded = roundTrip(message);
+
+        assertEquals("42", decoded.getKey());
+        assertArrayEquals(new byte[]{0, 1, (byte) 0xFF, 127}, decoded.getValue());
+    }
+
+    @Test
+    public void roundTripUtf8() {
+        final ReffeineCacheMessage message = new ReffeineCacheMessage("订单", "用户:张三", SOURCE, NODE_ID);
+
+        final ReffeineCacheMessage decoded = roundTrip(message);
+
+        assertEquals("订单", decoded.getName());
+        assertEquals("用户:张三", decoded.getKey());
+    }
+
+    /**
+     * 旧版本节点只读取 Key, 带值消息的 Key 之前的部分必须和只带 Key 的消息一致
+     */
+    @Test
+    public void valueMessageKeepsKeyLayout() {
+        final ReffeineCacheMessage withValue = message("42");
+        withValue.setValue(new byte[]{1, 2, 3});
+
+        final byte[] keyOnly = ReffeineCacheMessageCodec.encode(message("42"));
+        final byte[] encoded = ReffeineCacheMessageCodec.encode(withValue);
+        final int keyTypeOffset = 1 + 8 + 2 + NAME.length() + 2 + SOURCE.length() + 8;
+
+        assertEquals(keyOnly.length + 4 + 3, encoded.length);
+        assertArrayEquals(Arrays.copyOf(keyOnly, keyTypeOffset), Arrays.copyOf(encoded, keyTypeOffset));
+        assertArrayEquals(Arrays.copyOfRange(keyOnly, keyTypeOffset + 1, keyOnly.length),
+                Arrays.copyOfRange(encoded, keyTypeOffset + 1, keyOnly.length));
+    }
+
+    /**
+     * 旧版本节点发出的 Java 序列化消息
+     */
+    @Test
+    public void decodeJavaSerialization() {
+        final ReffeineCacheMessage message = message("42");
+        final byte[] body = SerializationUtils.serialize(message);
+
+        assertFalse(ReffeineCacheMessageCodec.isBinary(body));
+        final ReffeineCacheMessage decoded = ReffeineCacheMessageCodec.decode(body);
+        assertNotNull(decoded);
+        assertEquals(NAME, decoded.getName());
+        assertEquals("42", decoded.getKey());
+        assertEquals(NODE_ID, decoded.getNodeId());
+    }
+
+    @Test
+    public void decodeUnknownFormat() {
+        assertNull(ReffeineCacheMessageCodec.decode(new byte[0]));
+        assertNull(ReffeineCacheMessageCodec.decode("{\"name\":\"order\"}".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    public void isFrom() {
+        final byte[] body = ReffeineCacheMessageCodec.encode(message("42"));
+
+        assertTrue(ReffeineCacheMessageCodec.isFrom(body, NODE_ID));
+        assertFalse(ReffeineCacheMessageCodec.isFrom(body, NODE_ID + 1));
+    }
+
+    @Test
+    public void hasName() {
+        final byte[] body = ReffeineCacheMessageCodec.encode(message("42"));
+
+        assertTrue(ReffeineCacheMessageCodec.hasName(body, NAME.getBytes(StandardCharsets.UTF_8)));
+        assertFalse(ReffeineCacheMessageCodec.hasName(body, "orders".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(ReffeineCacheMessageCodec.hasName(body, "ord".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(ReffeineCacheMessageCodec.hasName(body, "user!".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static ReffeineCacheMessage message(String key) {
+        final ReffeineCacheMessage message = new ReffeineCacheMessage(NAME, key, SOURCE, NODE_ID);
+        message.setTimestamp(1234567890123L);
+        return message;
+    }
+
+    private static ReffeineCacheMessage roundTrip(ReffeineCacheMessage message) {
+        final byte[] body = ReffeineCacheMessageCodec.encode(message);
+        assertTrue(ReffeineCacheMessageCodec.isBinary(body));
+        final ReffeineCacheMessage decoded = ReffeineCacheMessageCodec.decode(body);
+        assertNotNull(decoded);
+        return decoded;
+    }
+}
@@ -0,0 +1,160 @@
+package com.github.hfp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.hfp.config.ReffeineCacheConfiguration;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link ReffeineCacheMessageDispatcher} 同一个 Key 的消息按接收顺序应用, 清空消息在所有分片中只执行一次
+ */
+public class ReffeineCacheMessageDispatcherTest {
+    private static final String NAME = "order";
+    private static final String SOURCE = "10.0.0.1";
+    private static final int STRIPES = 4;
+
+    private RecordingCache cache;
+    private ReffeineCacheMessageDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        final StubReffeineCacheWriter writer = new StubReffeineCacheWriter();
+        cache = new RecordingCache(writer);
+        final ReffeineCacheManager manager = new ReffeineCacheManager(writer,
+                ReffeineCacheConfiguration.defaultCacheConfig()) {
+            @Override
+            public ReffeineCache getExistingCache(String name) {
+                return NAME.equals(name) ? cache : null;
+            }
+        };
+        dispatcher = new ReffeineCacheMessageDispatcher(manager, STRIPES, false);
+    }
+
+    @After
+    public void tearDown() {
+        dispatcher.destroy();
+    }
+
+    @Test
+    public void sameKeyAppliedInOrder() {
+        for (int i = 0; i < 1000; i++) {
+            final ReffeineCacheMessage message = message("42");
+            if (i % 3 != 0) {
+                message.setValue(ByteBuffer.allocate(4).putInt(i).array());
+            }
+            dispatcher.dispatch(message);
+        }
+
+        await(() -> cache.applied().size() == 1000);
+        final List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            expected.add(i % 3 == 0 ? "invalidate 42" : "update 42 " + i);
+        }
+        assertEquals(expected, cache.applied());
+    }
+
+    /**
+     * 清空消息投递到所有分片, 只有最后一个处理到它的分片清空, 此时所有分片中之前的消息都已经应用
+     */
+    @Test
+    public void clearAppliedOnceAcrossStripes() {
+        for (int i = 0; i < 200; i++) {
+            dispatcher.dispatch(message(Integer.toString(i)));
+        }
+        dispatcher.dispatch(message(null));
+
+        await(() -> cache.applied().contains("clear"));
+        await(() -> dispatcher.getBacklog() == 0);
+        final List<String> applied = cache.applied();
+        assertEquals(1, Collections.frequency(applied, "clear"));
+        assertEquals("clear", applied.get(applied.size() - 1));
+    }
+
+    @Test
+    public void clearKeepsLaterMessages() {
+        dispatcher.dispatch(message(null));
+        await(() -> cache.applied().contains("clear"));
+        dispatcher.dispatch(message("42"));
+
+        await(() -> cache.applied().contains("invalidate 42"));
+        assertEquals(Arrays.asList("clear", "invalidate 42"), cache.applied());
+    }
+
+    @Test
+    public void specAppliedOnItsStripe() {
+        final ReffeineCacheMessage message = message(null);
+        message.setSpec("maximumSize=100");
+        dispatcher.dispatch(message);
+
+        await(() -> !cache.applied().isEmpty());
+        assertEquals(Collections.singletonList("reconfigure maximumSize=100"), cache.applied());
+    }
+
+    private static void await(BooleanSupplier condition) {
+        final long deadline = System.currentTimeMillis() + 5000L;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Dispatcher did not apply messages in time", System.currentTimeMillis() < deadline);
+            try {
+                Thread.sleep(5L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static ReffeineCacheMessage message(String key) {
+        return new ReffeineCacheMessage(NAME, key, SOURCE, 1L);
+    }
+
+    /**
+     * 记录分发线程应用到本地缓存的操作
+     */
+    private static final class RecordingCache extends ReffeineCache {
+        private final List<String> applied = new ArrayList<>();
+
+        RecordingCache(ReffeineCacheWriter writer) {
+            super(true, NAME, writer, ReffeineCacheConfiguration.defaultCacheConfig(),
+                    Caffeine.newBuilder().build());
+        }
+
+        synchronized List<String> applied() {
+            return new ArrayList<>(applied);
+        }
+
+        @Override
+        synchronized void clearLocal(String cacheKey) {
+            applied.add(cacheKey == null ? "clear" : "invalidate " + cacheKey);
+        }
+
+        @Override
+        synchronized void invalidateLocal(Collection<String> cacheKeys) {
+            for (String cacheKey : cacheKeys) {
+                applied.add("invalidate " + cacheKey);
+            }
+        }
+
+        @Override
+        synchronized boolean updateLocal(String cacheKey, byte[] value) {
+            applied.add("update " + cacheKey + " " + ByteBuffer.wrap(value).getInt());
+            return true;
+        }
+
+        @Override
+        synchronized void reconfigureLocal(CaffeineSpec spec) {
+            applied.add("reconfigure " + spec.toParsableString());
+        }
+    }
+}
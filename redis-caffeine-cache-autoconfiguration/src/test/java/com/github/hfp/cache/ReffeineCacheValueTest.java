@@ -0,0 +1,124 @@
+package com.github.hfp.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.springframework.util.SerializationUtils;
+
+/**
+ * {@link ReffeineCacheValue} 元数据头的读写, 以及不带头的值按原样读取
+ */
+public class ReffeineCacheValueTest {
+    private static final byte[] PAYLOAD = "value".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void roundTripHeader() {
+        final byte[] stored = ReffeineCacheValue.wrap(PAYLOAD, 15, 1700000000000L);
+
+        assertTrue(ReffeineCacheValue.isWrapped(stored));
+        assertEquals(ReffeineCacheValue.HEADER_SIZE + PAYLOAD.length, stored.length);
+        assertEquals(15, ReffeineCacheValue.computeMillisOf(stored));
+        assertEquals(1700000000000L, ReffeineCacheValue.expireAtOf(stored));
+        assertEquals(0L, ReffeineCacheValue.versionOf(stored));
+        assertFalse(ReffeineCacheValue.hasTags(stored));
+        assertEquals(Collections.emptyList(), ReffeineCacheValue.tagsOf(stored));
+        assertArrayEquals(PAYLOAD, bytesOf(ReffeineCacheValue.payloadOf(stored)));
+    }
+
+    @Test
+    public void roundTripTags() {
+        final byte[] stored = ReffeineCacheValue.wrap(PAYLOAD, 0, 0, Arrays.asList("tenant:42", "用户:7"));
+
+        assertTrue(ReffeineCacheValue.hasTags(stored));
+        assertEquals(Arrays.asList("tenant:42", "用户:7"), ReffeineCacheValue.tagsOf(stored));
+        assertEquals(0L, ReffeineCacheValue.versionOf(stored));
+        assertArrayEquals(PAYLOAD, bytesOf(ReffeineCacheValue.payloadOf(stored)));
+    }
+
+    @Test
+    public void roundTripVersionAndTags() {
+        final byte[] stored = ReffeineCacheValue.wrap(PAYLOAD, 3, 42L, 0x7FL << 40, Collections.singletonList("a"));
+
+        assertEquals(0x7FL << 40, ReffeineCacheValue.versionOf(stored));
+        assertEquals(Collections.singletonList("a"), ReffeineCacheValue.tagsOf(stored));
+        assertEquals(3, ReffeineCacheValue.computeMillisOf(stored));
+        assertEquals(42L, ReffeineCacheValue.expireAtOf(stored));
+        assertArrayEquals(PAYLOAD, bytesOf(ReffeineCacheValue.payloadOf(stored)));
+    }
+
+    @Test
+    public void roundTripEmptyPayload() {
+        final byte[] stored = ReffeineCacheValue.wrap(new byte[0], 0, 0, 1L, Collections.emptyList());
+
+        assertTrue(ReffeineCacheValue.isWrapped(stored));
+        assertEquals(1L, ReffeineCacheValue.versionOf(stored));
+        assertEquals(0, ReffeineCacheValue.payloadOf(stored).remaining());
+    }
+
+    @Test
+    public void computeMillisIsCapped() {
+        final byte[] stored = ReffeineCacheValue.wrap(PAYLOAD, Long.MAX_VALUE, 0);
+
+        assertEquals(Integer.MAX_VALUE, ReffeineCacheValue.computeMillisOf(stored));
+    }
+
+    /**
+     * 没有头的值(关闭元数据头的缓存或旧版本写入的值)按原样读取
+     */
+    @Test
+    public void plainValues() {
+        assertPlain(PAYLOAD);
+        assertPlain(new byte[0]);
+        assertPlain(SerializationUtils.serialize("value"));
+        assertPlain("{\"id\":42,\"name\":\"order\"}".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 原始字节恰好以旧的标记(0xFF 0x01)或魔数开头时, 版本、标记或长度不合法就不认为带头
+     */
+    @Test
+    public void rawBytesResemblingHeader() {
+        final byte[] oldMarker = new byte[ReffeineCacheValue.HEADER_SIZE + 4];
+        oldMarker[0] = (byte) 0xFF;
+        oldMarker[1] = 0x01;
+        assertPlain(oldMarker);
+
+        final byte[] stored = ReffeineCacheValue.wrap(PAYLOAD, 0, 0);
+        assertPlain(Arrays.copyOf(stored, ReffeineCacheValue.HEADER_SIZE - 1));
+
+        final byte[] unknownVersion = stored.clone();
+        unknownVersion[4] = 2;
+        assertPlain(unknownVersion);
+
+        final byte[] unknownFlags = stored.clone();
+        unknownFlags[5] = 4;
+        assertPlain(unknownFlags);
+
+        // 标记带版本但长度不够放版本
+        final byte[] truncatedVersion = Arrays.copyOf(stored, ReffeineCacheValue.HEADER_SIZE);
+        truncatedVersion[5] = 2;
+        assertPlain(truncatedVersion);
+    }
+
+    private static void assertPlain(byte[] raw) {
+        assertFalse(ReffeineCacheValue.isWrapped(raw));
+        assertEquals(0, ReffeineCacheValue.computeMillisOf(raw));
+        assertEquals(0L, ReffeineCacheValue.expireAtOf(raw));
+        assertEquals(0L, ReffeineCacheValue.versionOf(raw));
+        assertEquals(Collections.emptyList(), ReffeineCacheValue.tagsOf(raw));
+        assertArrayEquals(raw, bytesOf(ReffeineCacheValue.payloadOf(raw)));
+    }
+
+    private static byte[] bytesOf(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
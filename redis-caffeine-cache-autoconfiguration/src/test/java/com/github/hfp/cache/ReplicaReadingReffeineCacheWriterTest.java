@@ -0,0 +1,152 @@
+package com.github.hfp.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.github.hfp.config.ReffeineCacheReplicaRouting;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * {@link ReplicaReadingReffeineCacheWriter} 读取路由: 默认读副本, 读自己的写时间内读主节点, 副本失败时改为主节点
+ */
+public class ReplicaReadingReffeineCacheWriterTest {
+    private static final String NAME = "order";
+    private static final Duration READ_YOUR_WRITES = Duration.ofMillis(100);
+    private static final byte[] KEY = bytes("order::42");
+    private static final byte[] OTHER_KEY = bytes("order::7");
+    private static final byte[] VALUE = bytes("value");
+
+    private final StubReffeineCacheWriter primary = new StubReffeineCacheWriter();
+    private final StubReffeineCacheWriter replica = new StubReffeineCacheWriter();
+
+    @Test
+    public void readsFromReplica() {
+        final ReplicaReadingReffeineCacheWriter writer = writer(READ_YOUR_WRITES);
+        replica.put(NAME, KEY, VALUE, null);
+
+        assertArrayEquals(VALUE, writer.get(NAME, KEY));
+        assertEquals(1L, writer.getReplicaReads());
+        assertEquals(0L, writer.getPrimaryReads());
+    }
+
+    @Test
+    public void readsOwnWritesFromPrimary() throws InterruptedException {
+        final ReplicaReadingReffeineCacheWriter writer = writer(READ_YOUR_WRITES);
+
+        writer.put(NAME, KEY, VALUE, null);
+        assertArrayEquals(VALUE, writer.get(NAME, KEY));
+        assertEquals(1L, writer.getPrimaryReads());
+        // 其他 Key 仍然读副本
+        assertNull(writer.get(NAME, OTHER_KEY));
+        assertEquals(1L, writer.getReplicaReads());
+
+        Thread.sleep(READ_YOUR_WRITES.toMillis() + 50);
+        assertNull(writer.get(NAME, KEY));
+        assertEquals(2L, writer.getReplicaReads());
+    }
+
+    /**
+     * 其他节点的同步消息清除的 Key 在这段时间内同样从主节点读取
+     */
+    @Test
+    public void readsInvalidatedKeysFromPrimary() {
+        final ReplicaReadingReffeineCacheWriter writer = writer(READ_YOUR_WRITES);
+
+        writer.invalidated(NAME, KEY);
+        writer.get(NAME, KEY);
+
+        assertEquals(1L, writer.getPrimaryReads());
+        assertEquals(0L, writer.getReplicaReads());
+    }
+
+    @Test
+    public void readsWholeCacheFromPrimaryAfterClean() {
+        final ReplicaReadingReffeineCacheWriter writer = writer(READ_YOUR_WRITES);
+
+        writer.clean(NAME, bytes("order::*"));
+        writer.get(NAME, KEY);
+        writer.mGet(NAME, KEY, OTHER_KEY);
+        writer.get("user", KEY);
+
+        assertEquals(2L, writer.getPrimaryReads());
+        assertEquals(1L, writer.getReplicaReads());
+    }
+
+    @Test
+    public void zeroWindowAlwaysReadsReplica() {
+        final ReplicaReadingReffeineCacheWriter writer = writer(Duration.ZERO);
+
+        writer.put(NAME, KEY, VALUE, null);
+        assertNull(writer.get(NAME, KEY));
+
+        assertEquals(0L, writer.getPrimaryReads());
+        assertEquals(1L, writer.getReplicaReads());
+    }
+
+    /**
+     * 副本读取失败时本次改为主节点, 之后一段时间不再使用这个副本
+     */
+    @Test
+    public void fallsBackToPrimaryWhenReplicaFails() {
+        final ReplicaReadingReffeineCacheWriter writer = writer(READ_YOUR_WRITES);
+        primary.put(NAME, KEY, VALUE, null);
+        replica.setFailing(true);
+
+        assertArrayEquals(VALUE, writer.get(NAME, KEY));
+        replica.setFailing(false);
+        assertArrayEquals(VALUE, writer.get(NAME, KEY));
+
+        assertEquals(2L, writer.getPrimaryReads());
+        assertEquals(0L, writer.getReplicaReads());
+        assertEquals(Collections.emptyList(), replica.getCommands());
+    }
+
+    @Test
+    public void skipsFailedReplica() {
+        final StubReffeineCacheWriter healthy = new StubReffeineCacheWriter();
+        final ReplicaReadingReffeineCacheWriter writer = new ReplicaReadingReffeineCacheWriter(primary,
+                ReffeineCacheReplicaRouting.ROUND_ROBIN, READ_YOUR_WRITES, Arrays.asList(replica, healthy));
+        replica.setFailing(true);
+
+        for (int i = 0; i < 4; i++) {
+            writer.get(NAME, KEY);
+        }
+
+        assertEquals(1L, writer.getPrimaryReads());
+        assertEquals(3L, writer.getReplicaReads());
+        assertEquals(3, healthy.getCommands().size());
+    }
+
+    /**
+     * 副本缺少分片(还没有同步)时改为主节点读取
+     */
+    @Test
+    public void readsMissingChunksFromPrimary() {
+        final ReplicaReadingReffeineCacheWriter writer = writer(READ_YOUR_WRITES);
+        final List<byte[]> chunkKeys = Arrays.asList(bytes("order::42~chunk:1:0"), bytes("order::42~chunk:1:1"));
+        primary.put(NAME, chunkKeys.get(0), bytes("a"), null);
+        primary.put(NAME, chunkKeys.get(1), bytes("b"), null);
+        replica.put(NAME, chunkKeys.get(0), bytes("a"), null);
+
+        final List<byte[]> chunks = writer.getChunks(NAME, chunkKeys);
+
+        assertArrayEquals(bytes("b"), chunks.get(1));
+        assertEquals(1L, writer.getPrimaryReads());
+        assertEquals(1L, writer.getReplicaReads());
+    }
+
+    private ReplicaReadingReffeineCacheWriter writer(Duration readYourWrites) {
+        return new ReplicaReadingReffeineCacheWriter(primary, ReffeineCacheReplicaRouting.ROUND_ROBIN, readYourWrites,
+                Collections.singletonList(replica));
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,198 @@
+package com.github.hfp.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.lang.Nullable;
+
+/**
+ * 测试用的内存 ReffeineCacheWriter, 不连接 Redis; 记录执行过的命令, 可以设置为调用失败
+ */
+class StubReffeineCacheWriter implements ReffeineCacheWriter {
+    private final Map<ByteBuffer, byte[]> values = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, Map<ByteBuffer, byte[]>> hashes = new ConcurrentHashMap<>();
+    private final Map<ByteBuffer, Set<ByteBuffer>> sets = new ConcurrentHashMap<>();
+    private final List<String> commands = Collections.synchronizedList(new ArrayList<>());
+    private volatile boolean failing;
+    private volatile String failingCommand;
+
+    /**
+     * 执行过的命令, 格式为 "命令 Key"
+     */
+    List<String> getCommands() {
+        return commands;
+    }
+
+    /**
+     * 之后的调用抛出异常
+     */
+    void setFailing(boolean failing) {
+        this.failing = failing;
+    }
+
+    /**
+     * 之后执行这个命令时抛出异常
+     */
+    void failOn(String command) {
+        this.failingCommand = command;
+    }
+
+    boolean contains(byte[] key) {
+        return values.containsKey(ByteBuffer.wrap(key));
+    }
+
+    Set<ByteBuffer> members(byte[] key) {
+        return sets.getOrDefault(ByteBuffer.wrap(key), Collections.emptySet());
+    }
+
+    @Override
+    public void put(String name, byte[] key, byte[] value, @Nullable Duration ttl) {
+        record("SET", key);
+        values.put(ByteBuffer.wrap(key), value);
+    }
+
+    @Override
+    public byte[] get(String name, byte[] key) {
+        record("GET", key);
+        return values.get(ByteBuffer.wrap(key));
+    }
+
+    @Override
+    public byte[] putIfAbsent(String name, byte[] key, byte[] value, @Nullable Duration ttl) {
+        record("SETNX", key);
+        return values.putIfAbsent(ByteBuffer.wrap(key), value);
+    }
+
+    @Override
+    public void remove(String name, byte[] key) {
+        record("DEL", key);
+        values.remove(ByteBuffer.wrap(key));
+    }
+
+    @Override
+    public void clean(String name, byte[] pattern) {
+        record("CLEAN", pattern);
+        values.clear();
+        hashes.clear();
+    }
+
+    @Override
+    public void sync(byte[] channel, byte[] message) {
+        record("PUBLISH", channel);
+    }
+
+    @Override
+    public byte[] hGet(String name, byte[] hash, byte[] field) {
+        record("HGET", hash);
+        return hashes.getOrDefault(ByteBuffer.wrap(hash), Collections.emptyMap()).get(ByteBuffer.wrap(field));
+    }
+
+    @Override
+    public List<byte[]> hMGet(String name, byte[] hash, byte[]... fields) {
+        record("HMGET", hash);
+        final Map<ByteBuffer, byte[]> entries = hashes.getOrDefault(ByteBuffer.wrap(hash), Collections.emptyMap());
+        final List<byte[]> result = new ArrayList<>(fields.length);
+        for (byte[] field : fields) {
+            result.add(entries.get(ByteBuffer.wrap(field)));
+        }
+        return result;
+    }
+
+    @Override
+    public void hPut(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                     @Nullable byte[] channel, @Nullable byte[] message) {
+        record("HSET", hash);
+        hashes.computeIfAbsent(ByteBuffer.wrap(hash), k -> new ConcurrentHashMap<>()).put(ByteBuffer.wrap(field), value);
+    }
+
+    @Override
+    public byte[] hPutIfAbsent(String name, byte[] hash, byte[] field, byte[] value, @Nullable Duration ttl,
+                               @Nullable byte[] channel, @Nullable byte[] message) {
+        record("HSETNX", hash);
+        return hashes.computeIfAbsent(ByteBuffer.wrap(hash), k -> new ConcurrentHashMap<>())
+                .putIfAbsent(ByteBuffer.wrap(field), value);
+    }
+
+    @Override
+    public void hRemove(String name, byte[] hash, byte[] field) {
+        record("HDEL", hash);
+        hashes.getOrDefault(ByteBuffer.wrap(hash), Collections.emptyMap()).remove(ByteBuffer.wrap(field));
+    }
+
+    @Override
+    public void unlink(String name, byte[]... keys) {
+        for (byte[] key : keys) {
+            record("UNLINK", key);
+            values.remove(ByteBuffer.wrap(key));
+            hashes.remove(ByteBuffer.wrap(key));
+        }
+    }
+
+    @Override
+    public long hSize(String name, byte[]... hashes) {
+        long size = 0L;
+        for (byte[] hash : hashes) {
+            size += this.hashes.getOrDefault(ByteBuffer.wrap(hash), Collections.emptyMap()).size();
+        }
+        return size;
+    }
+
+    @Override
+    public long memoryUsage(String name, byte[]... keys) {
+        return 0L;
+    }
+
+    @Override
+    public void recordHotKeys(String name, byte[] manifest, Map<byte[], Long> samples, int keep,
+                              @Nullable Duration ttl) {
+    }
+
+    @Override
+    public List<byte[]> hotKeys(String name, byte[] manifest, int count) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void tag(String name, List<byte[]> tagKeys, byte[] member, @Nullable Duration ttl) {
+        for (byte[] tagKey : tagKeys) {
+            record("SADD", tagKey);
+            sets.computeIfAbsent(ByteBuffer.wrap(tagKey), k -> Collections.synchronizedSet(new LinkedHashSet<>()))
+                    .add(ByteBuffer.wrap(member));
+        }
+    }
+
+    @Override
+    public List<byte[]> tagged(String name, byte[] tagKey, int count) {
+        record("SRANDMEMBER", tagKey);
+        final List<byte[]> members = new ArrayList<>(count);
+        for (ByteBuffer member : members(tagKey)) {
+            if (members.size() == count) {
+                break;
+            }
+            members.add(member.array());
+        }
+        return members;
+    }
+
+    @Override
+    public void untag(String name, byte[] tagKey, List<byte[]> members) {
+        record("SREM", tagKey);
+        for (byte[] member : members) {
+            members(tagKey).remove(ByteBuffer.wrap(member));
+        }
+    }
+
+    private void record(String command, byte[] key) {
+        if (failing || command.equals(failingCommand)) {
+            throw new IllegalStateException("Stub writer is failing");
+        }
+        commands.add(command + " " + new String(key, StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,74 @@
+package com.github.hfp.loadtest;
+
+/**
+ * 纳秒耗时直方图, 每个 2 的幂区间再分 16 个桶, 相对误差约 6%
+ * <p>
+ * 不是线程安全的, 每个线程使用自己的直方图, 结束后 {@link #merge(LatencyHistogram)}
+ */
+final class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private final long[] counts = new long[(64 - SUB_BITS) * SUB_COUNT];
+    private long count;
+    private long max;
+
+    void record(long nanos) {
+        final long value = Math.max(nanos, 0L);
+        counts[indexOf(value)]++;
+        count++;
+        max = Math.max(max, value);
+    }
+
+    void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        max = Math.max(max, other.max);
+    }
+
+    long getCount() {
+        return count;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile (0, 100]
+     * @return 所在桶的上界(纳秒, 不超过最大值), 没有数据时返回 0
+     */
+    long percentile(double percentile) {
+        if (count == 0) {
+            return 0L;
+        }
+        final long target = Math.max((long) Math.ceil(count * percentile / 100.0), 1L);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return i + 1 < counts.length ? Math.min(lowerBoundOf(i + 1) - 1, max) : max;
+            }
+        }
+        return max;
+    }
+
+    private static int indexOf(long value) {
+        final int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent < SUB_BITS) {
+            return (int) value;
+        }
+        final int sub = (int) ((value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1));
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + sub;
+    }
+
+    private static long lowerBoundOf(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        final int exponent = index / SUB_COUNT + SUB_BITS - 1;
+        return (long) (SUB_COUNT + index % SUB_COUNT) << (exponent - SUB_BITS);
+    }
+}
@@ -0,0 +1,77 @@
+package com.github.hfp.loadtest;
+
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.hfp.cache.DefaultReffeineCacheWriter;
+import com.github.hfp.cache.ReffeineCache;
+import com.github.hfp.cache.ReffeineCacheManager;
+import com.github.hfp.cache.ReffeineCacheMessageDispatcher;
+import com.github.hfp.cache.ReffeineCacheMessageListener;
+import com.github.hfp.config.ReffeineCacheConfiguration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.SyncTaskExecutor;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+/**
+ * 进程内的一个缓存节点, 和 ReffeineCacheAutoConfiguration 的装配方式相同, 使用独立的 Redis 连接
+ */
+final class LoadTestNode implements AutoCloseable {
+    static final String KEY_PREFIX = "reffeine-loadtest";
+
+    private final LettuceConnectionFactory connectionFactory;
+    private final ReffeineCacheManager cacheManager;
+    private final ReffeineCacheMessageDispatcher dispatcher;
+    private final RedisMessageListenerContainer container;
+
+    LoadTestNode(LoadTestOptions options) {
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(options.getRedisHost(), options.getRedisPort()));
+        connectionFactory.afterPropertiesSet();
+
+        ReffeineCacheConfiguration configuration = ReffeineCacheConfiguration.defaultCacheConfig()
+                .prefixKeysWith(KEY_PREFIX)
+                .cacheEvictChannel(KEY_PREFIX + ":sync")
+                .caffeineSpec(CaffeineSpec.parse(options.getCaffeineSpec()));
+        if (options.isNumericKeys()) {
+            configuration = configuration.useNumericKeys();
+        }
+        if (options.getSyncValueMaxSize() > 0) {
+            configuration = configuration.syncValuesUpTo(options.getSyncValueMaxSize());
+        }
+        cacheManager = ReffeineCacheManager.ReffeineCacheManagerBuilder
+                .fromReffeineCacheWriter(new DefaultReffeineCacheWriter(connectionFactory))
+                .defaultCacheConfig(configuration)
+                .build();
+        cacheManager.afterPropertiesSet();
+
+        dispatcher = new ReffeineCacheMessageDispatcher(cacheManager, 4, false);
+        final ReffeineCacheMessageListener listener = new ReffeineCacheMessageListener(cacheManager, dispatcher);
+        container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.setTaskExecutor(new SyncTaskExecutor());
+        container.setSubscriptionExecutor(new SimpleAsyncTaskExecutor("LoadTestSubscription-"));
+        final Set<String> subscribedChannels = ConcurrentHashMap.newKeySet();
+        cacheManager.addCacheCreationListener(cache -> {
+            if (cache.isSyncRequired() && subscribedChannels.add(cache.getSyncChannel())) {
+                container.addMessageListener(listener, new ChannelTopic(cache.getSyncChannel()));
+            }
+        });
+        container.afterPropertiesSet();
+        container.start();
+    }
+
+    ReffeineCache getCache(String name) {
+        return (ReffeineCache) cacheManager.getCache(name);
+    }
+
+    @Override
+    public void close() throws Exception {
+        container.destroy();
+        dispatcher.destroy();
+        connectionFactory.destroy();
+    }
+}
@@ -0,0 +1,135 @@
+package com.github.hfp.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.springframework.util.Assert;
+
+/**
+ * 压测参数, 命令行 --name=value
+ */
+final class LoadTestOptions {
+    private static final Map<String, String> DEFAULTS = new LinkedHashMap<>();
+
+    static {
+        DEFAULTS.put("redis-host", "localhost");
+        DEFAULTS.put("redis-port", "6379");
+        DEFAULTS.put("nodes", "2");
+        DEFAULTS.put("threads-per-node", "4");
+        DEFAULTS.put("duration-seconds", "30");
+        DEFAULTS.put("warm-up-seconds", "5");
+        DEFAULTS.put("keys", "100000");
+        DEFAULTS.put("zipf-theta", "0.99");
+        DEFAULTS.put("read-ratio", "0.9");
+        DEFAULTS.put("write-ratio", "0.08");
+        DEFAULTS.put("evict-ratio", "0.02");
+        DEFAULTS.put("value-size", "256");
+        DEFAULTS.put("caffeine-spec", "maximumSize=10000,expireAfterWrite=60s");
+        DEFAULTS.put("numeric-keys", "false");
+        DEFAULTS.put("sync-value-max-size", "0");
+        DEFAULTS.put("probe-interval-millis", "10");
+        DEFAULTS.put("probe-timeout-millis", "5000");
+    }
+
+    private final Map<String, String> values;
+
+    private LoadTestOptions(Map<String, String> values) {
+        this.values = values;
+    }
+
+    static LoadTestOptions parse(String[] args) {
+        final Map<String, String> values = new LinkedHashMap<>(DEFAULTS);
+        for (String arg : args) {
+            Assert.isTrue(arg.startsWith("--") && arg.contains("="), "Expected --name=value, but was " + arg);
+            final String name = arg.substring(2, arg.indexOf('='));
+            Assert.isTrue(DEFAULTS.containsKey(name), "Unknown option --" + name + ", expected one of "
+                    + DEFAULTS.keySet());
+            values.put(name, arg.substring(arg.indexOf('=') + 1));
+        }
+        final LoadTestOptions options = new LoadTestOptions(values);
+        final double ratio = options.getReadRatio() + options.getWriteRatio() + options.getEvictRatio();
+        Assert.isTrue(Math.abs(ratio - 1.0) < 1e-6, "read-ratio + write-ratio + evict-ratio must be 1!");
+        return options;
+    }
+
+    String getRedisHost() {
+        return values.get("redis-host");
+    }
+
+    int getRedisPort() {
+        return Integer.parseInt(values.get("redis-port"));
+    }
+
+    /**
+     * 节点数量, 逗号分隔时依次压测, 用于比较吞吐随节点数的变化
+     */
+    List<Integer> getNodes() {
+        final List<Integer> nodes = new ArrayList<>();
+        for (String node : values.get("nodes").split(",")) {
+            nodes.add(Integer.parseInt(node.trim()));
+        }
+        return nodes;
+    }
+
+    int getThreadsPerNode() {
+        return Integer.parseInt(values.get("threads-per-node"));
+    }
+
+    int getDurationSeconds() {
+        return Integer.parseInt(values.get("duration-seconds"));
+    }
+
+    int getWarmUpSeconds() {
+        return Integer.parseInt(values.get("warm-up-seconds"));
+    }
+
+    long getKeys() {
+        return Long.parseLong(values.get("keys"));
+    }
+
+    double getZipfTheta() {
+        return Double.parseDouble(values.get("zipf-theta"));
+    }
+
+    double getReadRatio() {
+        return Double.parseDouble(values.get("read-ratio"));
+    }
+
+    double getWriteRatio() {
+        return Double.parseDouble(values.get("write-ratio"));
+    }
+
+    double getEvictRatio() {
+        return Double.parseDouble(values.get("evict-ratio"));
+    }
+
+    int getValueSize() {
+        return Integer.parseInt(values.get("value-size"));
+    }
+
+    String getCaffeineSpec() {
+        return values.get("caffeine-spec");
+    }
+
+    boolean isNumericKeys() {
+        return Boolean.parseBoolean(values.get("numeric-keys"));
+    }
+
+    int getSyncValueMaxSize() {
+        return Integer.parseInt(values.get("sync-value-max-size"));
+    }
+
+    long getProbeIntervalMillis() {
+        return Long.parseLong(values.get("probe-interval-millis"));
+    }
+
+    long getProbeTimeoutMillis() {
+        return Long.parseLong(values.get("probe-timeout-millis"));
+    }
+
+    @Override
+    public String toString() {
+        return values.toString();
+    }
+}
@@ -0,0 +1,264 @@
+package com.github.hfp.loadtest;
+
+import com.github.hfp.cache.ReffeineCache;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.cache.Cache;
+
+/**
+ * 多节点一致性和吞吐压测, 在一个进程内启动 N 个 ReffeineCacheManager, 连接同一个 redis-server
+ * <p>
+ * 1. 每个节点 threads-per-node 个线程按 read/write/evict 比例访问 Zipf 分布的 Key, 统计吞吐和各层(本地/Redis)的耗时分位数
+ * 2. 每次写入和删除使用全局递增的版本号, 读到比读取前已提交的版本更旧的值计为脏读;
+ * 同一个 Key 的并发写入在 Redis 中最后写入的不一定是最大的版本, 也会计入脏读
+ * 3. 节点数大于 1 时, 探测线程在一个节点写入, 轮询其他节点直到读到新版本, 统计失效传播延迟(从调用写入开始)
+ * <p>
+ * --nodes=1,2,4 依次压测不同节点数, 比较吞吐的变化
+ */
+public final class ReffeineLoadTest {
+    private static final String CACHE_NAME = "workload";
+    private static final String PROBE_CACHE_NAME = "probe";
+    private static final int PROBE_KEYS = 64;
+    private static final int PROBE_VALUE_SIZE = 16;
+
+    private final LoadTestOptions options;
+    private final int nodeCount;
+    private final List<LoadTestNode> nodes = new ArrayList<>();
+    private final AtomicLong versions = new AtomicLong();
+    /**
+     * Key -> 已经提交的最大版本(写入或删除返回之后)
+     */
+    private final ConcurrentHashMap<Long, Long> committed = new ConcurrentHashMap<>();
+    private volatile boolean measuring;
+    private volatile boolean stopped;
+
+    private ReffeineLoadTest(LoadTestOptions options, int nodeCount) {
+        this.options = options;
+        this.nodeCount = nodeCount;
+    }
+
+    public static void main(String[] args) throws Exception {
+        final LoadTestOptions options = LoadTestOptions.parse(args);
+        System.out.println("ReffeineLoadTest " + options);
+        for (int nodeCount : options.getNodes()) {
+            new ReffeineLoadTest(options, nodeCount).run();
+        }
+    }
+
+    private void run() throws Exception {
+        try {
+            for (int i = 0; i < nodeCount; i++) {
+                nodes.add(new LoadTestNode(options));
+            }
+            for (LoadTestNode node : nodes) {
+                node.getCache(CACHE_NAME);
+                node.getCache(PROBE_CACHE_NAME);
+            }
+            nodes.get(0).getCache(CACHE_NAME).clear();
+            nodes.get(0).getCache(PROBE_CACHE_NAME).clear();
+
+            final ZipfianGenerator keys = new ZipfianGenerator(options.getKeys(), options.getZipfTheta());
+            final List<Worker> workers = new ArrayList<>();
+            for (LoadTestNode node : nodes) {
+                for (int i = 0; i < options.getThreadsPerNode(); i++) {
+                    workers.add(new Worker(node.getCache(CACHE_NAME), keys));
+                }
+            }
+            final Prober prober = new Prober();
+            final List<Thread> threads = new ArrayList<>();
+            for (int i = 0; i < workers.size(); i++) {
+                threads.add(new Thread(workers.get(i), "LoadTestWorker-" + i));
+            }
+            if (nodeCount > 1) {
+                threads.add(new Thread(prober, "LoadTestProber"));
+            }
+            threads.forEach(Thread::start);
+
+            TimeUnit.SECONDS.sleep(options.getWarmUpSeconds());
+            measuring = true;
+            final long start = System.nanoTime();
+            TimeUnit.SECONDS.sleep(options.getDurationSeconds());
+            measuring = false;
+            final long elapsedNanos = System.nanoTime() - start;
+            stopped = true;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            report(workers, prober, elapsedNanos);
+        } finally {
+            for (LoadTestNode node : nodes) {
+                node.close();
+            }
+        }
+    }
+
+    private void report(List<Worker> workers, Prober prober, long elapsedNanos) {
+        final LatencyHistogram readLocal = new LatencyHistogram();
+        final LatencyHistogram readRedis = new LatencyHistogram();
+        final LatencyHistogram write = new LatencyHistogram();
+        final LatencyHistogram evict = new LatencyHistogram();
+        long staleReads = 0;
+        for (Worker worker : workers) {
+            readLocal.merge(worker.readLocal);
+            readRedis.merge(worker.readRedis);
+            write.merge(worker.write);
+            evict.merge(worker.evict);
+            staleReads += worker.staleReads;
+        }
+        final double seconds = elapsedNanos / 1e9;
+        final long reads = readLocal.getCount() + readRedis.getCount();
+        final long total = reads + write.getCount() + evict.getCount();
+
+        System.out.println();
+        System.out.println(String.format(Locale.ROOT, "== nodes=%d threads=%d duration=%.1fs ==", nodeCount,
+                workers.size(), seconds));
+        System.out.println(String.format(Locale.ROOT,
+                "throughput %,.0f ops/s (read %,.0f, write %,.0f, evict %,.0f), local hit ratio %.2f%%",
+                total / seconds, reads / seconds, write.getCount() / seconds, evict.getCount() / seconds,
+                reads == 0 ? 0.0 : readLocal.getCount() * 100.0 / reads));
+        System.out.println(String.format(Locale.ROOT, "%-12s %12s %10s %10s %10s %10s %10s", "latency(us)",
+                "count", "p50", "p90", "p99", "p99.9", "max"));
+        printLatency("read-local", readLocal);
+        printLatency("read-redis", readRedis);
+        printLatency("write", write);
+        printLatency("evict", evict);
+        if (nodeCount > 1) {
+            printLatency("propagation", prober.propagation);
+            System.out.println(String.format(Locale.ROOT, "propagation timeouts %d (> %dms)", prober.timeouts,
+                    options.getProbeTimeoutMillis()));
+        }
+        System.out.println(String.format(Locale.ROOT, "stale reads %d of %d (%.4f%%)", staleReads, reads,
+                reads == 0 ? 0.0 : staleReads * 100.0 / reads));
+    }
+
+    private static void printLatency(String name, LatencyHistogram histogram) {
+        System.out.println(String.format(Locale.ROOT, "%-12s %12d %10.1f %10.1f %10.1f %10.1f %10.1f", name,
+                histogram.getCount(), histogram.percentile(50) / 1e3, histogram.percentile(90) / 1e3,
+                histogram.percentile(99) / 1e3, histogram.percentile(99.9) / 1e3, histogram.getMax() / 1e3));
+    }
+
+    /**
+     * 按比例读写删除, 每个线程使用自己的统计
+     */
+    private final class Worker implements Runnable {
+        private final ReffeineCache cache;
+        private final ZipfianGenerator keys;
+        private final LatencyHistogram readLocal = new LatencyHistogram();
+        private final LatencyHistogram readRedis = new LatencyHistogram();
+        private final LatencyHistogram write = new LatencyHistogram();
+        private final LatencyHistogram evict = new LatencyHistogram();
+        private long staleReads;
+
+        private Worker(ReffeineCache cache, ZipfianGenerator keys) {
+            this.cache = cache;
+            this.keys = keys;
+        }
+
+        @Override
+        public void run() {
+            while (!stopped) {
+                final Long key = keys.next();
+                final double operation = ThreadLocalRandom.current().nextDouble();
+                if (operation < options.getReadRatio()) {
+                    read(key);
+                } else if (operation < options.getReadRatio() + options.getWriteRatio()) {
+                    final long version = versions.incrementAndGet();
+                    final long start = System.nanoTime();
+                    cache.put(key, new VersionedValue(version, options.getValueSize()));
+                    record(write, start);
+                    committed.merge(key, version, Math::max);
+                } else {
+                    final long version = versions.incrementAndGet();
+                    final long start = System.nanoTime();
+                    cache.evict(key);
+                    record(evict, start);
+                    committed.merge(key, version, Math::max);
+                }
+            }
+        }
+
+        private void read(Long key) {
+            final Long expected = committed.get(key);
+            final boolean local = cache.isCachedLocally(key);
+            final long start = System.nanoTime();
+            final Cache.ValueWrapper value = cache.get(key);
+            record(local ? readLocal : readRedis, start);
+            if (measuring && value != null && expected != null
+                    && ((VersionedValue) value.get()).getVersion() < expected) {
+                staleReads++;
+            }
+        }
+
+        private void record(LatencyHistogram histogram, long start) {
+            final long elapsed = System.nanoTime() - start;
+            if (measuring) {
+                histogram.record(elapsed);
+            }
+        }
+    }
+
+    /**
+     * 在一个节点写入, 轮询其他节点直到读到新版本
+     */
+    private final class Prober implements Runnable {
+        private final LatencyHistogram propagation = new LatencyHistogram();
+        private long timeouts;
+
+        @Override
+        public void run() {
+            for (long round = 0; !stopped; round++) {
+                final Long key = round % PROBE_KEYS;
+                final int writer = (int) (round % nodeCount);
+                // 所有节点先读一次, 本地缓存中是旧值
+                for (LoadTestNode node : nodes) {
+                    node.getCache(PROBE_CACHE_NAME).get(key);
+                }
+                final long version = versions.incrementAndGet();
+                final long start = System.nanoTime();
+                nodes.get(writer).getCache(PROBE_CACHE_NAME).put(key, new VersionedValue(version, PROBE_VALUE_SIZE));
+                awaitPropagation(key, writer, version, start);
+                try {
+                    TimeUnit.MILLISECONDS.sleep(options.getProbeIntervalMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+
+        private void awaitPropagation(Long key, int writer, long version, long start) {
+            final long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(options.getProbeTimeoutMillis());
+            final boolean[] done = new boolean[nodeCount];
+            done[writer] = true;
+            int pending = nodeCount - 1;
+            while (pending > 0) {
+                for (int i = 0; i < nodeCount; i++) {
+                    if (done[i]) {
+                        continue;
+                    }
+                    final Cache.ValueWrapper value = nodes.get(i).getCache(PROBE_CACHE_NAME).get(key);
+                    final long elapsed = System.nanoTime() - start;
+                    if (value != null && ((VersionedValue) value.get()).getVersion() >= version) {
+                        done[i] = true;
+                        pending--;
+                        if (measuring) {
+                            propagation.record(elapsed);
+                        }
+                    } else if (elapsed > timeoutNanos) {
+                        done[i] = true;
+                        pending--;
+                        if (measuring) {
+                            timeouts++;
+                        }
+                    }
+                }
+                Thread.yield();
+            }
+        }
+    }
+}
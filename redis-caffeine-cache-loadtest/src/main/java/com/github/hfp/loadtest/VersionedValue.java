@@ -0,0 +1,22 @@
+package com.github.hfp.loadtest;
+
+import java.io.Serializable;
+
+/**
+ * 压测写入的值, 版本号全局递增, 读到比已提交版本小的值即为脏读
+ */
+final class VersionedValue implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final long version;
+    private final byte[] payload;
+
+    VersionedValue(long version, int size) {
+        this.version = version;
+        this.payload = new byte[size];
+    }
+
+    long getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,51 @@
+package com.github.hfp.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.util.Assert;
+
+/**
+ * Zipf 分布的 Key 序号 [0, items), 序号越小越热
+ * <p>
+ * 算法参考 Gray et al. "Quickly Generating Billion-Record Synthetic Databases"(YCSB 使用的实现), 构造时计算一次 zeta(n)
+ */
+final class ZipfianGenerator {
+    private final long items;
+    private final double theta;
+    private final double zetan;
+    private final double alpha;
+    private final double eta;
+
+    /**
+     * @param theta 偏斜程度, (0, 1), 常用 0.99
+     */
+    ZipfianGenerator(long items, double theta) {
+        Assert.isTrue(items > 1, "Items must be greater than 1!");
+        Assert.isTrue(theta > 0 && theta < 1, "Theta must be in (0, 1)!");
+
+        this.items = items;
+        this.theta = theta;
+        this.zetan = zeta(items, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta(2, theta) / zetan);
+    }
+
+    long next() {
+        final double u = ThreadLocalRandom.current().nextDouble();
+        final double uz = u * zetan;
+        if (uz < 1.0) {
+            return 0;
+        }
+        if (uz < 1.0 + Math.pow(0.5, theta)) {
+            return 1;
+        }
+        return Math.min((long) (items * Math.pow(eta * u - eta + 1, alpha)), items - 1);
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}